@@ -0,0 +1,51 @@
+package com.duongnv.tutorial.rsocket.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Entry point of {@code benchmarks.jar}.
+ * <p>
+ * Accepts the usual JMH command line. Unless {@code -t} is given, every selected benchmark is run once per
+ * requester thread count in {@code -Dbench.threads} (default {@code 1,4,16}), and each run writes its JSON
+ * result, including the sampled latency percentiles, to {@code target/jmh/result-<threads>t.json}.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListProfilers() || cli.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        String threads = cli.getThreads().hasValue()
+                ? String.valueOf(cli.getThreads().get())
+                : System.getProperty("bench.threads", "1,4,16");
+
+        Path resultDir = Paths.get("target", "jmh");
+        Files.createDirectories(resultDir);
+
+        for (String t : threads.split(",")) {
+            int threadCount = Integer.parseInt(t.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(cli)
+                    .threads(threadCount);
+            if (!cli.getResult().hasValue()) {
+                options.resultFormat(ResultFormatType.JSON)
+                        .result(resultDir.resolve("result-" + threadCount + "t.json").toString());
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
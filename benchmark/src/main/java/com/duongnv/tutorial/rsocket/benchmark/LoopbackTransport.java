@@ -0,0 +1,54 @@
+package com.duongnv.tutorial.rsocket.benchmark;
+
+import io.rsocket.transport.ClientTransport;
+import io.rsocket.transport.ServerTransport;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.client.WebsocketClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.transport.netty.server.WebsocketServerTransport;
+
+/**
+ * In-process loopback transports the benchmarks run over, selected by the JMH {@code transport} parameter.
+ */
+public enum LoopbackTransport {
+    TCP {
+        @Override
+        public ServerTransport<CloseableChannel> server(int port) {
+            return TcpServerTransport.create(HOST, port);
+        }
+
+        @Override
+        public ClientTransport client(int port) {
+            return TcpClientTransport.create(HOST, port);
+        }
+    },
+    WEBSOCKET {
+        @Override
+        public ServerTransport<CloseableChannel> server(int port) {
+            return WebsocketServerTransport.create(HOST, port);
+        }
+
+        @Override
+        public ClientTransport client(int port) {
+            return WebsocketClientTransport.create(HOST, port);
+        }
+    };
+
+    private static final String HOST = "localhost";
+
+    public abstract ServerTransport<CloseableChannel> server(int port);
+
+    public abstract ClientTransport client(int port);
+
+    /**
+     * Name used by {@code spring.rsocket.server.transport}.
+     */
+    public String springName() {
+        return name().toLowerCase();
+    }
+
+    public static LoopbackTransport of(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
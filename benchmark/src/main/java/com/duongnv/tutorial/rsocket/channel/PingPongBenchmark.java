@@ -0,0 +1,86 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.util.DefaultPayload;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Pong#requestChannel} echo: each operation opens a channel, sends {@code elements} pings and waits for
+ * every pong.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PingPongBenchmark {
+
+    @Param({"tcp", "websocket"})
+    String transport;
+
+    @Param({"1", "64"})
+    int elements;
+
+    @Param({"1", "4"})
+    int connections;
+
+    CloseableChannel server;
+    List<RSocket> clients;
+    final AtomicInteger nextClient = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        LoopbackTransport loopback = LoopbackTransport.of(this.transport);
+        this.server = RSocketFactory
+                .receive()
+                .acceptor(new Pong())
+                .transport(loopback.server(0))
+                .start()
+                .block();
+
+        this.clients = new ArrayList<>();
+        for (int i = 0; i < this.connections; i++) {
+            this.clients.add(RSocketFactory
+                    .connect()
+                    .transport(loopback.client(this.server.address().getPort()))
+                    .start()
+                    .block());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.clients.forEach(RSocket::dispose);
+        this.server.dispose();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        RSocket rSocket;
+
+        @Setup
+        public void setUp(PingPongBenchmark benchmark) {
+            int index = benchmark.nextClient.getAndIncrement() % benchmark.clients.size();
+            this.rSocket = benchmark.clients.get(index);
+        }
+    }
+
+    @Benchmark
+    public String channel(Client c) {
+        return c.rSocket
+                .requestChannel(Flux.range(0, this.elements).map(i -> DefaultPayload.create("ping")))
+                .map(Payload::getDataUtf8)
+                .blockLast();
+    }
+}
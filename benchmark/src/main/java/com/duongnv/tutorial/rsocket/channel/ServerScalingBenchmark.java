@@ -0,0 +1,99 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import com.duongnv.tutorial.rsocket.shared.ServerLoops;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.util.ByteBufPayload;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Pong} on {@link ServerLoops} of one to eight threads, on epoll or NIO, with one listening socket or
+ * several sharded with SO_REUSEPORT. Each operation is one ping echoed on a channel of {@code ELEMENTS}, and
+ * every requester thread has a connection of its own; run it with at least as many requester threads as there
+ * are cores, e.g. {@code -Dbench.threads=16}, so the server loops rather than the requesters are what runs out.
+ * <p>
+ * The requesters share the box with the server and run on Reactor Netty's global loops, so the scaling it shows
+ * flattens out before the server's thread count reaches the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ServerScalingBenchmark {
+
+    private static final int ELEMENTS = 64;
+
+    @Param({"1", "2", "4", "8"})
+    int loopThreads;
+
+    @Param({"EPOLL", "NIO"})
+    ServerLoops.Native nativeTransport;
+
+    @Param({"1", "4"})
+    int shards;
+
+    ServerLoops loops;
+    List<CloseableChannel> servers;
+
+    @Setup
+    public void setUp() {
+        this.loops = new ServerLoops("pong", this.loopThreads, this.nativeTransport, this.shards);
+        Pong pong = new Pong();
+        this.servers = this.loops
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), transport -> RSocketFactory
+                        .receive()
+                        .frameDecoder(PayloadDecoder.ZERO_COPY)
+                        .acceptor(pong)
+                        .transport(transport)
+                        .start())
+                .block();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.servers.forEach(CloseableChannel::dispose);
+        this.loops.dispose();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        RSocket rSocket;
+
+        @Setup
+        public void setUp(ServerScalingBenchmark benchmark) {
+            this.rSocket = RSocketFactory
+                    .connect()
+                    .frameDecoder(PayloadDecoder.ZERO_COPY)
+                    .transport(TcpClientTransport.create(benchmark.servers.get(0).address()))
+                    .start()
+                    .block();
+        }
+
+        @TearDown
+        public void tearDown() {
+            this.rSocket.dispose();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public long channel(Client c) {
+        return c.rSocket
+                .requestChannel(Flux.range(0, ELEMENTS).map(i -> ByteBufPayload.create(PingPong.ping())))
+                .doOnNext(Payload::release)
+                .count()
+                .block();
+    }
+}
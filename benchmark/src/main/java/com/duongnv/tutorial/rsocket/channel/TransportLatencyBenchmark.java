@@ -0,0 +1,93 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import com.duongnv.tutorial.rsocket.transport.TransportProperties;
+import com.duongnv.tutorial.rsocket.transport.Transports;
+import io.rsocket.Closeable;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.util.ByteBufPayload;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.SocketUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Pong} over loopback TCP, the in-JVM local transport and memory-mapped rings: {@code roundTrip} is one
+ * ping echoed on a channel of its own, {@code channel} the time per ping of {@code ELEMENTS} echoed on one
+ * channel.
+ * <p>
+ * Both sides are in this JVM, which is all the local transport can do; the mapped rings cost the same between
+ * two processes, as long as each has a core to spin on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransportLatencyBenchmark {
+
+    private static final int ELEMENTS = 64;
+
+    @Param({"TCP", "LOCAL", "MMAP"})
+    Transports.Type type;
+
+    Transports transports;
+    List<Closeable> servers;
+    RSocket rSocket;
+
+    @Setup
+    public void setUp() throws IOException {
+        TransportProperties properties = new TransportProperties();
+        properties.setType(this.type);
+        properties.getMmap().setDirectory(Files.createTempDirectory("rsocket-rings").toString());
+        this.transports = properties.transports("pong");
+        int port = SocketUtils.findAvailableTcpPort();
+        this.servers = this.transports
+                .bind(port, transport -> RSocketFactory
+                        .receive()
+                        .frameDecoder(PayloadDecoder.ZERO_COPY)
+                        .acceptor(new Pong())
+                        .transport(transport)
+                        .start())
+                .block();
+        this.rSocket = RSocketFactory
+                .connect()
+                .frameDecoder(PayloadDecoder.ZERO_COPY)
+                .transport(this.transports.client(port))
+                .start()
+                .block();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.rSocket.dispose();
+        this.servers.forEach(Closeable::dispose);
+        this.transports.dispose();
+    }
+
+    @Benchmark
+    public long roundTrip() {
+        return this.rSocket
+                .requestChannel(Flux.just(ByteBufPayload.create(PingPong.ping())))
+                .doOnNext(Payload::release)
+                .count()
+                .block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public long channel() {
+        return this.rSocket
+                .requestChannel(Flux.range(0, ELEMENTS).map(i -> ByteBufPayload.create(PingPong.ping())))
+                .doOnNext(Payload::release)
+                .count()
+                .block();
+    }
+}
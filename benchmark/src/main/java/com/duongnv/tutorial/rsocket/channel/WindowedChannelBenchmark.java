@@ -0,0 +1,70 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WindowedSender} pushing pings to {@link Pong} as fast as the window allows: each operation is one ping
+ * sent and acknowledged, so the throughput is in elements per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WindowedChannelBenchmark {
+
+    private static final int ELEMENTS = 10_000;
+
+    @Param({"tcp", "websocket"})
+    String transport;
+
+    @Param({"1", "16", "256", "4096"})
+    int window;
+
+    CloseableChannel server;
+    RSocket client;
+    WindowedSender sender;
+
+    @Setup
+    public void setUp() {
+        LoopbackTransport loopback = LoopbackTransport.of(this.transport);
+        this.server = RSocketFactory
+                .receive()
+                .frameDecoder(PayloadDecoder.ZERO_COPY)
+                .acceptor(new Pong())
+                .transport(loopback.server(0))
+                .start()
+                .block();
+        this.client = RSocketFactory
+                .connect()
+                .transport(loopback.client(this.server.address().getPort()))
+                .start()
+                .block();
+        this.sender = new WindowedSender(Mono.just(this.client), this.window, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.client.dispose();
+        this.server.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public long send() {
+        return this.sender
+                .send(Flux.range(0, ELEMENTS).map(i -> PingPong.ping()))
+                .block()
+                .elements;
+    }
+}
@@ -0,0 +1,86 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.shared.GreetingTemplate;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@code greet-stream} element encoded as JSON, and one {@code rr} notification written as text, the way they
+ * were before {@link GreetingTemplate} and with it. Each invocation produces one element into a pooled buffer and
+ * releases it.
+ * <p>
+ * Run it with {@code -prof gc}: {@code gc.alloc.rate.norm} is the bytes allocated per element. {@code jackson} and
+ * {@code string} build a String and a POJO or byte array for every element; the template paths should allocate
+ * next to nothing beyond the buffer wrapper Spring needs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GreetingEncodingBenchmark {
+
+    private static final ResolvableType RESPONSE = ResolvableType.forClass(GreetingResponse.class);
+    private static final ResolvableType TEMPLATE = ResolvableType.forClass(GreetingTemplate.class);
+
+    @Param({"16", "1024"})
+    int nameLength;
+
+    String name;
+    NettyDataBufferFactory bufferFactory;
+    Jackson2JsonEncoder jackson;
+    GreetingTemplateEncoder templates;
+    GreetingTemplate json;
+    GreetingTemplate text;
+
+    @Setup
+    public void setUp() {
+        this.name = "n".repeat(this.nameLength);
+        this.bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+        this.jackson = new Jackson2JsonEncoder();
+        this.templates = new GreetingTemplateEncoder(Collections.emptyList());
+        this.json = GreetingTemplate.json(this.name, Clock.systemUTC());
+        this.text = GreetingTemplate.text(this.name, Clock.systemUTC());
+    }
+
+    @Benchmark
+    public boolean jackson() {
+        DataBuffer encoded = this.jackson.encodeValue(GreetingResponse.with(this.name), this.bufferFactory, RESPONSE,
+                MimeTypeUtils.APPLICATION_JSON, Collections.emptyMap());
+        return DataBufferUtils.release(encoded);
+    }
+
+    @Benchmark
+    public boolean template() {
+        DataBuffer encoded = this.templates.encodeValue(this.json, this.bufferFactory, TEMPLATE,
+                MimeTypeUtils.APPLICATION_JSON, Collections.emptyMap());
+        return DataBufferUtils.release(encoded);
+    }
+
+    @Benchmark
+    public boolean string() {
+        ByteBuf written = ByteBufUtil.writeUtf8(PooledByteBufAllocator.DEFAULT,
+                "Hello " + this.name + " @ " + Instant.now().toString());
+        return written.release();
+    }
+
+    @Benchmark
+    public boolean templateText() {
+        ByteBuf written = this.text.write(PooledByteBufAllocator.DEFAULT);
+        return written.release();
+    }
+}
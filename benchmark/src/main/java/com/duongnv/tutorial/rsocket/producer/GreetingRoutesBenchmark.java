@@ -0,0 +1,124 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import io.rsocket.metadata.WellKnownMimeType;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.security.rsocket.metadata.UsernamePasswordMetadata;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Round trips against the {@link GreetingRSocketController} routes of a real producer.
+ * <p>
+ * {@code nameLength} sweeps the payload size, {@code dataMimeType} the codec negotiated at SETUP,
+ * {@code connections} spreads the requester threads over that many connections, and the requester thread count
+ * itself is swept by {@code BenchmarkRunner}. The streaming routes measure the time to the first element of a
+ * fresh stream. {@code greetBatch} sends {@value #BATCH} greetings per {@code greet-batch} request and is reported
+ * per greeting, for comparison with {@code greet}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GreetingRoutesBenchmark {
+
+    static final int BATCH = 16;
+
+    private static final MimeType AUTHENTICATION =
+            MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_AUTHENTICATION.getString());
+
+    @Param({"tcp", "websocket"})
+    String transport;
+
+    @Param({"16", "1024", "16384"})
+    int nameLength;
+
+    @Param({"application/json", "application/cbor", "application/vnd.google.protobuf"})
+    String dataMimeType;
+
+    @Param({"1", "4"})
+    int connections;
+
+    ProducerFixture producer;
+    List<RSocketRequester> requesters;
+    GreetingRequest request;
+    GreetingBatchRequest batch;
+    UsernamePasswordMetadata user;
+    final AtomicInteger nextRequester = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        this.producer = new ProducerFixture(LoopbackTransport.of(this.transport));
+        this.requesters = new ArrayList<>();
+        for (int i = 0; i < this.connections; i++) {
+            this.requesters.add(this.producer.connect(MimeTypeUtils.parseMimeType(this.dataMimeType)));
+        }
+        this.request = new GreetingRequest("n".repeat(this.nameLength));
+        this.batch = new GreetingBatchRequest(Collections.nCopies(BATCH, this.request));
+        this.user = new UsernamePasswordMetadata("user", "pw");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.producer.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Requester {
+        RSocketRequester requester;
+
+        @Setup
+        public void setUp(GreetingRoutesBenchmark benchmark) {
+            int index = benchmark.nextRequester.getAndIncrement() % benchmark.requesters.size();
+            this.requester = benchmark.requesters.get(index);
+        }
+    }
+
+    @Benchmark
+    public GreetingResponse greet(Requester r) {
+        return r.requester
+                .route("greet")
+                .data(this.request)
+                .retrieveMono(GreetingResponse.class)
+                .block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public GreetingBatchResponse greetBatch(Requester r) {
+        return r.requester
+                .route("greet-batch")
+                .data(this.batch)
+                .retrieveMono(GreetingBatchResponse.class)
+                .block();
+    }
+
+    @Benchmark
+    public GreetingResponse greetStream(Requester r) {
+        return r.requester
+                .route("greet-stream")
+                .data(this.request)
+                .retrieveFlux(GreetingResponse.class)
+                .blockFirst();
+    }
+
+    @Benchmark
+    public GreetingResponse greetings(Requester r) {
+        return r.requester
+                .route("greetings")
+                .metadata(this.user, AUTHENTICATION)
+                .data(Mono.empty())
+                .retrieveFlux(GreetingResponse.class)
+                .blockFirst();
+    }
+}
@@ -0,0 +1,75 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a small {@code greet} while the same connection carries a continuous transfer of large greetings.
+ * <p>
+ * {@code fragmentation} is {@code off} (one frame per payload), {@code contiguous} (fragments of a payload back to
+ * back, as with resumption on) or {@code interleaved} (fragments take turns with other streams). Resumption is off
+ * in all three so only the fragmentation differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HeadOfLineBenchmark {
+
+    @Param({"off", "contiguous", "interleaved"})
+    String fragmentation;
+
+    @Param({"1048576", "4194304"})
+    int largeSize;
+
+    /**
+     * Large requests kept in flight at any time.
+     */
+    @Param({"2"})
+    int bulkConcurrency;
+
+    ProducerFixture producer;
+    RSocketRequester requester;
+    GreetingRequest small;
+    Disposable bulk;
+
+    @Setup
+    public void setUp() {
+        this.producer = new ProducerFixture(LoopbackTransport.TCP,
+                "producer.rsocket.resume.enabled=false",
+                "producer.rsocket.fragmentation.mtu=" + ("off".equals(this.fragmentation) ? "0" : "16KB"),
+                "producer.rsocket.fragmentation.interleave=" + "interleaved".equals(this.fragmentation));
+        this.requester = this.producer.connect();
+        this.small = new GreetingRequest("small");
+
+        GreetingRequest large = new GreetingRequest("n".repeat(this.largeSize));
+        this.bulk = Flux.range(0, Integer.MAX_VALUE)
+                .flatMap(i -> this.requester
+                        .route("greet")
+                        .data(large)
+                        .retrieveMono(GreetingResponse.class), this.bulkConcurrency)
+                .subscribe(response -> { }, ex -> { });
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.bulk.dispose();
+        this.producer.close();
+    }
+
+    @Benchmark
+    public GreetingResponse greetBehindBulk() {
+        return this.requester
+                .route("greet")
+                .data(this.small)
+                .retrieveMono(GreetingResponse.class)
+                .block();
+    }
+}
@@ -0,0 +1,147 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import com.duongnv.tutorial.rsocket.shared.FrameMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.DuplexConnection;
+import io.rsocket.frame.PayloadFrameFlyweight;
+import io.rsocket.frame.RequestNFrameFlyweight;
+import io.rsocket.util.DefaultPayload;
+import org.openjdk.jmh.annotations.*;
+import org.reactivestreams.Publisher;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the producer's metrics cost, with {@code metrics} off and on.
+ * <p>
+ * {@code greet} is a round trip against a real producer, with frame and route meters on its side of the
+ * connection. {@code sendFrames} isolates the per-frame accounting: each invocation receives a REQUEST_N for
+ * {@value #FRAMES} elements and sends that many NEXT frames of the stream through a connection that discards them,
+ * one credit ahead so the stream stays tracked. Results are per frame. Run it with
+ * {@code -prof gc}: with metrics on, {@code gc.alloc.rate.norm} should be no higher than with metrics off.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    static final int FRAMES = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Producer {
+
+        @Param({"false", "true"})
+        boolean metrics;
+
+        ProducerFixture producer;
+        RSocketRequester requester;
+        GreetingRequest request;
+
+        @Setup
+        public void setUp() {
+            this.producer = new ProducerFixture(LoopbackTransport.TCP,
+                    "producer.rsocket.metrics.enabled=" + this.metrics);
+            this.requester = this.producer.connect();
+            this.request = new GreetingRequest("metrics");
+        }
+
+        @TearDown
+        public void tearDown() {
+            this.producer.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Frames {
+
+        @Param({"false", "true"})
+        boolean metrics;
+
+        DuplexConnection connection;
+        Flux<ByteBuf> next;
+
+        @Setup
+        public void setUp() {
+            ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+            ByteBuf requestN = RequestNFrameFlyweight.encode(allocator, 1, FRAMES);
+            ByteBuf[] frames = new ByteBuf[FRAMES];
+            ByteBuf frame = PayloadFrameFlyweight.encodeNext(allocator, 1, DefaultPayload.create("greeting"));
+            for (int i = 0; i < FRAMES; i++) {
+                frames[i] = frame;
+            }
+            DuplexConnection discarding = new DiscardingConnection(requestN);
+            this.connection = this.metrics
+                    ? new FrameMetrics(new SimpleMeterRegistry()).instrument(discarding)
+                    : discarding;
+            this.connection.receive().blockLast();
+            this.next = Flux.fromArray(frames);
+        }
+
+        @TearDown
+        public void tearDown() {
+            this.connection.dispose();
+        }
+    }
+
+    @Benchmark
+    public GreetingResponse greet(Producer p) {
+        return p.requester
+                .route("greet")
+                .data(p.request)
+                .retrieveMono(GreetingResponse.class)
+                .block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void sendFrames(Frames f) {
+        f.connection.receive().blockLast();
+        f.connection.send(f.next).block();
+    }
+
+    /**
+     * Receives the same frame every time it is subscribed to and drops everything it is sent.
+     */
+    static final class DiscardingConnection implements DuplexConnection {
+        private final ByteBuf received;
+        private final MonoProcessor<Void> onClose = MonoProcessor.create();
+
+        DiscardingConnection(ByteBuf received) {
+            this.received = received;
+        }
+
+        @Override
+        public Mono<Void> send(Publisher<ByteBuf> frames) {
+            return Flux.from(frames).then();
+        }
+
+        @Override
+        public Flux<ByteBuf> receive() {
+            return Flux.just(this.received);
+        }
+
+        @Override
+        public Mono<Void> onClose() {
+            return this.onClose;
+        }
+
+        @Override
+        public void dispose() {
+            this.onClose.onComplete();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return this.onClose.isTerminated();
+        }
+    }
+}
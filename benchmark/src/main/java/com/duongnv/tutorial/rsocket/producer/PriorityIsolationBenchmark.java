@@ -0,0 +1,79 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of an interactive {@code greet} while the same connection carries many bulk {@code greet-stream}
+ * subscriptions with large greetings, with the frames of the connection sent by route priority or in the order they
+ * were produced. Resumption is off and fragments interleave in both, so only the priority classes differ.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PriorityIsolationBenchmark {
+
+    @Param({"true", "false"})
+    boolean priorities;
+
+    /**
+     * Bulk streams open at any time, each sending a greeting a second. Their names differ, so that no two of them
+     * share a multicast.
+     */
+    @Param({"256"})
+    int bulkStreams;
+
+    /**
+     * Characters in the name of each bulk stream, and so roughly the bytes of each of its greetings.
+     */
+    @Param({"65536"})
+    int nameLength;
+
+    ProducerFixture producer;
+    RSocketRequester requester;
+    GreetingRequest small;
+    Disposable bulk;
+
+    @Setup
+    public void setUp() {
+        this.producer = new ProducerFixture(LoopbackTransport.TCP,
+                "producer.rsocket.resume.enabled=false",
+                "producer.rsocket.fragmentation.mtu=16KB",
+                "producer.rsocket.fragmentation.interleave=true",
+                "producer.rsocket.response-cache.enabled=false",
+                "producer.rsocket.priorities.enabled=" + this.priorities);
+        this.requester = this.producer.connect();
+        this.small = new GreetingRequest("small");
+
+        String padding = "n".repeat(this.nameLength);
+        this.bulk = Flux.range(0, this.bulkStreams)
+                .flatMap(i -> this.requester
+                        .route("greet-stream")
+                        .data(new GreetingRequest(i + padding))
+                        .retrieveFlux(GreetingResponse.class), this.bulkStreams)
+                .subscribe(response -> { }, ex -> { });
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.bulk.dispose();
+        this.producer.close();
+    }
+
+    @Benchmark
+    public GreetingResponse greetBehindBulk() {
+        return this.requester
+                .route("greet")
+                .data(this.small)
+                .retrieveMono(GreetingResponse.class)
+                .block();
+    }
+}
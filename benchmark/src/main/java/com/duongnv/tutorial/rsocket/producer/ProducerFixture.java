@@ -0,0 +1,114 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import com.duongnv.tutorial.rsocket.shared.FragmentingConnection;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.transport.ClientTransport;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.security.rsocket.metadata.SimpleAuthenticationEncoder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.SocketUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Boots the real {@link ProducerApplication} on a free loopback port and hands out requesters configured the
+ * way {@code ConsumerApplication} configures its own. Leases are off unless a benchmark turns them on, since a
+ * requester that runs out of its lease fails the benchmark instead of waiting.
+ */
+public class ProducerFixture implements AutoCloseable {
+
+    private final LoopbackTransport transport;
+    private final int port;
+    private final ConfigurableApplicationContext context;
+    private final RSocketStrategies strategies;
+    private final List<RSocketRequester> requesters = new ArrayList<>();
+
+    public ProducerFixture(LoopbackTransport transport, String... properties) {
+        this.transport = transport;
+        this.port = SocketUtils.findAvailableTcpPort();
+
+        List<String> all = new ArrayList<>(List.of(
+                "spring.rsocket.server.port=" + this.port,
+                "spring.rsocket.server.transport=" + transport.springName(),
+                "spring.main.lazy-initialization=true",
+                "spring.main.web-application-type=none",
+                "spring.main.banner-mode=off",
+                "producer.rsocket.lease.enabled=false"));
+        all.addAll(Arrays.asList(properties));
+
+        this.context = new SpringApplicationBuilder(ProducerApplication.class)
+                .properties(all.toArray(new String[0]))
+                .run();
+        this.strategies = this.context.getBean(RSocketStrategies.class)
+                .mutate()
+                .encoder(new SimpleAuthenticationEncoder())
+                .build();
+    }
+
+    public RSocketRequester connect() {
+        return connect(MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    public RSocketRequester connect(MimeType dataMimeType) {
+        boolean leased = this.context.getBean(ProducerRSocketProperties.class).getLease().isEnabled();
+        RSocketRequester requester = RSocketRequester
+                .builder()
+                .rsocketFactory(factory -> {
+                    if (leased) {
+                        factory.lease();
+                    }
+                })
+                .rsocketStrategies(this.strategies)
+                .dataMimeType(dataMimeType)
+                .connect(fragmenting(this.transport.client(this.port)))
+                .flatMap(ProducerFixture::available)
+                .block();
+        this.requesters.add(requester);
+        return requester;
+    }
+
+    public ConfigurableApplicationContext context() {
+        return this.context;
+    }
+
+    /**
+     * Waits for the requester to become usable, which with leases means until the first lease has arrived.
+     */
+    private static Mono<RSocketRequester> available(RSocketRequester requester) {
+        return Mono.fromSupplier(() -> requester.rsocket().availability())
+                .filter(availability -> availability > 0)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(10)))
+                .timeout(Duration.ofSeconds(5))
+                .thenReturn(requester);
+    }
+
+    /**
+     * Fragments the client side of the connection with the producer's own settings.
+     */
+    private ClientTransport fragmenting(ClientTransport transport) {
+        ProducerRSocketProperties properties = this.context.getBean(ProducerRSocketProperties.class);
+        ProducerRSocketProperties.Fragmentation fragmentation = properties.getFragmentation();
+        int mtu = (int) fragmentation.getMtu().toBytes();
+        int maxReassemblySize = (int) fragmentation.getMaxReassemblySize().toBytes();
+        boolean interleave = fragmentation.isInterleave() && !properties.getResume().isEnabled();
+        return ignoredMtu -> transport
+                .connect(0)
+                .map(connection -> new FragmentingConnection(
+                        connection, ByteBufAllocator.DEFAULT, mtu, maxReassemblySize, interleave));
+    }
+
+    @Override
+    public void close() {
+        this.requesters.forEach(requester -> requester.rsocket().dispose());
+        this.context.close();
+    }
+}
@@ -0,0 +1,105 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.ConnectionSetupPayload;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.frame.SetupFrameFlyweight;
+import io.rsocket.metadata.CompositeMetadataFlyweight;
+import io.rsocket.metadata.TaggingMetadataFlyweight;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.EmptyPayload;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code greet} route served by the generic {@code RSocketMessageHandler} dispatch and by the precompiled
+ * route table, with {@code precompiled} off and on.
+ * <p>
+ * {@code greet} is a round trip over TCP to a real producer. {@code dispatch} hands a request straight to the
+ * responder the message handler creates for a connection, leaving out transport, security and the other responder
+ * plugins, so what remains is route matching, argument resolution, invocation and encoding.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RouteDispatchBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Producer {
+
+        @Param({"false", "true"})
+        boolean precompiled;
+
+        ProducerFixture producer;
+        RSocketRequester requester;
+        GreetingRequest request;
+        RSocket responder;
+        ByteBuf metadata;
+        ByteBuf data;
+
+        @Setup
+        public void setUp() {
+            this.producer = new ProducerFixture(LoopbackTransport.TCP,
+                    "producer.rsocket.dispatch.precompiled=" + this.precompiled);
+            this.requester = this.producer.connect();
+            this.request = new GreetingRequest("dispatch");
+
+            ByteBuf setupFrame = SetupFrameFlyweight.encode(ByteBufAllocator.DEFAULT, false, 1000, 10_000,
+                    WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString(),
+                    WellKnownMimeType.APPLICATION_JSON.getString(), EmptyPayload.INSTANCE);
+            this.responder = this.producer.context().getBean(RSocketMessageHandler.class).responder()
+                    .accept(ConnectionSetupPayload.create(setupFrame), new AbstractRSocket() {})
+                    .block();
+            setupFrame.release();
+
+            CompositeByteBuf metadata = ByteBufAllocator.DEFAULT.compositeBuffer();
+            CompositeMetadataFlyweight.encodeAndAddMetadata(metadata, ByteBufAllocator.DEFAULT,
+                    WellKnownMimeType.MESSAGE_RSOCKET_ROUTING,
+                    TaggingMetadataFlyweight.createRoutingMetadata(ByteBufAllocator.DEFAULT, List.of("greet"))
+                            .getContent());
+            this.metadata = Unpooled.copiedBuffer(metadata);
+            metadata.release();
+            this.data = Unpooled.copiedBuffer("{\"name\":\"dispatch\"}", StandardCharsets.UTF_8);
+        }
+
+        @TearDown
+        public void tearDown() {
+            this.metadata.release();
+            this.data.release();
+            this.producer.close();
+        }
+    }
+
+    @Benchmark
+    public GreetingResponse greet(Producer p) {
+        return p.requester
+                .route("greet")
+                .data(p.request)
+                .retrieveMono(GreetingResponse.class)
+                .block();
+    }
+
+    @Benchmark
+    public int dispatch(Producer p) {
+        Payload response = p.responder
+                .requestResponse(ByteBufPayload.create(p.data.retainedDuplicate(), p.metadata.retainedDuplicate()))
+                .block();
+        int length = response.data().readableBytes();
+        response.release();
+        return length;
+    }
+}
@@ -0,0 +1,167 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.rsocket.metadata.WellKnownMimeType;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.security.rsocket.metadata.SimpleAuthenticationEncoder;
+import org.springframework.security.rsocket.metadata.UsernamePasswordMetadata;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.SocketUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a producer process until its RSocket port accepts connections ({@code listening}) and until
+ * it has answered its first {@code greet} request ({@code firstResponse}), for the executable jar on the JVM and
+ * for the GraalVM native executable.
+ * <p>
+ * Each invocation starts a fresh process and stops it afterwards. Build the jar with {@code mvn package} and the
+ * native executable with {@code mvn -Pnative package} in {@code producer} first, or point
+ * {@code -Dproducer.jar} and {@code -Dproducer.native} at them. {@code image} only covers the JVM unless
+ * {@code -p image=jvm,native} is given, since the native executable needs GraalVM to build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final MimeType AUTHENTICATION =
+            MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_AUTHENTICATION.getString());
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    @Param({"jvm"})
+    String image;
+
+    RSocketStrategies strategies;
+    UsernamePasswordMetadata user;
+    List<String> command;
+    int port;
+    Process process;
+
+    @Setup
+    public void setUp() {
+        this.strategies = RSocketStrategies.builder()
+                .encoder(new SimpleAuthenticationEncoder(), new Jackson2JsonEncoder())
+                .decoder(new Jackson2JsonDecoder())
+                .build();
+        this.user = new UsernamePasswordMetadata("user", "pw");
+        this.command = new ArrayList<>();
+        if ("native".equals(this.image)) {
+            this.command.add(executable("producer.native", "../producer/target/producer"));
+        } else {
+            this.command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            this.command.add("-jar");
+            this.command.add(executable("producer.jar", "../producer/target/producer-0.0.1-SNAPSHOT.jar"));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void choosePort() {
+        this.port = SocketUtils.findAvailableTcpPort();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() throws InterruptedException {
+        if (this.process != null) {
+            this.process.destroy();
+            if (!this.process.waitFor(10, TimeUnit.SECONDS)) {
+                this.process.destroyForcibly().waitFor();
+            }
+            this.process = null;
+        }
+    }
+
+    @Benchmark
+    public void listening() throws IOException, InterruptedException {
+        launch();
+        awaitListening(System.nanoTime() + TIMEOUT.toNanos());
+    }
+
+    /**
+     * Connections are only attempted once the port accepts them, before which each failed attempt would be logged.
+     */
+    @Benchmark
+    public GreetingResponse firstResponse() throws IOException, InterruptedException {
+        launch();
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        awaitListening(deadline);
+        while (true) {
+            RSocketRequester requester = null;
+            try {
+                requester = RSocketRequester.builder()
+                        .rsocketStrategies(this.strategies)
+                        .dataMimeType(MimeTypeUtils.APPLICATION_JSON)
+                        .connectTcp("localhost", this.port)
+                        .block(TIMEOUT);
+                return requester.route("greet")
+                        .metadata(this.user, AUTHENTICATION)
+                        .data(new GreetingRequest("startup"))
+                        .retrieveMono(GreetingResponse.class)
+                        .block(TIMEOUT);
+            } catch (RuntimeException notYet) {
+                awaitRetry(deadline);
+            } finally {
+                if (requester != null) {
+                    requester.rsocket().dispose();
+                }
+            }
+        }
+    }
+
+    private void awaitListening(long deadline) throws InterruptedException {
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", this.port), 100);
+                return;
+            } catch (IOException notYet) {
+                awaitRetry(deadline);
+            }
+        }
+    }
+
+    /**
+     * Leases are off as in {@link ProducerFixture}, so the first request does not wait for the first lease.
+     */
+    private void launch() throws IOException {
+        List<String> command = new ArrayList<>(this.command);
+        command.add("--spring.rsocket.server.port=" + this.port);
+        command.add("--producer.rsocket.lease.enabled=false");
+        command.add("--spring.main.banner-mode=off");
+        this.process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    private void awaitRetry(long deadline) throws InterruptedException {
+        if (!this.process.isAlive()) {
+            throw new IllegalStateException("Producer exited with " + this.process.exitValue() + ": " + this.command);
+        }
+        if (System.nanoTime() > deadline) {
+            throw new IllegalStateException("Producer did not answer within " + TIMEOUT + ": " + this.command);
+        }
+        Thread.sleep(5);
+    }
+
+    private static String executable(String property, String fallback) {
+        File file = new File(System.getProperty(property, fallback));
+        if (!file.isFile()) {
+            throw new IllegalStateException(file + " does not exist; build it or set -D" + property);
+        }
+        return file.getAbsolutePath();
+    }
+}
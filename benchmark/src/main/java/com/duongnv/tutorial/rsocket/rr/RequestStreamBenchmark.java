@@ -0,0 +1,86 @@
+package com.duongnv.tutorial.rsocket.rr;
+
+import com.duongnv.tutorial.rsocket.benchmark.LoopbackTransport;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.util.DefaultPayload;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Producer#acceptor()} request-stream: time to the first notification of a fresh stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RequestStreamBenchmark {
+
+    @Param({"tcp", "websocket"})
+    String transport;
+
+    @Param({"16", "1024", "16384"})
+    int nameLength;
+
+    @Param({"1", "4"})
+    int connections;
+
+    CloseableChannel server;
+    List<RSocket> clients;
+    String name;
+    final AtomicInteger nextClient = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        LoopbackTransport loopback = LoopbackTransport.of(this.transport);
+        this.server = RSocketFactory
+                .receive()
+                .acceptor(new Producer().acceptor())
+                .transport(loopback.server(0))
+                .start()
+                .block();
+
+        this.clients = new ArrayList<>();
+        for (int i = 0; i < this.connections; i++) {
+            this.clients.add(RSocketFactory
+                    .connect()
+                    .transport(loopback.client(this.server.address().getPort()))
+                    .start()
+                    .block());
+        }
+        this.name = "n".repeat(this.nameLength);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.clients.forEach(RSocket::dispose);
+        this.server.dispose();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        RSocket rSocket;
+
+        @Setup
+        public void setUp(RequestStreamBenchmark benchmark) {
+            int index = benchmark.nextClient.getAndIncrement() % benchmark.clients.size();
+            this.rSocket = benchmark.clients.get(index);
+        }
+    }
+
+    @Benchmark
+    public String requestStream(Client c) {
+        return c.rSocket
+                .requestStream(DefaultPayload.create(this.name))
+                .map(Payload::getDataUtf8)
+                .blockFirst();
+    }
+}
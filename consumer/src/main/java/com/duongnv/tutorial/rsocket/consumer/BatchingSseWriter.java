@@ -0,0 +1,189 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Subscription;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a stream as server-sent events with one flush per batch of events rather than one per event.
+ * <p>
+ * A batch is flushed once it holds {@code maxBatch} events or its first event is {@code maxDelay} old, whichever
+ * comes first. At most one batch is buffered: while the connection has not taken the last one, nothing more is
+ * requested from the stream, so a slow browser slows its stream down instead of piling up events here. Unlike
+ * {@code bufferTimeout}, a batch that falls due with nowhere to go simply waits for the connection.
+ */
+class BatchingSseWriter {
+
+    private static final byte[] DATA = "data:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END_OF_EVENT = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+    private final int maxBatch;
+    private final Duration maxDelay;
+    private final Scheduler timer;
+
+    BatchingSseWriter(ObjectMapper objectMapper, int maxBatch, Duration maxDelay) {
+        this(objectMapper, maxBatch, maxDelay, Schedulers.parallel());
+    }
+
+    BatchingSseWriter(ObjectMapper objectMapper, int maxBatch, Duration maxDelay, Scheduler timer) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be at least 1 but was " + maxBatch);
+        }
+        this.objectMapper = objectMapper;
+        this.maxBatch = maxBatch;
+        this.maxDelay = maxDelay;
+        this.timer = timer;
+    }
+
+    <T> Mono<Void> write(ServerHttpResponse response, Flux<T> events) {
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        DataBufferFactory buffers = response.bufferFactory();
+        return response.writeAndFlushWith(batches(events).map(batch -> Mono.just(encode(buffers, batch))));
+    }
+
+    <T> Flux<List<T>> batches(Flux<T> events) {
+        return Flux.create(sink -> events.subscribe(new Batcher<>(sink)));
+    }
+
+    private DataBuffer encode(DataBufferFactory buffers, List<?> batch) {
+        DataBuffer buffer = buffers.allocateBuffer();
+        try {
+            for (Object event : batch) {
+                buffer.write(DATA);
+                buffer.write(this.objectMapper.writeValueAsBytes(event));
+                buffer.write(END_OF_EVENT);
+            }
+            return buffer;
+        } catch (JsonProcessingException ex) {
+            DataBufferUtils.release(buffer);
+            throw new EncodingException("JSON encoding error: " + ex.getOriginalMessage(), ex);
+        }
+    }
+
+    private final class Batcher<T> extends BaseSubscriber<T> {
+        private final FluxSink<List<T>> sink;
+        private final AtomicInteger wip = new AtomicInteger();
+        private List<T> batch = new ArrayList<>();
+        private Disposable deadline;
+        private volatile boolean due;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+
+        Batcher(FluxSink<List<T>> sink) {
+            this.sink = sink;
+            sink.onRequest(n -> drain());
+            sink.onDispose(() -> {
+                this.cancelled = true;
+                dispose();
+                drain();
+            });
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(maxBatch);
+        }
+
+        @Override
+        protected void hookOnNext(T event) {
+            synchronized (this) {
+                this.batch.add(event);
+                if (this.batch.size() == 1 && maxBatch > 1) {
+                    this.deadline = timer.schedule(this::fallDue, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+            drain();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            this.error = throwable;
+            this.done = true;
+            drain();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            this.done = true;
+            drain();
+        }
+
+        private void fallDue() {
+            this.due = true;
+            drain();
+        }
+
+        private void drain() {
+            if (this.wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (this.cancelled) {
+                    cancelDeadline();
+                } else {
+                    List<T> ready = takeIfReady();
+                    if (ready != null) {
+                        this.sink.next(ready);
+                        if (!this.done) {
+                            request(ready.size());
+                        }
+                    }
+                    if (this.done && isEmpty()) {
+                        if (this.error != null) {
+                            this.sink.error(this.error);
+                        } else {
+                            this.sink.complete();
+                        }
+                    }
+                }
+                missed = this.wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private synchronized List<T> takeIfReady() {
+            boolean ready = this.batch.size() >= maxBatch || this.due || (this.done && !this.batch.isEmpty());
+            if (!ready || this.batch.isEmpty() || this.sink.requestedFromDownstream() == 0) {
+                return null;
+            }
+            List<T> taken = this.batch;
+            this.batch = new ArrayList<>();
+            this.due = false;
+            cancelDeadline();
+            return taken;
+        }
+
+        private synchronized boolean isEmpty() {
+            return this.batch.isEmpty();
+        }
+
+        private synchronized void cancelDeadline() {
+            if (this.deadline != null) {
+                this.deadline.dispose();
+                this.deadline = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stops calls to a route that keeps failing, without locks.
+ * <p>
+ * While closed, calls and failures are counted per {@code window}; once a window holds {@code minimumCalls} calls
+ * and at least {@code failureRateThreshold} percent of them failed, the circuit opens and calls are refused.
+ * After {@code openDuration} the next call is let through as a probe, with the circuit half-open and refusing the
+ * others until the probe ends: a probe that succeeds closes the circuit, one that fails opens it again, and one
+ * that is cancelled lets the next call probe instead.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final long windowNanos;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openNanos;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    /**
+     * Calls in the upper and failures in the lower 32 bits.
+     */
+    private final AtomicLong counts = new AtomicLong();
+    private final AtomicLong windowStart = new AtomicLong();
+    private volatile long openedAt;
+
+    CircuitBreaker(long windowNanos, int minimumCalls, int failureRateThreshold, long openNanos) {
+        this.windowNanos = windowNanos;
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openNanos;
+    }
+
+    State state() {
+        return this.state.get();
+    }
+
+    /**
+     * Lets a call through: {@link State#CLOSED} for an ordinary call, {@link State#HALF_OPEN} for the probe, or
+     * {@code null} if the call is refused.
+     */
+    State acquire(long now) {
+        State current = this.state.get();
+        if (current == State.CLOSED) {
+            return State.CLOSED;
+        }
+        if (current == State.OPEN && now - this.openedAt >= this.openNanos
+                && this.state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            return State.HALF_OPEN;
+        }
+        return null;
+    }
+
+    void succeeded(State permit, long now) {
+        if (permit == State.HALF_OPEN) {
+            this.counts.set(0);
+            this.windowStart.set(now);
+            this.state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+        } else {
+            count(0, now);
+        }
+    }
+
+    void failed(State permit, long now) {
+        if (permit == State.HALF_OPEN) {
+            this.openedAt = now;
+            this.state.compareAndSet(State.HALF_OPEN, State.OPEN);
+            return;
+        }
+        long counted = count(1, now);
+        long calls = counted >>> 32;
+        long failures = counted & 0xFFFFFFFFL;
+        if (calls >= this.minimumCalls && failures * 100 >= calls * this.failureRateThreshold
+                && this.state.get() == State.CLOSED) {
+            this.openedAt = now;
+            this.state.compareAndSet(State.CLOSED, State.OPEN);
+        }
+    }
+
+    void cancelled(State permit, long now) {
+        if (permit == State.HALF_OPEN) {
+            this.openedAt = now - this.openNanos;
+            this.state.compareAndSet(State.HALF_OPEN, State.OPEN);
+        }
+    }
+
+    private long count(long failure, long now) {
+        long start = this.windowStart.get();
+        if (now - start >= this.windowNanos && this.windowStart.compareAndSet(start, now)) {
+            this.counts.set(0);
+        }
+        return this.counts.addAndGet((1L << 32) | failure);
+    }
+}
@@ -1,31 +1,60 @@
 package com.duongnv.tutorial.rsocket.consumer;
 
+import com.duongnv.tutorial.rsocket.shared.FragmentingConnection;
+import com.duongnv.tutorial.rsocket.shared.FrameMetrics;
+import com.duongnv.tutorial.rsocket.shared.OffHeapResumableFramesStore;
+import com.duongnv.tutorial.rsocket.shared.ProtobufCodecs;
+import com.duongnv.tutorial.rsocket.shared.ResumeMetrics;
+import com.duongnv.tutorial.rsocket.shared.RouteMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.DuplexConnection;
 import io.rsocket.RSocket;
 import io.rsocket.RSocketFactory;
-import io.rsocket.frame.decoder.PayloadDecoder;
 import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.transport.ClientTransport;
 import io.rsocket.transport.netty.client.TcpClientTransport;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.rsocket.metadata.SimpleAuthenticationEncoder;
 import org.springframework.security.rsocket.metadata.UsernamePasswordMetadata;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-@SpringBootApplication
+import java.util.List;
+
+@Slf4j
+@SpringBootApplication(proxyBeanMethods = false)
+@EnableConfigurationProperties(ConsumerRSocketProperties.class)
 public class ConsumerApplication {
 
     public static void main(String[] args) {
@@ -33,41 +62,213 @@ public class ConsumerApplication {
     }
 
     @Bean
-    RSocket rSocket() {
-        return RSocketFactory
-                .connect()
-                .dataMimeType(MimeTypeUtils.APPLICATION_JSON_VALUE)
-                .frameDecoder(PayloadDecoder.ZERO_COPY)
-                .transport(TcpClientTransport.create(7000))
-                .start()
-                .block();
+    ResumeMetrics resumeMetrics(MeterRegistry meterRegistry) {
+        return new ResumeMetrics(meterRegistry);
     }
 
     @Bean
-    RSocketStrategiesCustomizer rSocketStrategiesCustomizer() {
-        return strategies -> strategies.encoder(new SimpleAuthenticationEncoder());
+    FrameMetrics frameMetrics(MeterRegistry meterRegistry) {
+        return new FrameMetrics(meterRegistry);
+    }
+
+    @Bean
+    RouteMetrics routeMetrics(ConsumerRSocketProperties properties, MeterRegistry meterRegistry) {
+        ConsumerRSocketProperties.Metrics metrics = properties.getMetrics();
+        return new RouteMetrics(meterRegistry, metrics.getMaxRoutes(), metrics.isHistograms());
     }
 
     @Bean
-    RSocketRequester requester(RSocketStrategies rSocketStrategies) {
-        return RSocketRequester
+    RSocketStrategiesCustomizer rSocketStrategiesCustomizer() {
+        ProtobufCodecs protobuf = new ProtobufCodecs(GreetingRequest.class, GreetingResponse.class,
+                GreetingBatchRequest.class, GreetingBatchResponse.class, TelemetryEvent.class);
+        return strategies -> strategies
+                .encoder(new SimpleAuthenticationEncoder())
+                .encoder(protobuf.encoder())
+                .decoder(protobuf.decoder());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    LoadBalancedRSocket producers(RSocketStrategies rSocketStrategies, ConsumerRSocketProperties properties,
+                                  ResumeMetrics resumeMetrics, FrameMetrics frameMetrics, RouteMetrics routeMetrics) {
+        if (properties.getFragmentation().isInterleave() && properties.getResume().isEnabled()) {
+            log.warn("consumer.rsocket.fragmentation.interleave has no effect while consumer.rsocket.resume.enabled "
+                    + "is true: fragments are sent back to back so that resume positions stay valid");
+        }
+        RSocketRequester.Builder connections = authenticated(RSocketRequester
                 .builder()
+                .rsocketFactory(factory -> metered(
+                        leased(resumable(factory, properties.getResume(), resumeMetrics), properties.getLease()),
+                        properties.getMetrics(), routeMetrics))
                 .rsocketStrategies(rSocketStrategies)
-                .connect(TcpClientTransport.create(7000))
-                .block();
+                .dataMimeType(MimeTypeUtils.parseMimeType(properties.getDataMimeType())), properties.getCredentials());
+        return new LoadBalancedRSocket(properties.getPool(), address -> connections
+                .connect(fragmenting(
+                        TcpClientTransport.create(address.getHostString(), address.getPort()), properties, frameMetrics))
+                .map(RSocketRequester::rsocket));
+    }
+
+    @Bean
+    RSocketRequester requester(LoadBalancedRSocket producers, RSocketStrategies rSocketStrategies,
+                               ConsumerRSocketProperties properties, MeterRegistry meterRegistry) {
+        return RSocketRequester.wrap(
+                resilient(producers, properties.getResilience(), meterRegistry),
+                MimeTypeUtils.parseMimeType(properties.getDataMimeType()),
+                MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString()),
+                rSocketStrategies);
+    }
+
+    @Bean
+    BatchingSseWriter sseWriter(ObjectMapper objectMapper, ConsumerRSocketProperties properties) {
+        ConsumerRSocketProperties.Sse sse = properties.getSse();
+        return new BatchingSseWriter(objectMapper, sse.getMaxBatch(), sse.getMaxDelay());
+    }
+
+    @Bean
+    GreetingBatcher greetingBatcher(RSocketRequester requester, ConsumerRSocketProperties properties) {
+        ConsumerRSocketProperties.Batch batch = properties.getBatch();
+        return new GreetingBatcher(requests -> requester
+                .route("greet-batch")
+                .data(new GreetingBatchRequest(requests))
+                .retrieveMono(GreetingBatchResponse.class)
+                .map(GreetingBatchResponse::getResponses), batch.getMaxSize(), batch.getWindow());
+    }
+
+    /**
+     * {@code /telemetry} is for services, not browsers: every request authenticates with basic credentials of its
+     * own and the login session is ignored, so a page cannot post telemetry on behalf of a logged-in user and no
+     * CSRF token is needed.
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    SecurityWebFilterChain telemetrySecurity(ServerHttpSecurity http) {
+        return http
+                .securityMatcher(ServerWebExchangeMatchers.pathMatchers("/telemetry"))
+                .authorizeExchange(exchanges -> exchanges.anyExchange().authenticated())
+                .httpBasic(Customizer.withDefaults())
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .build();
+    }
+
+    /**
+     * Boot's default web security for everything else.
+     */
+    @Bean
+    SecurityWebFilterChain webSecurity(ServerHttpSecurity http) {
+        return http
+                .authorizeExchange(exchanges -> exchanges.anyExchange().authenticated())
+                .httpBasic(Customizer.withDefaults())
+                .formLogin(Customizer.withDefaults())
+                .build();
+    }
+
+    /**
+     * Lets a connection that drops come back under the same session: the client reconnects in the background and
+     * the open streams carry on from the last frame each side acknowledged.
+     */
+    private static RSocketFactory.ClientRSocketFactory resumable(RSocketFactory.ClientRSocketFactory factory,
+                                                                 ConsumerRSocketProperties.Resume resume,
+                                                                 ResumeMetrics metrics) {
+        if (!resume.isEnabled()) {
+            return factory;
+        }
+        return factory
+                .resume()
+                .resumeSessionDuration(resume.getSessionDuration())
+                .resumeStreamTimeout(resume.getStreamTimeout())
+                .resumeCleanupOnKeepAlive()
+                .resumeStore(token -> new OffHeapResumableFramesStore(
+                        ByteBufAllocator.DEFAULT,
+                        resume.getStoreMaxSize().toBytes(),
+                        resume.getStoreMaxAge(),
+                        metrics))
+                .addConnectionPlugin(metrics.rejections());
+    }
+
+    /**
+     * Honours the producer's leases. A connection without a lease reports itself unavailable, which makes the pool
+     * send requests to other producers until a new lease arrives.
+     */
+    private static RSocketFactory.ClientRSocketFactory leased(RSocketFactory.ClientRSocketFactory factory,
+                                                              ConsumerRSocketProperties.Lease lease) {
+        return lease.isEnabled() ? factory.lease() : factory;
+    }
+
+    /**
+     * Meters the requests sent on each connection by route.
+     */
+    private static RSocketFactory.ClientRSocketFactory metered(RSocketFactory.ClientRSocketFactory factory,
+                                                               ConsumerRSocketProperties.Metrics metrics,
+                                                               RouteMetrics routes) {
+        return metrics.isEnabled() ? factory.addRequesterPlugin(routes.interceptor()) : factory;
+    }
+
+    /**
+     * Puts adaptive timeouts, hedging and circuit breakers by route over the whole pool, so a hedged request can
+     * go to another connection than the first copy.
+     */
+    private static RSocket resilient(RSocket producers, ConsumerRSocketProperties.Resilience resilience,
+                                     MeterRegistry registry) {
+        return resilience.isEnabled() ? new ResilientRSocket(producers, resilience, registry) : producers;
+    }
+
+    /**
+     * Sends the credentials in SETUP, which authenticates the connection for its lifetime, resumptions included.
+     * The producer then checks the password once per connection rather than once per request.
+     */
+    private static RSocketRequester.Builder authenticated(RSocketRequester.Builder builder,
+                                                          ConsumerRSocketProperties.Credentials credentials) {
+        if (!credentials.isSetup()) {
+            return builder;
+        }
+        return builder.setupMetadata(
+                new UsernamePasswordMetadata(credentials.getUsername(), credentials.getPassword()),
+                MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_AUTHENTICATION.getString()));
+    }
 
+    /**
+     * Puts {@link FragmentingConnection} directly on top of each new transport connection, underneath resumption,
+     * which is where the transport would otherwise do its own fragmentation. Frames are metered on top of it,
+     * whole rather than in fragments.
+     */
+    private static ClientTransport fragmenting(ClientTransport transport, ConsumerRSocketProperties properties,
+                                               FrameMetrics frames) {
+        ConsumerRSocketProperties.Fragmentation fragmentation = properties.getFragmentation();
+        int mtu = (int) fragmentation.getMtu().toBytes();
+        int maxReassemblySize = (int) fragmentation.getMaxReassemblySize().toBytes();
+        boolean interleave = fragmentation.isInterleave() && !properties.getResume().isEnabled();
+        boolean metered = properties.getMetrics().isEnabled();
+        return ignoredMtu -> transport
+                .connect(0)
+                .map(connection -> {
+                    DuplexConnection fragmenting = new FragmentingConnection(
+                            connection, ByteBufAllocator.DEFAULT, mtu, maxReassemblySize, interleave);
+                    return metered ? frames.instrument(fragmenting) : fragmenting;
+                });
     }
 }
 
 @RestController
 class GreetingRestController {
     private final RSocketRequester requester;
+    private final ConsumerRSocketProperties.Streams streams;
+    private final BatchingSseWriter sse;
+    private final GreetingBatcher batcher;
+    private final boolean batched;
     private final MimeType mimeType = MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_AUTHENTICATION.getString());
-    private final UsernamePasswordMetadata user = new UsernamePasswordMetadata("user", "pw");
-    private final UsernamePasswordMetadata admin = new UsernamePasswordMetadata("admin", "pw");
+    private final UsernamePasswordMetadata user;
+    private final boolean authenticatedAtSetup;
 
-    GreetingRestController(RSocketRequester requester) {
+    GreetingRestController(RSocketRequester requester, ConsumerRSocketProperties properties, BatchingSseWriter sse,
+                           GreetingBatcher batcher) {
         this.requester = requester;
+        this.streams = properties.getStreams();
+        this.sse = sse;
+        this.batcher = batcher;
+        this.batched = properties.getBatch().isEnabled();
+        ConsumerRSocketProperties.Credentials credentials = properties.getCredentials();
+        this.user = new UsernamePasswordMetadata(credentials.getUsername(), credentials.getPassword());
+        this.authenticatedAtSetup = credentials.isSetup();
     }
 
     @GetMapping("/error")
@@ -79,15 +280,17 @@ class GreetingRestController {
     }
 
     @GetMapping(value = "/greet/sse/{name}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    Publisher<GreetingResponse> greetStream(@PathVariable String name) {
-        return this.requester
+    Mono<Void> greetStream(@PathVariable String name, ServerHttpResponse response) {
+        return this.sse.write(response, stream("greet-stream", this.requester
                 .route("greet-stream")
-                .data(new GreetingRequest(name))
-                .retrieveFlux(GreetingResponse.class);
+                .data(new GreetingRequest(name))));
     }
 
     @GetMapping("/greet/{name}")
     Publisher<GreetingResponse> greet(@PathVariable String name) {
+        if (this.batched) {
+            return this.batcher.greet(new GreetingRequest(name));
+        }
         return this.requester
                 .route("greet")
                 .data(new GreetingRequest(name))
@@ -95,12 +298,60 @@ class GreetingRestController {
     }
 
     @GetMapping(value = "/greetings", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    Publisher<GreetingResponse> greetings() {
-        return this.requester
-                .route("greetings")
-                .metadata(this.user, this.mimeType)
-                .data(Mono.empty())
-                .retrieveFlux(GreetingResponse.class);
+    Mono<Void> greetings(ServerHttpResponse response) {
+        RSocketRequester.RequestSpec request = this.requester.route("greetings");
+        if (!this.authenticatedAtSetup) {
+            request = request.metadata(this.user, this.mimeType);
+        }
+        return this.sse.write(response, stream("greetings", request.data(Mono.empty())));
+    }
+
+    /**
+     * Retrieves a stream with the route's credit, so REQUEST_N goes out in batches of our choosing rather than
+     * Reactor's default prefetch.
+     */
+    private Flux<GreetingResponse> stream(String route, RSocketRequester.RetrieveSpec request) {
+        ConsumerRSocketProperties.Credit credit = this.streams.credit(route);
+        return request
+                .retrieveFlux(GreetingResponse.class)
+                .limitRate(credit.getPrefetch(), credit.replenish());
+    }
+}
+
+/**
+ * Forwards telemetry to the producer's {@code ingest} route as fire-and-forget requests, one per event. A POST
+ * carries one event, a JSON array of them, or a stream of them as {@code application/stream+json}; it is accepted
+ * once every event has been sent, without waiting for the producer to write them. The route needs an authenticated
+ * connection, or the credentials with each event.
+ */
+@RestController
+class TelemetryRestController {
+    private final RSocketRequester requester;
+    private final MimeType mimeType =
+            MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_AUTHENTICATION.getString());
+    private final UsernamePasswordMetadata user;
+    private final boolean authenticatedAtSetup;
+
+    TelemetryRestController(RSocketRequester requester, ConsumerRSocketProperties properties) {
+        this.requester = requester;
+        ConsumerRSocketProperties.Credentials credentials = properties.getCredentials();
+        this.user = new UsernamePasswordMetadata(credentials.getUsername(), credentials.getPassword());
+        this.authenticatedAtSetup = credentials.isSetup();
+    }
+
+    @PostMapping(value = "/telemetry", consumes = {MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_STREAM_JSON_VALUE})
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    Mono<Void> ingest(@RequestBody Flux<TelemetryEvent> events) {
+        return events
+                .flatMap(event -> {
+                    RSocketRequester.RequestSpec request = this.requester.route("ingest");
+                    if (!this.authenticatedAtSetup) {
+                        request = request.metadata(this.user, this.mimeType);
+                    }
+                    return request.data(event).send();
+                })
+                .then();
     }
 }
 
@@ -116,4 +367,28 @@ class GreetingRequest {
 @AllArgsConstructor
 class GreetingResponse {
     private String greeting;
-}
\ No newline at end of file
+}
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class GreetingBatchRequest {
+    private List<GreetingRequest> requests;
+}
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class GreetingBatchResponse {
+    private List<GreetingResponse> responses;
+}
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class TelemetryEvent {
+    private String source;
+    private String name;
+    private double value;
+    private long timestamp;
+}
@@ -0,0 +1,356 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import lombok.Data;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties("consumer.rsocket")
+class ConsumerRSocketProperties implements InitializingBean {
+
+    /**
+     * Data MIME type sent in SETUP: application/json, application/cbor or application/vnd.google.protobuf.
+     */
+    private String dataMimeType = MimeTypeUtils.APPLICATION_JSON_VALUE;
+
+    private final Pool pool = new Pool();
+
+    private final Resume resume = new Resume();
+
+    private final Fragmentation fragmentation = new Fragmentation();
+
+    private final Lease lease = new Lease();
+
+    private final Streams streams = new Streams();
+
+    private final Sse sse = new Sse();
+
+    private final Credentials credentials = new Credentials();
+
+    private final Metrics metrics = new Metrics();
+
+    private final Batch batch = new Batch();
+
+    private final Resilience resilience = new Resilience();
+
+    /**
+     * Completes the per-route entries from the defaults once they are bound, so a route only overrides what it sets.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        this.streams.getRoutes().values().forEach(credit -> credit.inherit(this.streams.getDefaults()));
+        this.resilience.getRoutes().values().forEach(policy -> policy.inherit(this.resilience.getDefaults()));
+    }
+
+    @Data
+    static class Pool {
+
+        /**
+         * Producer instances as host:port.
+         */
+        private List<String> targets = new ArrayList<>(List.of("localhost:7000"));
+
+        private int connectionsPerTarget = 2;
+
+        private Duration reconnectMinBackoff = Duration.ofMillis(100);
+
+        private Duration reconnectMaxBackoff = Duration.ofSeconds(10);
+
+        /**
+         * How long a request waits for a live connection before failing.
+         */
+        private Duration acquireTimeout = Duration.ofSeconds(5);
+    }
+
+    @Data
+    static class Resume {
+
+        private boolean enabled = true;
+
+        /**
+         * How long a dropped connection may take to resume before its session and open streams are given up.
+         */
+        private Duration sessionDuration = Duration.ofMinutes(2);
+
+        /**
+         * How long the replay of unacknowledged frames may take once a session resumes.
+         */
+        private Duration streamTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Upper bound on the unacknowledged frames kept per connection, in direct memory.
+         */
+        private DataSize storeMaxSize = DataSize.ofMegabytes(4);
+
+        /**
+         * Frames older than this are dropped even when the store has room.
+         */
+        private Duration storeMaxAge = Duration.ofSeconds(60);
+    }
+
+    @Data
+    static class Fragmentation {
+
+        /**
+         * Largest frame written to a connection; larger payloads go out in fragments of this size. 0 turns
+         * fragmentation off.
+         */
+        private DataSize mtu = DataSize.ofKilobytes(16);
+
+        /**
+         * Largest frame the peer may send in fragments. A connection whose fragments for one stream add up to more
+         * is closed with a CONNECTION_ERROR.
+         */
+        private DataSize maxReassemblySize = DataSize.ofMegabytes(16);
+
+        /**
+         * Send the fragments of a large frame in turn with the frames of other streams instead of back to back.
+         * Resume positions need frames to complete in the order they were sent, so this only takes effect with
+         * consumer.rsocket.resume.enabled=false; with resumption on, which is the default, it is ignored and a
+         * warning is logged at startup.
+         */
+        private boolean interleave = false;
+    }
+
+    @Data
+    static class Lease {
+
+        /**
+         * Honour the leases producers grant: a connection is only used while its lease has requests left. Has to
+         * match producer.rsocket.lease.enabled.
+         */
+        private boolean enabled = true;
+    }
+
+    @Data
+    static class Streams {
+
+        /**
+         * Credit for streams whose route has no entry in {@code routes}, and whatever an entry leaves unset.
+         */
+        private Credit defaults = Credit.standard();
+
+        /**
+         * Credit per route, e.g. consumer.rsocket.streams.routes.greet-stream.prefetch=128, which keeps the default
+         * low-watermark.
+         */
+        private Map<String, Credit> routes = new HashMap<>();
+
+        Credit credit(String route) {
+            return this.routes.getOrDefault(route, this.defaults);
+        }
+    }
+
+    /**
+     * How much a stream may run ahead of its subscriber. The first REQUEST_N asks for {@code prefetch} elements; once
+     * no more than {@code lowWatermark} of them are outstanding the next REQUEST_N tops the credit back up, so a
+     * stream costs one REQUEST_N per {@code prefetch - lowWatermark} elements.
+     */
+    @Data
+    static class Credit {
+
+        private Integer prefetch;
+
+        private Integer lowWatermark;
+
+        static Credit standard() {
+            Credit credit = new Credit();
+            credit.prefetch = 32;
+            credit.lowWatermark = 8;
+            return credit;
+        }
+
+        void inherit(Credit defaults) {
+            this.prefetch = this.prefetch != null ? this.prefetch : defaults.prefetch;
+            this.lowWatermark = this.lowWatermark != null ? this.lowWatermark : defaults.lowWatermark;
+        }
+
+        int replenish() {
+            return Math.max(1, this.prefetch - this.lowWatermark);
+        }
+    }
+
+    @Data
+    static class Sse {
+
+        /**
+         * Most events written to a browser in one flush.
+         */
+        private int maxBatch = 16;
+
+        /**
+         * Longest an event waits for others to share its flush.
+         */
+        private Duration maxDelay = Duration.ofMillis(50);
+    }
+
+    @Data
+    static class Credentials {
+
+        private String username = "user";
+
+        private String password = "pw";
+
+        /**
+         * Authenticate each connection once in its SETUP frame instead of sending the credentials with every
+         * request that needs them.
+         */
+        private boolean setup = true;
+    }
+
+    @Data
+    static class Metrics {
+
+        /**
+         * Meter frames by type and requests by route on the connections to producers.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Routes metered on their own; requests for any further route are metered together as "other".
+         */
+        private int maxRoutes = 64;
+
+        /**
+         * Publish latency histograms, for percentiles aggregated across consumers.
+         */
+        private boolean histograms = true;
+    }
+
+    @Data
+    static class Batch {
+
+        /**
+         * Send concurrent /greet calls to the producer together, as greet-batch requests.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Most greetings in one batch.
+         */
+        private int maxSize = 64;
+
+        /**
+         * Longest a greeting waits for others to share its batch.
+         */
+        private Duration window = Duration.ofMillis(2);
+    }
+
+    @Data
+    static class Resilience {
+
+        /**
+         * Time out, hedge and short-circuit request-response and request-stream calls to the producers by route.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Policy for routes without an entry in {@code routes}, and whatever an entry leaves unset.
+         */
+        private Policy defaults = Policy.standard();
+
+        /**
+         * Policy per route, e.g. consumer.rsocket.resilience.routes.greet.hedge=true, which keeps the default
+         * timeouts and circuit breaker.
+         */
+        private Map<String, Policy> routes = new HashMap<>();
+
+        Policy policy(String route) {
+            return this.routes.getOrDefault(route, this.defaults);
+        }
+    }
+
+    /**
+     * How calls to one route are protected. The timeout follows the latencies of the route's last {@code window}:
+     * {@code timeoutMultiplier} times their {@code timeoutPercentile}, within {@code minTimeout} and
+     * {@code maxTimeout}, or {@code maxTimeout} until the window holds {@code minimumCalls} latencies. The time to
+     * the first element counts as the latency of a stream.
+     */
+    @Data
+    static class Policy {
+
+        private Duration minTimeout;
+
+        private Duration maxTimeout;
+
+        private Double timeoutPercentile;
+
+        private Double timeoutMultiplier;
+
+        /**
+         * Send a request-response again, on another connection than the first copy if the pool has one, once it has
+         * gone unanswered for the {@code hedgePercentile} of the route's latencies, and take whichever answer comes
+         * first. Only for routes that are safe to call twice.
+         */
+        private Boolean hedge;
+
+        private Double hedgePercentile;
+
+        private Duration minHedgeDelay;
+
+        /**
+         * Refuse calls to the route while too many of them fail.
+         */
+        private Boolean circuitBreaker;
+
+        /**
+         * Share of the calls in a window, in percent, that have to fail for the circuit to open.
+         */
+        private Integer failureRateThreshold;
+
+        /**
+         * Calls, or latencies, a window needs before the circuit may open or the timeout and hedge delay adapt.
+         */
+        private Integer minimumCalls;
+
+        private Duration window;
+
+        /**
+         * How long an open circuit refuses calls before it lets one through as a probe.
+         */
+        private Duration openDuration;
+
+        static Policy standard() {
+            Policy policy = new Policy();
+            policy.minTimeout = Duration.ofMillis(100);
+            policy.maxTimeout = Duration.ofSeconds(5);
+            policy.timeoutPercentile = 0.99;
+            policy.timeoutMultiplier = 3.0;
+            policy.hedge = false;
+            policy.hedgePercentile = 0.95;
+            policy.minHedgeDelay = Duration.ofMillis(1);
+            policy.circuitBreaker = true;
+            policy.failureRateThreshold = 50;
+            policy.minimumCalls = 20;
+            policy.window = Duration.ofSeconds(10);
+            policy.openDuration = Duration.ofSeconds(5);
+            return policy;
+        }
+
+        void inherit(Policy defaults) {
+            this.minTimeout = this.minTimeout != null ? this.minTimeout : defaults.minTimeout;
+            this.maxTimeout = this.maxTimeout != null ? this.maxTimeout : defaults.maxTimeout;
+            this.timeoutPercentile =
+                    this.timeoutPercentile != null ? this.timeoutPercentile : defaults.timeoutPercentile;
+            this.timeoutMultiplier =
+                    this.timeoutMultiplier != null ? this.timeoutMultiplier : defaults.timeoutMultiplier;
+            this.hedge = this.hedge != null ? this.hedge : defaults.hedge;
+            this.hedgePercentile = this.hedgePercentile != null ? this.hedgePercentile : defaults.hedgePercentile;
+            this.minHedgeDelay = this.minHedgeDelay != null ? this.minHedgeDelay : defaults.minHedgeDelay;
+            this.circuitBreaker = this.circuitBreaker != null ? this.circuitBreaker : defaults.circuitBreaker;
+            this.failureRateThreshold =
+                    this.failureRateThreshold != null ? this.failureRateThreshold : defaults.failureRateThreshold;
+            this.minimumCalls = this.minimumCalls != null ? this.minimumCalls : defaults.minimumCalls;
+            this.window = this.window != null ? this.window : defaults.window;
+            this.openDuration = this.openDuration != null ? this.openDuration : defaults.openDuration;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Coalesces single greetings asked for at about the same time into one {@code greet-batch} request.
+ * <p>
+ * A batch goes out once it holds {@code maxSize} greetings or its first greeting is {@code window} old, whichever
+ * comes first, and each caller gets the response at its own position in the batch. A batch that fails fails all
+ * of its callers. Callers that cancel keep their place in the batch; their response is dropped.
+ */
+class GreetingBatcher {
+
+    private final Function<List<GreetingRequest>, Mono<List<GreetingResponse>>> send;
+    private final int maxSize;
+    private final Duration window;
+    private final Scheduler timer;
+    private List<Pending> batch = new ArrayList<>();
+    private Disposable deadline;
+
+    GreetingBatcher(Function<List<GreetingRequest>, Mono<List<GreetingResponse>>> send, int maxSize,
+                    Duration window) {
+        this(send, maxSize, window, Schedulers.parallel());
+    }
+
+    GreetingBatcher(Function<List<GreetingRequest>, Mono<List<GreetingResponse>>> send, int maxSize,
+                    Duration window, Scheduler timer) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1 but was " + maxSize);
+        }
+        this.send = send;
+        this.maxSize = maxSize;
+        this.window = window;
+        this.timer = timer;
+    }
+
+    Mono<GreetingResponse> greet(GreetingRequest request) {
+        return Mono.create(sink -> add(new Pending(request, sink)));
+    }
+
+    private void add(Pending pending) {
+        List<Pending> full = null;
+        synchronized (this) {
+            this.batch.add(pending);
+            if (this.batch.size() >= this.maxSize) {
+                full = take();
+            } else if (this.batch.size() == 1) {
+                this.deadline = this.timer.schedule(this::fallDue, this.window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    private void fallDue() {
+        List<Pending> due;
+        synchronized (this) {
+            due = this.batch.isEmpty() ? null : take();
+        }
+        if (due != null) {
+            send(due);
+        }
+    }
+
+    private List<Pending> take() {
+        List<Pending> taken = this.batch;
+        this.batch = new ArrayList<>(this.maxSize);
+        if (this.deadline != null) {
+            this.deadline.dispose();
+            this.deadline = null;
+        }
+        return taken;
+    }
+
+    private void send(List<Pending> batch) {
+        List<GreetingRequest> requests = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            requests.add(pending.request);
+        }
+        Mono.defer(() -> this.send.apply(requests)).subscribe(
+                responses -> answer(batch, responses),
+                error -> batch.forEach(pending -> pending.sink.error(error)),
+                () -> batch.forEach(pending -> pending.sink.success()));
+    }
+
+    private static void answer(List<Pending> batch, List<GreetingResponse> responses) {
+        if (responses.size() != batch.size()) {
+            IllegalStateException mismatch = new IllegalStateException(
+                    "Expected " + batch.size() + " greetings in the batch response but got " + responses.size());
+            batch.forEach(pending -> pending.sink.error(mismatch));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).sink.success(responses.get(i));
+        }
+    }
+
+    private static final class Pending {
+        final GreetingRequest request;
+        final MonoSink<GreetingResponse> sink;
+
+        Pending(GreetingRequest request, MonoSink<GreetingResponse> sink) {
+            this.request = request;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies recorded over the last {@code window}, for percentiles, without locks.
+ * <p>
+ * Latencies are counted in buckets of a quarter of a power of two of microseconds, so a percentile is at most a
+ * quarter above the true value. The window is two halves that take turns: recording into a half whose time is
+ * up empties it first, and percentiles read both halves, so they cover between half a window and a whole one.
+ * A latency recorded while its half is being emptied may be lost.
+ */
+class LatencyWindow {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final long halfNanos;
+    private final AtomicLongArray[] halves = {new AtomicLongArray(BUCKETS), new AtomicLongArray(BUCKETS)};
+    private final AtomicLong[] epochs = {new AtomicLong(-1), new AtomicLong(-1)};
+
+    LatencyWindow(long windowNanos) {
+        if (windowNanos < 2) {
+            throw new IllegalArgumentException("Window must be positive but was " + windowNanos + "ns");
+        }
+        this.halfNanos = windowNanos / 2;
+    }
+
+    void record(long nanos, long now) {
+        long epoch = now / this.halfNanos;
+        int half = (int) (epoch & 1);
+        long current = this.epochs[half].get();
+        if (current != epoch && this.epochs[half].compareAndSet(current, epoch)) {
+            AtomicLongArray buckets = this.halves[half];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.lazySet(i, 0);
+            }
+        }
+        this.halves[half].incrementAndGet(bucket(Math.max(0, nanos) >>> 10));
+    }
+
+    /**
+     * Latencies recorded in the window.
+     */
+    long count(long now) {
+        long count = 0;
+        for (int half = 0; half < 2; half++) {
+            if (isLive(half, now)) {
+                AtomicLongArray buckets = this.halves[half];
+                for (int i = 0; i < BUCKETS; i++) {
+                    count += buckets.get(i);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The latency, in nanoseconds, that the given share of the latencies in the window did not exceed, or 0 if
+     * the window is empty.
+     */
+    long percentile(double share, long now) {
+        long count = count(now);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(share * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            for (int half = 0; half < 2; half++) {
+                if (isLive(half, now)) {
+                    seen += this.halves[half].get(i);
+                }
+            }
+            if (seen >= rank) {
+                return upperBound(i) << 10;
+            }
+        }
+        return upperBound(BUCKETS - 1) << 10;
+    }
+
+    private boolean isLive(int half, long now) {
+        return this.epochs[half].get() >= now / this.halfNanos - 1;
+    }
+
+    /**
+     * Values below 4 have a bucket each; above, each power of two is split into four.
+     */
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub + 1) << (exponent - 2);
+    }
+}
@@ -0,0 +1,274 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * One logical {@link RSocket} over a pool of connections to several producers.
+ * <p>
+ * Each request goes to the less loaded of two randomly picked live connections (power of two choices on
+ * outstanding requests and open streams). Connections are opened and re-opened in the background with
+ * exponential backoff; a request arriving while nothing is connected waits without blocking, up to the
+ * acquire timeout. The copies of a hedged request-response go out on different connections, see {@link #copies()}.
+ */
+@Slf4j
+class LoadBalancedRSocket extends AbstractRSocket {
+
+    private static final Duration ACQUIRE_POLL_INTERVAL = Duration.ofMillis(20);
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final Function<InetSocketAddress, Mono<RSocket>> connector;
+    private final ConsumerRSocketProperties.Pool pool;
+
+    LoadBalancedRSocket(ConsumerRSocketProperties.Pool pool, Function<InetSocketAddress, Mono<RSocket>> connector) {
+        this.pool = pool;
+        this.connector = connector;
+        for (String target : pool.getTargets()) {
+            for (int i = 0; i < pool.getConnectionsPerTarget(); i++) {
+                this.slots.add(new Slot(target, parse(target)));
+            }
+        }
+        if (this.slots.isEmpty()) {
+            throw new IllegalArgumentException("consumer.rsocket.pool needs at least one target and connection");
+        }
+        this.slots.forEach(Slot::connect);
+    }
+
+    @Override
+    public Mono<Void> fireAndForget(Payload payload) {
+        return acquire(payload).flatMap(choice -> choice.slot.track(choice.rSocket.fireAndForget(payload)));
+    }
+
+    @Override
+    public Mono<Payload> requestResponse(Payload payload) {
+        return acquire(payload).flatMap(choice -> choice.slot.track(choice.rSocket.requestResponse(payload)));
+    }
+
+    /**
+     * Sends copies of one request-response, each on a connection none of the copies before it went out on as long as
+     * one is available, so that a hedge does not queue behind the first copy on a slow connection.
+     */
+    Function<Payload, Mono<Payload>> copies() {
+        Set<Slot> used = ConcurrentHashMap.newKeySet();
+        return payload -> acquire(payload, used)
+                .flatMap(choice -> choice.slot.track(choice.rSocket.requestResponse(payload)));
+    }
+
+    @Override
+    public Flux<Payload> requestStream(Payload payload) {
+        return acquire(payload).flatMapMany(choice -> choice.slot.track(choice.rSocket.requestStream(payload)));
+    }
+
+    @Override
+    public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+        return acquire(null).flatMapMany(choice -> choice.slot.track(choice.rSocket.requestChannel(payloads)));
+    }
+
+    @Override
+    public Mono<Void> metadataPush(Payload payload) {
+        return acquire(payload).flatMap(choice -> choice.rSocket.metadataPush(payload));
+    }
+
+    @Override
+    public double availability() {
+        return this.slots.stream().mapToDouble(Slot::availability).max().orElse(0.0);
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        this.slots.forEach(Slot::dispose);
+    }
+
+    /**
+     * Picks a connection for one request, with the {@link RSocket} it had when picked. If that connection closes
+     * before the request is sent, the request fails on it with the error of the closed connection, which releases
+     * the payload. The request payload is also released if no connection turns up, since it then never reaches an
+     * {@link RSocket} that would release it.
+     */
+    private Mono<Choice> acquire(Payload payload) {
+        return acquire(payload, null);
+    }
+
+    /**
+     * Like {@link #acquire(Payload)}, but avoids the slots in {@code used} while another one is available, and adds
+     * the slot it picks.
+     */
+    private Mono<Choice> acquire(Payload payload, Set<Slot> used) {
+        AtomicBoolean handedOver = new AtomicBoolean();
+        return Mono
+                .fromSupplier(() -> select(used))
+                .repeatWhenEmpty(attempts -> attempts.delayElements(ACQUIRE_POLL_INTERVAL))
+                .timeout(this.pool.getAcquireTimeout())
+                .doOnNext(choice -> {
+                    handedOver.set(true);
+                    if (used != null) {
+                        used.add(choice.slot);
+                    }
+                })
+                .doOnError(ex -> release(payload))
+                .doOnCancel(() -> {
+                    if (!handedOver.get()) {
+                        release(payload);
+                    }
+                });
+    }
+
+    private Choice select(Set<Slot> used) {
+        if (isDisposed()) {
+            throw new IllegalStateException("RSocket pool is disposed");
+        }
+        Set<Slot> avoided = used != null ? used : Collections.emptySet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = this.slots.size();
+        Choice first = choice(this.slots.get(random.nextInt(size)), avoided);
+        Choice second = choice(this.slots.get(random.nextInt(size)), avoided);
+        if (first != null && second != null) {
+            return first.slot.outstanding.get() <= second.slot.outstanding.get() ? first : second;
+        } else if (first != null) {
+            return first;
+        } else if (second != null) {
+            return second;
+        }
+
+        Choice best = null;
+        for (Slot slot : this.slots) {
+            Choice choice = choice(slot, avoided);
+            if (choice != null && (best == null || slot.outstanding.get() < best.slot.outstanding.get())) {
+                best = choice;
+            }
+        }
+        return best != null || avoided.isEmpty() ? best : select(null);
+    }
+
+    private static Choice choice(Slot slot, Set<Slot> avoided) {
+        return avoided.contains(slot) ? null : slot.choice();
+    }
+
+    private static void release(Payload payload) {
+        if (payload != null) {
+            ReferenceCountUtil.safeRelease(payload);
+        }
+    }
+
+    private static InetSocketAddress parse(String target) {
+        int colon = target.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Target must be host:port but was '" + target + "'");
+        }
+        return InetSocketAddress.createUnresolved(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+    }
+
+    private final class Slot {
+        private final String target;
+        private final InetSocketAddress address;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile RSocket rSocket;
+        private int failedAttempts;
+
+        Slot(String target, InetSocketAddress address) {
+            this.target = target;
+            this.address = address;
+        }
+
+        /**
+         * The current connection if it is available, read once so that it cannot change under the caller.
+         */
+        Choice choice() {
+            RSocket current = this.rSocket;
+            return current != null && current.availability() > 0.0 ? new Choice(this, current) : null;
+        }
+
+        double availability() {
+            RSocket current = this.rSocket;
+            return current == null ? 0.0 : current.availability();
+        }
+
+        <T> Mono<T> track(Mono<T> request) {
+            return request
+                    .doOnSubscribe(s -> this.outstanding.incrementAndGet())
+                    .doFinally(signal -> this.outstanding.decrementAndGet());
+        }
+
+        <T> Flux<T> track(Flux<T> request) {
+            return request
+                    .doOnSubscribe(s -> this.outstanding.incrementAndGet())
+                    .doFinally(signal -> this.outstanding.decrementAndGet());
+        }
+
+        void connect() {
+            if (isDisposed()) {
+                return;
+            }
+            connector.apply(this.address).subscribe(this::connected, this::failed);
+        }
+
+        private void connected(RSocket connected) {
+            if (isDisposed()) {
+                connected.dispose();
+                return;
+            }
+            log.info("connected to {}", this.target);
+            this.failedAttempts = 0;
+            this.rSocket = connected;
+            connected.onClose().doFinally(signal -> {
+                this.rSocket = null;
+                if (!isDisposed()) {
+                    log.warn("connection to {} closed, reconnecting", this.target);
+                    reconnect();
+                }
+            }).subscribe();
+        }
+
+        private void failed(Throwable ex) {
+            log.warn("cannot connect to {}: {}", this.target, ex.toString());
+            reconnect();
+        }
+
+        private void reconnect() {
+            long min = pool.getReconnectMinBackoff().toMillis();
+            long max = pool.getReconnectMaxBackoff().toMillis();
+            long backoff = Math.min(max, min << Math.min(this.failedAttempts++, 16));
+            long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            Mono.delay(Duration.ofMillis(jittered)).subscribe(tick -> connect());
+        }
+
+        void dispose() {
+            RSocket current = this.rSocket;
+            if (current != null) {
+                current.dispose();
+            }
+        }
+    }
+
+    /**
+     * A slot and the connection it had when it was picked.
+     */
+    private static final class Choice {
+        private final Slot slot;
+        private final RSocket rSocket;
+
+        Choice(Slot slot, RSocket rSocket) {
+            this.slot = slot;
+            this.rSocket = rSocket;
+        }
+    }
+}
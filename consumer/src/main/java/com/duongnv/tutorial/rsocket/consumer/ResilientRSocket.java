@@ -0,0 +1,267 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import com.duongnv.tutorial.rsocket.shared.RouteMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.exceptions.RejectedException;
+import io.rsocket.util.RSocketProxy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Protects request-response and request-stream calls to the producers by route, taken from the routing metadata
+ * of each request, with the {@link ConsumerRSocketProperties.Policy} of the route.
+ * <p>
+ * A call that is not answered within the route's adaptive timeout fails with a {@link TimeoutException}. A
+ * request-response to a route that hedges is sent a second time once it is as late as the slowest few of its
+ * recent calls; a {@link LoadBalancedRSocket} sends the second on another connection than the first whenever it has
+ * one, and whichever answer comes first wins while the other call is cancelled. Calls to a
+ * route whose circuit is open fail with a {@link RejectedException} without being sent. Fire-and-forget,
+ * metadata push and channels pass through untouched.
+ * <p>
+ * The state of each route is kept in atomics and its timeout and hedge delay are recomputed from its latencies at
+ * most every {@link #REFRESH_NANOS}, so a call takes no lock. {@code rsocket.resilience.timeouts},
+ * {@code rsocket.resilience.hedges} and {@code rsocket.resilience.rejections} count what was done to the calls of
+ * each route, {@code rsocket.resilience.timeout} is its current timeout and {@code rsocket.resilience.circuit} the
+ * state of its circuit: 0 closed, 1 open, 2 half-open.
+ */
+class ResilientRSocket extends RSocketProxy {
+
+    static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ConsumerRSocketProperties.Resilience resilience;
+    private final MeterRegistry registry;
+    private final Scheduler timer;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    ResilientRSocket(RSocket source, ConsumerRSocketProperties.Resilience resilience, MeterRegistry registry) {
+        this(source, resilience, registry, Schedulers.parallel());
+    }
+
+    ResilientRSocket(RSocket source, ConsumerRSocketProperties.Resilience resilience, MeterRegistry registry,
+                     Scheduler timer) {
+        super(source);
+        this.resilience = resilience;
+        this.registry = registry;
+        this.timer = timer;
+    }
+
+    @Override
+    public Mono<Payload> requestResponse(Payload payload) {
+        Route route = route(payload);
+        return Mono.defer(() -> route.requestResponse(payload));
+    }
+
+    @Override
+    public Flux<Payload> requestStream(Payload payload) {
+        Route route = route(payload);
+        return Flux.defer(() -> route.requestStream(payload));
+    }
+
+    private Route route(Payload payload) {
+        String name = RouteMetrics.route(payload);
+        Route route = this.routes.get(name);
+        return route != null ? route : this.routes.computeIfAbsent(name, Route::new);
+    }
+
+    private long now() {
+        return this.timer.now(TimeUnit.NANOSECONDS);
+    }
+
+    private final class Route {
+        private final String name;
+        private final ConsumerRSocketProperties.Policy policy;
+        private final LatencyWindow latencies;
+        private final CircuitBreaker breaker;
+        private final Counter timeouts;
+        private final Counter hedges;
+        private final Counter rejections;
+        private volatile long refreshedAt;
+        private volatile long timeoutNanos;
+        private volatile long hedgeNanos;
+
+        Route(String name) {
+            this.name = name;
+            this.policy = resilience.policy(name);
+            long window = this.policy.getWindow().toNanos();
+            this.latencies = new LatencyWindow(window);
+            this.breaker = this.policy.getCircuitBreaker() ? new CircuitBreaker(window, this.policy.getMinimumCalls(),
+                    this.policy.getFailureRateThreshold(), this.policy.getOpenDuration().toNanos()) : null;
+            this.timeoutNanos = this.policy.getMaxTimeout().toNanos();
+            this.refreshedAt = now() - REFRESH_NANOS;
+            this.timeouts = Counter.builder("rsocket.resilience.timeouts")
+                    .tag("route", name)
+                    .register(registry);
+            this.hedges = Counter.builder("rsocket.resilience.hedges")
+                    .tag("route", name)
+                    .description("Requests sent a second time for being late")
+                    .register(registry);
+            this.rejections = Counter.builder("rsocket.resilience.rejections")
+                    .tag("route", name)
+                    .description("Calls refused while the circuit was open")
+                    .register(registry);
+            TimeGauge.builder("rsocket.resilience.timeout", this, TimeUnit.NANOSECONDS, route -> route.timeoutNanos)
+                    .tag("route", name)
+                    .register(registry);
+            if (this.breaker != null) {
+                Gauge.builder("rsocket.resilience.circuit", this.breaker, breaker -> breaker.state().ordinal())
+                        .tag("route", name)
+                        .register(registry);
+            }
+        }
+
+        Mono<Payload> requestResponse(Payload payload) {
+            Call call = acquire();
+            if (call == null) {
+                ReferenceCountUtil.safeRelease(payload);
+                return Mono.error(rejected());
+            }
+            long hedgeDelay = this.hedgeNanos;
+            Mono<Payload> response = hedgeDelay > 0 ? hedged(payload, hedgeDelay) : source.requestResponse(payload);
+            return response
+                    .timeout(Duration.ofNanos(this.timeoutNanos), timer)
+                    .doOnSuccess(value -> call.answered())
+                    .doOnError(call::failed)
+                    .doOnCancel(call::cancelled);
+        }
+
+        Flux<Payload> requestStream(Payload payload) {
+            Call call = acquire();
+            if (call == null) {
+                ReferenceCountUtil.safeRelease(payload);
+                return Flux.error(rejected());
+            }
+            return source.requestStream(payload)
+                    .timeout(Mono.delay(Duration.ofNanos(this.timeoutNanos), timer), element -> Mono.never())
+                    .doOnNext(element -> call.answered())
+                    .doOnComplete(call::answered)
+                    .doOnError(call::failed)
+                    .doOnCancel(call::cancelled);
+        }
+
+        /**
+         * Sends the request, and again after the delay unless it has been answered by then. The payload is kept
+         * for the second copy until it is sent or no longer needed.
+         */
+        private Mono<Payload> hedged(Payload payload, long delayNanos) {
+            payload.retain();
+            Function<Payload, Mono<Payload>> send = source instanceof LoadBalancedRSocket
+                    ? ((LoadBalancedRSocket) source).copies()
+                    : source::requestResponse;
+            AtomicBoolean claimed = new AtomicBoolean();
+            Mono<Payload> hedge = Mono.delay(Duration.ofNanos(delayNanos), timer).flatMap(tick -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return Mono.never();
+                }
+                this.hedges.increment();
+                return send.apply(payload);
+            });
+            return Mono.first(send.apply(payload), hedge)
+                    .doFinally(signal -> {
+                        if (claimed.compareAndSet(false, true)) {
+                            ReferenceCountUtil.safeRelease(payload);
+                        }
+                    });
+        }
+
+        private Call acquire() {
+            long now = now();
+            refresh(now);
+            CircuitBreaker.State permit = this.breaker != null ? this.breaker.acquire(now) : CircuitBreaker.State.CLOSED;
+            return permit != null ? new Call(this, permit, now) : null;
+        }
+
+        private RejectedException rejected() {
+            this.rejections.increment();
+            return new RejectedException("Circuit of route '" + this.name + "' is open");
+        }
+
+        /**
+         * Recomputes the timeout and hedge delay if they are older than {@link #REFRESH_NANOS}. Calls racing to
+         * do so compute the same values.
+         */
+        private void refresh(long now) {
+            if (now - this.refreshedAt < REFRESH_NANOS) {
+                return;
+            }
+            this.refreshedAt = now;
+            long min = this.policy.getMinTimeout().toNanos();
+            long max = this.policy.getMaxTimeout().toNanos();
+            if (this.latencies.count(now) < this.policy.getMinimumCalls()) {
+                this.timeoutNanos = max;
+                this.hedgeNanos = 0;
+                return;
+            }
+            long percentile = this.latencies.percentile(this.policy.getTimeoutPercentile(), now);
+            this.timeoutNanos = Math.max(min, Math.min(max, (long) (percentile * this.policy.getTimeoutMultiplier())));
+            this.hedgeNanos = !this.policy.getHedge() ? 0 : Math.max(this.policy.getMinHedgeDelay().toNanos(),
+                    this.latencies.percentile(this.policy.getHedgePercentile(), now));
+        }
+    }
+
+    /**
+     * One call in progress. Its latency is recorded at its answer, or at its timeout so that a route that slows
+     * down lengthens its timeout, and its outcome goes to the circuit once.
+     */
+    private final class Call {
+        private final Route route;
+        private final CircuitBreaker.State permit;
+        private final long start;
+        private boolean ended;
+
+        Call(Route route, CircuitBreaker.State permit, long start) {
+            this.route = route;
+            this.permit = permit;
+            this.start = start;
+        }
+
+        void answered() {
+            if (!this.ended) {
+                this.ended = true;
+                long now = now();
+                this.route.latencies.record(now - this.start, now);
+                if (this.route.breaker != null) {
+                    this.route.breaker.succeeded(this.permit, now);
+                }
+            }
+        }
+
+        void failed(Throwable error) {
+            if (!this.ended) {
+                this.ended = true;
+                long now = now();
+                if (error instanceof TimeoutException) {
+                    this.route.timeouts.increment();
+                    this.route.latencies.record(now - this.start, now);
+                }
+                if (this.route.breaker != null) {
+                    this.route.breaker.failed(this.permit, now);
+                }
+            }
+        }
+
+        void cancelled() {
+            if (!this.ended) {
+                this.ended = true;
+                if (this.route.breaker != null) {
+                    this.route.breaker.cancelled(this.permit, now());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchingSseWriterTests {
+
+    private final VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+    private final BatchingSseWriter writer = new BatchingSseWriter(new ObjectMapper(), 3, Duration.ofMillis(50), this.timer);
+
+    @Test
+    void flushesFullBatchesAtOnce() {
+        StepVerifier.create(this.writer.batches(Flux.range(1, 7)))
+                .expectNext(List.of(1, 2, 3), List.of(4, 5, 6), List.of(7))
+                .verifyComplete();
+    }
+
+    @Test
+    void flushesAPartialBatchOnceItsFirstEventIsOldEnough() {
+        TestPublisher<Integer> events = TestPublisher.create();
+
+        StepVerifier.create(this.writer.batches(events.flux()))
+                .then(() -> events.next(1, 2))
+                .expectNoEvent(Duration.ZERO)
+                .then(() -> this.timer.advanceTimeBy(Duration.ofMillis(50)))
+                .expectNext(List.of(1, 2))
+                .then(events::complete)
+                .verifyComplete();
+    }
+
+    @Test
+    void holdsTheBatchAndStopsRequestingWhileTheWriterIsBusy() {
+        TestPublisher<Integer> events = TestPublisher.create();
+
+        StepVerifier.create(this.writer.batches(events.flux()), 0)
+                .then(() -> events.next(1, 2, 3))
+                .then(() -> this.timer.advanceTimeBy(Duration.ofSeconds(1)))
+                .then(() -> events.assertMinRequested(0).assertMaxRequested(3))
+                .expectNoEvent(Duration.ZERO)
+                .thenRequest(1)
+                .expectNext(List.of(1, 2, 3))
+                .then(() -> events.assertMinRequested(3))
+                .thenCancel()
+                .verify();
+        events.assertCancelled();
+    }
+
+    @Test
+    void writesEachEventAsServerSentEventData() {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+
+        this.writer.write(response, Flux.just(new GreetingResponse("a"), new GreetingResponse("b"))).block();
+
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.TEXT_EVENT_STREAM);
+        StepVerifier.create(response.getBodyAsString())
+                .expectNext("data:{\"greeting\":\"a\"}\n\ndata:{\"greeting\":\"b\"}\n\n")
+                .verifyComplete();
+    }
+}
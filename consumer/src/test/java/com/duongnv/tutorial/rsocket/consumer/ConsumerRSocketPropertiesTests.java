@@ -0,0 +1,49 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsumerRSocketPropertiesTests {
+
+    @Test
+    void completesRouteCreditFromTheDefaults() {
+        ConsumerRSocketProperties properties = bind(Map.of(
+                "consumer.rsocket.streams.defaults.low-watermark", "16",
+                "consumer.rsocket.streams.routes.greet-stream.prefetch", "128"));
+
+        ConsumerRSocketProperties.Credit credit = properties.getStreams().credit("greet-stream");
+        assertThat(credit.getPrefetch()).isEqualTo(128);
+        assertThat(credit.getLowWatermark()).isEqualTo(16);
+        assertThat(properties.getStreams().credit("greetings").getPrefetch()).isEqualTo(32);
+    }
+
+    @Test
+    void completesRoutePoliciesFromTheDefaults() {
+        ConsumerRSocketProperties properties = bind(Map.of(
+                "consumer.rsocket.resilience.defaults.failure-rate-threshold", "25",
+                "consumer.rsocket.resilience.routes.greet.hedge", "true",
+                "consumer.rsocket.resilience.routes.greet.max-timeout", "1s"));
+
+        ConsumerRSocketProperties.Policy policy = properties.getResilience().policy("greet");
+        assertThat(policy.getHedge()).isTrue();
+        assertThat(policy.getMaxTimeout()).isEqualTo(Duration.ofSeconds(1));
+        assertThat(policy.getFailureRateThreshold()).isEqualTo(25);
+        assertThat(policy.getMinTimeout()).isEqualTo(Duration.ofMillis(100));
+        assertThat(properties.getResilience().policy("greetings").getHedge()).isFalse();
+    }
+
+    private static ConsumerRSocketProperties bind(Map<String, String> source) {
+        ConsumerRSocketProperties properties = new ConsumerRSocketProperties();
+        new Binder(new MapConfigurationPropertySource(source))
+                .bind("consumer.rsocket", Bindable.ofInstance(properties));
+        properties.afterPropertiesSet();
+        return properties;
+    }
+}
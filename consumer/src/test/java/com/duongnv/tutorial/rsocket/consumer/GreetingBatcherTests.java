@@ -0,0 +1,78 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GreetingBatcherTests {
+
+    private final VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+    private final List<List<String>> batches = new ArrayList<>();
+    private final Function<List<GreetingRequest>, Mono<List<GreetingResponse>>> producer = requests -> {
+        this.batches.add(requests.stream().map(GreetingRequest::getName).collect(Collectors.toList()));
+        return Mono.just(requests.stream()
+                .map(request -> new GreetingResponse("Hello " + request.getName()))
+                .collect(Collectors.toList()));
+    };
+
+    @Test
+    void sendsAFullBatchAtOnceAndAnswersEachCallerInOrder() {
+        GreetingBatcher batcher = new GreetingBatcher(this.producer, 3, Duration.ofMillis(2), this.timer);
+        List<GreetingResponse> responses = new ArrayList<>();
+
+        for (String name : List.of("a", "b", "c")) {
+            batcher.greet(new GreetingRequest(name)).subscribe(responses::add);
+        }
+
+        assertThat(this.batches).containsExactly(List.of("a", "b", "c"));
+        assertThat(responses).extracting(GreetingResponse::getGreeting).containsExactly("Hello a", "Hello b", "Hello c");
+    }
+
+    @Test
+    void sendsAPartialBatchOnceItsFirstGreetingIsOldEnough() {
+        GreetingBatcher batcher = new GreetingBatcher(this.producer, 3, Duration.ofMillis(2), this.timer);
+
+        batcher.greet(new GreetingRequest("a")).subscribe();
+        batcher.greet(new GreetingRequest("b")).subscribe();
+        assertThat(this.batches).isEmpty();
+
+        this.timer.advanceTimeBy(Duration.ofMillis(2));
+        assertThat(this.batches).containsExactly(List.of("a", "b"));
+
+        batcher.greet(new GreetingRequest("c")).subscribe();
+        this.timer.advanceTimeBy(Duration.ofMillis(2));
+        assertThat(this.batches).containsExactly(List.of("a", "b"), List.of("c"));
+    }
+
+    @Test
+    void failsEveryCallerOfAFailedBatch() {
+        GreetingBatcher batcher = new GreetingBatcher(
+                requests -> Mono.error(new IllegalStateException("down")), 2, Duration.ofMillis(2), this.timer);
+        Mono<GreetingResponse> first = batcher.greet(new GreetingRequest("a")).cache();
+        first.subscribe(response -> {}, error -> {});
+
+        StepVerifier.create(batcher.greet(new GreetingRequest("b")))
+                .verifyErrorMessage("down");
+        StepVerifier.create(first)
+                .verifyErrorMessage("down");
+    }
+
+    @Test
+    void failsTheBatchWhenTheResponseDoesNotMatchIt() {
+        GreetingBatcher batcher = new GreetingBatcher(
+                requests -> Mono.just(List.of(new GreetingResponse("Hello"))), 2, Duration.ofMillis(2), this.timer);
+        batcher.greet(new GreetingRequest("a")).subscribe(response -> {}, error -> {});
+
+        StepVerifier.create(batcher.greet(new GreetingRequest("b")))
+                .verifyError(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,111 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import io.netty.buffer.Unpooled;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadBalancedRSocketTests {
+
+    private final ConsumerRSocketProperties.Pool pool = new ConsumerRSocketProperties.Pool();
+    private final AtomicInteger connects = new AtomicInteger();
+    private final RSocket echo = new AbstractRSocket() {
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+            return Mono.just(payload);
+        }
+    };
+    private LoadBalancedRSocket producers;
+
+    LoadBalancedRSocketTests() {
+        this.pool.setTargets(List.of("localhost:7000"));
+        this.pool.setConnectionsPerTarget(1);
+        this.pool.setAcquireTimeout(Duration.ofMillis(200));
+        this.pool.setReconnectMinBackoff(Duration.ofMinutes(1));
+        this.pool.setReconnectMaxBackoff(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void dispose() {
+        this.producers.dispose();
+    }
+
+    @Test
+    void sendsRequestsOnTheConnectionItPicked() {
+        this.producers = new LoadBalancedRSocket(this.pool, address -> connect());
+
+        StepVerifier.create(this.producers.requestResponse(payload("hello")))
+                .assertNext(response -> {
+                    assertThat(response.getDataUtf8()).isEqualTo("hello");
+                    response.release();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void releasesTheRequestWhenItsConnectionClosedAndNoneTurnsUp() {
+        this.producers = new LoadBalancedRSocket(this.pool, address -> connect());
+        this.echo.dispose();
+        Payload request = payload("hello");
+
+        StepVerifier.create(this.producers.requestResponse(request))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(request.refCnt()).isZero();
+        assertThat(this.connects).hasValue(1);
+    }
+
+    @Test
+    void sendsEachCopyOfARequestOnAnotherConnection() {
+        this.pool.setConnectionsPerTarget(4);
+        this.producers =
+                new LoadBalancedRSocket(this.pool, address -> Mono.just(named(this.connects.getAndIncrement())));
+        Function<Payload, Mono<Payload>> copies = this.producers.copies();
+        Set<String> answeredBy = new HashSet<>();
+
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(copies.apply(payload("hello")))
+                    .assertNext(response -> {
+                        answeredBy.add(response.getDataUtf8());
+                        response.release();
+                    })
+                    .verifyComplete();
+        }
+
+        assertThat(answeredBy).hasSize(4);
+    }
+
+    private Mono<RSocket> connect() {
+        return this.connects.getAndIncrement() == 0 ? Mono.just(this.echo) : Mono.never();
+    }
+
+    private static RSocket named(int connection) {
+        return new AbstractRSocket() {
+            @Override
+            public Mono<Payload> requestResponse(Payload payload) {
+                payload.release();
+                return Mono.just(payload("connection-" + connection));
+            }
+        };
+    }
+
+    private static Payload payload(String data) {
+        return ByteBufPayload.create(Unpooled.copiedBuffer(data.getBytes()));
+    }
+}
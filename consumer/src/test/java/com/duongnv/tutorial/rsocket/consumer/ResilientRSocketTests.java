@@ -0,0 +1,185 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.exceptions.RejectedException;
+import io.rsocket.metadata.CompositeMetadataFlyweight;
+import io.rsocket.metadata.TaggingMetadataFlyweight;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.DefaultPayload;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResilientRSocketTests {
+
+    private final VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ConsumerRSocketProperties.Resilience resilience = new ConsumerRSocketProperties.Resilience();
+    private final Queue<Supplier<Mono<Payload>>> responses = new ArrayDeque<>();
+    private int calls;
+    private final ResilientRSocket rSocket = new ResilientRSocket(new AbstractRSocket() {
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+            payload.release();
+            calls++;
+            Supplier<Mono<Payload>> response = responses.poll();
+            return response != null ? response.get() : Mono.just(DefaultPayload.create("Hello"));
+        }
+    }, this.resilience, this.meters, this.timer);
+
+    ResilientRSocketTests() {
+        ConsumerRSocketProperties.Policy policy = this.resilience.getDefaults();
+        policy.setMinTimeout(Duration.ofMillis(1));
+        policy.setMaxTimeout(Duration.ofSeconds(5));
+        policy.setMinimumCalls(4);
+    }
+
+    @Test
+    void timesOutAtTheMaximumUntilTheRouteHasLatenciesThenFollowsThem() {
+        this.responses.add(Mono::never);
+        StepVerifier.create(this.rSocket.requestResponse(request("greet-batch")))
+                .expectSubscription()
+                .then(() -> this.timer.advanceTimeBy(Duration.ofMillis(4999)))
+                .expectNoEvent(Duration.ZERO)
+                .then(() -> this.timer.advanceTimeBy(Duration.ofMillis(1)))
+                .verifyError(TimeoutException.class);
+
+        answerAfter(Duration.ofMillis(10), 20);
+        this.timer.advanceTimeBy(Duration.ofMillis(100));
+
+        this.responses.add(Mono::never);
+        StepVerifier.create(this.rSocket.requestResponse(request("greet")))
+                .expectSubscription()
+                .then(() -> this.timer.advanceTimeBy(Duration.ofMillis(40)))
+                .verifyError(TimeoutException.class);
+        assertThat(this.meters.get("rsocket.resilience.timeouts").tag("route", "greet").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void hedgesALateRequestAndCancelsTheSlowerCopy() {
+        this.resilience.getDefaults().setHedge(true);
+        answerAfter(Duration.ofMillis(10), 20);
+        this.timer.advanceTimeBy(Duration.ofMillis(100));
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        this.responses.add(() -> Mono.<Payload>never().doOnCancel(() -> cancelled.set(true)));
+        this.responses.add(() -> Mono.just(DefaultPayload.create("Hedged")));
+        Payload request = request("greet");
+        int before = this.calls;
+
+        StepVerifier.create(this.rSocket.requestResponse(request).map(Payload::getDataUtf8))
+                .expectSubscription()
+                .then(() -> this.timer.advanceTimeBy(Duration.ofMillis(5)))
+                .expectNoEvent(Duration.ZERO)
+                .then(() -> this.timer.advanceTimeBy(Duration.ofMillis(10)))
+                .expectNext("Hedged")
+                .verifyComplete();
+
+        assertThat(this.calls - before).isEqualTo(2);
+        assertThat(cancelled).isTrue();
+        assertThat(request.refCnt()).isZero();
+        assertThat(this.meters.get("rsocket.resilience.hedges").tag("route", "greet").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void releasesTheHedgeCopyOfARequestAnsweredInTime() {
+        this.resilience.getDefaults().setHedge(true);
+        answerAfter(Duration.ofMillis(10), 20);
+        this.timer.advanceTimeBy(Duration.ofMillis(100));
+        Payload request = request("greet");
+        int before = this.calls;
+
+        StepVerifier.create(this.rSocket.requestResponse(request))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertThat(this.calls - before).isEqualTo(1);
+        assertThat(request.refCnt()).isZero();
+    }
+
+    @Test
+    void opensTheCircuitOfAFailingRouteAndClosesItAfterAProbe() {
+        for (int i = 0; i < 4; i++) {
+            this.responses.add(() -> Mono.error(new IllegalStateException("down")));
+            StepVerifier.create(this.rSocket.requestResponse(request("greet")))
+                    .verifyErrorMessage("down");
+        }
+        int before = this.calls;
+        StepVerifier.create(this.rSocket.requestResponse(request("greet")))
+                .verifyError(RejectedException.class);
+        StepVerifier.create(this.rSocket.requestResponse(request("greet-batch")))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(this.calls - before).isEqualTo(1);
+
+        this.timer.advanceTimeBy(Duration.ofSeconds(5));
+        this.responses.add(() -> Mono.delay(Duration.ofMillis(10), this.timer).map(tick -> DefaultPayload.create("Hello")));
+        StepVerifier.create(this.rSocket.requestResponse(request("greet")))
+                .expectSubscription()
+                .then(() -> StepVerifier.create(this.rSocket.requestResponse(request("greet")))
+                        .verifyError(RejectedException.class))
+                .then(() -> this.timer.advanceTimeBy(Duration.ofMillis(10)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        StepVerifier.create(this.rSocket.requestResponse(request("greet")))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(this.meters.get("rsocket.resilience.rejections").tag("route", "greet").counter().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void findsPercentilesOfTheLatenciesInTheWindow() {
+        LatencyWindow window = new LatencyWindow(Duration.ofSeconds(10).toNanos());
+        for (int i = 1; i <= 100; i++) {
+            window.record(Duration.ofMillis(i).toNanos(), 0);
+        }
+
+        assertThat(window.count(0)).isEqualTo(100);
+        assertThat(window.percentile(0.5, 0)).isBetween(Duration.ofMillis(50).toNanos(), Duration.ofMillis(63).toNanos());
+        assertThat(window.percentile(0.99, 0)).isBetween(Duration.ofMillis(99).toNanos(), Duration.ofMillis(124).toNanos());
+        assertThat(window.count(Duration.ofSeconds(9).toNanos())).isEqualTo(100);
+        assertThat(window.count(Duration.ofSeconds(10).toNanos())).isZero();
+    }
+
+    /**
+     * Completes calls to greet, one at a time, that each take the latency.
+     */
+    private void answerAfter(Duration latency, int calls) {
+        for (int i = 0; i < calls; i++) {
+            this.responses.add(() -> Mono.delay(latency, this.timer).map(tick -> DefaultPayload.create("Hello")));
+            this.rSocket.requestResponse(request("greet")).subscribe();
+            this.timer.advanceTimeBy(latency);
+        }
+    }
+
+    private static Payload request(String route) {
+        ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        CompositeByteBuf metadata = allocator.compositeBuffer();
+        CompositeMetadataFlyweight.encodeAndAddMetadata(metadata, allocator, WellKnownMimeType.MESSAGE_RSOCKET_ROUTING,
+                TaggingMetadataFlyweight.createRoutingMetadata(allocator, List.of(route)).getContent());
+        ByteBuf data = Unpooled.copiedBuffer(new byte[]{1});
+        return ByteBufPayload.create(data, metadata);
+    }
+}
@@ -0,0 +1,49 @@
+package com.duongnv.tutorial.rsocket.consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.security.user.name=service", "spring.security.user.password=secret"})
+class WebSecurityTests {
+
+    private static final String EVENT =
+            "{\"source\":\"host-1\",\"name\":\"cpu\",\"value\":0.42,\"timestamp\":1589000000000}";
+
+    @Autowired
+    private WebTestClient client;
+
+    @Test
+    void acceptsTelemetryWithBasicCredentialsAndNoCsrfToken() {
+        this.client.post().uri("/telemetry")
+                .headers(headers -> headers.setBasicAuth("service", "secret"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(EVENT)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.ACCEPTED)
+                .expectHeader().doesNotExist("Set-Cookie");
+    }
+
+    @Test
+    void refusesTelemetryWithoutBasicCredentials() {
+        this.client.post().uri("/telemetry")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(EVENT)
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    void keepsCsrfProtectionEverywhereElse() {
+        this.client.post().uri("/greet")
+                .headers(headers -> headers.setBasicAuth("service", "secret"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{}")
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+}
@@ -0,0 +1,56 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends events to a file as JSON, one object per line. Each batch is encoded into one buffer and goes to the
+ * file in a single write; it is left to the operating system when the data reaches the disk.
+ */
+class AppendOnlyFileSink<T> implements IngestSink<T> {
+
+    private final FileChannel file;
+    private final ObjectWriter writer;
+    private final Buffer buffer = new Buffer();
+
+    AppendOnlyFileSink(Path file, ObjectWriter writer) throws IOException {
+        this.file = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(List<T> batch) throws IOException {
+        this.buffer.reset();
+        for (T event : batch) {
+            this.writer.writeValue(this.buffer, event);
+            this.buffer.write('\n');
+        }
+        ByteBuffer bytes = this.buffer.bytes();
+        while (bytes.hasRemaining()) {
+            this.file.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+
+    /**
+     * Hands out its contents without copying them.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        ByteBuffer bytes() {
+            return ByteBuffer.wrap(this.buf, 0, this.count);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code @MessageMapping} method that blocks, on JDBC or a legacy client for instance. The method is
+ * invoked, and the {@code Mono} or {@code Flux} it returns subscribed to, on a {@link BlockingScheduler} thread
+ * instead of the event loop of the connection; elements are still only produced as the requester asks for them.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@interface Blocking {
+}
@@ -0,0 +1,154 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where {@link Blocking @Blocking} handler methods run: a virtual thread per invocation on a JVM that has them
+ * (Java 21 and later), a bounded elastic pool of platform threads otherwise.
+ * <p>
+ * Either way at most {@code maxConcurrency} invocations run at once and at most {@code maxQueued} more wait for
+ * their turn; invocations beyond that are rejected with a {@link RejectedExecutionException}, which the requester
+ * receives as an error instead of the producer queueing without bound.
+ */
+@Slf4j
+class BlockingScheduler implements Disposable {
+
+    private final Scheduler scheduler;
+    private final ExecutorService threadPerTask;
+
+    BlockingScheduler(boolean virtualThreads, int maxConcurrency, int maxQueued, String name) {
+        this(virtualThreads ? virtualThreadPerTask(name) : null, maxConcurrency, maxQueued, name);
+        if (this.threadPerTask != null) {
+            log.info("@Blocking handlers run on virtual threads, at most {} at a time", maxConcurrency);
+        } else {
+            log.info("@Blocking handlers run on a bounded elastic pool of at most {} threads", maxConcurrency);
+        }
+    }
+
+    /**
+     * Runs invocations on threads of {@code threadPerTask}, or on a bounded elastic pool if that is null.
+     */
+    BlockingScheduler(ExecutorService threadPerTask, int maxConcurrency, int maxQueued, String name) {
+        if (maxConcurrency < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Need a concurrency of at least 1 and a non-negative queue but got "
+                    + maxConcurrency + " and " + maxQueued);
+        }
+        this.threadPerTask = threadPerTask;
+        this.scheduler = threadPerTask != null
+                ? Schedulers.fromExecutor(new Bounded(threadPerTask, maxConcurrency, maxQueued))
+                : Schedulers.newBoundedElastic(maxConcurrency, maxQueued, name);
+    }
+
+    Scheduler scheduler() {
+        return this.scheduler;
+    }
+
+    boolean isVirtual() {
+        return this.threadPerTask != null;
+    }
+
+    @Override
+    public void dispose() {
+        this.scheduler.dispose();
+        if (this.threadPerTask != null) {
+            this.threadPerTask.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return this.scheduler.isDisposed();
+    }
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory())}, looked up at
+     * runtime so the producer still builds for and runs on Java 11; null where virtual threads are missing, or
+     * still a preview feature that was not enabled.
+     */
+    private static ExecutorService virtualThreadPerTask(String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.debug("No virtual threads on this JVM", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Hands tasks to a thread-per-task executor, no more than {@code maxConcurrency} at a time.
+     */
+    private static final class Bounded implements Executor {
+        private final Executor delegate;
+        private final int maxConcurrency;
+        private final int maxQueued;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+
+        Bounded(Executor delegate, int maxConcurrency, int maxQueued) {
+            this.delegate = delegate;
+            this.maxConcurrency = maxConcurrency;
+            this.maxQueued = maxQueued;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (this.queued.incrementAndGet() > this.maxQueued + Math.max(this.maxConcurrency - this.active.get(), 0)) {
+                this.queued.decrementAndGet();
+                throw new RejectedExecutionException("More than " + this.maxQueued + " @Blocking invocations waiting");
+            }
+            this.queue.offer(task);
+            drain();
+        }
+
+        private void drain() {
+            for (;;) {
+                int running = this.active.get();
+                if (running >= this.maxConcurrency || this.queue.isEmpty()) {
+                    return;
+                }
+                if (!this.active.compareAndSet(running, running + 1)) {
+                    continue;
+                }
+                Runnable next = this.queue.poll();
+                if (next == null) {
+                    this.active.decrementAndGet();
+                    continue;
+                }
+                this.queued.decrementAndGet();
+                try {
+                    this.delegate.execute(() -> run(next));
+                } catch (RejectedExecutionException ex) {
+                    this.active.decrementAndGet();
+                    throw ex;
+                }
+            }
+        }
+
+        private void run(Runnable task) {
+            try {
+                task.run();
+            } finally {
+                this.active.decrementAndGet();
+                drain();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an idempotent request-response {@code @MessageMapping} method whose encoded responses the
+ * {@link ResponseCache} may serve again to requests with the same route, data MIME type and data bytes, without
+ * calling the method or encoding anything.
+ * <p>
+ * Only exact routes served through the {@link RouteTable} are cached. Methods that take the principal are not,
+ * since their response depends on who asks.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@interface CachedResponse {
+
+    /**
+     * How long a response is served from the cache, such as {@code "500ms"} or {@code "PT10S"}; empty for
+     * {@code producer.rsocket.response-cache.ttl}.
+     */
+    String ttl() default "";
+}
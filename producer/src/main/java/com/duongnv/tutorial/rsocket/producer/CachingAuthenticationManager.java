@@ -0,0 +1,148 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers username/password pairs that passed the password check, so a consumer that sends the same credentials
+ * with every request pays for the password hash once per {@code ttl} instead of every time.
+ * <p>
+ * Entries are keyed by a SHA-256 digest of the credentials, never the password itself, and hold at most
+ * {@code maxSize} of them, least recently used first out. Each hit still looks the user up, which is a map lookup
+ * and not a hash, and drops the entry if the stored password, the account flags or the authorities have changed
+ * since it was verified; a changed user therefore goes through the full check again.
+ */
+class CachingAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private final ReactiveAuthenticationManager delegate;
+    private final ReactiveUserDetailsService users;
+    private final long ttlNanos;
+    private final Map<String, Verified> verified;
+    private final Counter hits;
+    private final Counter misses;
+
+    CachingAuthenticationManager(ReactiveAuthenticationManager delegate, ReactiveUserDetailsService users,
+                                 int maxSize, Duration ttl, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.users = users;
+        this.ttlNanos = ttl.toNanos();
+        this.verified = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verified> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.hits = Counter.builder("rsocket.authentication.cache").tag("outcome", "hit").register(registry);
+        this.misses = Counter.builder("rsocket.authentication.cache").tag("outcome", "miss").register(registry);
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        if (!(authentication instanceof UsernamePasswordAuthenticationToken)
+                || !(authentication.getCredentials() instanceof String)) {
+            return this.delegate.authenticate(authentication);
+        }
+        String username = authentication.getName();
+        String key = digest(username, (String) authentication.getCredentials());
+        Verified cached = lookup(key);
+        if (cached == null) {
+            return verify(key, authentication);
+        }
+        return this.users.findByUsername(username)
+                .filter(user -> cached.state.equals(state(user)))
+                .map(user -> {
+                    this.hits.increment();
+                    return cached.authentication;
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    remove(key);
+                    return verify(key, authentication);
+                }));
+    }
+
+    int size() {
+        synchronized (this.verified) {
+            return this.verified.size();
+        }
+    }
+
+    private Mono<Authentication> verify(String key, Authentication authentication) {
+        this.misses.increment();
+        return this.delegate.authenticate(authentication)
+                .flatMap(result -> this.users.findByUsername(authentication.getName())
+                        .doOnNext(user -> store(key, new Verified(result, state(user), System.nanoTime() + this.ttlNanos)))
+                        .thenReturn(result));
+    }
+
+    private Verified lookup(String key) {
+        synchronized (this.verified) {
+            Verified cached = this.verified.get(key);
+            if (cached != null && System.nanoTime() - cached.expiresAtNanos > 0) {
+                this.verified.remove(key);
+                return null;
+            }
+            return cached;
+        }
+    }
+
+    private void store(String key, Verified entry) {
+        synchronized (this.verified) {
+            this.verified.put(key, entry);
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (this.verified) {
+            this.verified.remove(key);
+        }
+    }
+
+    /**
+     * What has to stay the same for a verified entry to remain valid.
+     */
+    private static List<Object> state(UserDetails user) {
+        return Arrays.asList(user.getPassword(), user.isEnabled(), user.isAccountNonExpired(),
+                user.isAccountNonLocked(), user.isCredentialsNonExpired(), new HashSet<>(user.getAuthorities()));
+    }
+
+    private static String digest(String username, String password) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(username.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(sha256.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static final class Verified {
+        final Authentication authentication;
+        final List<Object> state;
+        final long expiresAtNanos;
+
+        Verified(Authentication authentication, List<Object> state, long expiresAtNanos) {
+            this.authentication = authentication;
+            this.state = state;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
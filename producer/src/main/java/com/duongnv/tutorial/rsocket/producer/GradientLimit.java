@@ -0,0 +1,80 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+/**
+ * Concurrency limit that follows request latency, after the gradient limiter of Netflix concurrency-limits.
+ * <p>
+ * Latency samples are averaged per window and compared with a slowly moving baseline. While the window average stays
+ * at the baseline the limit grows by about its square root per window; once requests start queueing the average rises
+ * above the baseline and the limit shrinks in proportion, by at most half per window. The limit only grows when the
+ * window actually used at least half of it, so an idle producer does not talk itself into a limit it never tested.
+ */
+class GradientLimit {
+
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private double limit;
+    private double baselineRttNanos;
+    private long windowRttNanos;
+    private int windowSamples;
+    private int windowMaxInFlight;
+
+    GradientLimit(int initialLimit, int minLimit, int maxLimit, double smoothing) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Need 1 <= minLimit <= maxLimit but got " + minLimit + " and " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.limit = clamp(initialLimit);
+    }
+
+    /**
+     * Records one completed request and how many were in flight when it started.
+     */
+    synchronized void sample(long rttNanos, int inFlight) {
+        this.windowRttNanos += rttNanos;
+        this.windowSamples++;
+        this.windowMaxInFlight = Math.max(this.windowMaxInFlight, inFlight);
+    }
+
+    /**
+     * Closes the current window and moves the limit. A window without samples leaves the limit as it was.
+     */
+    synchronized void update() {
+        if (this.windowSamples == 0) {
+            return;
+        }
+        double rtt = (double) this.windowRttNanos / this.windowSamples;
+        this.baselineRttNanos = this.baselineRttNanos == 0
+                ? rtt
+                : this.baselineRttNanos * (1 - BASELINE_SMOOTHING) + rtt * BASELINE_SMOOTHING;
+        double gradient = Math.max(0.5, Math.min(1.0, this.baselineRttNanos / rtt));
+        double target = this.limit * gradient + Math.sqrt(this.limit);
+        if (target > this.limit && this.windowMaxInFlight < this.limit / 2) {
+            target = this.limit;
+        }
+        this.limit = clamp(this.limit * (1 - this.smoothing) + target * this.smoothing);
+
+        this.windowRttNanos = 0;
+        this.windowSamples = 0;
+        this.windowMaxInFlight = 0;
+    }
+
+    synchronized int limit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * The latency baseline, or 0 before the first window with samples has closed.
+     */
+    synchronized long baselineRttNanos() {
+        return (long) this.baselineRttNanos;
+    }
+
+    private double clamp(double value) {
+        return Math.max(this.minLimit, Math.min(this.maxLimit, value));
+    }
+}
@@ -0,0 +1,84 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.shared.GreetingTemplate;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a {@link GreetingTemplate} as the {@link GreetingResponse} of the instant it is encoded at.
+ * <p>
+ * JSON is written by the template itself, into a buffer of the Netty allocator the RSocket payload goes out in.
+ * Any other data MIME type goes through the encoder registered for {@link GreetingResponse}, on a response the
+ * template renders for it. Registered ahead of Jackson, which would otherwise take the template for a bean.
+ */
+class GreetingTemplateEncoder extends AbstractEncoder<GreetingTemplate> {
+
+    private static final ResolvableType RESPONSE = ResolvableType.forClass(GreetingResponse.class);
+
+    private final List<Encoder<?>> fallbacks;
+
+    GreetingTemplateEncoder(List<Encoder<?>> fallbacks) {
+        super(MimeTypeUtils.APPLICATION_JSON, new MimeType("application", "*+json"));
+        this.fallbacks = fallbacks;
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return GreetingTemplate.class.isAssignableFrom(elementType.toClass())
+                && (super.canEncode(elementType, mimeType) || fallback(mimeType) != null);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends GreetingTemplate> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(GreetingTemplate template, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        if (!super.canEncode(valueType, mimeType)) {
+            Encoder<GreetingResponse> fallback = fallback(mimeType);
+            if (fallback == null) {
+                throw new IllegalStateException("No encoder for a GreetingResponse as " + mimeType);
+            }
+            return fallback.encodeValue(new GreetingResponse(template.render()), bufferFactory, RESPONSE, mimeType,
+                    hints);
+        }
+        if (bufferFactory instanceof NettyDataBufferFactory) {
+            NettyDataBufferFactory netty = (NettyDataBufferFactory) bufferFactory;
+            return netty.wrap(template.write(netty.getByteBufAllocator()));
+        }
+        ByteBuf json = template.write(UnpooledByteBufAllocator.DEFAULT);
+        try {
+            return bufferFactory.wrap(ByteBufUtil.getBytes(json));
+        } finally {
+            json.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Encoder<GreetingResponse> fallback(MimeType mimeType) {
+        if (mimeType == null) {
+            return null;
+        }
+        return (Encoder<GreetingResponse>) this.fallbacks.stream()
+                .filter(encoder -> encoder.canEncode(RESPONSE, mimeType))
+                .findFirst()
+                .orElse(null);
+    }
+}
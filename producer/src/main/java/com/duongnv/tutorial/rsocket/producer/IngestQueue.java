@@ -0,0 +1,251 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events from the threads that receive them to a single writer thread, which writes them to an
+ * {@link IngestSink} in batches.
+ * <p>
+ * Offering an event is a lock-free enqueue; a slot of the {@code capacity} is reserved first, so the queue never
+ * holds more. The writer takes up to {@code maxBatch} events at a time and waits at most {@code maxDelay} for a
+ * batch to fill before writing what it has. An event that finds the queue full is handled by the {@link Overflow}
+ * policy.
+ * <p>
+ * {@code rsocket.ingest.events} counts events by outcome: accepted, dropped, or sampled out.
+ * {@code rsocket.ingest.blocked} records how long offers waited for room. {@code rsocket.ingest.batches} records
+ * the size of each batch written. {@code rsocket.ingest.write.failures} counts events lost because the sink
+ * failed.
+ */
+@Slf4j
+class IngestQueue<T> implements Disposable {
+
+    enum Overflow {
+        /**
+         * Drop the event.
+         */
+        DROP,
+        /**
+         * Wait for room, up to {@code blockTimeout}, and drop the event if none came. The thread offering it
+         * waits too, so it must not be an event loop; see {@link #blocks()}.
+         */
+        BLOCK,
+        /**
+         * Once the queue is half full, keep one in {@code sampleRate} events and drop the rest; drop any event
+         * that still finds it full.
+         */
+        SAMPLE
+    }
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final IngestSink<T> sink;
+    private final Queue<T> queue = Queues.<T>unboundedMultiproducer().get();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final Overflow overflow;
+    private final long blockTimeoutNanos;
+    private final int sampleRate;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Counter accepted;
+    private final Counter dropped;
+    private final Counter sampled;
+    private final Counter failures;
+    private final Timer blocked;
+    private final DistributionSummary batches;
+    private final Thread writer;
+    private volatile boolean waiting;
+    private volatile boolean disposed;
+
+    IngestQueue(IngestSink<T> sink, int capacity, Overflow overflow, Duration blockTimeout, int sampleRate,
+                int maxBatch, Duration maxDelay, MeterRegistry registry) {
+        if (capacity < 1 || maxBatch < 1 || sampleRate < 1) {
+            throw new IllegalArgumentException("Need a capacity, batch size and sample rate of at least 1");
+        }
+        this.sink = sink;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.sampleRate = sampleRate;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.accepted = events("accepted", registry);
+        this.dropped = events("dropped", registry);
+        this.sampled = events("sampled", registry);
+        this.failures = Counter.builder("rsocket.ingest.write.failures")
+                .description("Ingested events lost because the sink failed to write them")
+                .register(registry);
+        this.blocked = Timer.builder("rsocket.ingest.blocked")
+                .description("Time offers waited for room in the ingest queue")
+                .register(registry);
+        this.batches = DistributionSummary.builder("rsocket.ingest.batches")
+                .description("Events written to the sink at once")
+                .register(registry);
+        Gauge.builder("rsocket.ingest.queue", this.size, AtomicInteger::get)
+                .description("Events waiting to be written")
+                .register(registry);
+        this.writer = new Thread(this::run, "ingest-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private static Counter events(String outcome, MeterRegistry registry) {
+        return Counter.builder("rsocket.ingest.events")
+                .tag("outcome", outcome)
+                .description("Events offered for ingestion")
+                .register(registry);
+    }
+
+    /**
+     * Queues the event for the writer, or drops it as the overflow policy says.
+     *
+     * @return whether the event was queued
+     */
+    boolean offer(T event) {
+        if (this.disposed) {
+            this.dropped.increment();
+            return false;
+        }
+        if (this.overflow == Overflow.SAMPLE && this.size.get() >= this.capacity / 2
+                && ThreadLocalRandom.current().nextInt(this.sampleRate) != 0) {
+            this.sampled.increment();
+            return false;
+        }
+        if (!reserve() && (this.overflow != Overflow.BLOCK || !awaitRoom())) {
+            this.dropped.increment();
+            return false;
+        }
+        this.queue.offer(event);
+        this.accepted.increment();
+        if (this.waiting) {
+            LockSupport.unpark(this.writer);
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@link #offer} may park the calling thread, which is the case with the {@link Overflow#BLOCK} policy.
+     */
+    boolean blocks() {
+        return this.overflow == Overflow.BLOCK;
+    }
+
+    int size() {
+        return this.size.get();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return this.disposed;
+    }
+
+    /**
+     * Stops taking events and waits for the writer to write those already queued and close the sink.
+     */
+    @Override
+    public void dispose() {
+        this.disposed = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean reserve() {
+        int size;
+        do {
+            size = this.size.get();
+            if (size >= this.capacity) {
+                return false;
+            }
+        } while (!this.size.compareAndSet(size, size + 1));
+        return true;
+    }
+
+    private boolean awaitRoom() {
+        long start = System.nanoTime();
+        boolean reserved = false;
+        while (!this.disposed && System.nanoTime() - start < this.blockTimeoutNanos && !(reserved = reserve())) {
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+        }
+        this.blocked.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return reserved;
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(this.maxBatch);
+        long due = 0;
+        while (true) {
+            boolean last = this.disposed;
+            if (batch.isEmpty()) {
+                if (this.size.get() == 0) {
+                    if (last) {
+                        break;
+                    }
+                    this.waiting = true;
+                    if (this.size.get() == 0 && !this.disposed) {
+                        LockSupport.parkNanos(this, this.maxDelayNanos);
+                    }
+                    this.waiting = false;
+                    continue;
+                }
+                due = System.nanoTime() + this.maxDelayNanos;
+            }
+            drain(batch);
+            long remaining = due - System.nanoTime();
+            if (!last && batch.size() < this.maxBatch && remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            write(batch);
+            batch.clear();
+        }
+        try {
+            this.sink.close();
+        } catch (IOException ex) {
+            log.warn("Failed to close the ingest sink", ex);
+        }
+    }
+
+    private void drain(List<T> batch) {
+        int taken = 0;
+        T event;
+        while (batch.size() < this.maxBatch && (event = this.queue.poll()) != null) {
+            batch.add(event);
+            taken++;
+        }
+        this.size.addAndGet(-taken);
+    }
+
+    private void write(List<T> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            this.sink.write(batch);
+            this.batches.record(batch.size());
+        } catch (Exception ex) {
+            this.failures.increment(batch.size());
+            log.warn("Failed to write {} ingested events", batch.size(), ex);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where an {@link IngestQueue} writes its events. Only the writer thread of the queue calls a sink, so it need not
+ * be thread-safe.
+ */
+interface IngestSink<T> extends Closeable {
+
+    /**
+     * Writes a batch of events; the list is reused once this returns.
+     */
+    void write(List<T> batch) throws IOException;
+}
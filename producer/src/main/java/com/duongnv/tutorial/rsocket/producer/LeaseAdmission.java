@@ -0,0 +1,124 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.lease.Lease;
+import io.rsocket.lease.LeaseStats;
+import io.rsocket.lease.Leases;
+import io.rsocket.plugins.RSocketInterceptor;
+import io.rsocket.util.RSocketProxy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control through RSocket leases: every connection is granted a share of what the producer can take on in
+ * the next lease interval, and requests beyond it are rejected before they reach a handler.
+ * <p>
+ * How much that is comes from a {@link GradientLimit} on concurrent request-response calls, turned into a request
+ * count with Little's law (limit / latency x interval) and split evenly over the open connections. While the
+ * in-flight calls are at or above the limit no lease goes out at all; the last one runs out after two intervals and
+ * the consumer sends its requests to other producers in the meantime. Streams need a lease to start too, but being
+ * long-lived they do not count towards the limit or its latency.
+ */
+class LeaseAdmission {
+
+    private static final int MAX_GRANT = 1_000_000;
+
+    private final GradientLimit limit;
+    private final Duration interval;
+    private final int timeToLiveMillis;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final Counter rejected;
+
+    LeaseAdmission(GradientLimit limit, Duration interval, MeterRegistry registry) {
+        this.limit = limit;
+        this.interval = interval;
+        this.timeToLiveMillis = (int) Math.max(1, interval.toMillis() * 2);
+        Gauge.builder("rsocket.lease.limit", limit, GradientLimit::limit)
+                .description("Concurrent request-response calls the producer currently admits")
+                .register(registry);
+        Gauge.builder("rsocket.lease.in.flight", this.inFlight, AtomicInteger::get)
+                .description("Request-response calls being handled")
+                .register(registry);
+        this.rejected = Counter.builder("rsocket.lease.rejected")
+                .description("Requests rejected for lack of a lease")
+                .register(registry);
+    }
+
+    /**
+     * Lease support for one connection: the leases it is sent and the stats of what it does with them.
+     */
+    Leases<LeaseStats> leases() {
+        LeaseStats stats = event -> {
+            if (event == LeaseStats.EventType.REJECT) {
+                this.rejected.increment();
+            }
+        };
+        return Leases.<LeaseStats>create()
+                .sender(ignoredStats -> Flux.interval(Duration.ZERO, this.interval)
+                        .onBackpressureDrop()
+                        .map(tick -> grant())
+                        .filter(allowed -> allowed > 0)
+                        .map(allowed -> Lease.create(this.timeToLiveMillis, allowed))
+                        .doOnSubscribe(subscription -> this.connections.incrementAndGet())
+                        .doFinally(signal -> this.connections.decrementAndGet()))
+                .stats(stats);
+    }
+
+    /**
+     * Times the request-response calls of each connection for the limit.
+     */
+    RSocketInterceptor measure() {
+        return Measured::new;
+    }
+
+    /**
+     * Requests one connection may start in the next interval; 0 while the producer is at its limit.
+     */
+    int grant() {
+        long now = System.nanoTime();
+        long start = this.windowStart.get();
+        if (now - start >= this.interval.toNanos() && this.windowStart.compareAndSet(start, now)) {
+            this.limit.update();
+        }
+        int current = this.limit.limit();
+        if (this.inFlight.get() >= current) {
+            return 0;
+        }
+        long rtt = this.limit.baselineRttNanos();
+        double perInterval = rtt == 0 ? current : current * (double) this.interval.toNanos() / rtt;
+        double perConnection = Math.ceil(perInterval / Math.max(1, this.connections.get()));
+        return (int) Math.min(MAX_GRANT, perConnection);
+    }
+
+    private final class Measured extends RSocketProxy {
+
+        Measured(RSocket source) {
+            super(source);
+        }
+
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+            return Mono.defer(() -> {
+                int concurrent = inFlight.incrementAndGet();
+                long start = System.nanoTime();
+                return super.requestResponse(payload).doFinally(signal -> {
+                    inFlight.decrementAndGet();
+                    if (signal != SignalType.CANCEL) {
+                        limit.sample(System.nanoTime() - start, concurrent);
+                    }
+                });
+            });
+        }
+    }
+}
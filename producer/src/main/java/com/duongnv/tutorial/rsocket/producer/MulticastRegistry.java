@@ -0,0 +1,163 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.EmitterProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxProcessor;
+import reactor.core.publisher.ReplayProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Shares one upstream between all subscribers of the same key, typically a route and its request.
+ * <p>
+ * The first subscriber of a key builds the upstream; the rest attach to it. It is cancelled {@code grace} after its
+ * last subscriber left, so a subscriber that reconnects right away finds it still running. With {@code replayLast}
+ * a subscriber that joins late starts with the element everyone else saw last. Every subscriber gets its own buffer
+ * of at most {@code maxBuffered} elements, dropping the oldest when full, so one slow subscriber neither holds up the
+ * others nor makes the upstream buffer for it.
+ * <p>
+ * Subscribers look their key up when they subscribe, and an upstream leaves the registry before it is cancelled,
+ * so a subscriber either joins a running upstream or starts a new one, and a key never has two.
+ */
+class MulticastRegistry {
+
+    private final Map<Object, Shared<?>> streams = new ConcurrentHashMap<>();
+    private final boolean replayLast;
+    private final Duration grace;
+    private final int maxBuffered;
+    private final Scheduler scheduler;
+    private final Counter dropped;
+
+    MulticastRegistry(boolean replayLast, Duration grace, int maxBuffered, MeterRegistry registry) {
+        this(replayLast, grace, maxBuffered, registry, Schedulers.parallel());
+    }
+
+    MulticastRegistry(boolean replayLast, Duration grace, int maxBuffered, MeterRegistry registry, Scheduler scheduler) {
+        this.replayLast = replayLast;
+        this.grace = grace;
+        this.maxBuffered = maxBuffered;
+        this.scheduler = scheduler;
+        Gauge.builder("rsocket.multicast.streams", this.streams, Map::size)
+                .description("Upstreams shared by subscribers of the same route and request")
+                .register(registry);
+        this.dropped = Counter.builder("rsocket.multicast.dropped")
+                .description("Elements dropped for subscribers that fell behind")
+                .register(registry);
+    }
+
+    <T> Flux<T> share(Object key, Supplier<Flux<T>> source) {
+        return Flux.defer(() -> join(key, source)).onBackpressureBuffer(
+                this.maxBuffered, element -> this.dropped.increment(), BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    int size() {
+        return this.streams.size();
+    }
+
+    /**
+     * Joins the upstream of the key, starting one if there is none. An upstream found just as it ended has
+     * already left the registry, so looking again finds a new one or makes it.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Flux<T> join(Object key, Supplier<Flux<T>> source) {
+        while (true) {
+            Shared<T> shared = (Shared<T>) this.streams.computeIfAbsent(key, k -> new Shared<>(k, source.get()));
+            Flux<T> joined = shared.join();
+            if (joined != null) {
+                return joined;
+            }
+        }
+    }
+
+    /**
+     * One upstream and the count of its subscribers. Joining, leaving and ending take the lock of the entry, and
+     * an entry that ended, whether its grace period ran out or its upstream terminated, is out of the registry
+     * before anyone can see it ended.
+     */
+    private final class Shared<T> {
+        private final Object key;
+        private final Flux<T> upstream;
+        private final FluxProcessor<T, T> processor;
+        private final Disposable.Swap connection = Disposables.swap();
+        private int subscribers;
+        private long generation;
+        private boolean connected;
+        private boolean ended;
+        private Disposable expiry;
+
+        Shared(Object key, Flux<T> source) {
+            this.key = key;
+            this.upstream = source
+                    .doOnSubscribe(subscription -> this.connection.update(subscription::cancel))
+                    .doFinally(signal -> end());
+            this.processor = replayLast ? ReplayProcessor.cacheLast() : EmitterProcessor.create(false);
+        }
+
+        /**
+         * The elements of the upstream for one more subscriber, connecting it for the first, or null if the
+         * upstream ended.
+         */
+        Flux<T> join() {
+            synchronized (this) {
+                if (this.ended) {
+                    return null;
+                }
+                this.subscribers++;
+                this.generation++;
+                if (this.expiry != null) {
+                    this.expiry.dispose();
+                    this.expiry = null;
+                }
+                if (this.connected) {
+                    return this.processor.doFinally(signal -> leave());
+                }
+                this.connected = true;
+            }
+            this.upstream.subscribe(this.processor);
+            return this.processor.doFinally(signal -> leave());
+        }
+
+        private void leave() {
+            synchronized (this) {
+                if (--this.subscribers > 0 || this.ended) {
+                    return;
+                }
+                long generation = ++this.generation;
+                this.expiry = scheduler.schedule(() -> expire(generation), grace.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Cancels the upstream if nobody joined since its last subscriber left, taking it out of the registry
+         * first.
+         */
+        private void expire(long generation) {
+            synchronized (this) {
+                if (generation != this.generation || this.ended) {
+                    return;
+                }
+                end();
+            }
+            this.connection.dispose();
+        }
+
+        private void end() {
+            synchronized (this) {
+                this.ended = true;
+                streams.remove(this.key, this);
+            }
+        }
+    }
+}
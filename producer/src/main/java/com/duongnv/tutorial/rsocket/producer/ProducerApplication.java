@@ -1,22 +1,46 @@
 package com.duongnv.tutorial.rsocket.producer;
 
+import com.duongnv.tutorial.rsocket.shared.FragmentingConnection;
+import com.duongnv.tutorial.rsocket.shared.FrameMetrics;
+import com.duongnv.tutorial.rsocket.shared.GreetingTemplate;
+import com.duongnv.tutorial.rsocket.shared.OffHeapResumableFramesStore;
+import com.duongnv.tutorial.rsocket.shared.Priority;
+import com.duongnv.tutorial.rsocket.shared.PriorityClass;
+import com.duongnv.tutorial.rsocket.shared.ProtobufCodecs;
+import com.duongnv.tutorial.rsocket.shared.ResumeMetrics;
+import com.duongnv.tutorial.rsocket.shared.RouteMetrics;
+import com.duongnv.tutorial.rsocket.shared.RoutePriorities;
+import com.duongnv.tutorial.rsocket.shared.TickScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.DuplexConnection;
+import io.rsocket.plugins.DuplexConnectionInterceptor;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.rsocket.RSocketProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.boot.rsocket.server.ServerRSocketFactoryProcessor;
+import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.rsocket.RSocketStrategies;
 import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
-import org.springframework.security.config.Customizer;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
 import org.springframework.security.config.annotation.rsocket.EnableRSocketSecurity;
 import org.springframework.security.config.annotation.rsocket.RSocketSecurity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.messaging.handler.invocation.reactive.AuthenticationPrincipalArgumentResolver;
@@ -24,44 +48,255 @@ import org.springframework.security.rsocket.core.PayloadSocketAcceptorIntercepto
 import org.springframework.stereotype.Controller;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.stream.Stream;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
-@SpringBootApplication
+@Slf4j
+@SpringBootApplication(proxyBeanMethods = false)
+@EnableConfigurationProperties(ProducerRSocketProperties.class)
 public class ProducerApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(ProducerApplication.class, args);
     }
 
+    /**
+     * JSON and CBOR codecs come from Boot; requesters pick one of them or protobuf with the data MIME type
+     * they send in SETUP. Greeting templates go first, encoded as JSON without Jackson and with the others
+     * as a {@link GreetingResponse}.
+     */
+    @Bean
+    RSocketStrategiesCustomizer protobufStrategyCustomizer() {
+        ProtobufCodecs protobuf = new ProtobufCodecs(GreetingRequest.class, GreetingResponse.class,
+                GreetingBatchRequest.class, GreetingBatchResponse.class, TelemetryEvent.class);
+        return strategies -> strategies
+                .encoder(protobuf.encoder())
+                .decoder(protobuf.decoder())
+                .encoders(encoders -> encoders.add(0, new GreetingTemplateEncoder(List.copyOf(encoders))));
+    }
+
+    /**
+     * The RSocket server, on event loops of its own and sharded over several listening sockets when asked to;
+     * otherwise configured from {@code spring.rsocket.server} as Boot's factory would be.
+     */
+    @Bean
+    ShardedRSocketServerFactory rSocketServerFactory(RSocketProperties rSocketProperties,
+                                                     ProducerRSocketProperties properties,
+                                                     ObjectProvider<ServerRSocketFactoryProcessor> processors) {
+        ShardedRSocketServerFactory factory = new ShardedRSocketServerFactory(properties.getTransport(),
+                processors.orderedStream().collect(Collectors.toList()));
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        RSocketProperties.Server server = rSocketProperties.getServer();
+        map.from(server.getAddress()).to(factory::setAddress);
+        map.from(server.getPort()).to(factory::setPort);
+        map.from(server.getTransport()).to(factory::setTransport);
+        return factory;
+    }
+
+    @Bean
+    ResumeMetrics resumeMetrics(MeterRegistry meterRegistry) {
+        return new ResumeMetrics(meterRegistry);
+    }
+
+    /**
+     * Keeps each session alive for a while after its connection drops, so a consumer that reconnects carries on
+     * with its open streams instead of setting them up again.
+     */
+    @Bean
+    ServerRSocketFactoryProcessor resumption(ProducerRSocketProperties properties, ResumeMetrics metrics) {
+        ProducerRSocketProperties.Resume resume = properties.getResume();
+        if (!resume.isEnabled()) {
+            return factory -> factory;
+        }
+        return factory -> factory
+                .resume()
+                .resumeSessionDuration(resume.getSessionDuration())
+                .resumeStreamTimeout(resume.getStreamTimeout())
+                .resumeCleanupOnKeepAlive()
+                .resumeStore(token -> new OffHeapResumableFramesStore(
+                        ByteBufAllocator.DEFAULT,
+                        resume.getStoreMaxSize().toBytes(),
+                        resume.getStoreMaxAge(),
+                        metrics))
+                .addConnectionPlugin(metrics.rejections());
+    }
+
+    /**
+     * Fragments large payloads on every accepted connection and bounds the reassembly of the consumer's
+     * fragments. The transport itself runs with fragmentation off; {@link FragmentingConnection} takes its place,
+     * and with interleaving also sends the frames of busy connections by route priority. Frames are metered on top
+     * of it, whole rather than in fragments.
+     */
+    @Bean
+    ServerRSocketFactoryProcessor fragmentation(ProducerRSocketProperties properties, FrameMetrics frames,
+                                                ObjectProvider<RoutePriorities> routePriorities) {
+        ProducerRSocketProperties.Fragmentation fragmentation = properties.getFragmentation();
+        int mtu = (int) fragmentation.getMtu().toBytes();
+        int maxReassemblySize = (int) fragmentation.getMaxReassemblySize().toBytes();
+        boolean interleave = fragmentation.isInterleave() && !properties.getResume().isEnabled();
+        if (fragmentation.isInterleave() && !interleave) {
+            log.warn("producer.rsocket.fragmentation.interleave has no effect while producer.rsocket.resume.enabled "
+                    + "is true: fragments are sent back to back so that resume positions stay valid");
+        }
+        boolean metered = properties.getMetrics().isEnabled();
+        if (properties.getPriorities().isEnabled() && !interleave) {
+            log.warn("producer.rsocket.priorities.enabled has no effect: route priorities need "
+                    + "producer.rsocket.fragmentation.interleave=true and producer.rsocket.resume.enabled=false");
+        }
+        RoutePriorities priorities = properties.getPriorities().isEnabled() && interleave
+                ? routePriorities.getObject()
+                : null;
+        return factory -> factory.addConnectionPlugin((type, connection) -> {
+            if (type != DuplexConnectionInterceptor.Type.SOURCE) {
+                return connection;
+            }
+            DuplexConnection fragmenting = new FragmentingConnection(
+                    connection, ByteBufAllocator.DEFAULT, mtu, maxReassemblySize, interleave, priorities);
+            return metered ? frames.instrument(fragmenting) : fragmenting;
+        });
+    }
+
+    @Bean
+    RoutePriorities routePriorities(RSocketMessageHandler messageHandler, ProducerRSocketProperties properties,
+                                    MeterRegistry meterRegistry) {
+        return RoutePriorities.compile(messageHandler, properties.getPriorities().getWeights(), meterRegistry,
+                properties.getMetrics().isHistograms());
+    }
+
+    @Bean
+    FrameMetrics frameMetrics(MeterRegistry meterRegistry) {
+        return new FrameMetrics(meterRegistry);
+    }
+
+    @Bean
+    RouteMetrics routeMetrics(ProducerRSocketProperties properties, MeterRegistry meterRegistry) {
+        ProducerRSocketProperties.Metrics metrics = properties.getMetrics();
+        return new RouteMetrics(meterRegistry, metrics.getMaxRoutes(), metrics.isHistograms());
+    }
+
+    @Bean
+    ServerRSocketFactoryProcessor routeMetering(ProducerRSocketProperties properties, RouteMetrics routes) {
+        if (!properties.getMetrics().isEnabled()) {
+            return factory -> factory;
+        }
+        return factory -> factory.addResponderPlugin(routes.interceptor());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    TickScheduler tickScheduler(ProducerRSocketProperties properties, MeterRegistry meterRegistry) {
+        ProducerRSocketProperties.Ticks ticks = properties.getTicks();
+        return new TickScheduler(ticks.getResolution(), ticks.getWheelSize(), "greeting-ticks", meterRegistry);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    BlockingScheduler blockingScheduler(ProducerRSocketProperties properties) {
+        ProducerRSocketProperties.BlockingHandlers blocking = properties.getBlockingHandlers();
+        return new BlockingScheduler(blocking.isVirtualThreads(), blocking.getMaxConcurrency(),
+                blocking.getMaxQueued(), "blocking-handlers");
+    }
+
+    /**
+     * Fire-and-forget events of the {@code ingest} route, appended to a local file in batches.
+     */
+    @Bean(destroyMethod = "dispose")
+    IngestQueue<TelemetryEvent> ingestQueue(ProducerRSocketProperties properties, ObjectMapper objectMapper,
+                                            MeterRegistry meterRegistry) throws IOException {
+        ProducerRSocketProperties.Ingest ingest = properties.getIngest();
+        IngestSink<TelemetryEvent> sink = new AppendOnlyFileSink<>(
+                Paths.get(ingest.getFile()), objectMapper.writerFor(TelemetryEvent.class));
+        return new IngestQueue<>(sink, ingest.getCapacity(), ingest.getOverflow(), ingest.getBlockTimeout(),
+                ingest.getSampleRate(), ingest.getMaxBatch(), ingest.getMaxDelay(), meterRegistry);
+    }
+
+    @Bean
+    MulticastRegistry multicastRegistry(ProducerRSocketProperties properties, MeterRegistry meterRegistry) {
+        ProducerRSocketProperties.Multicast multicast = properties.getMulticast();
+        return new MulticastRegistry(
+                multicast.isReplayLast(), multicast.getGrace(), multicast.getMaxBuffered(), meterRegistry);
+    }
+
+    @Bean
+    LeaseAdmission leaseAdmission(ProducerRSocketProperties properties, MeterRegistry meterRegistry) {
+        ProducerRSocketProperties.Lease lease = properties.getLease();
+        GradientLimit limit = new GradientLimit(
+                lease.getInitialLimit(), lease.getMinLimit(), lease.getMaxLimit(), lease.getSmoothing());
+        return new LeaseAdmission(limit, lease.getInterval(), meterRegistry);
+    }
+
+    /**
+     * Sheds load with leases sized from measured latency, so a burst shows up at the consumer as a producer that
+     * is not available rather than as a producer that is slow for everyone.
+     */
+    @Bean
+    ServerRSocketFactoryProcessor leasing(ProducerRSocketProperties properties, LeaseAdmission admission) {
+        if (!properties.getLease().isEnabled()) {
+            return factory -> factory;
+        }
+        return factory -> factory
+                .lease(admission::leases)
+                .addResponderPlugin(admission.measure());
+    }
 }
 
-@Configuration
+@Configuration(proxyBeanMethods = false)
 @EnableRSocketSecurity
 class RSocketSecurityConfiguration {
 
     @Bean
-    RSocketMessageHandler messageHandler(RSocketStrategies socketStrategies) {
-        var mh = new RSocketMessageHandler();
+    RSocketMessageHandler messageHandler(RSocketStrategies socketStrategies,
+                                         ProducerRSocketProperties properties,
+                                         BlockingScheduler blockingScheduler,
+                                         MeterRegistry meterRegistry) {
+        ProducerRSocketProperties.ResponseCache cache = properties.getResponseCache();
+        var mh = new ProducerMessageHandler(meterRegistry);
         mh.getArgumentResolverConfigurer().addCustomResolver(new AuthenticationPrincipalArgumentResolver());
         mh.setRSocketStrategies(socketStrategies);
+        mh.setPrecompiledRoutes(properties.getDispatch().isPrecompiled());
+        mh.setBlockingScheduler(blockingScheduler.scheduler());
+        if (cache.isEnabled()) {
+            mh.setResponseCache(new ResponseCache(cache.getMaxSize().toBytes(), cache.getTtl(), meterRegistry));
+        }
         return mh;
     }
 
+    /**
+     * Credentials are accepted per request or once in SETUP metadata; a connection authenticated at SETUP stays
+     * authenticated for all of its requests.
+     */
     @Bean
-    PayloadSocketAcceptorInterceptor authorization(RSocketSecurity security) {
+    PayloadSocketAcceptorInterceptor authorization(RSocketSecurity security,
+                                                   ReactiveAuthenticationManager authenticationManager) {
         return security
                 .authorizePayload(spec ->
                         spec
                                 .route("greetings").authenticated()
+                                .route("ingest").authenticated()
                                 .anyExchange().permitAll()
                 )
-                .simpleAuthentication(Customizer.withDefaults())
+                .simpleAuthentication(simple -> simple.authenticationManager(authenticationManager))
                 .build();
     }
 
+    @Bean
+    ReactiveAuthenticationManager authenticationManager(ReactiveUserDetailsService users,
+                                                        ProducerRSocketProperties properties,
+                                                        MeterRegistry meterRegistry) {
+        ReactiveAuthenticationManager checkPassword = new UserDetailsRepositoryReactiveAuthenticationManager(users);
+        ProducerRSocketProperties.AuthenticationCache cache = properties.getAuthenticationCache();
+        if (!cache.isEnabled()) {
+            return checkPassword;
+        }
+        return new CachingAuthenticationManager(checkPassword, users, cache.getMaxSize(), cache.getTtl(), meterRegistry);
+    }
+
     @Bean
     MapReactiveUserDetailsService authentication() {
         UserDetails user = User.withDefaultPasswordEncoder()
@@ -80,10 +315,29 @@ class RSocketSecurityConfiguration {
 @Controller
 @Slf4j
 class GreetingRSocketController {
-    private static Flux<GreetingResponse> greet(String name) {
-        return Flux.fromStream(
-                Stream.generate(() -> GreetingResponse.with(name))
-        ).delayElements(Duration.ofSeconds(1));
+    private final MulticastRegistry multicast;
+    private final boolean shared;
+    private final TickScheduler ticks;
+    private final IngestQueue<TelemetryEvent> ingest;
+    private final Scheduler blocking;
+    private final Clock clock = Clock.systemUTC();
+
+    GreetingRSocketController(MulticastRegistry multicast, ProducerRSocketProperties properties, TickScheduler ticks,
+                              IngestQueue<TelemetryEvent> ingest, BlockingScheduler blocking) {
+        this.multicast = multicast;
+        this.shared = properties.getMulticast().isEnabled();
+        this.ticks = ticks;
+        this.ingest = ingest;
+        this.blocking = blocking.scheduler();
+    }
+
+    /**
+     * One template for the whole stream, rendered with the current time as each greeting is encoded.
+     */
+    private Flux<GreetingTemplate> greet(String name) {
+        return Flux.just(GreetingTemplate.json(name, this.clock))
+                .repeat()
+                .delayElements(Duration.ofSeconds(1), this.ticks);
     }
 
     @MessageMapping("error")
@@ -96,32 +350,56 @@ class GreetingRSocketController {
         return Flux.just(new GreetingResponse("OH NO! "));
     }
 
+    /**
+     * Everyone asking for the same name shares one timer and sees the same greetings.
+     */
+    @Priority(PriorityClass.BULK)
     @MessageMapping("greet-stream")
-    Flux<GreetingResponse> greetStream(GreetingRequest request) {
-        return Flux
-                .fromStream(Stream.generate(() -> GreetingResponse.with(request.getName())))
-                .delayElements(Duration.ofSeconds(1));
+    Flux<GreetingTemplate> greetStream(GreetingRequest request) {
+        if (!this.shared) {
+            return greet(request.getName());
+        }
+        Supplier<Flux<GreetingTemplate>> greetings = () -> greet(request.getName())
+                .map(template -> template.at(this.clock.instant()));
+        return this.multicast.share(List.of("greet-stream", request), greetings);
     }
 
+    @Priority(PriorityClass.INTERACTIVE)
     @MessageMapping("greet")
     Mono<GreetingResponse> greet(GreetingRequest request) {
         return Mono.just(GreetingResponse.with(request.getName()));
     }
 
+    /**
+     * Many greetings in one request and one response, in the order they were asked for. Interactive, since the
+     * consumer batches the {@code /greet} calls of its users into it.
+     */
+    @Priority(PriorityClass.INTERACTIVE)
+    @MessageMapping("greet-batch")
+    Mono<GreetingBatchResponse> greetBatch(GreetingBatchRequest batch) {
+        return Mono.just(new GreetingBatchResponse(batch.getRequests()
+                .stream()
+                .map(request -> GreetingResponse.with(request.getName()))
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * Fire-and-forget: the event is queued for the writer, or dropped by the overflow policy, and nothing goes
+     * back to the sender either way. With the block policy the event waits for room on a blocking-handler thread,
+     * never on the event loop of the connection.
+     */
+    @MessageMapping("ingest")
+    Mono<Void> ingest(TelemetryEvent event) {
+        Mono<Void> offer = Mono.fromRunnable(() -> this.ingest.offer(event));
+        return this.ingest.blocks() ? offer.subscribeOn(this.blocking) : offer;
+    }
 
+    @Priority(PriorityClass.BULK)
     @MessageMapping("greetings")
-    Flux<GreetingResponse> greeting(@AuthenticationPrincipal Mono<UserDetails> user) {
-        return /*ReactiveSecurityContextHolder
-                .getContext()
-                .map(SecurityContext::getAuthentication)
-                .map(Principal::getName)*/
-                user
-                        .map(u -> {
-                            System.out.println(u.getUsername());
-                            return u.getUsername();
-                        })
-                        .flatMapMany(GreetingRSocketController::greet)
-                ;
+    Flux<GreetingTemplate> greeting(@AuthenticationPrincipal Mono<UserDetails> user) {
+        return user
+                .map(UserDetails::getUsername)
+                .flatMapMany(this::greet);
     }
 }
 
@@ -144,3 +422,27 @@ class GreetingResponse {
         return new GreetingResponse("Hello " + name + " @ " + Instant.now().toString());
     }
 }
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class GreetingBatchRequest {
+    private List<GreetingRequest> requests;
+}
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class GreetingBatchResponse {
+    private List<GreetingResponse> responses;
+}
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class TelemetryEvent {
+    private String source;
+    private String name;
+    private double value;
+    private long timestamp;
+}
@@ -0,0 +1,180 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.rsocket.SocketAcceptor;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.ReactiveAdapter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.handler.CompositeMessageCondition;
+import org.springframework.messaging.handler.HandlerMethod;
+import org.springframework.messaging.handler.annotation.support.AnnotationExceptionHandlerMethodResolver;
+import org.springframework.messaging.handler.invocation.AbstractExceptionHandlerMethodResolver;
+import org.springframework.messaging.handler.invocation.reactive.HandlerMethodArgumentResolver;
+import org.springframework.messaging.handler.invocation.reactive.HandlerMethodReturnValueHandler;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The producer's {@link RSocketMessageHandler}, which also counts the errors each {@code @MessageExceptionHandler}
+ * takes care of in {@code rsocket.handler.exceptions}, tagged with the handler method and the exception. Errors no
+ * handler method is found for are counted with {@code handler=none}.
+ * <p>
+ * With precompiled routes, the exact routes of its handler methods are served through a {@link RouteTable} built
+ * once the handler methods are known, in front of the generic dispatch of each connection.
+ * <p>
+ * {@link Blocking @Blocking} handler methods are invoked, and what they return subscribed to, on the blocking
+ * scheduler; without one they run where the request arrived like all others. With a response cache, the compiled
+ * {@link CachedResponse @CachedResponse} routes answer repeated requests from it.
+ */
+class ProducerMessageHandler extends RSocketMessageHandler {
+
+    private final MeterRegistry registry;
+    private boolean precompiledRoutes;
+    private RouteTable routes;
+    private Scheduler blockingScheduler;
+    private ResponseCache responseCache;
+
+    ProducerMessageHandler(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    void setPrecompiledRoutes(boolean precompiledRoutes) {
+        this.precompiledRoutes = precompiledRoutes;
+    }
+
+    void setBlockingScheduler(Scheduler blockingScheduler) {
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    Scheduler getBlockingScheduler() {
+        return this.blockingScheduler;
+    }
+
+    void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    ResponseCache getResponseCache() {
+        return this.responseCache;
+    }
+
+    RouteTable getRouteTable() {
+        return this.routes;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        if (this.precompiledRoutes) {
+            this.routes = RouteTable.compile(this);
+        }
+    }
+
+    @Override
+    public SocketAcceptor responder() {
+        SocketAcceptor responder = super.responder();
+        RouteTable routes = this.routes;
+        if (routes == null) {
+            return responder;
+        }
+        return (setupPayload, sendingRSocket) -> responder.accept(setupPayload, sendingRSocket)
+                .map(rsocket -> routes.dispatching(rsocket,
+                        mimeType(setupPayload.dataMimeType(), getDefaultDataMimeType()),
+                        mimeType(setupPayload.metadataMimeType(), getDefaultMetadataMimeType())));
+    }
+
+    @Override
+    protected Mono<Void> handleMatch(CompositeMessageCondition mapping, HandlerMethod handlerMethod,
+                                     Message<?> message) {
+        if (!blocking(handlerMethod.getMethod())) {
+            return super.handleMatch(mapping, handlerMethod, message);
+        }
+        return Mono.defer(() -> super.handleMatch(mapping, handlerMethod, message))
+                .subscribeOn(this.blockingScheduler);
+    }
+
+    /**
+     * The {@code Mono} or {@code Flux} of a blocking handler method is only subscribed to once the requester asks
+     * for it, after the method itself returned, so it is moved to the blocking scheduler on its own.
+     */
+    @Override
+    protected List<? extends HandlerMethodReturnValueHandler> initReturnValueHandlers() {
+        return super.initReturnValueHandlers().stream()
+                .map(BlockingReturnValueHandler::new)
+                .collect(Collectors.toList());
+    }
+
+    boolean blocking(Method method) {
+        return this.blockingScheduler != null && AnnotatedElementUtils.hasAnnotation(method, Blocking.class);
+    }
+
+    List<? extends HandlerMethodArgumentResolver> argumentResolvers() {
+        return initArgumentResolvers();
+    }
+
+    @Override
+    protected AbstractExceptionHandlerMethodResolver createExceptionMethodResolverFor(Class<?> beanType) {
+        return new AnnotationExceptionHandlerMethodResolver(beanType) {
+            @Override
+            public Method resolveMethod(Throwable exception) {
+                Method method = super.resolveMethod(exception);
+                counter(method, exception).increment();
+                return method;
+            }
+        };
+    }
+
+    private Counter counter(Method method, Throwable exception) {
+        String handler = method == null ? "none" : method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        return Counter.builder("rsocket.handler.exceptions")
+                .tag("handler", handler)
+                .tag("exception", exception.getClass().getSimpleName())
+                .description("Errors raised by message handlers, by the exception handler that took them")
+                .register(this.registry);
+    }
+
+    /**
+     * The MIME type a connection declared in SETUP, or the default the generic responder falls back to.
+     */
+    private static MimeType mimeType(String declared, MimeType fallback) {
+        return StringUtils.hasText(declared) ? MimeTypeUtils.parseMimeType(declared) : fallback;
+    }
+
+    private final class BlockingReturnValueHandler implements HandlerMethodReturnValueHandler {
+        private final HandlerMethodReturnValueHandler delegate;
+
+        BlockingReturnValueHandler(HandlerMethodReturnValueHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean supportsReturnType(MethodParameter returnType) {
+            return this.delegate.supportsReturnType(returnType);
+        }
+
+        @Override
+        public Mono<Void> handleReturnValue(Object returnValue, MethodParameter returnType, Message<?> message) {
+            ReactiveAdapter adapter = returnValue != null && blocking(returnType.getMethod())
+                    ? getReactiveAdapterRegistry().getAdapter(returnValue.getClass())
+                    : null;
+            if (adapter == null) {
+                return this.delegate.handleReturnValue(returnValue, returnType, message);
+            }
+            Object subscribedOn = adapter.fromPublisher(adapter.isMultiValue()
+                    ? Flux.from(adapter.toPublisher(returnValue)).subscribeOn(blockingScheduler)
+                    : Mono.from(adapter.toPublisher(returnValue)).subscribeOn(blockingScheduler));
+            return this.delegate.handleReturnValue(subscribedOn, returnType, message);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.shared.Priority;
+import com.duongnv.tutorial.rsocket.shared.PriorityClass;
+import com.duongnv.tutorial.rsocket.shared.ServerLoops;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties("producer.rsocket")
+class ProducerRSocketProperties {
+
+    private final Resume resume = new Resume();
+
+    private final Fragmentation fragmentation = new Fragmentation();
+
+    private final Lease lease = new Lease();
+
+    private final Multicast multicast = new Multicast();
+
+    private final Ticks ticks = new Ticks();
+
+    private final AuthenticationCache authenticationCache = new AuthenticationCache();
+
+    private final Metrics metrics = new Metrics();
+
+    private final Dispatch dispatch = new Dispatch();
+
+    private final BlockingHandlers blockingHandlers = new BlockingHandlers();
+
+    private final ResponseCache responseCache = new ResponseCache();
+
+    private final Ingest ingest = new Ingest();
+
+    private final Transport transport = new Transport();
+
+    private final Priorities priorities = new Priorities();
+
+    @Data
+    static class Resume {
+
+        private boolean enabled = true;
+
+        /**
+         * How long a disconnected session is kept for the consumer to resume.
+         */
+        private Duration sessionDuration = Duration.ofMinutes(2);
+
+        /**
+         * How long the replay of unacknowledged frames may take once a session resumes.
+         */
+        private Duration streamTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Upper bound on the unacknowledged frames kept per session, in direct memory.
+         */
+        private DataSize storeMaxSize = DataSize.ofMegabytes(4);
+
+        /**
+         * Frames older than this are dropped even when the store has room.
+         */
+        private Duration storeMaxAge = Duration.ofSeconds(60);
+    }
+
+    @Data
+    static class Fragmentation {
+
+        /**
+         * Largest frame written to a connection; larger payloads go out in fragments of this size. 0 turns
+         * fragmentation off.
+         */
+        private DataSize mtu = DataSize.ofKilobytes(16);
+
+        /**
+         * Largest frame the peer may send in fragments. A connection whose fragments for one stream add up to more
+         * is closed with a CONNECTION_ERROR.
+         */
+        private DataSize maxReassemblySize = DataSize.ofMegabytes(16);
+
+        /**
+         * Send the fragments of a large frame in turn with the frames of other streams instead of back to back.
+         * Resume positions need frames to complete in the order they were sent, so this only takes effect with
+         * producer.rsocket.resume.enabled=false; with resumption on, which is the default, it is ignored and a
+         * warning is logged at startup.
+         */
+        private boolean interleave = false;
+    }
+
+    @Data
+    static class Lease {
+
+        /**
+         * Admit requests through leases. Consumers must then honour leases, or all their requests are rejected.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How often each connection gets a new lease; a lease lasts for two intervals.
+         */
+        private Duration interval = Duration.ofMillis(100);
+
+        /**
+         * Concurrent request-response calls admitted before any latency has been measured.
+         */
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 1000;
+
+        /**
+         * How far the limit moves towards its new target per interval, between 0 and 1.
+         */
+        private double smoothing = 0.2;
+    }
+
+    @Data
+    static class Multicast {
+
+        /**
+         * Let subscribers of the same stream request share one upstream instead of starting one each.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Start a subscriber that joins a running stream with the last element the others received.
+         */
+        private boolean replayLast = true;
+
+        /**
+         * How long a stream keeps running after its last subscriber left.
+         */
+        private Duration grace = Duration.ofSeconds(5);
+
+        /**
+         * Elements buffered per subscriber that falls behind; the oldest are dropped beyond that.
+         */
+        private int maxBuffered = 256;
+    }
+
+    @Data
+    static class Ticks {
+
+        /**
+         * Granularity of the timer behind periodic streams; their delays are rounded up to it.
+         */
+        private Duration resolution = Duration.ofMillis(10);
+
+        /**
+         * Slots on the timing wheel. Delays longer than resolution x wheel-size take more than one turn.
+         */
+        private int wheelSize = 512;
+    }
+
+    @Data
+    static class AuthenticationCache {
+
+        /**
+         * Skip the password check for credentials that passed it within the last {@code ttl}.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Credentials remembered at most; the least recently used are forgotten first.
+         */
+        private int maxSize = 10_000;
+
+        /**
+         * How long verified credentials are trusted before the password is checked again.
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    static class Metrics {
+
+        /**
+         * Meter frames by type and requests by route.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Routes metered on their own; requests for any further route are metered together as "other".
+         */
+        private int maxRoutes = 64;
+
+        /**
+         * Publish latency histograms, for percentiles aggregated across producers.
+         */
+        private boolean histograms = true;
+    }
+
+    @Data
+    static class Dispatch {
+
+        /**
+         * Serve the exact routes of the controllers from a table compiled at startup instead of matching each
+         * request against all mappings; requests the table cannot serve still take the generic path.
+         */
+        private boolean precompiled = true;
+    }
+
+    @Data
+    static class BlockingHandlers {
+
+        /**
+         * Run {@code @Blocking} handler methods on a virtual thread each where the JVM has them (Java 21 and
+         * later); otherwise, or when off, they run on a bounded elastic pool of platform threads.
+         */
+        private boolean virtualThreads = true;
+
+        /**
+         * {@code @Blocking} invocations running at once, which is also the size of the pool without virtual
+         * threads.
+         */
+        private int maxConcurrency = 256;
+
+        /**
+         * Invocations waiting for their turn; requests beyond that are rejected with an error.
+         */
+        private int maxQueued = 10_000;
+    }
+
+    @Data
+    static class ResponseCache {
+
+        /**
+         * Serve repeated requests to {@code @CachedResponse} routes from their encoded responses. Needs
+         * {@code dispatch.precompiled}.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Upper bound on the request keys and encoded responses kept; the least recently used go first.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(16);
+
+        /**
+         * How long a response is served from the cache unless its route sets its own ttl.
+         */
+        private Duration ttl = Duration.ofSeconds(1);
+    }
+
+    @Data
+    static class Ingest {
+
+        /**
+         * Events received on the {@code ingest} route and not yet written.
+         */
+        private int capacity = 65_536;
+
+        /**
+         * What happens to events that find the queue full.
+         */
+        private IngestQueue.Overflow overflow = IngestQueue.Overflow.DROP;
+
+        /**
+         * Longest an event waits for room with the block policy before it is dropped.
+         */
+        private Duration blockTimeout = Duration.ofMillis(100);
+
+        /**
+         * With the sample policy, one in this many events is kept once the queue is half full.
+         */
+        private int sampleRate = 10;
+
+        /**
+         * Most events written to the file at once.
+         */
+        private int maxBatch = 1024;
+
+        /**
+         * Longest an event waits for its batch to fill up before the batch is written anyway.
+         */
+        private Duration maxDelay = Duration.ofMillis(10);
+
+        /**
+         * File events are appended to, one JSON object per line.
+         */
+        private String file = "telemetry.jsonl";
+    }
+
+    @Data
+    static class Transport {
+
+        /**
+         * Event-loop threads the RSocket server runs on, across all shards. 0 takes Reactor Netty's default of one
+         * per core, and at least 4.
+         */
+        private int loopThreads = 0;
+
+        private ServerLoops.Native nativeTransport = ServerLoops.Native.AUTO;
+
+        /**
+         * Listening sockets bound to the server port with SO_REUSEPORT, each accepting on its own share of the loop
+         * threads so the kernel spreads new connections across them. Needs epoll; a single socket is bound on NIO.
+         */
+        private int shards = 1;
+    }
+
+    @Data
+    static class Priorities {
+
+        /**
+         * Whether the frames of busy connections are sent by the {@link Priority} class of their route rather than
+         * in the order they were produced. Reorders streams, so it needs fragmentation.interleave on and resume
+         * off; otherwise it is ignored with a warning at startup.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Share of a busy connection each class gets while others have frames waiting too; a class missing here
+         * weighs 1.
+         */
+        private final Map<PriorityClass, Integer> weights = new EnumMap<>(Map.of(
+                PriorityClass.INTERACTIVE, 16,
+                PriorityClass.STANDARD, 4,
+                PriorityClass.BULK, 1));
+    }
+}
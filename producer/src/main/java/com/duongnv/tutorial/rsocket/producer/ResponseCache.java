@@ -0,0 +1,296 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.springframework.util.MimeType;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encoded responses of {@link CachedResponse @CachedResponse} routes, keyed by route, data MIME type and the
+ * bytes of the request data.
+ * <p>
+ * A response is kept as the buffer it was encoded into, with one reference held by the cache; a hit hands out
+ * another reference to the same bytes, so it is served without calling the handler, encoding or copying. Evicting
+ * an entry only gives up the reference of the cache, and a response still being written keeps its buffer until
+ * it is sent.
+ * <p>
+ * Each {@link Region} keeps its entries in a concurrent map, so a lookup takes no lock and only stamps the entry
+ * with the time it was used. Entries expire the {@code ttl} of their route after they were stored. Once keys and
+ * responses add up to more than {@code maxBytes}, the storing thread evicts the least recently used of a sample of
+ * {@value #SAMPLES} entries, taken from a cursor that walks the regions in turn, until they fit again; this
+ * approximates least recently used without ordering the entries on every lookup. {@code rsocket.response.cache}
+ * counts hits and misses per route, from which the hit rate follows; {@code rsocket.response.cache.evictions}
+ * counts entries dropped for size.
+ */
+class ResponseCache {
+
+    static final int SAMPLES = 8;
+
+    private final long maxBytes;
+    private final Duration defaultTtl;
+    private final List<Region> regions = new CopyOnWriteArrayList<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final MeterRegistry registry;
+    private final Counter evictions;
+    private final Object evicting = new Object();
+    private Iterator<Map.Entry<Key, Entry>> cursor = Collections.emptyIterator();
+    private Region cursorRegion;
+    private int cursorIndex;
+
+    ResponseCache(long maxBytes, Duration defaultTtl, MeterRegistry registry) {
+        this.maxBytes = maxBytes;
+        this.defaultTtl = defaultTtl;
+        this.registry = registry;
+        this.evictions = Counter.builder("rsocket.response.cache.evictions")
+                .description("Cached responses dropped to stay within the size limit")
+                .register(registry);
+        Gauge.builder("rsocket.response.cache.size", this, ResponseCache::bytes)
+                .baseUnit("bytes")
+                .description("Bytes of keys and responses in the response cache")
+                .register(registry);
+    }
+
+    /**
+     * How long responses are cached unless their route says otherwise.
+     */
+    Duration getDefaultTtl() {
+        return this.defaultTtl;
+    }
+
+    /**
+     * Where the responses of one route in one data MIME type are kept.
+     */
+    Region region(String route, MimeType mimeType, Duration ttl) {
+        Region region = new Region(route, mimeType, ttl.toNanos(), this.registry);
+        this.regions.add(region);
+        return region;
+    }
+
+    /**
+     * A new reference to the response cached for the request data, which the caller must release, or null.
+     */
+    ByteBuf get(Region region, ByteBuf request) {
+        Key key = new Key(request);
+        Entry entry = region.entries.get(key);
+        ByteBuf hit = null;
+        long now = System.nanoTime();
+        if (entry != null && now - entry.expiresAtNanos > 0) {
+            remove(region, key, entry);
+        } else if (entry != null && (hit = entry.retainedResponse()) != null) {
+            entry.usedAtNanos = now;
+        }
+        (hit != null ? region.hits : region.misses).increment();
+        return hit;
+    }
+
+    /**
+     * A copy of the request data that outlives the request, for {@link #put} once the response is encoded.
+     */
+    static ByteBuf keyOf(ByteBuf request) {
+        return Unpooled.copiedBuffer(request);
+    }
+
+    /**
+     * Caches the response to a request whose data was copied with {@link #keyOf}. The cache takes a reference of
+     * its own to the response.
+     */
+    void put(Region region, ByteBuf request, ByteBuf response) {
+        long now = System.nanoTime();
+        long size = request.readableBytes() + response.readableBytes();
+        if (size > this.maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(response.retainedDuplicate(), size, now + region.ttlNanos, now);
+        this.bytes.addAndGet(size);
+        Entry replaced = region.entries.put(new Key(request), entry);
+        if (replaced != null) {
+            discard(replaced);
+        }
+        if (this.bytes.get() > this.maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Drops all entries and their references.
+     */
+    void clear() {
+        for (Region region : this.regions) {
+            region.entries.forEach((key, entry) -> remove(region, key, entry));
+        }
+    }
+
+    long bytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * Evicts sampled entries until the cache fits in {@code maxBytes}. Only one storing thread samples at a time,
+     * since they share the cursor; lookups carry on meanwhile.
+     */
+    private void evict() {
+        synchronized (this.evicting) {
+            while (this.bytes.get() > this.maxBytes) {
+                Region victimRegion = null;
+                Map.Entry<Key, Entry> victim = null;
+                long now = System.nanoTime();
+                for (int sampled = 0; sampled < SAMPLES; sampled++) {
+                    Map.Entry<Key, Entry> candidate = next();
+                    if (candidate == null) {
+                        break;
+                    }
+                    Entry entry = candidate.getValue();
+                    if (now - entry.expiresAtNanos > 0) {
+                        remove(this.cursorRegion, candidate.getKey(), entry);
+                    } else if (victim == null || entry.usedAtNanos - victim.getValue().usedAtNanos < 0) {
+                        victimRegion = this.cursorRegion;
+                        victim = candidate;
+                    }
+                }
+                if (victim == null) {
+                    return;
+                }
+                if (remove(victimRegion, victim.getKey(), victim.getValue())) {
+                    this.evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * The entry under the cursor, moving on to the next region when one is exhausted, or null once a whole turn
+     * over the regions found none.
+     */
+    private Map.Entry<Key, Entry> next() {
+        for (int turned = 0; !this.cursor.hasNext(); turned++) {
+            if (turned > this.regions.size() || this.regions.isEmpty()) {
+                return null;
+            }
+            this.cursorIndex = (this.cursorIndex + 1) % this.regions.size();
+            this.cursorRegion = this.regions.get(this.cursorIndex);
+            this.cursor = this.cursorRegion.entries.entrySet().iterator();
+        }
+        return this.cursor.next();
+    }
+
+    /**
+     * Removes the entry if it is still the one cached for the key, so that racing removals give up the reference
+     * of the cache once.
+     */
+    private boolean remove(Region region, Key key, Entry entry) {
+        if (!region.entries.remove(key, entry)) {
+            return false;
+        }
+        discard(entry);
+        return true;
+    }
+
+    private void discard(Entry entry) {
+        this.bytes.addAndGet(-entry.size);
+        entry.release();
+    }
+
+    static final class Region {
+        private final String route;
+        private final MimeType mimeType;
+        private final long ttlNanos;
+        private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+        private final Counter hits;
+        private final Counter misses;
+
+        private Region(String route, MimeType mimeType, long ttlNanos, MeterRegistry registry) {
+            this.route = route;
+            this.mimeType = mimeType;
+            this.ttlNanos = ttlNanos;
+            this.hits = counter(route, "hit", registry);
+            this.misses = counter(route, "miss", registry);
+        }
+
+        private static Counter counter(String route, String outcome, MeterRegistry registry) {
+            return Counter.builder("rsocket.response.cache")
+                    .tag("route", route)
+                    .tag("outcome", outcome)
+                    .description("Lookups in the response cache")
+                    .register(registry);
+        }
+
+        @Override
+        public String toString() {
+            return this.route + " " + this.mimeType;
+        }
+    }
+
+    private static final class Key {
+        final ByteBuf data;
+        final int hash;
+
+        Key(ByteBuf data) {
+            this.data = data;
+            this.hash = ByteBufUtil.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ByteBufUtil.equals(((Key) other).data, this.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * A cached response with the reference of the cache to it. A lookup borrows that reference while it takes one
+     * of its own, so an entry evicted at the same time cannot release the buffer under it.
+     */
+    private static final class Entry {
+        final ByteBuf response;
+        final long size;
+        final long expiresAtNanos;
+        final AtomicInteger references = new AtomicInteger(1);
+        volatile long usedAtNanos;
+
+        Entry(ByteBuf response, long size, long expiresAtNanos, long usedAtNanos) {
+            this.response = response;
+            this.size = size;
+            this.expiresAtNanos = expiresAtNanos;
+            this.usedAtNanos = usedAtNanos;
+        }
+
+        /**
+         * A new reference to the response, or null if the entry was given up in the meantime.
+         */
+        ByteBuf retainedResponse() {
+            int references;
+            do {
+                references = this.references.get();
+                if (references == 0) {
+                    return null;
+                }
+            } while (!this.references.compareAndSet(references, references + 1));
+            ByteBuf response = this.response.retainedDuplicate();
+            release();
+            return response;
+        }
+
+        void release() {
+            if (this.references.decrementAndGet() == 0) {
+                this.response.release();
+            }
+        }
+    }
+}
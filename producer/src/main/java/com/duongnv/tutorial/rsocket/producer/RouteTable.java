@@ -0,0 +1,663 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.frame.FrameType;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.RSocketProxy;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ReactiveAdapter;
+import org.springframework.core.ReactiveAdapterRegistry;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.messaging.handler.CompositeMessageCondition;
+import org.springframework.messaging.handler.DestinationPatternsMessageCondition;
+import org.springframework.messaging.handler.HandlerMethod;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.reactive.PayloadMethodArgumentResolver;
+import org.springframework.messaging.handler.invocation.AbstractExceptionHandlerMethodResolver;
+import org.springframework.messaging.handler.invocation.reactive.HandlerMethodArgumentResolver;
+import org.springframework.messaging.rsocket.PayloadUtils;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.messaging.rsocket.annotation.support.RSocketFrameTypeMessageCondition;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.messaging.handler.invocation.reactive.AuthenticationPrincipalArgumentResolver;
+import org.springframework.util.MimeType;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.RouteMatcher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The {@code @MessageMapping} routes of the producer compiled at startup into a table that request-response and
+ * request-stream frames are dispatched through without the generic {@code RSocketMessageHandler} machinery.
+ * <p>
+ * The table is keyed by the bytes of the route as they arrive in the routing metadata, so a lookup neither decodes
+ * the route nor allocates, and each handler method is called through an invoker generated for it instead of by
+ * reflection. Arguments and return values are decoded and encoded with the same codecs as before, and an error
+ * before the first element still goes to the {@code @MessageExceptionHandler} of the controller.
+ * <p>
+ * Only what can be resolved once at startup is compiled: exact routes, handler methods with no argument, a payload
+ * argument or an {@code @AuthenticationPrincipal Mono}, and exception handlers that only take the exception. Any
+ * other request, including every fire-and-forget, channel and metadata push, goes to the generic handler as before.
+ * {@link Blocking @Blocking} methods are invoked on the blocking scheduler of the handler, as on the generic path,
+ * and the encoded responses of {@link CachedResponse @CachedResponse} request-response routes are served from the
+ * {@link ResponseCache} of the handler while they last.
+ */
+@Slf4j
+class RouteTable {
+
+    private static final byte ROUTING = WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getIdentifier();
+    private static final String ROUTING_MIME_TYPE = WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getString();
+    private static final String COMPOSITE_MIME_TYPE = WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString();
+
+    private final RSocketStrategies strategies;
+    private final ResponseCache responseCache;
+    private final ByteBuf[] keys;
+    private final Compiled[] requestResponse;
+    private final Compiled[] requestStream;
+    private final int mask;
+    private final Map<MimeType, Bindings> bindings = new ConcurrentHashMap<>();
+
+    private RouteTable(RSocketStrategies strategies, ResponseCache responseCache, Map<String, Compiled[]> routes) {
+        int capacity = Integer.highestOneBit(Math.max(routes.size(), 1) * 4 - 1) << 1;
+        this.strategies = strategies;
+        this.responseCache = responseCache;
+        this.keys = new ByteBuf[capacity];
+        this.requestResponse = new Compiled[capacity];
+        this.requestStream = new Compiled[capacity];
+        this.mask = capacity - 1;
+        routes.forEach((route, byFrameType) -> {
+            ByteBuf key = Unpooled.wrappedBuffer(route.getBytes(StandardCharsets.UTF_8));
+            int slot = hash(key, 0, key.readableBytes()) & this.mask;
+            while (this.keys[slot] != null) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[slot] = key;
+            this.requestResponse[slot] = byFrameType[0];
+            this.requestStream[slot] = byFrameType[1];
+        });
+    }
+
+    /**
+     * Compiles the mappings of the handler that qualify; the handler must have detected its handler methods.
+     */
+    static RouteTable compile(ProducerMessageHandler handler) {
+        List<? extends HandlerMethodArgumentResolver> resolvers = handler.argumentResolvers();
+        RouteMatcher matcher = handler.getRouteMatcher();
+        Map<Class<?>, AbstractExceptionHandlerMethodResolver> exceptions = new ConcurrentHashMap<>();
+        Map<String, Compiled[]> routes = new LinkedHashMap<>();
+        Set<String> excluded = new HashSet<>();
+        handler.getHandlerMethods().forEach((mapping, handlerMethod) -> {
+            Set<String> patterns = patterns(mapping);
+            Set<FrameType> frameTypes = frameTypes(mapping);
+            String refused = refusal(handlerMethod, resolvers);
+            for (String route : patterns) {
+                if (matcher.isPattern(route) || route.getBytes(StandardCharsets.UTF_8).length > 255) {
+                    log.debug("Route {} is left to the generic handler: not an exact route", route);
+                    continue;
+                }
+                if (refused != null) {
+                    log.debug("Route {} is left to the generic handler: {}", route, refused);
+                    excluded.add(route);
+                    continue;
+                }
+                Compiled[] byFrameType = routes.computeIfAbsent(route, r -> new Compiled[2]);
+                Compiled compiled = new Compiled(route, handlerMethod.createWithResolvedBean(), resolvers, exceptions,
+                        handler, handler.getReactiveAdapterRegistry());
+                if (!compiled.invocable()) {
+                    log.debug("Route {} is left to the generic handler: no invoker could be generated", route);
+                    excluded.add(route);
+                    continue;
+                }
+                if (frameTypes.contains(FrameType.REQUEST_RESPONSE) && byFrameType[0] != null
+                        || frameTypes.contains(FrameType.REQUEST_STREAM) && byFrameType[1] != null) {
+                    log.debug("Route {} is left to the generic handler: mapped more than once", route);
+                    excluded.add(route);
+                    continue;
+                }
+                if (frameTypes.contains(FrameType.REQUEST_RESPONSE)) {
+                    byFrameType[0] = compiled;
+                }
+                if (frameTypes.contains(FrameType.REQUEST_STREAM)) {
+                    byFrameType[1] = compiled;
+                }
+            }
+        });
+        routes.keySet().removeAll(excluded);
+        routes.values().removeIf(byFrameType -> byFrameType[0] == null && byFrameType[1] == null);
+        log.info("Compiled {} routes for direct dispatch: {}", routes.size(), routes.keySet());
+        return new RouteTable(handler.getRSocketStrategies(), handler.getResponseCache(), routes);
+    }
+
+    Set<String> routes() {
+        Set<String> routes = new HashSet<>();
+        for (ByteBuf key : this.keys) {
+            if (key != null) {
+                routes.add(key.toString(StandardCharsets.UTF_8));
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Puts the table in front of the generic responder of one connection. Connections whose metadata cannot carry
+     * a route, or whose data MIME type none of the compiled routes can be served in, keep the generic responder.
+     */
+    RSocket dispatching(RSocket responder, MimeType dataMimeType, MimeType metadataMimeType) {
+        boolean composite = COMPOSITE_MIME_TYPE.equals(metadataMimeType.toString());
+        if (!composite && !ROUTING_MIME_TYPE.equals(metadataMimeType.toString())) {
+            return responder;
+        }
+        Bindings bindings = this.bindings.computeIfAbsent(dataMimeType, this::bind);
+        return bindings.empty ? responder : new Dispatcher(responder, bindings, composite);
+    }
+
+    private Bindings bind(MimeType dataMimeType) {
+        Bound[] requestResponse = new Bound[this.keys.length];
+        Bound[] requestStream = new Bound[this.keys.length];
+        boolean empty = true;
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.requestResponse[slot] != null) {
+                requestResponse[slot] = this.requestResponse[slot].bind(this.strategies, dataMimeType,
+                        this.responseCache);
+                empty &= requestResponse[slot] == null;
+            }
+            if (this.requestStream[slot] != null) {
+                requestStream[slot] = this.requestStream[slot].bind(this.strategies, dataMimeType, null);
+                empty &= requestStream[slot] == null;
+            }
+        }
+        return new Bindings(requestResponse, requestStream, empty);
+    }
+
+    /**
+     * Slot of the route whose first tag starts at {@code index}, the length byte, or -1.
+     */
+    private int slot(ByteBuf metadata, int index) {
+        int length = metadata.getUnsignedByte(index);
+        int hash = hash(metadata, index + 1, length);
+        for (int slot = hash & this.mask; this.keys[slot] != null; slot = (slot + 1) & this.mask) {
+            ByteBuf key = this.keys[slot];
+            if (key.readableBytes() == length && ByteBufUtil.equals(key, 0, metadata, index + 1, length)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(ByteBuf bytes, int index, int length) {
+        int hash = 1;
+        for (int i = index; i < index + length; i++) {
+            hash = 31 * hash + bytes.getByte(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Index of the length byte of the first routing tag in composite metadata, or -1 if there is none or the
+     * metadata is malformed, which the generic handler then reports.
+     */
+    private static int firstTag(ByteBuf metadata) {
+        int index = metadata.readerIndex();
+        int end = metadata.writerIndex();
+        while (index + 4 <= end) {
+            byte mimeType = metadata.getByte(index);
+            boolean wellKnown = (mimeType & 0x80) != 0;
+            index += wellKnown ? 1 : 2 + (mimeType & 0xFF);
+            if (index + 3 > end) {
+                return -1;
+            }
+            int length = metadata.getUnsignedMedium(index);
+            index += 3;
+            if (index + length > end) {
+                return -1;
+            }
+            if (wellKnown && (mimeType & 0x7F) == ROUTING) {
+                return routingTag(metadata, index, index + length);
+            }
+            index += length;
+        }
+        return -1;
+    }
+
+    private static int routingTag(ByteBuf metadata, int index, int end) {
+        return index < end && index + 1 + metadata.getUnsignedByte(index) <= end ? index : -1;
+    }
+
+    private static Set<String> patterns(CompositeMessageCondition mapping) {
+        DestinationPatternsMessageCondition patterns = mapping.getCondition(DestinationPatternsMessageCondition.class);
+        return patterns != null ? patterns.getPatterns() : Collections.emptySet();
+    }
+
+    private static Set<FrameType> frameTypes(CompositeMessageCondition mapping) {
+        RSocketFrameTypeMessageCondition frameTypes = mapping.getCondition(RSocketFrameTypeMessageCondition.class);
+        return frameTypes != null ? frameTypes.getFrameTypes() : Collections.emptySet();
+    }
+
+    /**
+     * Why a handler method cannot be compiled, or null if it can.
+     */
+    private static String refusal(HandlerMethod handlerMethod, List<? extends HandlerMethodArgumentResolver> resolvers) {
+        MethodParameter[] parameters = handlerMethod.getMethodParameters();
+        if (parameters.length > 1) {
+            return "more than one argument";
+        }
+        if (handlerMethod.getMethod().getReturnType().isPrimitive()) {
+            return "primitive return type";
+        }
+        if (parameters.length == 1 && Argument.of(parameters[0], resolvers) == null) {
+            return "argument " + parameters[0].getParameterType().getSimpleName() + " needs the generic resolvers";
+        }
+        Method[] exceptionHandlers = MethodIntrospector.selectMethods(handlerMethod.getBeanType(),
+                (ReflectionUtils.MethodFilter) method ->
+                        AnnotatedElementUtils.hasAnnotation(method, MessageExceptionHandler.class))
+                .toArray(new Method[0]);
+        for (Method exceptionHandler : exceptionHandlers) {
+            for (Class<?> type : exceptionHandler.getParameterTypes()) {
+                if (!Throwable.class.isAssignableFrom(type)) {
+                    return "exception handler " + exceptionHandler.getName() + " takes more than the exception";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * How the single argument of a handler method is resolved.
+     */
+    private enum Argument {
+        PAYLOAD,
+        PRINCIPAL;
+
+        static Argument of(MethodParameter parameter, List<? extends HandlerMethodArgumentResolver> resolvers) {
+            HandlerMethodArgumentResolver resolver = resolvers.stream()
+                    .filter(candidate -> candidate.supportsParameter(parameter))
+                    .findFirst()
+                    .orElse(null);
+            if (resolver instanceof PayloadMethodArgumentResolver) {
+                Class<?> type = parameter.getParameterType();
+                boolean plain = parameter.getParameterAnnotations().length == 0;
+                boolean reactive = ReactiveAdapterRegistry.getSharedInstance().getAdapter(type) != null;
+                return plain && !reactive && !type.isPrimitive() ? PAYLOAD : null;
+            }
+            if (resolver instanceof AuthenticationPrincipalArgumentResolver) {
+                AuthenticationPrincipal principal = parameter.getParameterAnnotation(AuthenticationPrincipal.class);
+                boolean plain = principal != null && principal.expression().isEmpty() && !principal.errorOnInvalidType();
+                return plain && parameter.getParameterType() == Mono.class ? PRINCIPAL : null;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A handler method with everything about it that does not depend on the connection.
+     */
+    private static final class Compiled {
+        private final String route;
+        private final Object bean;
+        private final Method method;
+        private final Function<Object, Object> invoker;
+        private final Argument argument;
+        private final ResolvableType parameterType;
+        private final Mono<Object> principal;
+        private final AbstractExceptionHandlerMethodResolver exceptions;
+        private final ReactiveAdapterRegistry adapters;
+        private final Scheduler blockingScheduler;
+        private final Duration cacheTtl;
+
+        Compiled(String route,
+                 HandlerMethod handlerMethod,
+                 List<? extends HandlerMethodArgumentResolver> resolvers,
+                 Map<Class<?>, AbstractExceptionHandlerMethodResolver> exceptions,
+                 ProducerMessageHandler handler,
+                 ReactiveAdapterRegistry adapters) {
+            this.route = route;
+            this.bean = handlerMethod.getBean();
+            this.method = handlerMethod.getMethod();
+            this.invoker = invoker(this.bean, this.method);
+            MethodParameter[] parameters = handlerMethod.getMethodParameters();
+            this.argument = parameters.length == 1 ? Argument.of(parameters[0], resolvers) : null;
+            this.parameterType = parameters.length == 1 ? ResolvableType.forMethodParameter(parameters[0]) : null;
+            this.principal = this.argument == Argument.PRINCIPAL ? principal(this.parameterType.getGeneric()) : null;
+            this.exceptions = exceptions.computeIfAbsent(handlerMethod.getBeanType(),
+                    handler::createExceptionMethodResolverFor);
+            this.adapters = adapters;
+            this.blockingScheduler = handler.blocking(this.method) ? handler.getBlockingScheduler() : null;
+            this.cacheTtl = cacheTtl(route, this.method, this.argument, handler.getResponseCache());
+        }
+
+        boolean invocable() {
+            return this.invoker != null;
+        }
+
+        /**
+         * How long responses of the route are cached, or null if they are not.
+         */
+        private static Duration cacheTtl(String route, Method method, Argument argument, ResponseCache cache) {
+            CachedResponse cached = AnnotatedElementUtils.findMergedAnnotation(method, CachedResponse.class);
+            if (cached == null || cache == null) {
+                return null;
+            }
+            if (argument == Argument.PRINCIPAL) {
+                log.warn("Responses of route {} are not cached: they depend on the principal", route);
+                return null;
+            }
+            return cached.ttl().isEmpty() ? cache.getDefaultTtl() : DurationStyle.detectAndParse(cached.ttl());
+        }
+
+        Bound bind(RSocketStrategies strategies, MimeType dataMimeType, ResponseCache cache) {
+            Decoder<?> decoder = null;
+            if (this.argument == Argument.PAYLOAD) {
+                decoder = strategies.decoders().stream()
+                        .filter(candidate -> candidate.canDecode(this.parameterType, dataMimeType))
+                        .findFirst()
+                        .orElse(null);
+                if (decoder == null) {
+                    return null;
+                }
+            }
+            Reply reply = Reply.of(ResolvableType.forMethodReturnType(this.method), this.adapters, strategies,
+                    dataMimeType);
+            ResponseCache.Region cached = cache != null && this.cacheTtl != null
+                    ? cache.region(this.route, dataMimeType, this.cacheTtl)
+                    : null;
+            return reply == null ? null : new Bound(this, decoder, reply, strategies, dataMimeType, cache, cached);
+        }
+
+        /**
+         * A function calling the method on the bean directly, spun at runtime like the one behind a method
+         * reference, or null if the method cannot be reached that way.
+         */
+        @SuppressWarnings("unchecked")
+        private static Function<Object, Object> invoker(Object bean, Method method) {
+            try {
+                Class<?> type = method.getDeclaringClass();
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                MethodHandle target = lookup.unreflect(method);
+                if (method.getParameterCount() == 0) {
+                    Supplier<Object> supplier = (Supplier<Object>) LambdaMetafactory.metafactory(lookup, "get",
+                            MethodType.methodType(Supplier.class, type),
+                            MethodType.methodType(Object.class),
+                            target,
+                            MethodType.methodType(method.getReturnType())).getTarget().invoke(bean);
+                    return argument -> supplier.get();
+                }
+                return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class, type),
+                        MethodType.methodType(Object.class, Object.class),
+                        target,
+                        MethodType.methodType(method.getReturnType(), method.getParameterTypes()[0]))
+                        .getTarget().invoke(bean);
+            } catch (Throwable ex) {
+                log.debug("No invoker for {}", method, ex);
+                return null;
+            }
+        }
+
+        /**
+         * The principal of the caller as {@code AuthenticationPrincipalArgumentResolver} resolves it, read from
+         * the security context when the handler subscribes to it.
+         */
+        private static Mono<Object> principal(ResolvableType type) {
+            Class<?> principalType = type.toClass();
+            return ReactiveSecurityContextHolder.getContext()
+                    .flatMap(context -> Mono.justOrEmpty(context.getAuthentication()))
+                    .flatMap(authentication -> Mono.justOrEmpty(authentication.getPrincipal()))
+                    .filter(principalType::isInstance);
+        }
+    }
+
+    /**
+     * How the return value of a method is turned into payloads in one data MIME type.
+     */
+    private static final class Reply {
+        private final ReactiveAdapter adapter;
+        private final ResolvableType elementType;
+        private final Encoder<Object> encoder;
+        private final DataBufferFactory bufferFactory;
+        private final MimeType mimeType;
+
+        private Reply(ReactiveAdapter adapter, ResolvableType elementType, Encoder<Object> encoder,
+                      DataBufferFactory bufferFactory, MimeType mimeType) {
+            this.adapter = adapter;
+            this.elementType = elementType;
+            this.encoder = encoder;
+            this.bufferFactory = bufferFactory;
+            this.mimeType = mimeType;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Reply of(ResolvableType returnType, ReactiveAdapterRegistry adapters, RSocketStrategies strategies,
+                        MimeType mimeType) {
+            ReactiveAdapter adapter = adapters.getAdapter(returnType.resolve());
+            ResolvableType elementType = adapter != null ? returnType.getGeneric() : returnType;
+            if (adapter != null && adapter.isNoValue() || elementType.resolve(Object.class) == Void.class) {
+                return null;
+            }
+            Encoder<?> encoder = strategies.encoders().stream()
+                    .filter(candidate -> candidate.canEncode(elementType, mimeType))
+                    .findFirst()
+                    .orElse(null);
+            return encoder == null ? null : new Reply(adapter, elementType, (Encoder<Object>) encoder,
+                    strategies.dataBufferFactory(), mimeType);
+        }
+
+        Publisher<?> publisher(Object result) {
+            if (result == null) {
+                return Mono.empty();
+            }
+            return this.adapter != null ? this.adapter.toPublisher(result) : Mono.just(result);
+        }
+
+        Payload encode(Object value) {
+            return PayloadUtils.createPayload(this.encoder.encodeValue(
+                    value, this.bufferFactory, this.elementType, this.mimeType, Collections.emptyMap()));
+        }
+    }
+
+    /**
+     * A compiled handler method with the codecs of one data MIME type.
+     */
+    private static final class Bound {
+        private final Compiled compiled;
+        private final Decoder<?> decoder;
+        private final Reply reply;
+        private final RSocketStrategies strategies;
+        private final MimeType mimeType;
+        private final ResponseCache cache;
+        private final ResponseCache.Region cached;
+
+        Bound(Compiled compiled, Decoder<?> decoder, Reply reply, RSocketStrategies strategies, MimeType mimeType,
+              ResponseCache cache, ResponseCache.Region cached) {
+            this.compiled = compiled;
+            this.decoder = decoder;
+            this.reply = reply;
+            this.strategies = strategies;
+            this.mimeType = mimeType;
+            this.cache = cache;
+            this.cached = cached;
+        }
+
+        /**
+         * A payload argument cannot be decoded from empty data, which the generic handler knows how to complain
+         * about.
+         */
+        boolean accepts(Payload payload) {
+            return this.compiled.argument != Argument.PAYLOAD || payload.data().isReadable();
+        }
+
+        Mono<Payload> requestResponse(Payload payload) {
+            ByteBuf key = null;
+            if (this.cached != null) {
+                ByteBuf hit = this.cache.get(this.cached, payload.data());
+                if (hit != null) {
+                    payload.release();
+                    return Mono.just(ByteBufPayload.create(hit));
+                }
+                key = ResponseCache.keyOf(payload.data());
+            }
+            Mono<Payload> response = blocking(Mono.defer(() -> Mono.from(this.reply.publisher(invoke(payload)))), payload)
+                    .map(this.reply::encode);
+            if (key != null) {
+                ByteBuf request = key;
+                response = response.doOnNext(encoded -> this.cache.put(this.cached, request, encoded.data()));
+            }
+            return response.onErrorResume(ex -> Mono.from(handle(ex)));
+        }
+
+        /**
+         * As with the generic handler, only an error before the first element goes to the exception handler;
+         * later ones end the stream.
+         */
+        Flux<Payload> requestStream(Payload payload) {
+            return blocking(Flux.defer(() -> Flux.from(this.reply.publisher(invoke(payload)))), payload)
+                    .map(this.reply::encode)
+                    .switchOnFirst((first, all) -> first.isOnError() ? handle(first.getThrowable()) : all);
+        }
+
+        /**
+         * Moves the invocation of a {@code @Blocking} method and the subscription to its result to the blocking
+         * scheduler. A request the scheduler rejects never reaches the method, so its payload is released here.
+         */
+        private Mono<Object> blocking(Mono<Object> invocation, Payload payload) {
+            Scheduler scheduler = this.compiled.blockingScheduler;
+            return scheduler == null ? invocation : invocation.subscribeOn(scheduler)
+                    .doOnError(RejectedExecutionException.class, ex -> release(payload));
+        }
+
+        private Flux<Object> blocking(Flux<Object> invocation, Payload payload) {
+            Scheduler scheduler = this.compiled.blockingScheduler;
+            return scheduler == null ? invocation : invocation.subscribeOn(scheduler)
+                    .doOnError(RejectedExecutionException.class, ex -> release(payload));
+        }
+
+        private static void release(Payload payload) {
+            if (payload.refCnt() > 0) {
+                payload.release();
+            }
+        }
+
+        private Object invoke(Payload payload) {
+            return this.compiled.invoker.apply(argument(payload));
+        }
+
+        private Object argument(Payload payload) {
+            if (this.compiled.argument == Argument.PAYLOAD) {
+                DataBuffer data = PayloadUtils.retainDataAndReleasePayload(payload, this.strategies.dataBufferFactory());
+                return this.decoder.decode(data, this.compiled.parameterType, this.mimeType, Collections.emptyMap());
+            }
+            payload.release();
+            return this.compiled.principal;
+        }
+
+        private Flux<Payload> handle(Throwable ex) {
+            Method method = this.compiled.exceptions.resolveMethod(ex);
+            if (method == null) {
+                return Flux.error(ex);
+            }
+            Reply reply = Reply.of(ResolvableType.forMethodReturnType(method), this.compiled.adapters,
+                    this.strategies, this.mimeType);
+            if (reply == null) {
+                return Flux.error(ex);
+            }
+            Object[] arguments = new Object[method.getParameterCount()];
+            for (int i = 0; i < arguments.length; i++) {
+                Class<?> type = method.getParameterTypes()[i];
+                arguments[i] = type.isInstance(ex) ? ex : type.isInstance(ex.getCause()) ? ex.getCause() : null;
+            }
+            try {
+                ReflectionUtils.makeAccessible(method);
+                return Flux.from(reply.publisher(method.invoke(this.compiled.bean, arguments))).map(reply::encode);
+            } catch (InvocationTargetException failed) {
+                return Flux.error(failed.getTargetException());
+            } catch (IllegalAccessException failed) {
+                return Flux.error(failed);
+            }
+        }
+    }
+
+    /**
+     * The compiled routes bound to one data MIME type, in the slots of the table.
+     */
+    private static final class Bindings {
+        private final Bound[] requestResponse;
+        private final Bound[] requestStream;
+        private final boolean empty;
+
+        Bindings(Bound[] requestResponse, Bound[] requestStream, boolean empty) {
+            this.requestResponse = requestResponse;
+            this.requestStream = requestStream;
+            this.empty = empty;
+        }
+    }
+
+    private final class Dispatcher extends RSocketProxy {
+        private final Bindings bindings;
+        private final boolean composite;
+
+        Dispatcher(RSocket source, Bindings bindings, boolean composite) {
+            super(source);
+            this.bindings = bindings;
+            this.composite = composite;
+        }
+
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+            int slot = slot(payload);
+            Bound bound = slot < 0 ? null : this.bindings.requestResponse[slot];
+            return bound != null && bound.accepts(payload) ? bound.requestResponse(payload) : super.requestResponse(payload);
+        }
+
+        @Override
+        public Flux<Payload> requestStream(Payload payload) {
+            int slot = slot(payload);
+            Bound bound = slot < 0 ? null : this.bindings.requestStream[slot];
+            return bound != null && bound.accepts(payload) ? bound.requestStream(payload) : super.requestStream(payload);
+        }
+
+        private int slot(Payload payload) {
+            if (!payload.hasMetadata()) {
+                return -1;
+            }
+            ByteBuf metadata = payload.metadata();
+            int tag = this.composite
+                    ? firstTag(metadata)
+                    : routingTag(metadata, metadata.readerIndex(), metadata.writerIndex());
+            return tag < 0 ? -1 : RouteTable.this.slot(metadata, tag);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.shared.ServerLoops;
+import io.rsocket.RSocketFactory;
+import io.rsocket.SocketAcceptor;
+import org.springframework.boot.rsocket.netty.NettyRSocketServer;
+import org.springframework.boot.rsocket.server.ConfigurableRSocketServerFactory;
+import org.springframework.boot.rsocket.server.RSocketServer;
+import org.springframework.boot.rsocket.server.RSocketServerFactory;
+import org.springframework.boot.rsocket.server.ServerRSocketFactoryProcessor;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stands in for Boot's {@code NettyRSocketServerFactory}, with the server on {@link ServerLoops} of its own
+ * rather than on the shared Reactor Netty resources.
+ * <p>
+ * Every shard is a {@link NettyRSocketServer} accepting on the same port, set up with all the
+ * {@link ServerRSocketFactoryProcessor}s, so resumption, fragmentation, metering and leases apply to whichever
+ * socket a connection lands on.
+ */
+class ShardedRSocketServerFactory implements RSocketServerFactory, ConfigurableRSocketServerFactory {
+
+    private final ProducerRSocketProperties.Transport properties;
+
+    private final List<ServerRSocketFactoryProcessor> processors;
+
+    private int port = 9898;
+
+    private InetAddress address;
+
+    private RSocketServer.Transport transport = RSocketServer.Transport.TCP;
+
+    ShardedRSocketServerFactory(ProducerRSocketProperties.Transport properties,
+                                List<ServerRSocketFactoryProcessor> processors) {
+        this.properties = properties;
+        this.processors = processors;
+    }
+
+    @Override
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void setAddress(InetAddress address) {
+        this.address = address;
+    }
+
+    @Override
+    public void setTransport(RSocketServer.Transport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public RSocketServer create(SocketAcceptor acceptor) {
+        ServerLoops loops = new ServerLoops("rsocket", this.properties.getLoopThreads(),
+                this.properties.getNativeTransport(), this.properties.getShards());
+        InetSocketAddress address = this.address != null
+                ? new InetSocketAddress(this.address, this.port)
+                : new InetSocketAddress(this.port);
+        return new ShardedRSocketServer(loops, address, acceptor);
+    }
+
+    private class ShardedRSocketServer implements RSocketServer {
+
+        private final ServerLoops loops;
+        private final InetSocketAddress address;
+        private final SocketAcceptor acceptor;
+        private final List<NettyRSocketServer> shards = new ArrayList<>();
+
+        ShardedRSocketServer(ServerLoops loops, InetSocketAddress address, SocketAcceptor acceptor) {
+            this.loops = loops;
+            this.address = address;
+            this.acceptor = acceptor;
+        }
+
+        /**
+         * Starts the first shard on the configured address and the others on the port it ended up with, so port
+         * 0 works too.
+         */
+        @Override
+        public void start() {
+            try {
+                InetSocketAddress bound = this.address;
+                for (int shard = 0; shard < this.loops.shards(); shard++) {
+                    NettyRSocketServer server = shard(shard, bound);
+                    this.shards.add(server);
+                    server.start();
+                    bound = new InetSocketAddress(this.address.getAddress(), server.address().getPort());
+                }
+            } catch (RuntimeException ex) {
+                stop();
+                throw ex;
+            }
+        }
+
+        // no lifecycle timeout, as with Boot's own factory: starting and stopping wait as long as they take
+        private NettyRSocketServer shard(int shard, InetSocketAddress address) {
+            RSocketFactory.ServerRSocketFactory factory = RSocketFactory.receive();
+            for (ServerRSocketFactoryProcessor processor : ShardedRSocketServerFactory.this.processors) {
+                factory = processor.process(factory);
+            }
+            return new NettyRSocketServer(factory
+                    .acceptor(this.acceptor)
+                    .transport(this.loops.transport(ShardedRSocketServerFactory.this.transport, shard, address))
+                    .start(), null);
+        }
+
+        @Override
+        public void stop() {
+            try {
+                this.shards.forEach(NettyRSocketServer::stop);
+            } finally {
+                this.shards.clear();
+                this.loops.dispose();
+            }
+        }
+
+        @Override
+        public InetSocketAddress address() {
+            return this.shards.isEmpty() ? null : this.shards.get(0).address();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BlockingSchedulerTests {
+
+    @Test
+    void usesVirtualThreadsOnlyWhereTheJvmHasThem() {
+        BlockingScheduler blocking = new BlockingScheduler(true, 4, 4, "blocking-test");
+        try {
+            assertThat(blocking.isVirtual()).isEqualTo(Runtime.version().feature() >= 21);
+            StepVerifier.create(Mono.fromSupplier(() -> Thread.currentThread().getName())
+                    .subscribeOn(blocking.scheduler()))
+                    .assertNext(thread -> assertThat(thread).startsWith("blocking-test-"))
+                    .verifyComplete();
+        } finally {
+            blocking.dispose();
+        }
+    }
+
+    @Test
+    void runsNoMoreThanMaxConcurrencyAtOnceAndRejectsBeyondTheQueue() throws InterruptedException {
+        ExecutorService threadPerTask = Executors.newCachedThreadPool();
+        BlockingScheduler blocking = new BlockingScheduler(threadPerTask, 2, 1, "blocking-test");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        Runnable task = () -> {
+            mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            done.countDown();
+        };
+        try {
+            for (int i = 0; i < 3; i++) {
+                blocking.scheduler().schedule(task);
+            }
+            assertThatThrownBy(() -> blocking.scheduler().schedule(task))
+                    .isInstanceOf(RejectedExecutionException.class);
+
+            release.countDown();
+            assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(mostRunning.get()).isEqualTo(2);
+        } finally {
+            blocking.dispose();
+        }
+        assertThat(threadPerTask.isShutdown()).isTrue();
+    }
+}
@@ -0,0 +1,132 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingAuthenticationManagerTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final Map<String, UserDetails> users = new ConcurrentHashMap<>();
+    private final ReactiveUserDetailsService userDetails = name -> Mono.justOrEmpty(this.users.get(name));
+    private final AtomicInteger passwordChecks = new AtomicInteger();
+    private final ReactiveAuthenticationManager checkPassword = authentication -> {
+        this.passwordChecks.incrementAndGet();
+        return new UserDetailsRepositoryReactiveAuthenticationManager(this.userDetails).authenticate(authentication);
+    };
+
+    CachingAuthenticationManagerTests() {
+        user("user", "pw", "USER");
+        user("admin", "pw", "ADMIN");
+    }
+
+    @Test
+    void repeatedCredentialsAreCheckedOnce() {
+        CachingAuthenticationManager manager = manager(10, Duration.ofMinutes(5));
+
+        StepVerifier.create(manager.authenticate(token("user", "pw")))
+                .assertNext(authentication -> assertThat(authentication.getName()).isEqualTo("user"))
+                .verifyComplete();
+        StepVerifier.create(manager.authenticate(token("user", "pw")))
+                .assertNext(authentication -> assertThat(authentication.getName()).isEqualTo("user"))
+                .verifyComplete();
+
+        assertThat(this.passwordChecks).hasValue(1);
+        assertThat(this.meters.get("rsocket.authentication.cache").tag("outcome", "hit").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void wrongPasswordIsNeitherAcceptedNorCached() {
+        CachingAuthenticationManager manager = manager(10, Duration.ofMinutes(5));
+        manager.authenticate(token("user", "pw")).block();
+
+        StepVerifier.create(manager.authenticate(token("user", "wrong")))
+                .verifyError(BadCredentialsException.class);
+        StepVerifier.create(manager.authenticate(token("user", "wrong")))
+                .verifyError(BadCredentialsException.class);
+
+        assertThat(this.passwordChecks).hasValue(3);
+        assertThat(manager.size()).isEqualTo(1);
+    }
+
+    @Test
+    void changedUserIsCheckedAgain() {
+        CachingAuthenticationManager manager = manager(10, Duration.ofMinutes(5));
+        manager.authenticate(token("user", "pw")).block();
+
+        user("user", "secret", "USER");
+
+        StepVerifier.create(manager.authenticate(token("user", "pw")))
+                .verifyError(BadCredentialsException.class);
+        StepVerifier.create(manager.authenticate(token("user", "secret")))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(this.passwordChecks).hasValue(3);
+    }
+
+    @Test
+    void removedUserIsRejected() {
+        CachingAuthenticationManager manager = manager(10, Duration.ofMinutes(5));
+        manager.authenticate(token("user", "pw")).block();
+
+        this.users.remove("user");
+
+        StepVerifier.create(manager.authenticate(token("user", "pw")))
+                .verifyError(BadCredentialsException.class);
+        assertThat(manager.size()).isZero();
+    }
+
+    @Test
+    void expiredCredentialsAreCheckedAgain() throws InterruptedException {
+        CachingAuthenticationManager manager = manager(10, Duration.ofMillis(1));
+        manager.authenticate(token("user", "pw")).block();
+
+        Thread.sleep(5);
+        Authentication again = manager.authenticate(token("user", "pw")).block();
+
+        assertThat(again.getName()).isEqualTo("user");
+        assertThat(this.passwordChecks).hasValue(2);
+    }
+
+    @Test
+    void leastRecentlyUsedCredentialsAreForgottenFirst() {
+        CachingAuthenticationManager manager = manager(1, Duration.ofMinutes(5));
+        manager.authenticate(token("user", "pw")).block();
+        manager.authenticate(token("admin", "pw")).block();
+        manager.authenticate(token("admin", "pw")).block();
+        manager.authenticate(token("user", "pw")).block();
+
+        assertThat(manager.size()).isEqualTo(1);
+        assertThat(this.passwordChecks).hasValue(3);
+    }
+
+    private CachingAuthenticationManager manager(int maxSize, Duration ttl) {
+        return new CachingAuthenticationManager(this.checkPassword, this.userDetails, maxSize, ttl, this.meters);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void user(String name, String password, String role) {
+        this.users.put(name, User.withDefaultPasswordEncoder().username(name).password(password).roles(role).build());
+    }
+
+    private static UsernamePasswordAuthenticationToken token(String name, String password) {
+        return new UsernamePasswordAuthenticationToken(name, password);
+    }
+}
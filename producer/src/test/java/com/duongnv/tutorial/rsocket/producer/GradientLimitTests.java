@@ -0,0 +1,75 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class GradientLimitTests {
+
+    private static final long MILLIS = 1_000_000;
+
+    @Test
+    void growsWhileLatencyHoldsAndTheLimitIsUsed() {
+        GradientLimit limit = new GradientLimit(20, 4, 1000, 0.5);
+        for (int window = 0; window < 10; window++) {
+            limit.sample(10 * MILLIS, limit.limit());
+            limit.update();
+        }
+
+        assertThat(limit.limit()).isGreaterThan(40);
+        assertThat(limit.baselineRttNanos()).isEqualTo(10 * MILLIS);
+    }
+
+    @Test
+    void doesNotGrowWhenMostOfTheLimitGoesUnused() {
+        GradientLimit limit = new GradientLimit(20, 4, 1000, 0.5);
+        for (int window = 0; window < 10; window++) {
+            limit.sample(10 * MILLIS, 2);
+            limit.update();
+        }
+
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void shrinksWhenLatencyRises() {
+        GradientLimit limit = new GradientLimit(100, 4, 1000, 0.5);
+        limit.sample(10 * MILLIS, 100);
+        limit.update();
+        for (int window = 0; window < 5; window++) {
+            limit.sample(100 * MILLIS, 100);
+            limit.update();
+        }
+
+        assertThat(limit.limit()).isLessThan(50);
+    }
+
+    @Test
+    void staysWithinItsBounds() {
+        GradientLimit limit = new GradientLimit(10, 8, 12, 1.0);
+        limit.sample(MILLIS, 10);
+        limit.update();
+        assertThat(limit.limit()).isEqualTo(12);
+
+        for (int window = 0; window < 20; window++) {
+            limit.sample(1000 * MILLIS, 12);
+            limit.update();
+        }
+        assertThat(limit.limit()).isEqualTo(8);
+    }
+
+    @Test
+    void keepsTheLimitThroughAWindowWithoutSamples() {
+        GradientLimit limit = new GradientLimit(20, 4, 1000, 0.5);
+        limit.update();
+
+        assertThat(limit.limit()).isEqualTo(20);
+        assertThat(limit.baselineRttNanos()).isZero();
+    }
+
+    @Test
+    void rejectsInconsistentBounds() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new GradientLimit(10, 20, 5, 0.2));
+    }
+}
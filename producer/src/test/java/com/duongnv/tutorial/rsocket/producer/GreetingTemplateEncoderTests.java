@@ -0,0 +1,67 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.shared.GreetingTemplate;
+import com.duongnv.tutorial.rsocket.shared.ProtobufCodecs;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GreetingTemplateEncoderTests {
+
+    private static final Instant INSTANT = Instant.parse("2020-04-01T12:34:56.789123Z");
+    private static final ResolvableType TEMPLATE = ResolvableType.forClass(GreetingTemplate.class);
+
+    @Test
+    void encodesJsonIntoNettyBuffers() {
+        GreetingTemplateEncoder encoder = new GreetingTemplateEncoder(Collections.emptyList());
+        GreetingTemplate template = GreetingTemplate.json("Duongnv", Clock.fixed(INSTANT, ZoneOffset.UTC));
+
+        DataBuffer pooled = encoder.encodeValue(template, new NettyDataBufferFactory(ByteBufAllocator.DEFAULT),
+                TEMPLATE, MimeTypeUtils.APPLICATION_JSON, Collections.emptyMap());
+        DataBuffer heap = encoder.encodeValue(template, new DefaultDataBufferFactory(), TEMPLATE,
+                MimeTypeUtils.APPLICATION_JSON, Collections.emptyMap());
+
+        String expected = "{\"greeting\":\"Hello Duongnv @ " + INSTANT + "\"}";
+        assertThat(pooled).isInstanceOf(NettyDataBuffer.class);
+        assertThat(pooled.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+        assertThat(heap.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+        assertThat(DataBufferUtils.release(pooled)).isTrue();
+    }
+
+    @Test
+    void encodesOtherMimeTypesAsAGreetingResponse() throws Exception {
+        Jackson2CborEncoder cbor = new Jackson2CborEncoder();
+        GreetingTemplateEncoder encoder = new GreetingTemplateEncoder(List.of(cbor));
+        GreetingTemplate template = GreetingTemplate.json("Duongnv", Clock.fixed(INSTANT, ZoneOffset.UTC));
+
+        assertThat(encoder.canEncode(TEMPLATE, MimeTypeUtils.APPLICATION_JSON)).isTrue();
+        assertThat(encoder.canEncode(TEMPLATE, cbor.getEncodableMimeTypes().get(0))).isTrue();
+        assertThat(encoder.canEncode(TEMPLATE, ProtobufCodecs.PROTOBUF)).isFalse();
+        assertThat(encoder.canEncode(ResolvableType.forClass(GreetingResponse.class), MimeTypeUtils.APPLICATION_JSON))
+                .isFalse();
+
+        DataBuffer encoded = encoder.encodeValue(template, new DefaultDataBufferFactory(), TEMPLATE,
+                cbor.getEncodableMimeTypes().get(0), Collections.emptyMap());
+
+        assertThat(new ObjectMapper(new CBORFactory()).readValue(encoded.asInputStream(), GreetingResponse.class))
+                .isEqualTo(new GreetingResponse("Hello Duongnv @ " + INSTANT));
+    }
+}
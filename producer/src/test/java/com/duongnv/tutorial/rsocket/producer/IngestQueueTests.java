@@ -0,0 +1,203 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IngestQueueTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    @Test
+    void writesEveryEventInOrderInBatches() {
+        RecordingSink sink = new RecordingSink();
+        IngestQueue<Integer> queue = queue(sink, 1024, IngestQueue.Overflow.DROP, 16);
+
+        IntStream.range(0, 1000).forEach(queue::offer);
+        queue.dispose();
+
+        assertThat(sink.events()).containsExactlyElementsOf(IntStream.range(0, 1000).boxed().collect(Collectors.toList()));
+        assertThat(sink.batches).allSatisfy(batch -> assertThat(batch).hasSizeBetween(1, 16));
+        assertThat(sink.closed).isTrue();
+        assertThat(this.meters.get("rsocket.ingest.events").tag("outcome", "accepted").counter().count()).isEqualTo(1000);
+        assertThat(this.meters.get("rsocket.ingest.batches").summary().totalAmount()).isEqualTo(1000);
+    }
+
+    @Test
+    void writesALoneEventWithinTheMaxDelay() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        IngestQueue<Integer> queue = queue(sink, 1024, IngestQueue.Overflow.DROP, 16);
+
+        queue.offer(1);
+
+        assertThat(sink.written.await(1, TimeUnit.SECONDS)).isTrue();
+        queue.dispose();
+    }
+
+    @Test
+    void dropsEventsThatFindTheQueueFull() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        sink.hold();
+        IngestQueue<Integer> queue = queue(sink, 4, IngestQueue.Overflow.DROP, 1);
+        queue.offer(0);
+        sink.entered.await(1, TimeUnit.SECONDS);
+
+        List<Boolean> accepted = IntStream.range(1, 8).mapToObj(queue::offer).collect(Collectors.toList());
+        sink.release();
+        queue.dispose();
+
+        assertThat(accepted).containsExactly(true, true, true, true, false, false, false);
+        assertThat(sink.events()).containsExactly(0, 1, 2, 3, 4);
+        assertThat(this.meters.get("rsocket.ingest.events").tag("outcome", "dropped").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void blocksUntilTheWriterMakesRoom() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        sink.hold();
+        IngestQueue<Integer> queue = queue(sink, 1, IngestQueue.Overflow.BLOCK, 1, Duration.ofSeconds(1));
+        queue.offer(0);
+        sink.entered.await(1, TimeUnit.SECONDS);
+        queue.offer(1);
+
+        new Thread(() -> {
+            sleep(50);
+            sink.release();
+        }).start();
+        boolean accepted = queue.offer(2);
+        queue.dispose();
+
+        assertThat(accepted).isTrue();
+        assertThat(sink.events()).containsExactly(0, 1, 2);
+        assertThat(this.meters.get("rsocket.ingest.blocked").timer().totalTime(TimeUnit.MILLISECONDS))
+                .isGreaterThanOrEqualTo(40);
+    }
+
+    @Test
+    void dropsBlockedEventsAfterTheTimeout() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        sink.hold();
+        IngestQueue<Integer> queue = queue(sink, 1, IngestQueue.Overflow.BLOCK, 1);
+        queue.offer(0);
+        sink.entered.await(1, TimeUnit.SECONDS);
+        queue.offer(1);
+
+        boolean accepted = queue.offer(2);
+        sink.release();
+        queue.dispose();
+
+        assertThat(accepted).isFalse();
+        assertThat(this.meters.get("rsocket.ingest.events").tag("outcome", "dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void samplesEventsOnceTheQueueIsHalfFull() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        sink.hold();
+        IngestQueue<Integer> queue = queue(sink, 100, IngestQueue.Overflow.SAMPLE, 1);
+        queue.offer(-1);
+        sink.entered.await(1, TimeUnit.SECONDS);
+
+        IntStream.range(0, 1000).forEach(queue::offer);
+        sink.release();
+        queue.dispose();
+
+        double sampled = this.meters.get("rsocket.ingest.events").tag("outcome", "sampled").counter().count();
+        assertThat(queue.size()).isZero();
+        assertThat(sink.events()).startsWith(-1, 0, 1, 2).hasSizeBetween(51, 100);
+        assertThat(sampled).isGreaterThan(800);
+    }
+
+    @Test
+    void appendsEventsToAFileAsJsonLines(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("telemetry.jsonl");
+        ObjectMapper mapper = new ObjectMapper();
+
+        for (int run = 0; run < 2; run++) {
+            IngestQueue<TelemetryEvent> queue = new IngestQueue<>(
+                    new AppendOnlyFileSink<>(file, mapper.writerFor(TelemetryEvent.class)), 16,
+                    IngestQueue.Overflow.DROP, Duration.ZERO, 1, 16, Duration.ofMillis(5), this.meters);
+            queue.offer(new TelemetryEvent("sensor-" + run, "temperature", 21.5, 1000L + run));
+            queue.dispose();
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(2);
+        assertThat(mapper.readValue(lines.get(1), TelemetryEvent.class))
+                .isEqualTo(new TelemetryEvent("sensor-1", "temperature", 21.5, 1001L));
+    }
+
+    private IngestQueue<Integer> queue(RecordingSink sink, int capacity, IngestQueue.Overflow overflow, int maxBatch) {
+        return queue(sink, capacity, overflow, maxBatch, Duration.ofMillis(30));
+    }
+
+    private IngestQueue<Integer> queue(RecordingSink sink, int capacity, IngestQueue.Overflow overflow, int maxBatch,
+                                       Duration blockTimeout) {
+        return new IngestQueue<>(sink, capacity, overflow, blockTimeout, Integer.MAX_VALUE, maxBatch,
+                Duration.ofMillis(5), this.meters);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Keeps copies of the batches; can be held in its writes to keep the writer busy.
+     */
+    private static final class RecordingSink implements IngestSink<Integer> {
+        final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch written = new CountDownLatch(1);
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile boolean closed;
+
+        void hold() {
+            this.gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            this.gate.countDown();
+        }
+
+        @Override
+        public void write(List<Integer> batch) throws IOException {
+            this.entered.countDown();
+            try {
+                this.gate.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException();
+            }
+            this.batches.add(new ArrayList<>(batch));
+            this.written.countDown();
+        }
+
+        List<Integer> events() {
+            return this.batches.stream().flatMap(List::stream).collect(Collectors.toList());
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MulticastRegistryTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+    @Test
+    void subscribersOfTheSameKeyShareOneUpstream() {
+        MulticastRegistry registry = registry(false, 4);
+        TestPublisher<String> upstream = TestPublisher.create();
+        AtomicInteger built = new AtomicInteger();
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+
+        Disposable one = registry.share("a", () -> built(built, upstream)).subscribe(first::add);
+        Disposable two = registry.share("a", () -> built(built, upstream)).subscribe(second::add);
+        upstream.next("x", "y");
+
+        assertThat(built).hasValue(1);
+        assertThat(first).containsExactly("x", "y");
+        assertThat(second).containsExactly("x", "y");
+        assertThat(registry.size()).isEqualTo(1);
+        one.dispose();
+        two.dispose();
+    }
+
+    @Test
+    void differentKeysGetTheirOwnUpstream() {
+        MulticastRegistry registry = registry(false, 4);
+        AtomicInteger built = new AtomicInteger();
+
+        Disposable one = registry.share("a", () -> built(built, TestPublisher.<String>create())).subscribe();
+        Disposable two = registry.share("b", () -> built(built, TestPublisher.<String>create())).subscribe();
+
+        assertThat(built).hasValue(2);
+        assertThat(registry.size()).isEqualTo(2);
+        one.dispose();
+        two.dispose();
+    }
+
+    @Test
+    void lateSubscribersStartWithTheLastElement() {
+        MulticastRegistry registry = registry(true, 4);
+        TestPublisher<String> upstream = TestPublisher.create();
+        Disposable early = registry.share("a", upstream::flux).subscribe();
+        upstream.next("x", "y");
+
+        StepVerifier.create(registry.share("a", upstream::flux))
+                .expectNext("y")
+                .then(() -> upstream.next("z"))
+                .expectNext("z")
+                .thenCancel()
+                .verify();
+        early.dispose();
+    }
+
+    @Test
+    void keepsTheUpstreamThroughTheGracePeriod() {
+        MulticastRegistry registry = registry(false, 4);
+        TestPublisher<String> upstream = TestPublisher.create();
+
+        registry.share("a", upstream::flux).subscribe().dispose();
+        this.scheduler.advanceTimeBy(Duration.ofSeconds(4));
+        upstream.assertNotCancelled();
+        Disposable again = registry.share("a", upstream::flux).subscribe();
+        this.scheduler.advanceTimeBy(Duration.ofSeconds(10));
+        upstream.assertNotCancelled();
+
+        again.dispose();
+        this.scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        upstream.assertCancelled();
+        assertThat(registry.size()).isZero();
+    }
+
+    @Test
+    void subscribersAfterTheGracePeriodShareOneNewUpstream() {
+        MulticastRegistry registry = registry(false, 4);
+        TestPublisher<String> upstream = TestPublisher.create();
+        AtomicInteger built = new AtomicInteger();
+        Flux<String> early = registry.share("a", () -> built(built, upstream));
+
+        registry.share("a", () -> built(built, upstream)).subscribe().dispose();
+        this.scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        upstream.assertNoSubscribers();
+        Disposable one = early.subscribe();
+        Disposable two = registry.share("a", () -> built(built, upstream)).subscribe();
+
+        assertThat(built).hasValue(2);
+        upstream.assertSubscribers(1);
+        assertThat(registry.size()).isEqualTo(1);
+        one.dispose();
+        two.dispose();
+    }
+
+    @Test
+    void dropsTheOldestElementsForASlowSubscriber() {
+        MulticastRegistry registry = registry(false, 2);
+        TestPublisher<String> upstream = TestPublisher.create();
+        List<String> fast = new ArrayList<>();
+        Disposable other = registry.share("a", upstream::flux).subscribe(fast::add);
+
+        StepVerifier.create(registry.share("a", upstream::flux), 0)
+                .then(() -> upstream.next("1", "2", "3", "4"))
+                .thenRequest(2)
+                .expectNext("3", "4")
+                .thenCancel()
+                .verify();
+
+        assertThat(fast).containsExactly("1", "2", "3", "4");
+        assertThat(this.meters.counter("rsocket.multicast.dropped").count()).isEqualTo(2);
+        other.dispose();
+    }
+
+    private MulticastRegistry registry(boolean replayLast, int maxBuffered) {
+        return new MulticastRegistry(replayLast, Duration.ofSeconds(5), maxBuffered, this.meters, this.scheduler);
+    }
+
+    private static Flux<String> built(AtomicInteger built, TestPublisher<String> upstream) {
+        built.incrementAndGet();
+        return upstream.flux();
+    }
+}
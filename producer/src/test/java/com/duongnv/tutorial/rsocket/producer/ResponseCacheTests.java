@@ -0,0 +1,124 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ResponseCache cache = new ResponseCache(64, Duration.ofMinutes(1), this.meters);
+    private final ResponseCache.Region greet =
+            this.cache.region("greet", MimeTypeUtils.APPLICATION_JSON, Duration.ofMinutes(1));
+
+    @AfterEach
+    void clear() {
+        this.cache.clear();
+    }
+
+    @Test
+    void servesTheSameBytesByReferenceUntilEveryReferenceIsReleased() {
+        ByteBuf response = buffer("hello a");
+        this.cache.put(this.greet, ResponseCache.keyOf(buffer("a")), response);
+        response.release();
+
+        ByteBuf hit = this.cache.get(this.greet, buffer("a"));
+
+        assertThat(hit.toString(StandardCharsets.UTF_8)).isEqualTo("hello a");
+        assertThat(hit.unwrap()).isSameAs(response);
+        this.cache.clear();
+        assertThat(hit.refCnt()).isEqualTo(1);
+        hit.release();
+        assertThat(response.refCnt()).isZero();
+    }
+
+    @Test
+    void keysIncludeTheRegion() {
+        ResponseCache.Region other = this.cache.region("greet", MimeTypeUtils.parseMimeType("application/cbor"),
+                Duration.ofMinutes(1));
+        this.cache.put(this.greet, ResponseCache.keyOf(buffer("a")), buffer("hello a"));
+
+        assertThat(this.cache.get(other, buffer("a"))).isNull();
+        assertThat(this.cache.get(this.greet, buffer("b"))).isNull();
+        assertThat(this.meters.get("rsocket.response.cache").tag("route", "greet").tag("outcome", "miss")
+                .counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void expiresEntriesAfterTheirTtl() {
+        ResponseCache.Region brief = this.cache.region("brief", MimeTypeUtils.APPLICATION_JSON, Duration.ZERO);
+        this.cache.put(brief, ResponseCache.keyOf(buffer("a")), buffer("hello a"));
+
+        assertThat(this.cache.get(brief, buffer("a"))).isNull();
+        assertThat(this.cache.bytes()).isZero();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedBeyondTheSizeLimit() {
+        for (String name : new String[] {"a", "b", "c"}) {
+            this.cache.put(this.greet, ResponseCache.keyOf(buffer(name)), response(name));
+        }
+        this.cache.get(this.greet, buffer("a")).release();
+        this.cache.put(this.greet, ResponseCache.keyOf(buffer("d")), response("d"));
+
+        assertThat(this.cache.get(this.greet, buffer("b"))).isNull();
+        ByteBuf a = this.cache.get(this.greet, buffer("a"));
+        assertThat(a).isNotNull();
+        a.release();
+        assertThat(this.cache.bytes()).isLessThanOrEqualTo(64);
+        assertThat(this.meters.get("rsocket.response.cache.evictions").counter().count()).isEqualTo(1);
+        assertThat(this.meters.get("rsocket.response.cache").tag("route", "greet").tag("outcome", "hit")
+                .counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void servesLiveReferencesWhileOtherThreadsStoreAndEvict() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            workers.add(threads.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    String name = String.valueOf((char) ('a' + i % 8));
+                    ByteBuf hit = this.cache.get(this.greet, buffer(name));
+                    if (hit == null) {
+                        this.cache.put(this.greet, ResponseCache.keyOf(buffer(name)), response(name));
+                    } else {
+                        assertThat(hit.toString(StandardCharsets.UTF_8)).isEqualTo("hello " + name + "............");
+                        hit.release();
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(10, TimeUnit.SECONDS);
+        }
+        threads.shutdown();
+
+        assertThat(this.cache.bytes()).isLessThanOrEqualTo(64);
+    }
+
+    /**
+     * 20 bytes with its one byte key, so three fit in the cache and a fourth does not.
+     */
+    private static ByteBuf response(String name) {
+        return buffer("hello " + name + "............");
+    }
+
+    private static ByteBuf buffer(String text) {
+        return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+    }
+}
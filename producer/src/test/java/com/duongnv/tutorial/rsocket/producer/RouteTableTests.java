@@ -0,0 +1,191 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.ConnectionSetupPayload;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.frame.SetupFrameFlyweight;
+import io.rsocket.metadata.CompositeMetadataFlyweight;
+import io.rsocket.metadata.TaggingMetadataFlyweight;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.EmptyPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteTableTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ResponseCache cache = new ResponseCache(1024, Duration.ofMinutes(1), this.meters);
+    private final BlockingScheduler blocking = new BlockingScheduler(false, 2, 10, "blocking-test");
+    private final ProducerMessageHandler handler = new ProducerMessageHandler(this.meters);
+    private final ByteBuf setupFrame = SetupFrameFlyweight.encode(ByteBufAllocator.DEFAULT, false, 1000, 10_000,
+            WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString(), "text/plain", EmptyPayload.INSTANCE);
+    private final RSocket rsocket;
+
+    RouteTableTests() {
+        this.handler.setHandlers(List.of(new EchoController()));
+        this.handler.setRSocketStrategies(RSocketStrategies.create());
+        this.handler.setPrecompiledRoutes(true);
+        this.handler.setBlockingScheduler(this.blocking.scheduler());
+        this.handler.setResponseCache(this.cache);
+        this.handler.afterPropertiesSet();
+        this.rsocket = this.handler.responder()
+                .accept(ConnectionSetupPayload.create(this.setupFrame), new AbstractRSocket() {})
+                .block();
+    }
+
+    @AfterEach
+    void release() {
+        this.setupFrame.release();
+        this.blocking.dispose();
+        this.cache.clear();
+    }
+
+    @Test
+    void compilesExactRoutesOnly() {
+        assertThat(this.handler.getRouteTable().routes()).containsExactlyInAnyOrder("echo", "count", "fail", "fail-late", "thread", "visit");
+    }
+
+    @Test
+    void servesRequestResponseAndStreams() {
+        StepVerifier.create(this.rsocket.requestResponse(request("echo", "hi")).map(Payload::getDataUtf8))
+                .expectNext("echo hi")
+                .verifyComplete();
+        StepVerifier.create(this.rsocket.requestStream(request("count", "x")).map(Payload::getDataUtf8))
+                .expectNext("x1", "x2", "x3")
+                .verifyComplete();
+    }
+
+    @Test
+    void errorsBeforeTheFirstElementGoToTheExceptionHandler() {
+        StepVerifier.create(this.rsocket.requestResponse(request("fail", "x")).map(Payload::getDataUtf8))
+                .expectNext("handled bad")
+                .verifyComplete();
+
+        assertThat(this.meters.get("rsocket.handler.exceptions").tag("handler", "EchoController.handle")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void errorsAfterTheFirstElementEndTheStream() {
+        StepVerifier.create(this.rsocket.requestStream(request("fail-late", "x")).map(Payload::getDataUtf8))
+                .expectNext("first")
+                .verifyError(IllegalStateException.class);
+    }
+
+    @Test
+    void otherRoutesTakeTheGenericPath() {
+        StepVerifier.create(this.rsocket.requestResponse(request("echo.world", "hi")).map(Payload::getDataUtf8))
+                .expectNext("hi world")
+                .verifyComplete();
+        StepVerifier.create(this.rsocket.requestResponse(request("missing", "hi")))
+                .verifyError();
+    }
+
+    @Test
+    void blockingMethodsRunOnTheBlockingScheduler() {
+        StepVerifier.create(this.rsocket.requestResponse(request("thread", "x")).map(Payload::getDataUtf8))
+                .assertNext(thread -> assertThat(thread).isEqualTo("blocking-test"))
+                .verifyComplete();
+        StepVerifier.create(this.rsocket.requestResponse(request("thread.generic", "x")).map(Payload::getDataUtf8))
+                .assertNext(thread -> assertThat(thread).isEqualTo("blocking-test generic"))
+                .verifyComplete();
+    }
+
+    @Test
+    void cachedRoutesAnswerRepeatedRequestsWithoutTheHandler() {
+        StepVerifier.create(this.rsocket.requestResponse(request("visit", "a")).map(Payload::getDataUtf8))
+                .expectNext("a 1")
+                .verifyComplete();
+        StepVerifier.create(this.rsocket.requestResponse(request("visit", "a")).map(Payload::getDataUtf8))
+                .expectNext("a 1")
+                .verifyComplete();
+        StepVerifier.create(this.rsocket.requestResponse(request("visit", "b")).map(Payload::getDataUtf8))
+                .expectNext("b 2")
+                .verifyComplete();
+
+        assertThat(this.meters.get("rsocket.response.cache").tag("route", "visit").tag("outcome", "hit")
+                .counter().count()).isEqualTo(1);
+    }
+
+    private static Payload request(String route, String data) {
+        ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        CompositeByteBuf metadata = allocator.compositeBuffer();
+        CompositeMetadataFlyweight.encodeAndAddMetadata(metadata, allocator, WellKnownMimeType.MESSAGE_RSOCKET_ROUTING,
+                TaggingMetadataFlyweight.createRoutingMetadata(allocator, List.of(route)).getContent());
+        return ByteBufPayload.create(allocator.buffer().writeBytes(data.getBytes()), metadata);
+    }
+
+    @Controller
+    static class EchoController {
+
+        private final AtomicInteger visits = new AtomicInteger();
+
+        @MessageMapping("echo")
+        Mono<String> echo(String text) {
+            return Mono.just("echo " + text);
+        }
+
+        @MessageMapping("echo.{name}")
+        Mono<String> echoTo(@DestinationVariable String name, String text) {
+            return Mono.just(text + " " + name);
+        }
+
+        @MessageMapping("count")
+        Flux<String> count(String text) {
+            return Flux.range(1, 3).map(i -> text + i);
+        }
+
+        @MessageMapping("fail")
+        Mono<String> fail() {
+            return Mono.error(new IllegalArgumentException("bad"));
+        }
+
+        @MessageMapping("fail-late")
+        Flux<String> failLate() {
+            return Flux.just("first").concatWith(Flux.error(new IllegalStateException()));
+        }
+
+        @Blocking
+        @MessageMapping("thread")
+        String thread() {
+            return Thread.currentThread().getName().replaceAll("-\\d+$", "");
+        }
+
+        @Blocking
+        @MessageMapping("thread.{name}")
+        Mono<String> threadOf(@DestinationVariable String name) {
+            return Mono.fromSupplier(() -> Thread.currentThread().getName().replaceAll("-\\d+$", "") + " " + name);
+        }
+
+        @CachedResponse
+        @MessageMapping("visit")
+        Mono<String> visit(String text) {
+            return Mono.just(text + " " + this.visits.incrementAndGet());
+        }
+
+        @MessageExceptionHandler
+        Mono<String> handle(IllegalArgumentException ex) {
+            return Mono.just("handled " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.duongnv.tutorial.rsocket.producer;
+
+import com.duongnv.tutorial.rsocket.shared.ServerLoops;
+import io.netty.channel.epoll.Epoll;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.transport.ClientTransport;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.client.WebsocketClientTransport;
+import io.rsocket.util.DefaultPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.rsocket.server.RSocketServer;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ShardedRSocketServerFactoryTests {
+
+    private final Set<String> acceptedOn = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final List<RSocket> clients = new ArrayList<>();
+    private RSocketServer server;
+
+    @AfterEach
+    void stop() {
+        this.clients.forEach(RSocket::dispose);
+        if (this.server != null) {
+            this.server.stop();
+        }
+    }
+
+    @Test
+    void spreadsConnectionsOverShardsOnOnePort() {
+        assumeTrue(Epoll.isAvailable());
+        start(ServerLoops.Native.EPOLL, 2, RSocketServer.Transport.TCP);
+
+        for (int i = 0; i < 32; i++) {
+            assertThat(echo(TcpClientTransport.create(this.server.address()))).isEqualTo("hello");
+        }
+
+        assertThat(this.processed).hasValue(2);
+        assertThat(this.acceptedOn).allMatch(thread -> thread.startsWith("rsocket-0-epoll")
+                || thread.startsWith("rsocket-1-epoll"));
+        assertThat(this.acceptedOn.stream().map(thread -> thread.substring(0, "rsocket-0".length())).distinct())
+                .hasSize(2);
+    }
+
+    @Test
+    void bindsOneShardOnNio() {
+        start(ServerLoops.Native.NIO, 4, RSocketServer.Transport.TCP);
+
+        assertThat(echo(TcpClientTransport.create(this.server.address()))).isEqualTo("hello");
+        assertThat(this.processed).hasValue(1);
+        assertThat(this.acceptedOn).allMatch(thread -> thread.startsWith("rsocket-nio"));
+    }
+
+    @Test
+    void shardsWebsockets() {
+        assumeTrue(Epoll.isAvailable());
+        start(ServerLoops.Native.AUTO, 2, RSocketServer.Transport.WEBSOCKET);
+
+        assertThat(echo(WebsocketClientTransport.create(this.server.address()))).isEqualTo("hello");
+        assertThat(this.processed).hasValue(2);
+    }
+
+    @Test
+    void closesEveryShardOnStop() {
+        start(ServerLoops.Native.AUTO, 2, RSocketServer.Transport.TCP);
+        InetSocketAddress address = this.server.address();
+
+        this.server.stop();
+        this.server = null;
+
+        assertThatThrownBy(() -> echo(TcpClientTransport.create(address))).isNotNull();
+    }
+
+    private void start(ServerLoops.Native nativeTransport, int shards, RSocketServer.Transport transport) {
+        ProducerRSocketProperties.Transport properties = new ProducerRSocketProperties.Transport();
+        properties.setLoopThreads(4);
+        properties.setNativeTransport(nativeTransport);
+        properties.setShards(shards);
+        ShardedRSocketServerFactory factory = new ShardedRSocketServerFactory(properties, List.of(receiving -> {
+            this.processed.incrementAndGet();
+            return receiving;
+        }));
+        factory.setAddress(InetAddress.getLoopbackAddress());
+        factory.setPort(0);
+        factory.setTransport(transport);
+        this.server = factory.create(echo());
+        this.server.start();
+    }
+
+    private SocketAcceptor echo() {
+        return (setup, sendingSocket) -> {
+            this.acceptedOn.add(Thread.currentThread().getName());
+            return Mono.just(new AbstractRSocket() {
+                @Override
+                public Mono<Payload> requestResponse(Payload payload) {
+                    return Mono.just(payload);
+                }
+            });
+        };
+    }
+
+    private String echo(ClientTransport transport) {
+        RSocket client = RSocketFactory.connect().transport(transport).start().block();
+        this.clients.add(client);
+        return client.requestResponse(DefaultPayload.create("hello")).map(Payload::getDataUtf8).block();
+    }
+}
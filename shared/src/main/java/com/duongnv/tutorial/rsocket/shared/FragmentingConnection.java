@@ -0,0 +1,567 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.rsocket.DuplexConnection;
+import io.rsocket.exceptions.ConnectionErrorException;
+import io.rsocket.fragmentation.FragmentationDuplexConnection;
+import io.rsocket.frame.ErrorFrameFlyweight;
+import io.rsocket.frame.FrameHeaderFlyweight;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.PayloadFrameFlyweight;
+import io.rsocket.frame.RequestChannelFrameFlyweight;
+import io.rsocket.frame.RequestFireAndForgetFrameFlyweight;
+import io.rsocket.frame.RequestResponseFrameFlyweight;
+import io.rsocket.frame.RequestStreamFrameFlyweight;
+import io.rsocket.frame.SetupFrameFlyweight;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.DuplexConnectionProxy;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fragments outgoing frames larger than the MTU and reassembles incoming ones, with a cap on how large a
+ * reassembled frame may grow.
+ * <p>
+ * The stock {@code FragmentationDuplexConnection} writes all fragments of a frame back to back, so a large payload
+ * still holds up every other stream until its last fragment is out. Here the fragments of different streams are
+ * sent in turn, one per stream, with connection-level frames first; frames of one stream keep their order. That
+ * lets a frame complete before an earlier, larger one, which resumption cannot tolerate (resume positions assume
+ * frames complete in the order they were sent), so without {@code interleave} fragments go out back to back.
+ * <p>
+ * With {@link RoutePriorities}, which also need interleaving, streams take turns by the {@link PriorityClass} of the
+ * route they were requested on: the class of each request received is noted, and the frames sent on its stream
+ * are scheduled in that class with start-time fair queuing, each class charged for the bytes it sent divided by
+ * its weight and the class least charged so far going next. That applies with an MTU of 0 too, frames then going
+ * out whole.
+ * <p>
+ * This wraps the bare transport connection, below resumption, on both sides; the transports themselves are
+ * started with an MTU of 0.
+ */
+@Slf4j
+public class FragmentingConnection extends DuplexConnectionProxy {
+
+    static final int MIN_MTU = 64;
+
+    private static final String COMPOSITE_MIME_TYPE = WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString();
+    private static final PriorityClass[] CLASSES = PriorityClass.values();
+
+    private final ByteBufAllocator allocator;
+    private final int mtu;
+    private final boolean interleave;
+    private final RoutePriorities priorities;
+    private final DuplexConnection reassembling;
+    // classes of the streams requested by the peer that are not standard, until their last frame is sent
+    private final IntObjectHashMap<PriorityClass> streams = new IntObjectHashMap<>();
+    private volatile boolean composite = true;
+
+    public FragmentingConnection(DuplexConnection connection, ByteBufAllocator allocator, int mtu,
+                                 int maxReassemblySize, boolean interleave) {
+        this(connection, allocator, mtu, maxReassemblySize, interleave, null);
+    }
+
+    public FragmentingConnection(DuplexConnection connection, ByteBufAllocator allocator, int mtu,
+                                 int maxReassemblySize, boolean interleave, RoutePriorities priorities) {
+        super(connection);
+        if (mtu != 0 && mtu < MIN_MTU) {
+            throw new IllegalArgumentException("MTU must be 0 (off) or at least " + MIN_MTU + " bytes but was " + mtu);
+        }
+        this.allocator = allocator;
+        this.mtu = mtu;
+        this.interleave = interleave;
+        this.priorities = interleave ? priorities : null;
+        this.reassembling = new FragmentationDuplexConnection(
+                new ReassemblyLimit(connection, maxReassemblySize), allocator, 0, false, "reassembly");
+    }
+
+    @Override
+    public Mono<Void> send(Publisher<ByteBuf> frames) {
+        if (this.mtu == 0 && this.priorities == null) {
+            return super.send(frames);
+        }
+        return super.send(Flux.create(sink -> frames.subscribe(new Outbound(sink))));
+    }
+
+    @Override
+    public Flux<ByteBuf> receive() {
+        Flux<ByteBuf> frames = this.reassembling.receive();
+        return this.priorities == null ? frames : frames.doOnNext(this::classify);
+    }
+
+    /**
+     * Notes the class of each stream the peer requests, before the request is handled and anything is sent on it.
+     */
+    private void classify(ByteBuf frame) {
+        FrameType type = FrameHeaderFlyweight.frameType(frame);
+        switch (type) {
+            case SETUP:
+                this.composite = COMPOSITE_MIME_TYPE.equals(SetupFrameFlyweight.metadataMimeType(frame));
+                break;
+            case REQUEST_RESPONSE:
+            case REQUEST_STREAM:
+            case REQUEST_CHANNEL:
+                PriorityClass priority = this.priorities.of(frame, this.composite);
+                if (priority != PriorityClass.STANDARD) {
+                    synchronized (this.streams) {
+                        this.streams.put(FrameHeaderFlyweight.streamId(frame), priority);
+                    }
+                }
+                break;
+            case CANCEL:
+            case ERROR:
+                forget(FrameHeaderFlyweight.streamId(frame));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private PriorityClass priority(int streamId) {
+        synchronized (this.streams) {
+            PriorityClass priority = this.streams.get(streamId);
+            return priority != null ? priority : PriorityClass.STANDARD;
+        }
+    }
+
+    private void forget(int streamId) {
+        synchronized (this.streams) {
+            this.streams.remove(streamId);
+        }
+    }
+
+    /**
+     * Emits frames and fragments only as the transport requests them, so the choice of what goes next is made as
+     * late as possible: a frame that arrives while a large one is being fragmented goes out after at most one
+     * fragment of each stream ahead of it.
+     * <p>
+     * Streams that are ready wait in the queue of their class, or all in one queue without priorities. The start
+     * tag of a class is where it stands in virtual time, the start tag of the frame being sent: it moves on by the
+     * size of each frame the class sends divided by its weight, and catches up with virtual time when the class has
+     * been idle, so an idle class cannot save up a share to spend later.
+     */
+    private final class Outbound extends BaseSubscriber<ByteBuf> {
+        private final FluxSink<ByteBuf> sink;
+        private final Queue<ByteBuf> incoming = Queues.<ByteBuf>unbounded().get();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final ArrayDeque<ByteBuf> connectionFrames = new ArrayDeque<>();
+        private final Map<Integer, Lane> lanes = new HashMap<>();
+        private final List<ArrayDeque<Lane>> ready;
+        private final long[] finish;
+        private long virtualTime;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+
+        Outbound(FluxSink<ByteBuf> sink) {
+            this.sink = sink;
+            int queues = priorities == null ? 1 : CLASSES.length;
+            this.ready = new ArrayList<>(queues);
+            for (int i = 0; i < queues; i++) {
+                this.ready.add(new ArrayDeque<>());
+            }
+            this.finish = new long[queues];
+            sink.onRequest(n -> drain());
+            sink.onDispose(() -> {
+                this.cancelled = true;
+                dispose();
+                drain();
+            });
+        }
+
+        @Override
+        protected void hookOnNext(ByteBuf frame) {
+            this.incoming.offer(frame);
+            drain();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            this.error = throwable;
+            this.done = true;
+            drain();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            this.done = true;
+            drain();
+        }
+
+        private void drain() {
+            if (this.wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (this.cancelled) {
+                    clear();
+                } else {
+                    accept();
+                    while (this.sink.requestedFromDownstream() > 0 && emitOne()) {
+                        accept();
+                    }
+                    if (this.done && this.incoming.isEmpty() && this.connectionFrames.isEmpty() && !hasReady()) {
+                        if (this.error != null) {
+                            this.sink.error(this.error);
+                        } else {
+                            this.sink.complete();
+                        }
+                    }
+                }
+                missed = this.wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void accept() {
+            ByteBuf frame;
+            while ((frame = this.incoming.poll()) != null) {
+                int streamId = FrameHeaderFlyweight.streamId(frame);
+                if (streamId == 0) {
+                    this.connectionFrames.addLast(frame);
+                    continue;
+                }
+                Lane lane = interleave ? this.lanes.get(streamId) : this.ready.get(0).peekLast();
+                if (lane == null) {
+                    lane = new Lane(streamId, priorities == null ? null : priority(streamId));
+                    this.lanes.put(streamId, lane);
+                    this.ready.get(lane.queue()).addLast(lane);
+                }
+                lane.frames.addLast(frame);
+                if (priorities != null && isLast(frame)) {
+                    forget(streamId);
+                }
+            }
+        }
+
+        private boolean emitOne() {
+            ByteBuf next = this.connectionFrames.pollFirst();
+            if (next != null) {
+                this.sink.next(next);
+                return true;
+            }
+            int queue = nextQueue();
+            if (queue < 0) {
+                return false;
+            }
+            Lane lane = this.ready.get(queue).pollFirst();
+            next = lane.next();
+            if (lane.isEmpty()) {
+                this.lanes.remove(lane.streamId);
+            } else {
+                this.ready.get(queue).addLast(lane);
+            }
+            if (priorities != null) {
+                int size = next.readableBytes();
+                long start = Math.max(this.virtualTime, this.finish[queue]);
+                this.virtualTime = start;
+                this.finish[queue] = start + ((long) size << 10) / priorities.weight(lane.priority);
+                priorities.sent(lane.priority, size);
+                if (lane.queuedAt != 0) {
+                    priorities.waited(lane.priority, System.nanoTime() - lane.queuedAt);
+                    lane.queuedAt = 0;
+                }
+            }
+            this.sink.next(next);
+            return true;
+        }
+
+        /**
+         * The queue with the earliest start tag among those with a stream ready, or -1 if there is none.
+         */
+        private int nextQueue() {
+            int next = -1;
+            long earliest = Long.MAX_VALUE;
+            for (int queue = 0; queue < this.ready.size(); queue++) {
+                if (!this.ready.get(queue).isEmpty()) {
+                    long start = Math.max(this.virtualTime, this.finish[queue]);
+                    if (start < earliest) {
+                        earliest = start;
+                        next = queue;
+                    }
+                }
+            }
+            return next;
+        }
+
+        private boolean hasReady() {
+            for (ArrayDeque<Lane> queue : this.ready) {
+                if (!queue.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void clear() {
+            ByteBuf frame;
+            while ((frame = this.incoming.poll()) != null) {
+                ReferenceCountUtil.safeRelease(frame);
+            }
+            this.connectionFrames.forEach(ReferenceCountUtil::safeRelease);
+            this.connectionFrames.clear();
+            for (ArrayDeque<Lane> queue : this.ready) {
+                queue.forEach(Lane::release);
+                queue.clear();
+            }
+            this.lanes.clear();
+        }
+    }
+
+    /**
+     * The last payload frame this side sends on a stream, after which the class of the stream is forgotten; the
+     * REQUEST_N and CANCEL frames that can still follow on a channel go out as standard.
+     */
+    private static boolean isLast(ByteBuf frame) {
+        switch (FrameHeaderFlyweight.frameType(frame)) {
+            case NEXT_COMPLETE:
+            case COMPLETE:
+            case ERROR:
+                return !FrameHeaderFlyweight.hasFollows(frame);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Pending frames in send order. Without interleaving a single lane holds the frames of all streams.
+     */
+    private final class Lane {
+        final int streamId;
+        final PriorityClass priority;
+        final ArrayDeque<ByteBuf> frames = new ArrayDeque<>();
+        Fragments fragments;
+        long queuedAt;
+
+        Lane(int streamId, PriorityClass priority) {
+            this.streamId = streamId;
+            this.priority = priority;
+            this.queuedAt = priority != null ? System.nanoTime() : 0;
+        }
+
+        int queue() {
+            return this.priority != null ? this.priority.ordinal() : 0;
+        }
+
+        ByteBuf next() {
+            if (this.fragments == null) {
+                ByteBuf frame = this.frames.pollFirst();
+                FrameType type = FrameHeaderFlyweight.frameType(frame);
+                if (!type.isFragmentable() || mtu == 0 || frame.readableBytes() <= mtu) {
+                    return frame;
+                }
+                this.fragments = new Fragments(frame, type);
+            }
+            ByteBuf fragment = this.fragments.next();
+            if (this.fragments.isDone()) {
+                this.fragments.release();
+                this.fragments = null;
+            }
+            return fragment;
+        }
+
+        boolean isEmpty() {
+            return this.fragments == null && this.frames.isEmpty();
+        }
+
+        void release() {
+            if (this.fragments != null) {
+                this.fragments.release();
+                this.fragments = null;
+            }
+            this.frames.forEach(ReferenceCountUtil::safeRelease);
+            this.frames.clear();
+        }
+    }
+
+    /**
+     * Cuts one frame into MTU sized fragments on demand, encoded the way {@code FrameFragmenter} in rsocket-core
+     * does: the first fragment keeps the original frame type and flags, the rest are PAYLOAD frames with NEXT set.
+     */
+    private final class Fragments {
+        private final ByteBuf frame;
+        private final FrameType type;
+        private final int streamId;
+        private final ByteBuf metadata;
+        private final ByteBuf data;
+        private boolean first = true;
+
+        Fragments(ByteBuf frame, FrameType type) {
+            this.frame = frame;
+            this.type = type;
+            this.streamId = FrameHeaderFlyweight.streamId(frame);
+            this.metadata = FrameHeaderFlyweight.hasMetadata(frame) ? metadata(frame, type) : Unpooled.EMPTY_BUFFER;
+            this.data = data(frame, type);
+        }
+
+        boolean isDone() {
+            return !this.metadata.isReadable() && !this.data.isReadable();
+        }
+
+        ByteBuf next() {
+            int remaining = mtu - FrameHeaderFlyweight.size();
+            if (this.first && (this.type == FrameType.REQUEST_STREAM || this.type == FrameType.REQUEST_CHANNEL)) {
+                remaining -= Integer.BYTES;
+            }
+            ByteBuf metadataFragment = null;
+            if (this.metadata.isReadable()) {
+                remaining -= 3;
+                int length = Math.min(remaining, this.metadata.readableBytes());
+                remaining -= length;
+                metadataFragment = this.metadata.readRetainedSlice(length);
+            }
+            ByteBuf dataFragment = Unpooled.EMPTY_BUFFER;
+            if (remaining > 0 && this.data.isReadable()) {
+                dataFragment = this.data.readRetainedSlice(Math.min(remaining, this.data.readableBytes()));
+            }
+
+            if (!this.first) {
+                return PayloadFrameFlyweight.encode(
+                        allocator, this.streamId, !isDone(), false, true, metadataFragment, dataFragment);
+            }
+            this.first = false;
+            switch (this.type) {
+                case REQUEST_FNF:
+                    return RequestFireAndForgetFrameFlyweight.encode(
+                            allocator, this.streamId, true, metadataFragment, dataFragment);
+                case REQUEST_RESPONSE:
+                    return RequestResponseFrameFlyweight.encode(
+                            allocator, this.streamId, true, metadataFragment, dataFragment);
+                case REQUEST_STREAM:
+                    return RequestStreamFrameFlyweight.encode(
+                            allocator, this.streamId, true, RequestStreamFrameFlyweight.initialRequestN(this.frame),
+                            metadataFragment, dataFragment);
+                case REQUEST_CHANNEL:
+                    return RequestChannelFrameFlyweight.encode(
+                            allocator, this.streamId, true, false, RequestChannelFrameFlyweight.initialRequestN(this.frame),
+                            metadataFragment, dataFragment);
+                case PAYLOAD:
+                    return PayloadFrameFlyweight.encode(
+                            allocator, this.streamId, true, false, false, metadataFragment, dataFragment);
+                case NEXT:
+                    return PayloadFrameFlyweight.encode(
+                            allocator, this.streamId, true, false, true, metadataFragment, dataFragment);
+                case NEXT_COMPLETE:
+                    return PayloadFrameFlyweight.encode(
+                            allocator, this.streamId, true, true, true, metadataFragment, dataFragment);
+                case COMPLETE:
+                    return PayloadFrameFlyweight.encode(
+                            allocator, this.streamId, true, true, false, metadataFragment, dataFragment);
+                default:
+                    throw new IllegalStateException("Cannot fragment a " + this.type + " frame");
+            }
+        }
+
+        void release() {
+            ReferenceCountUtil.safeRelease(this.frame);
+        }
+
+        private ByteBuf metadata(ByteBuf frame, FrameType type) {
+            switch (type) {
+                case REQUEST_FNF:
+                    return RequestFireAndForgetFrameFlyweight.metadata(frame);
+                case REQUEST_RESPONSE:
+                    return RequestResponseFrameFlyweight.metadata(frame);
+                case REQUEST_STREAM:
+                    return RequestStreamFrameFlyweight.metadata(frame);
+                case REQUEST_CHANNEL:
+                    return RequestChannelFrameFlyweight.metadata(frame);
+                default:
+                    return PayloadFrameFlyweight.metadata(frame);
+            }
+        }
+
+        private ByteBuf data(ByteBuf frame, FrameType type) {
+            switch (type) {
+                case REQUEST_FNF:
+                    return RequestFireAndForgetFrameFlyweight.data(frame);
+                case REQUEST_RESPONSE:
+                    return RequestResponseFrameFlyweight.data(frame);
+                case REQUEST_STREAM:
+                    return RequestStreamFrameFlyweight.data(frame);
+                case REQUEST_CHANNEL:
+                    return RequestChannelFrameFlyweight.data(frame);
+                default:
+                    return PayloadFrameFlyweight.data(frame);
+            }
+        }
+    }
+
+    /**
+     * Tracks the fragments received per stream ahead of the reassembler and closes the connection with a
+     * CONNECTION_ERROR once one stream's fragments add up to more than the limit, instead of buffering them.
+     * Whatever still arrives before the close takes effect is dropped.
+     */
+    private final class ReassemblyLimit extends DuplexConnectionProxy {
+        private final int maxReassemblySize;
+        private final Map<Integer, Integer> pending = new HashMap<>();
+        private boolean rejected;
+
+        ReassemblyLimit(DuplexConnection connection, int maxReassemblySize) {
+            super(connection);
+            this.maxReassemblySize = maxReassemblySize;
+        }
+
+        @Override
+        public Flux<ByteBuf> receive() {
+            return super.receive().filter(this::withinLimit);
+        }
+
+        private boolean withinLimit(ByteBuf frame) {
+            if (this.rejected) {
+                ReferenceCountUtil.safeRelease(frame);
+                return false;
+            }
+            int streamId = FrameHeaderFlyweight.streamId(frame);
+            Integer assembled = this.pending.get(streamId);
+            if (assembled == null && !FrameHeaderFlyweight.hasFollows(frame)) {
+                return true;
+            }
+            FrameType type = FrameHeaderFlyweight.frameType(frame);
+            if (type == FrameType.CANCEL || type == FrameType.ERROR) {
+                this.pending.remove(streamId);
+                return true;
+            }
+            int size = (assembled == null ? 0 : assembled) + frame.readableBytes();
+            if (size > this.maxReassemblySize) {
+                this.rejected = true;
+                this.pending.clear();
+                ReferenceCountUtil.safeRelease(frame);
+                reject(streamId, size);
+                return false;
+            }
+            if (FrameHeaderFlyweight.hasFollows(frame)) {
+                this.pending.put(streamId, size);
+            } else {
+                this.pending.remove(streamId);
+            }
+            return true;
+        }
+
+        private void reject(int streamId, int size) {
+            String message = "Fragments of stream " + streamId + " exceed the reassembly limit of "
+                    + this.maxReassemblySize + " bytes (" + size + " received)";
+            log.warn("closing connection: {}", message);
+            ByteBuf error = ErrorFrameFlyweight.encode(allocator, 0, new ConnectionErrorException(message));
+            delegate().sendOne(error)
+                    .onErrorResume(ex -> Mono.empty())
+                    .doFinally(signal -> dispose())
+                    .subscribe();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.collection.IntObjectHashMap;
+import io.rsocket.DuplexConnection;
+import io.rsocket.frame.FrameHeaderFlyweight;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.RequestChannelFrameFlyweight;
+import io.rsocket.frame.RequestNFrameFlyweight;
+import io.rsocket.frame.RequestStreamFrameFlyweight;
+import io.rsocket.util.DuplexConnectionProxy;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frame meters shared by all connections of the application.
+ * <p>
+ * {@code rsocket.frames} and {@code rsocket.frame.bytes} count frames and their bytes by direction and frame type.
+ * {@code rsocket.credit.outstanding} is the REQUEST_N credit of open streams that has not been used up yet: with
+ * {@code granted=by-peer} the elements the peers have asked for and not received, with {@code granted=to-peer} the
+ * elements asked of the peers. Streams that request an unbounded number are left out of it.
+ * <p>
+ * Counting a frame must not cost more than handling it, so nothing on that path allocates or contends: each
+ * connection counts into its own slots, indexed by frame type, and each direction of a connection only ever has one
+ * thread writing at a time, so a count is a plain store rather than a CAS. The meters add the slots of all
+ * connections up when they are read. Credit is kept per stream under the connection's lock, which is only taken
+ * while the connection has streams with bounded credit; request-response traffic and unbounded streams never take it.
+ */
+public class FrameMetrics {
+
+    private static final FrameType[] TYPES = FrameType.values();
+    private static final int SLOTS = TYPES.length * 2;
+
+    private final Set<CountingConnection> connections = new HashSet<>();
+    private final long[] closedIn = new long[SLOTS];
+    private final long[] closedOut = new long[SLOTS];
+
+    public FrameMetrics(MeterRegistry registry) {
+        for (FrameType type : TYPES) {
+            int frames = type.ordinal() * 2;
+            int bytes = frames + 1;
+            FunctionCounter.builder("rsocket.frames", this, m -> m.total(true, frames))
+                    .tag("direction", "in")
+                    .tag("type", type.name())
+                    .register(registry);
+            FunctionCounter.builder("rsocket.frames", this, m -> m.total(false, frames))
+                    .tag("direction", "out")
+                    .tag("type", type.name())
+                    .register(registry);
+            FunctionCounter.builder("rsocket.frame.bytes", this, m -> m.total(true, bytes))
+                    .tag("direction", "in")
+                    .tag("type", type.name())
+                    .baseUnit("bytes")
+                    .register(registry);
+            FunctionCounter.builder("rsocket.frame.bytes", this, m -> m.total(false, bytes))
+                    .tag("direction", "out")
+                    .tag("type", type.name())
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+        Gauge.builder("rsocket.credit.outstanding", this, m -> m.credit(true))
+                .tag("granted", "by-peer")
+                .description("Elements peers have requested and not yet been sent")
+                .register(registry);
+        Gauge.builder("rsocket.credit.outstanding", this, m -> m.credit(false))
+                .tag("granted", "to-peer")
+                .description("Elements requested from peers and not yet received")
+                .register(registry);
+    }
+
+    public DuplexConnection instrument(DuplexConnection connection) {
+        CountingConnection counting = new CountingConnection(connection);
+        synchronized (this.connections) {
+            this.connections.add(counting);
+        }
+        connection.onClose().doFinally(signal -> closed(counting)).subscribe();
+        return counting;
+    }
+
+    /**
+     * Moves the counts of a closed connection into the totals in one step with the same lock the meters read under,
+     * so no reading sees them twice or not at all.
+     */
+    private void closed(CountingConnection connection) {
+        synchronized (this.connections) {
+            if (this.connections.remove(connection)) {
+                for (int i = 0; i < SLOTS; i++) {
+                    this.closedIn[i] += connection.in.get(i);
+                    this.closedOut[i] += connection.out.get(i);
+                }
+            }
+        }
+    }
+
+    private double total(boolean inbound, int slot) {
+        synchronized (this.connections) {
+            long total = inbound ? this.closedIn[slot] : this.closedOut[slot];
+            for (CountingConnection connection : this.connections) {
+                total += (inbound ? connection.in : connection.out).get(slot);
+            }
+            return total;
+        }
+    }
+
+    private double credit(boolean byPeer) {
+        synchronized (this.connections) {
+            long total = 0;
+            for (CountingConnection connection : this.connections) {
+                total += connection.credit(byPeer);
+            }
+            return total;
+        }
+    }
+
+    private static int requested(FrameType type, ByteBuf frame) {
+        switch (type) {
+            case REQUEST_STREAM:
+                return RequestStreamFrameFlyweight.initialRequestN(frame);
+            case REQUEST_CHANNEL:
+                return RequestChannelFrameFlyweight.initialRequestN(frame);
+            case REQUEST_N:
+                return RequestNFrameFlyweight.requestN(frame);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Adds to a slot only one thread writes to, publishing the result without a CAS.
+     */
+    private static void add(AtomicLongArray slots, int slot, long delta) {
+        slots.lazySet(slot, slots.get(slot) + delta);
+    }
+
+    /**
+     * Credit left on one stream in each direction. A direction that requested without bound has none.
+     */
+    private static final class Credit {
+        long byPeer;
+        long toPeer;
+    }
+
+    private static final class CountingConnection extends DuplexConnectionProxy {
+
+        private final AtomicLongArray in = new AtomicLongArray(SLOTS);
+        private final AtomicLongArray out = new AtomicLongArray(SLOTS);
+        private final IntObjectHashMap<Credit> streams = new IntObjectHashMap<>();
+        private long creditByPeer;
+        private long creditToPeer;
+        private volatile int tracked;
+
+        CountingConnection(DuplexConnection connection) {
+            super(connection);
+        }
+
+        @Override
+        public Mono<Void> send(Publisher<ByteBuf> frames) {
+            return super.send(Flux.from(frames).doOnNext(this::sent));
+        }
+
+        @Override
+        public Flux<ByteBuf> receive() {
+            return super.receive().doOnNext(this::received);
+        }
+
+        private void sent(ByteBuf frame) {
+            FrameType type = FrameHeaderFlyweight.frameType(frame);
+            add(this.out, type.ordinal() * 2, 1);
+            add(this.out, type.ordinal() * 2 + 1, frame.readableBytes());
+            int streamId = FrameHeaderFlyweight.streamId(frame);
+            if (streamId == 0) {
+                return;
+            }
+            switch (type) {
+                case REQUEST_STREAM:
+                case REQUEST_CHANNEL:
+                case REQUEST_N:
+                    grantedToPeer(streamId, requested(type, frame));
+                    break;
+                case NEXT:
+                    if (this.tracked != 0) {
+                        usedByPeer(streamId, false);
+                    }
+                    break;
+                case NEXT_COMPLETE:
+                case COMPLETE:
+                case ERROR:
+                    if (this.tracked != 0) {
+                        usedByPeer(streamId, true);
+                    }
+                    break;
+                case CANCEL:
+                    if (this.tracked != 0) {
+                        usedToPeer(streamId, true);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void received(ByteBuf frame) {
+            FrameType type = FrameHeaderFlyweight.frameType(frame);
+            add(this.in, type.ordinal() * 2, 1);
+            add(this.in, type.ordinal() * 2 + 1, frame.readableBytes());
+            int streamId = FrameHeaderFlyweight.streamId(frame);
+            if (streamId == 0) {
+                return;
+            }
+            switch (type) {
+                case REQUEST_STREAM:
+                case REQUEST_CHANNEL:
+                case REQUEST_N:
+                    grantedByPeer(streamId, requested(type, frame));
+                    break;
+                case NEXT:
+                    if (this.tracked != 0) {
+                        usedToPeer(streamId, false);
+                    }
+                    break;
+                case NEXT_COMPLETE:
+                case COMPLETE:
+                case ERROR:
+                    if (this.tracked != 0) {
+                        usedToPeer(streamId, true);
+                    }
+                    break;
+                case CANCEL:
+                    if (this.tracked != 0) {
+                        usedByPeer(streamId, true);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private synchronized long credit(boolean byPeer) {
+            return byPeer ? this.creditByPeer : this.creditToPeer;
+        }
+
+        private synchronized void grantedByPeer(int streamId, int n) {
+            Credit credit = credit(streamId);
+            if (n == Integer.MAX_VALUE) {
+                this.creditByPeer -= credit.byPeer;
+                credit.byPeer = 0;
+            } else {
+                credit.byPeer += n;
+                this.creditByPeer += n;
+            }
+            forgetIfSpent(streamId, credit);
+        }
+
+        private synchronized void grantedToPeer(int streamId, int n) {
+            Credit credit = credit(streamId);
+            if (n == Integer.MAX_VALUE) {
+                this.creditToPeer -= credit.toPeer;
+                credit.toPeer = 0;
+            } else {
+                credit.toPeer += n;
+                this.creditToPeer += n;
+            }
+            forgetIfSpent(streamId, credit);
+        }
+
+        private synchronized void usedByPeer(int streamId, boolean last) {
+            Credit credit = this.streams.get(streamId);
+            if (credit == null) {
+                return;
+            }
+            long used = last ? credit.byPeer : Math.min(1, credit.byPeer);
+            credit.byPeer -= used;
+            this.creditByPeer -= used;
+            forgetIfSpent(streamId, credit);
+        }
+
+        private synchronized void usedToPeer(int streamId, boolean last) {
+            Credit credit = this.streams.get(streamId);
+            if (credit == null) {
+                return;
+            }
+            long used = last ? credit.toPeer : Math.min(1, credit.toPeer);
+            credit.toPeer -= used;
+            this.creditToPeer -= used;
+            forgetIfSpent(streamId, credit);
+        }
+
+        /**
+         * Streams are only tracked while they have credit left, which keeps request-response and unbounded streams
+         * out of the map altogether. A frame that can only use credit up checks {@code tracked} before taking the
+         * lock: a grant reaches the other side before any element sent against it, so it is always seen.
+         */
+        private void forgetIfSpent(int streamId, Credit credit) {
+            if (credit.byPeer == 0 && credit.toPeer == 0) {
+                this.streams.remove(streamId);
+                this.tracked = this.streams.size();
+            }
+        }
+
+        private Credit credit(int streamId) {
+            Credit credit = this.streams.get(streamId);
+            if (credit == null) {
+                credit = new Credit();
+                this.streams.put(streamId, credit);
+                this.tracked = this.streams.size();
+            }
+            return credit;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The greeting of one name, {@code Hello <name> @ <instant>}, rendered with the time it is written at.
+ * <p>
+ * What comes before and after the instant is encoded once, when the template is made, so writing a greeting is
+ * copying those bytes and the digits of the instant straight into a buffer of the allocator, with no String, POJO
+ * or byte array in between. The instant is written as {@link Instant#toString()} would; its date, hour and minute
+ * are encoded once a minute and shared by every template.
+ */
+public final class GreetingTemplate {
+
+    private static final int MAX_INSTANT_LENGTH = 36;
+
+    private static volatile Minute minute;
+
+    private final String name;
+    private final byte[] prefix;
+    private final byte[] suffix;
+    private final Clock clock;
+
+    private GreetingTemplate(String name, byte[] prefix, byte[] suffix, Clock clock) {
+        this.name = name;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.clock = clock;
+    }
+
+    /**
+     * {@code {"greeting":"Hello <name> @ <instant>"}}, as Jackson writes a {@code GreetingResponse}.
+     */
+    public static GreetingTemplate json(String name, Clock clock) {
+        byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8("Hello " + name + " @ ");
+        byte[] start = "{\"greeting\":\"".getBytes(StandardCharsets.US_ASCII);
+        byte[] prefix = new byte[start.length + escaped.length];
+        System.arraycopy(start, 0, prefix, 0, start.length);
+        System.arraycopy(escaped, 0, prefix, start.length, escaped.length);
+        return new GreetingTemplate(name, prefix, "\"}".getBytes(StandardCharsets.US_ASCII), clock);
+    }
+
+    /**
+     * {@code Hello <name> @ <instant>} in UTF-8.
+     */
+    public static GreetingTemplate text(String name, Clock clock) {
+        return new GreetingTemplate(name, ("Hello " + name + " @ ").getBytes(StandardCharsets.UTF_8), new byte[0],
+                clock);
+    }
+
+    /**
+     * The same template, always rendered with {@code instant}.
+     */
+    public GreetingTemplate at(Instant instant) {
+        return new GreetingTemplate(this.name, this.prefix, this.suffix, Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    /**
+     * Writes the greeting of the current instant into a new buffer of the allocator.
+     */
+    public ByteBuf write(ByteBufAllocator allocator) {
+        Instant now = this.clock.instant();
+        ByteBuf buffer = allocator.buffer(this.prefix.length + MAX_INSTANT_LENGTH + this.suffix.length);
+        try {
+            buffer.writeBytes(this.prefix);
+            writeInstant(buffer, now.getEpochSecond(), now.getNano());
+            buffer.writeBytes(this.suffix);
+            return buffer;
+        } catch (RuntimeException ex) {
+            buffer.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * The greeting of the current instant as a String, for codecs that need a {@code GreetingResponse}.
+     */
+    public String render() {
+        return "Hello " + this.name + " @ " + this.clock.instant();
+    }
+
+    static void writeInstant(ByteBuf buffer, long epochSecond, int nano) {
+        long epochMinute = Math.floorDiv(epochSecond, 60);
+        Minute current = minute;
+        if (current == null || current.epochMinute != epochMinute) {
+            current = new Minute(epochMinute);
+            minute = current;
+        }
+        buffer.writeBytes(current.encoded);
+        writeDigits(buffer, Math.floorMod(epochSecond, 60), 2);
+        if (nano > 0) {
+            buffer.writeByte('.');
+            if (nano % 1_000_000 == 0) {
+                writeDigits(buffer, nano / 1_000_000, 3);
+            } else if (nano % 1_000 == 0) {
+                writeDigits(buffer, nano / 1_000, 6);
+            } else {
+                writeDigits(buffer, nano, 9);
+            }
+        }
+        buffer.writeByte('Z');
+    }
+
+    private static void writeDigits(ByteBuf buffer, int value, int digits) {
+        buffer.ensureWritable(digits);
+        int index = buffer.writerIndex();
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.setByte(index + i, '0' + value % 10);
+            value /= 10;
+        }
+        buffer.writerIndex(index + digits);
+    }
+
+    /**
+     * {@code yyyy-MM-ddTHH:mm:} of one minute, in ASCII.
+     */
+    private static final class Minute {
+        final long epochMinute;
+        final byte[] encoded;
+
+        Minute(long epochMinute) {
+            this.epochMinute = epochMinute;
+            String instant = DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(epochMinute * 60));
+            this.encoded = instant.substring(0, instant.lastIndexOf(':') + 1).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.resume.ResumableFramesStore;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the frames sent on a resumable session until the peer acknowledges them, in direct buffers and within
+ * a size and an age bound.
+ * <p>
+ * Positions follow {@code InMemoryResumableFramesStore}: {@link #framePosition()} is the byte offset of the oldest
+ * frame still held, so dropping a frame to stay within the bounds simply moves it forward, and a later resume from
+ * an older position is rejected by the peer instead of replaying a gap. Frames that are already direct are kept by
+ * reference; heap frames are copied out once when saved.
+ */
+@Slf4j
+public class OffHeapResumableFramesStore implements ResumableFramesStore {
+
+    private final MonoProcessor<Void> disposed = MonoProcessor.create();
+    private final ArrayDeque<CachedFrame> frames = new ArrayDeque<>();
+    private final ByteBufAllocator allocator;
+    private final long maxBytes;
+    private final long maxAgeNanos;
+    private final ResumeMetrics metrics;
+    private volatile long position;
+    private volatile long impliedPosition;
+    private long cachedBytes;
+
+    public OffHeapResumableFramesStore(ByteBufAllocator allocator, long maxBytes, Duration maxAge,
+                                       ResumeMetrics metrics) {
+        this.allocator = allocator;
+        this.maxBytes = maxBytes;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.metrics = metrics;
+        metrics.sessionOpened();
+    }
+
+    @Override
+    public Mono<Void> saveFrames(Flux<ByteBuf> frames) {
+        MonoProcessor<Void> completed = MonoProcessor.create();
+        frames
+                .doFinally(signal -> completed.onComplete())
+                .subscribe(this::save, ex -> log.debug("resume frames stream failed: {}", ex.toString()));
+        return completed;
+    }
+
+    @Override
+    public synchronized void releaseFrames(long remoteImpliedPos) {
+        long remove = Math.max(0, remoteImpliedPos - this.position);
+        while (remove > 0 && !this.frames.isEmpty()) {
+            remove -= releaseHead();
+        }
+        if (remove > 0) {
+            throw new IllegalStateException(
+                    "Local and remote state disagreement: need to remove additional " + remove + " bytes, but cache is empty");
+        } else if (remove < 0) {
+            throw new IllegalStateException(
+                    "Local and remote state disagreement: local and remote frame sizes are not equal");
+        }
+    }
+
+    /**
+     * Replays the frames held when the resume starts. Each one goes out as a retained duplicate, so the
+     * transport can release it after writing while the store keeps its own reference until the peer
+     * acknowledges it.
+     */
+    @Override
+    public Flux<ByteBuf> resumeStream() {
+        return Flux.generate(this::startReplay, (replay, sink) -> {
+            ByteBuf next = replay.next();
+            if (next == null) {
+                sink.complete();
+            } else {
+                sink.next(next);
+            }
+            return replay;
+        });
+    }
+
+    @Override
+    public long framePosition() {
+        return this.position;
+    }
+
+    @Override
+    public long frameImpliedPosition() {
+        return this.impliedPosition;
+    }
+
+    @Override
+    public void resumableFrameReceived(ByteBuf frame) {
+        // called on the transport thread only, so the non-atomic update of the volatile is safe
+        this.impliedPosition += frame.readableBytes();
+    }
+
+    @Override
+    public Mono<Void> onClose() {
+        return this.disposed;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (isDisposed()) {
+            return;
+        }
+        while (!this.frames.isEmpty()) {
+            releaseHead();
+        }
+        this.metrics.sessionClosed();
+        this.disposed.onComplete();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return this.disposed.isTerminated();
+    }
+
+    synchronized int cachedFrames() {
+        return this.frames.size();
+    }
+
+    synchronized long cachedBytes() {
+        return this.cachedBytes;
+    }
+
+    private synchronized void save(ByteBuf frame) {
+        int size = frame.readableBytes();
+        if (isDisposed()) {
+            this.position += size;
+            return;
+        }
+        long now = System.nanoTime();
+        while (!this.frames.isEmpty() && now - this.frames.peekFirst().savedAt > this.maxAgeNanos) {
+            releaseHead();
+            this.metrics.evictedByAge();
+        }
+        while (!this.frames.isEmpty() && this.cachedBytes + size > this.maxBytes) {
+            releaseHead();
+            this.metrics.evictedBySize();
+        }
+        if (size > this.maxBytes) {
+            this.position += size;
+            this.metrics.evictedBySize();
+            return;
+        }
+        this.frames.addLast(new CachedFrame(offHeap(frame), size, now));
+        this.cachedBytes += size;
+        this.metrics.stored(size);
+    }
+
+    private ByteBuf offHeap(ByteBuf frame) {
+        if (frame.isDirect()) {
+            return frame.retainedDuplicate();
+        }
+        int size = frame.readableBytes();
+        return this.allocator.directBuffer(size, size).writeBytes(frame, frame.readerIndex(), size);
+    }
+
+    private int releaseHead() {
+        CachedFrame head = this.frames.pollFirst();
+        head.released = true;
+        head.frame.release();
+        this.cachedBytes -= head.size;
+        this.position += head.size;
+        this.metrics.removed(head.size);
+        return head.size;
+    }
+
+    private synchronized Replay startReplay() {
+        this.metrics.resumed();
+        return new Replay(this.frames.toArray(new CachedFrame[0]));
+    }
+
+    private static final class CachedFrame {
+        final ByteBuf frame;
+        final int size;
+        final long savedAt;
+        boolean released;
+
+        CachedFrame(ByteBuf frame, int size, long savedAt) {
+            this.frame = frame;
+            this.size = size;
+            this.savedAt = savedAt;
+        }
+    }
+
+    private final class Replay {
+        private final CachedFrame[] snapshot;
+        private int index;
+
+        Replay(CachedFrame[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Frames the peer acknowledges while the replay is still running are released in between; they are
+         * skipped rather than sent from a freed buffer.
+         */
+        ByteBuf next() {
+            synchronized (OffHeapResumableFramesStore.this) {
+                while (this.index < this.snapshot.length) {
+                    CachedFrame cached = this.snapshot[this.index++];
+                    if (!cached.released) {
+                        metrics.replayed();
+                        return cached.frame.retainedDuplicate();
+                    }
+                }
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Puts the routes of a {@code @MessageMapping} method in a {@link PriorityClass} other than
+ * {@link PriorityClass#STANDARD STANDARD}. When a connection has more to send than it can write, the responses and
+ * stream elements of its routes go out in proportion to the weight of their class rather than in the order they
+ * were produced, so a small interactive response does not wait behind a backlog of bulk stream elements.
+ * <p>
+ * Routes keep the order of their own frames, and the class only decides between frames of different streams, which
+ * is not possible with resumption on; see {@link RoutePriorities}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Priority {
+
+    PriorityClass value();
+}
@@ -0,0 +1,24 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+/**
+ * How the frames a route sends are scheduled against those of other routes on the same connection, each class
+ * getting a share of the connection in proportion to its {@code producer.rsocket.priorities.weights} while
+ * several have frames waiting.
+ */
+public enum PriorityClass {
+
+    /**
+     * Small responses someone is waiting for, such as a single {@code greet}.
+     */
+    INTERACTIVE,
+
+    /**
+     * Routes that do not say otherwise.
+     */
+    STANDARD,
+
+    /**
+     * Streams and large responses that take a while to send anyway and can wait a little longer.
+     */
+    BULK
+}
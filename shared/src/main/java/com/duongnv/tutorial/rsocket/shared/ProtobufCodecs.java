@@ -0,0 +1,132 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import io.rsocket.metadata.WellKnownMimeType;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDecoder;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Protocol Buffers encoding for the messages exchanged by the producer and the consumer. The schema of each
+ * registered class is derived once from its properties, so the plain DTOs go on the wire as protobuf without
+ * generated message classes.
+ */
+public class ProtobufCodecs {
+
+    public static final MimeType PROTOBUF =
+            MimeTypeUtils.parseMimeType(WellKnownMimeType.APPLICATION_PROTOBUF.getString());
+
+    private final Map<Class<?>, ObjectReader> readers = new HashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new HashMap<>();
+
+    public ProtobufCodecs(Class<?>... messageTypes) {
+        ProtobufMapper mapper = new ProtobufMapper();
+        for (Class<?> type : messageTypes) {
+            try {
+                ProtobufSchema schema = mapper.generateSchemaFor(type);
+                this.readers.put(type, mapper.readerFor(type).with(schema));
+                this.writers.put(type, mapper.writerFor(type).with(schema));
+            } catch (JsonMappingException ex) {
+                throw new IllegalArgumentException("Cannot derive a protobuf schema for " + type.getName(), ex);
+            }
+        }
+    }
+
+    public AbstractEncoder<Object> encoder() {
+        return new Encoder();
+    }
+
+    public AbstractDecoder<Object> decoder() {
+        return new Decoder();
+    }
+
+    private class Encoder extends AbstractEncoder<Object> {
+
+        Encoder() {
+            super(PROTOBUF);
+        }
+
+        @Override
+        public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+            return writers.containsKey(elementType.toClass()) && super.canEncode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+        }
+
+        @Override
+        public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                      MimeType mimeType, Map<String, Object> hints) {
+            DataBuffer buffer = bufferFactory.allocateBuffer();
+            boolean release = true;
+            try (OutputStream out = buffer.asOutputStream()) {
+                writers.get(valueType.toClass()).writeValue(out, value);
+                release = false;
+                return buffer;
+            } catch (IOException ex) {
+                throw new EncodingException("Protobuf encoding error: " + ex.getMessage(), ex);
+            } finally {
+                if (release) {
+                    DataBufferUtils.release(buffer);
+                }
+            }
+        }
+    }
+
+    private class Decoder extends AbstractDecoder<Object> {
+
+        Decoder() {
+            super(PROTOBUF);
+        }
+
+        @Override
+        public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+            return readers.containsKey(elementType.toClass()) && super.canDecode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<Object> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                   MimeType mimeType, Map<String, Object> hints) {
+            return Flux.from(inputStream).map(buffer -> decode(buffer, elementType, mimeType, hints));
+        }
+
+        @Override
+        public Mono<Object> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                         MimeType mimeType, Map<String, Object> hints) {
+            return DataBufferUtils.join(inputStream).map(buffer -> decode(buffer, elementType, mimeType, hints));
+        }
+
+        @Override
+        public Object decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType,
+                             Map<String, Object> hints) throws DecodingException {
+            try (InputStream in = buffer.asInputStream(true)) {
+                return readers.get(targetType.toClass()).readValue(in);
+            } catch (IOException ex) {
+                throw new DecodingException("Protobuf decoding error: " + ex.getMessage(), ex);
+            }
+        }
+    }
+}
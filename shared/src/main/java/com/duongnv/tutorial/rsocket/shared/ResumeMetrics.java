@@ -0,0 +1,126 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.rsocket.DuplexConnection;
+import io.rsocket.frame.ErrorFrameFlyweight;
+import io.rsocket.frame.FrameHeaderFlyweight;
+import io.rsocket.frame.FrameType;
+import io.rsocket.plugins.DuplexConnectionInterceptor;
+import io.rsocket.util.DuplexConnectionProxy;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resumption meters shared by all sessions of the application.
+ * <p>
+ * {@code rsocket.resume} counts resumes by outcome: a hit is a session that picked up where it left off and
+ * replayed its unacknowledged frames, a miss is a REJECTED_RESUME error seen on a connection, either because the
+ * session had expired or because the frames the peer still needed had already been evicted. The
+ * {@code rsocket.resume.store.*} meters track what the frame stores hold and what their bounds threw away.
+ */
+public class ResumeMetrics {
+
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter replayed;
+    private final Counter evictedBySize;
+    private final Counter evictedByAge;
+
+    public ResumeMetrics(MeterRegistry registry) {
+        Gauge.builder("rsocket.resume.store.sessions", this.sessions, AtomicLong::get)
+                .description("Resumable sessions holding a frame store")
+                .register(registry);
+        Gauge.builder("rsocket.resume.store.frames", this.frames, AtomicLong::get)
+                .description("Unacknowledged frames held for resumption")
+                .register(registry);
+        Gauge.builder("rsocket.resume.store.bytes", this.bytes, AtomicLong::get)
+                .description("Direct memory held by unacknowledged frames")
+                .baseUnit("bytes")
+                .register(registry);
+        this.hits = Counter.builder("rsocket.resume").tag("outcome", "hit").register(registry);
+        this.misses = Counter.builder("rsocket.resume").tag("outcome", "miss").register(registry);
+        this.replayed = Counter.builder("rsocket.resume.replayed")
+                .description("Frames sent again after a resume")
+                .register(registry);
+        this.evictedBySize = Counter.builder("rsocket.resume.store.evicted").tag("reason", "size").register(registry);
+        this.evictedByAge = Counter.builder("rsocket.resume.store.evicted").tag("reason", "age").register(registry);
+    }
+
+    /**
+     * Counts misses from the REJECTED_RESUME errors crossing a connection in either direction, since whichever
+     * side finds the resume impossible is the one that sends it.
+     */
+    public DuplexConnectionInterceptor rejections() {
+        return (type, connection) -> type == DuplexConnectionInterceptor.Type.SOURCE
+                ? new RejectionCountingConnection(connection)
+                : connection;
+    }
+
+    void sessionOpened() {
+        this.sessions.incrementAndGet();
+    }
+
+    void sessionClosed() {
+        this.sessions.decrementAndGet();
+    }
+
+    void stored(int size) {
+        this.frames.incrementAndGet();
+        this.bytes.addAndGet(size);
+    }
+
+    void removed(int size) {
+        this.frames.decrementAndGet();
+        this.bytes.addAndGet(-size);
+    }
+
+    void resumed() {
+        this.hits.increment();
+    }
+
+    void replayed() {
+        this.replayed.increment();
+    }
+
+    void evictedBySize() {
+        this.evictedBySize.increment();
+    }
+
+    void evictedByAge() {
+        this.evictedByAge.increment();
+    }
+
+    private void inspect(ByteBuf frame) {
+        if (FrameHeaderFlyweight.streamId(frame) == 0
+                && FrameHeaderFlyweight.frameType(frame) == FrameType.ERROR
+                && ErrorFrameFlyweight.errorCode(frame) == ErrorFrameFlyweight.REJECTED_RESUME) {
+            this.misses.increment();
+        }
+    }
+
+    private final class RejectionCountingConnection extends DuplexConnectionProxy {
+
+        RejectionCountingConnection(DuplexConnection connection) {
+            super(connection);
+        }
+
+        @Override
+        public Mono<Void> send(Publisher<ByteBuf> frames) {
+            return super.send(Flux.from(frames).doOnNext(ResumeMetrics.this::inspect));
+        }
+
+        @Override
+        public Flux<ByteBuf> receive() {
+            return super.receive().doOnNext(ResumeMetrics.this::inspect);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.metadata.CompositeMetadata;
+import io.rsocket.metadata.RoutingMetadata;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.plugins.RSocketInterceptor;
+import io.rsocket.util.RSocketProxy;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request meters by route and interaction model, taken from the routing metadata of each request.
+ * <p>
+ * {@code rsocket.request} times each request up to its response, or up to the first element of a stream, so its
+ * count is the request rate; {@code rsocket.request.errors} counts the requests that ended in an error and
+ * {@code rsocket.streams.active} the streams and channels still open. Routes come from the peer, so only the first
+ * {@code maxRoutes} of them get meters of their own; later ones are recorded as {@code other}, and requests without
+ * a route as {@code none}.
+ */
+public class RouteMetrics {
+
+    private static final String ROUTING = WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getString();
+    private static final String NO_ROUTE = "none";
+    private static final String OTHER_ROUTES = "other";
+
+    private final MeterRegistry registry;
+    private final int maxRoutes;
+    private final boolean histograms;
+    private final Map<String, Meters[]> routes = new ConcurrentHashMap<>();
+
+    public RouteMetrics(MeterRegistry registry, int maxRoutes, boolean histograms) {
+        this.registry = registry;
+        this.maxRoutes = maxRoutes;
+        this.histograms = histograms;
+    }
+
+    public RSocketInterceptor interceptor() {
+        return Instrumented::new;
+    }
+
+    private Meters meters(Payload payload, Interaction interaction) {
+        String route = route(payload);
+        Meters[] byInteraction = this.routes.get(route);
+        if (byInteraction == null) {
+            String tag = this.routes.size() < this.maxRoutes ? route : OTHER_ROUTES;
+            byInteraction = this.routes.computeIfAbsent(tag, r -> new Meters[Interaction.values().length]);
+            route = tag;
+        }
+        Meters meters = byInteraction[interaction.ordinal()];
+        if (meters == null) {
+            synchronized (byInteraction) {
+                meters = byInteraction[interaction.ordinal()];
+                if (meters == null) {
+                    meters = new Meters(route, interaction);
+                    byInteraction[interaction.ordinal()] = meters;
+                }
+            }
+        }
+        return meters;
+    }
+
+    /**
+     * The first route in the routing metadata of the payload, or {@code "none"} if it has none.
+     */
+    public static String route(Payload payload) {
+        if (payload == null || !payload.hasMetadata()) {
+            return NO_ROUTE;
+        }
+        try {
+            for (CompositeMetadata.Entry entry : new CompositeMetadata(payload.sliceMetadata(), false)) {
+                if (ROUTING.equals(entry.getMimeType())) {
+                    Iterator<String> tags = new RoutingMetadata(entry.getContent()).iterator();
+                    return tags.hasNext() ? tags.next() : NO_ROUTE;
+                }
+            }
+        } catch (RuntimeException ex) {
+            // not composite metadata
+        }
+        return NO_ROUTE;
+    }
+
+    private enum Interaction {
+        REQUEST_RESPONSE("request-response", false),
+        FIRE_AND_FORGET("fire-and-forget", false),
+        REQUEST_STREAM("request-stream", true),
+        REQUEST_CHANNEL("request-channel", true);
+
+        private final String tag;
+        private final boolean stream;
+
+        Interaction(String tag, boolean stream) {
+            this.tag = tag;
+            this.stream = stream;
+        }
+    }
+
+    private final class Meters {
+        final Timer latency;
+        final Counter errors;
+        final LongTaskTimer active;
+
+        Meters(String route, Interaction interaction) {
+            this.latency = Timer.builder("rsocket.request")
+                    .tag("route", route)
+                    .tag("interaction", interaction.tag)
+                    .description("Time to the response, or to the first element of a stream")
+                    .publishPercentileHistogram(histograms)
+                    .register(registry);
+            this.errors = Counter.builder("rsocket.request.errors")
+                    .tag("route", route)
+                    .tag("interaction", interaction.tag)
+                    .register(registry);
+            this.active = !interaction.stream ? null : LongTaskTimer.builder("rsocket.streams.active")
+                    .tag("route", route)
+                    .tag("interaction", interaction.tag)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * One request in progress. The latency is recorded at the first signal, whichever it is.
+     */
+    private static final class Call {
+        private final Meters meters;
+        private final long start = System.nanoTime();
+        private final LongTaskTimer.Sample stream;
+        private boolean answered;
+
+        Call(Meters meters) {
+            this.meters = meters;
+            this.stream = meters.active != null ? meters.active.start() : null;
+        }
+
+        void answered() {
+            if (!this.answered) {
+                this.answered = true;
+                this.meters.latency.record(System.nanoTime() - this.start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        void failed() {
+            answered();
+            this.meters.errors.increment();
+        }
+
+        void ended(SignalType signal) {
+            if (signal == SignalType.ON_COMPLETE) {
+                answered();
+            }
+            if (this.stream != null) {
+                this.stream.stop();
+            }
+        }
+
+        <T> Mono<T> around(Mono<T> source) {
+            return source
+                    .doOnSuccess(value -> answered())
+                    .doOnError(error -> failed())
+                    .doFinally(this::ended);
+        }
+
+        <T> Flux<T> around(Flux<T> source) {
+            return source
+                    .doOnNext(value -> answered())
+                    .doOnError(error -> failed())
+                    .doFinally(this::ended);
+        }
+    }
+
+    private final class Instrumented extends RSocketProxy {
+
+        Instrumented(RSocket source) {
+            super(source);
+        }
+
+        @Override
+        public Mono<Void> fireAndForget(Payload payload) {
+            Meters meters = meters(payload, Interaction.FIRE_AND_FORGET);
+            return Mono.defer(() -> new Call(meters).around(super.fireAndForget(payload)));
+        }
+
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+            Meters meters = meters(payload, Interaction.REQUEST_RESPONSE);
+            return Mono.defer(() -> new Call(meters).around(super.requestResponse(payload)));
+        }
+
+        @Override
+        public Flux<Payload> requestStream(Payload payload) {
+            Meters meters = meters(payload, Interaction.REQUEST_STREAM);
+            return Flux.defer(() -> new Call(meters).around(super.requestStream(payload)));
+        }
+
+        @Override
+        public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+            return Flux.from(payloads).switchOnFirst((first, all) -> {
+                Meters meters = meters(first.get(), Interaction.REQUEST_CHANNEL);
+                return new Call(meters).around(super.requestChannel(all));
+            });
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.buffer.ByteBuf;
+import io.rsocket.frame.FrameHeaderFlyweight;
+import io.rsocket.frame.RequestChannelFrameFlyweight;
+import io.rsocket.frame.RequestResponseFrameFlyweight;
+import io.rsocket.frame.RequestStreamFrameFlyweight;
+import io.rsocket.metadata.CompositeMetadata;
+import io.rsocket.metadata.RoutingMetadata;
+import io.rsocket.metadata.WellKnownMimeType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.messaging.handler.DestinationPatternsMessageCondition;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.util.RouteMatcher;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link PriorityClass} of every route of the producer, from the {@link Priority @Priority} of its handler
+ * method, and the weight each class is scheduled with.
+ * <p>
+ * A {@link FragmentingConnection} that interleaves streams looks up the class of each request it receives and
+ * sends the frames of the stream in that class: a class with frames waiting gets a share of the connection in
+ * proportion to its weight, and a class with none waiting gives its share to the others. Scheduling by class
+ * reorders the frames of different streams, so like interleaving it is off with resumption on.
+ * <p>
+ * {@code rsocket.priority.frames} and {@code rsocket.priority.bytes} count what each class sent, and
+ * {@code rsocket.priority.wait} times how long the frames of a stream waited for the turn of their class on a
+ * connection with a backlog, from the first one queued until it went out.
+ */
+@Slf4j
+public class RoutePriorities {
+
+    private static final String ROUTING = WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getString();
+    private static final PriorityClass[] CLASSES = PriorityClass.values();
+
+    private final Map<String, PriorityClass> exact = new HashMap<>();
+    private final Map<String, PriorityClass> patterns = new LinkedHashMap<>();
+    private final RouteMatcher matcher;
+    private final int[] weights = new int[CLASSES.length];
+    private final Counter[] frames = new Counter[CLASSES.length];
+    private final Counter[] bytes = new Counter[CLASSES.length];
+    private final Timer[] waits = new Timer[CLASSES.length];
+
+    RoutePriorities(Map<String, PriorityClass> routes, RouteMatcher matcher, Map<PriorityClass, Integer> weights,
+                    MeterRegistry registry, boolean histograms) {
+        this.matcher = matcher;
+        routes.forEach((route, priority) -> (matcher.isPattern(route) ? this.patterns : this.exact).put(route, priority));
+        for (PriorityClass priority : CLASSES) {
+            int weight = weights.getOrDefault(priority, 1);
+            if (weight < 1) {
+                throw new IllegalArgumentException("Weight of " + priority + " must be at least 1 but was " + weight);
+            }
+            String tag = priority.name().toLowerCase();
+            this.weights[priority.ordinal()] = weight;
+            this.frames[priority.ordinal()] = Counter.builder("rsocket.priority.frames")
+                    .tag("class", tag)
+                    .description("Frames sent by the priority class of their route")
+                    .register(registry);
+            this.bytes[priority.ordinal()] = Counter.builder("rsocket.priority.bytes")
+                    .tag("class", tag)
+                    .baseUnit("bytes")
+                    .register(registry);
+            this.waits[priority.ordinal()] = Timer.builder("rsocket.priority.wait")
+                    .tag("class", tag)
+                    .description("Time the frames of a stream waited for the turn of their priority class")
+                    .publishPercentileHistogram(histograms)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * The classes of the mappings of the handler; the handler must have detected its handler methods.
+     */
+    public static RoutePriorities compile(RSocketMessageHandler handler, Map<PriorityClass, Integer> weights,
+                                   MeterRegistry registry, boolean histograms) {
+        Map<String, PriorityClass> routes = new LinkedHashMap<>();
+        handler.getHandlerMethods().forEach((mapping, handlerMethod) -> {
+            Priority priority = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getMethod(), Priority.class);
+            DestinationPatternsMessageCondition destinations =
+                    mapping.getCondition(DestinationPatternsMessageCondition.class);
+            if (priority != null && destinations != null) {
+                destinations.getPatterns().forEach(route -> routes.put(route, priority.value()));
+            }
+        });
+        log.info("Route priorities: {}, weighted {}", routes, weights);
+        return new RoutePriorities(routes, handler.getRouteMatcher(), weights, registry, histograms);
+    }
+
+    PriorityClass of(String route) {
+        PriorityClass priority = this.exact.get(route);
+        if (priority != null || this.patterns.isEmpty()) {
+            return priority != null ? priority : PriorityClass.STANDARD;
+        }
+        RouteMatcher.Route parsed = this.matcher.parseRoute(route);
+        for (Map.Entry<String, PriorityClass> pattern : this.patterns.entrySet()) {
+            if (this.matcher.match(pattern.getKey(), parsed)) {
+                return pattern.getValue();
+            }
+        }
+        return PriorityClass.STANDARD;
+    }
+
+    /**
+     * The class of the route a request frame asks for, found in its routing metadata, or in the routing entry of
+     * its composite metadata. Requests without a route, or whose metadata cannot be read, are standard.
+     */
+    PriorityClass of(ByteBuf request, boolean composite) {
+        if (!FrameHeaderFlyweight.hasMetadata(request)) {
+            return PriorityClass.STANDARD;
+        }
+        try {
+            ByteBuf metadata = metadata(request);
+            if (metadata == null) {
+                return PriorityClass.STANDARD;
+            }
+            if (!composite) {
+                return of(new RoutingMetadata(metadata));
+            }
+            for (CompositeMetadata.Entry entry : new CompositeMetadata(metadata, false)) {
+                if (ROUTING.equals(entry.getMimeType())) {
+                    return of(new RoutingMetadata(entry.getContent()));
+                }
+            }
+        } catch (RuntimeException ex) {
+            // not the metadata the connection declared
+        }
+        return PriorityClass.STANDARD;
+    }
+
+    int weight(PriorityClass priority) {
+        return this.weights[priority.ordinal()];
+    }
+
+    void sent(PriorityClass priority, int frameBytes) {
+        this.frames[priority.ordinal()].increment();
+        this.bytes[priority.ordinal()].increment(frameBytes);
+    }
+
+    void waited(PriorityClass priority, long nanos) {
+        this.waits[priority.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private PriorityClass of(RoutingMetadata routing) {
+        Iterator<String> tags = routing.iterator();
+        return tags.hasNext() ? of(tags.next()) : PriorityClass.STANDARD;
+    }
+
+    private static ByteBuf metadata(ByteBuf request) {
+        switch (FrameHeaderFlyweight.frameType(request)) {
+            case REQUEST_RESPONSE:
+                return RequestResponseFrameFlyweight.metadata(request);
+            case REQUEST_STREAM:
+                return RequestStreamFrameFlyweight.metadata(request);
+            case REQUEST_CHANNEL:
+                return RequestChannelFrameFlyweight.metadata(request);
+            default:
+                return null;
+        }
+    }
+}
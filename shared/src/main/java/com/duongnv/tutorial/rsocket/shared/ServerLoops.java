@@ -0,0 +1,127 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.rsocket.transport.ServerTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.transport.netty.server.WebsocketServerTransport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.rsocket.server.RSocketServer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+import reactor.netty.tcp.TcpServer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Event loops a server runs on, sized and picked explicitly instead of taking Reactor Netty's global ones.
+ * <p>
+ * With more than one shard, every shard is its own listening socket on the same port, bound with SO_REUSEPORT
+ * and served by its own loops: the kernel hashes each new connection to one of the sockets, so accepting is spread
+ * over the shards instead of going through one selector. SO_REUSEPORT is an epoll option, so on NIO there is a
+ * single shard with all the threads.
+ */
+@Slf4j
+public final class ServerLoops implements Disposable {
+
+    public enum Native {
+        /**
+         * Epoll where Netty's native library loads, NIO anywhere else.
+         */
+        AUTO,
+        /**
+         * Epoll, falling back to NIO with a warning when it is not available.
+         */
+        EPOLL,
+        NIO
+    }
+
+    private final boolean epoll;
+    private final int loopThreads;
+    private final List<LoopResources> shards = new ArrayList<>();
+
+    public ServerLoops(String name, int loopThreads, Native nativeTransport, int shards) {
+        this.epoll = nativeTransport != Native.NIO && Epoll.isAvailable();
+        if (nativeTransport == Native.EPOLL && !this.epoll) {
+            log.warn("epoll is not available for {}, running on NIO", name, Epoll.unavailabilityCause());
+        }
+        this.loopThreads = loopThreads > 0 ? loopThreads : LoopResources.DEFAULT_IO_WORKER_COUNT;
+        int count = this.epoll ? Math.max(1, Math.min(shards, this.loopThreads)) : 1;
+        if (count < shards) {
+            log.warn("{} runs {} of the {} shards asked for", name, count, shards);
+        }
+        for (int i = 0; i < count; i++) {
+            int threads = this.loopThreads / count + (i < this.loopThreads % count ? 1 : 0);
+            this.shards.add(LoopResources.create(count == 1 ? name : name + "-" + i, threads, true));
+        }
+    }
+
+    public boolean isEpoll() {
+        return this.epoll;
+    }
+
+    public int loopThreads() {
+        return this.loopThreads;
+    }
+
+    public int shards() {
+        return this.shards.size();
+    }
+
+    /**
+     * A TCP transport listening on {@code address} with the loops of one shard.
+     */
+    public ServerTransport<CloseableChannel> tcp(int shard, InetSocketAddress address) {
+        return TcpServerTransport.create(listen(TcpServer.create(), shard, address));
+    }
+
+    /**
+     * A transport of the given kind listening on {@code address} with the loops of one shard.
+     */
+    public ServerTransport<CloseableChannel> transport(RSocketServer.Transport kind, int shard,
+                                                       InetSocketAddress address) {
+        if (kind == RSocketServer.Transport.WEBSOCKET) {
+            return WebsocketServerTransport.create(
+                    HttpServer.create().tcpConfiguration(tcp -> listen(tcp, shard, address)));
+        }
+        return tcp(shard, address);
+    }
+
+    /**
+     * Starts a server on every shard with {@code start}, the first on {@code address} and the others on the port
+     * the first ended up with, so port 0 works too. If a shard fails to start, the ones already started are
+     * closed.
+     */
+    public Mono<List<CloseableChannel>> bind(
+            InetSocketAddress address, Function<ServerTransport<CloseableChannel>, Mono<CloseableChannel>> start) {
+        return start.apply(tcp(0, address)).flatMap(first -> {
+            InetSocketAddress bound = new InetSocketAddress(address.getAddress(), first.address().getPort());
+            List<CloseableChannel> channels = new ArrayList<>(List.of(first));
+            return Flux
+                    .range(1, shards() - 1)
+                    .concatMap(shard -> start.apply(tcp(shard, bound)))
+                    .doOnNext(channels::add)
+                    .then(Mono.fromSupplier(() -> channels))
+                    .doOnError(ex -> channels.forEach(CloseableChannel::dispose));
+        });
+    }
+
+    private TcpServer listen(TcpServer server, int shard, InetSocketAddress address) {
+        server = server
+                .addressSupplier(() -> address)
+                .runOn(this.shards.get(shard), this.epoll);
+        return shards() > 1 ? server.selectorOption(EpollChannelOption.SO_REUSEPORT, true) : server;
+    }
+
+    @Override
+    public void dispose() {
+        this.shards.forEach(LoopResources::dispose);
+    }
+}
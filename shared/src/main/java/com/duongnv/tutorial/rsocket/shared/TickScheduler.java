@@ -0,0 +1,262 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Low-resolution {@link Scheduler} for periodic emitters, backed by a hashed timing wheel on a single thread.
+ * <p>
+ * Scheduling is a lock-free enqueue, and each tick hands every task that has fallen due since the last one to the
+ * {@code dispatch} scheduler, so thousands of streams waiting for the same second cost one wakeup instead of one timer
+ * each, and the tick thread never runs downstream work itself. Tasks of one {@link Worker} are dispatched to one
+ * worker of {@code dispatch}, so they still run one at a time and in order. Delays are rounded up to whole ticks of
+ * {@code resolution}; tasks without a delay wait for the next tick as well.
+ * <p>
+ * {@code rsocket.tick.lag} records how late each tick started, which grows when a tick has more due tasks than it can
+ * hand on in its {@code resolution}.
+ */
+@Slf4j
+public class TickScheduler implements Scheduler {
+
+    private final long resolutionNanos;
+    private final List<ArrayDeque<Timeout>> wheel;
+    private final Queue<Timeout> incoming = Queues.<Timeout>unboundedMultiproducer().get();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Scheduler dispatch;
+    private final Timer lag;
+    private final Thread ticker;
+    private final long startNanos;
+    private volatile boolean disposed;
+    private long tick;
+
+    public TickScheduler(Duration resolution, int wheelSize, String name, MeterRegistry registry) {
+        this(resolution, wheelSize, name, registry, Schedulers.parallel());
+    }
+
+    public TickScheduler(Duration resolution, int wheelSize, String name, MeterRegistry registry, Scheduler dispatch) {
+        if (resolution.toMillis() < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("Need a resolution of at least 1ms and a wheel of at least 1 slot");
+        }
+        this.resolutionNanos = resolution.toNanos();
+        this.dispatch = dispatch;
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            this.wheel.add(new ArrayDeque<>());
+        }
+        this.lag = Timer.builder("rsocket.tick.lag")
+                .tag("scheduler", name)
+                .description("How late each tick of the timing wheel started")
+                .register(registry);
+        Gauge.builder("rsocket.tick.pending", this.pending, AtomicInteger::get)
+                .tag("scheduler", name)
+                .description("Tasks waiting on the timing wheel")
+                .register(registry);
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(this::run, name);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    @Override
+    public Disposable schedule(Runnable task) {
+        return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay), null);
+        enqueue(timeout);
+        return timeout;
+    }
+
+    private void enqueue(Timeout timeout) {
+        if (this.disposed) {
+            throw new RejectedExecutionException("Tick scheduler is disposed");
+        }
+        this.pending.incrementAndGet();
+        this.incoming.offer(timeout);
+    }
+
+    @Override
+    public Worker createWorker() {
+        return new TickWorker();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return this.disposed;
+    }
+
+    @Override
+    public void dispose() {
+        this.disposed = true;
+        LockSupport.unpark(this.ticker);
+    }
+
+    private void run() {
+        while (!this.disposed) {
+            long deadline = this.startNanos + (this.tick + 1) * this.resolutionNanos;
+            long now;
+            while ((now = System.nanoTime()) < deadline && !this.disposed) {
+                LockSupport.parkNanos(this, deadline - now);
+            }
+            if (this.disposed) {
+                break;
+            }
+            this.lag.record(now - deadline, TimeUnit.NANOSECONDS);
+            transferIncoming();
+            expire(this.wheel.get((int) (this.tick % this.wheel.size())));
+            this.tick++;
+        }
+        for (ArrayDeque<Timeout> bucket : this.wheel) {
+            bucket.clear();
+        }
+        this.incoming.clear();
+    }
+
+    /**
+     * Puts newly scheduled tasks into the bucket of the tick they are due at, counting the full turns of the wheel
+     * they still have to wait. Tasks already overdue go into the current bucket.
+     */
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = this.incoming.poll()) != null) {
+            if (timeout.isDisposed()) {
+                this.pending.decrementAndGet();
+                continue;
+            }
+            long dueTick = Math.max(this.tick, ceilDiv(timeout.deadlineNanos - this.startNanos) - 1);
+            timeout.rounds = (dueTick - this.tick) / this.wheel.size();
+            this.wheel.get((int) (dueTick % this.wheel.size())).addLast(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        for (Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            Timeout timeout = it.next();
+            if (timeout.isDisposed()) {
+                it.remove();
+                this.pending.decrementAndGet();
+            } else if (timeout.rounds <= 0) {
+                it.remove();
+                this.pending.decrementAndGet();
+                dispatch(timeout);
+            } else {
+                timeout.rounds--;
+            }
+        }
+    }
+
+    private void dispatch(Timeout timeout) {
+        try {
+            if (timeout.worker != null) {
+                timeout.worker.dispatch(timeout);
+            } else {
+                this.dispatch.schedule(timeout::run);
+            }
+        } catch (RejectedExecutionException ex) {
+            log.warn("tick task rejected by its dispatch scheduler", ex);
+        }
+    }
+
+    private long ceilDiv(long nanos) {
+        return (nanos + this.resolutionNanos - 1) / this.resolutionNanos;
+    }
+
+    private static final class Timeout implements Disposable {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final TickWorker worker;
+        private volatile boolean cancelled;
+        private long rounds;
+
+        Timeout(Runnable task, long deadlineNanos, TickWorker worker) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.worker = worker;
+        }
+
+        void run() {
+            if (this.cancelled) {
+                return;
+            }
+            try {
+                this.task.run();
+            } catch (Throwable ex) {
+                log.error("tick task failed", ex);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            this.cancelled = true;
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return this.cancelled;
+        }
+    }
+
+    /**
+     * Cancels what it scheduled when disposed, which is how Reactor operators give up their pending delays. Due tasks
+     * run on a single worker of the dispatch scheduler, which keeps them serial as operators like
+     * {@code delayElements} expect.
+     */
+    private final class TickWorker implements Worker {
+        private final Disposable.Composite tasks = Disposables.composite();
+        private final Worker serial = TickScheduler.this.dispatch.createWorker();
+
+        @Override
+        public Disposable schedule(Runnable task) {
+            return schedule(task, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+            if (this.tasks.isDisposed()) {
+                throw new RejectedExecutionException("Worker is disposed");
+            }
+            Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay), this);
+            if (!this.tasks.add(timeout)) {
+                throw new RejectedExecutionException("Worker is disposed");
+            }
+            enqueue(timeout);
+            return timeout;
+        }
+
+        void dispatch(Timeout timeout) {
+            this.tasks.remove(timeout);
+            this.serial.schedule(timeout::run);
+        }
+
+        @Override
+        public void dispose() {
+            this.tasks.dispose();
+            this.serial.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return this.tasks.isDisposed();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.DuplexConnection;
+import io.rsocket.frame.ErrorFrameFlyweight;
+import io.rsocket.frame.FrameHeaderFlyweight;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.PayloadFrameFlyweight;
+import io.rsocket.frame.RequestResponseFrameFlyweight;
+import io.rsocket.frame.RequestStreamFrameFlyweight;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.SimpleRouteMatcher;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FragmentingConnectionTests {
+
+    private static final int MTU = 1024;
+
+    @Test
+    void fragmentsLargeFramesAndReassemblesThem() {
+        CapturingConnection wire = new CapturingConnection();
+        new FragmentingConnection(wire, ByteBufAllocator.DEFAULT, MTU, Integer.MAX_VALUE, true)
+                .send(Flux.just(next(1, 4000)))
+                .block();
+
+        assertThat(wire.sent).hasSize(4);
+        assertThat(wire.sent).allMatch(fragment -> fragment.readableBytes() <= MTU);
+        assertThat(wire.sent).allMatch(fragment -> FrameHeaderFlyweight.frameType(fragment) == FrameType.NEXT);
+
+        CapturingConnection peer = new CapturingConnection();
+        List<ByteBuf> received = new ArrayList<>();
+        new FragmentingConnection(peer, ByteBufAllocator.DEFAULT, MTU, Integer.MAX_VALUE, true)
+                .receive()
+                .subscribe(received::add);
+        wire.sent.forEach(peer.inbound::onNext);
+
+        assertThat(received).hasSize(1);
+        assertThat(PayloadFrameFlyweight.data(received.get(0)).readableBytes()).isEqualTo(4000);
+        received.forEach(ByteBuf::release);
+    }
+
+    @Test
+    void interleavesFragmentsWithOtherStreams() {
+        CapturingConnection wire = new CapturingConnection();
+        wire.initialDemand = 0;
+        new FragmentingConnection(wire, ByteBufAllocator.DEFAULT, MTU, Integer.MAX_VALUE, true)
+                .send(Flux.just(next(1, 4000), next(3, 10)))
+                .subscribe();
+        wire.writer.request(Long.MAX_VALUE);
+
+        assertThat(streamIds(wire.sent)).containsExactly(1, 3, 1, 1, 1);
+        wire.release();
+    }
+
+    @Test
+    void keepsFragmentsTogetherWithoutInterleaving() {
+        CapturingConnection wire = new CapturingConnection();
+        wire.initialDemand = 0;
+        new FragmentingConnection(wire, ByteBufAllocator.DEFAULT, MTU, Integer.MAX_VALUE, false)
+                .send(Flux.just(next(1, 4000), next(3, 10)))
+                .subscribe();
+        wire.writer.request(Long.MAX_VALUE);
+
+        assertThat(streamIds(wire.sent)).containsExactly(1, 1, 1, 1, 3);
+        wire.release();
+    }
+
+    @Test
+    void sendsInteractiveStreamsAheadOfABulkBacklog() {
+        CapturingConnection wire = new CapturingConnection();
+        wire.initialDemand = 0;
+        FragmentingConnection connection = new FragmentingConnection(
+                wire, ByteBufAllocator.DEFAULT, 0, Integer.MAX_VALUE, true, priorities());
+        connection.receive().subscribe(ByteBuf::release);
+        wire.inbound.onNext(RequestStreamFrameFlyweight.encode(ByteBufAllocator.DEFAULT, 1, false, Integer.MAX_VALUE,
+                RoutePrioritiesTests.composite("greet-stream"), Unpooled.EMPTY_BUFFER));
+        wire.inbound.onNext(RequestResponseFrameFlyweight.encode(ByteBufAllocator.DEFAULT, 3, false,
+                RoutePrioritiesTests.composite("greet"), Unpooled.EMPTY_BUFFER));
+
+        connection.send(Flux.concat(Flux.range(0, 8).map(i -> next(1, 4000)), Flux.just(nextComplete(3, 10))))
+                .subscribe();
+        wire.writer.request(Long.MAX_VALUE);
+
+        assertThat(streamIds(wire.sent)).containsExactly(3, 1, 1, 1, 1, 1, 1, 1, 1);
+        wire.release();
+    }
+
+    @Test
+    void sharesABusyConnectionBetweenClassesByWeight() {
+        CapturingConnection wire = new CapturingConnection();
+        wire.initialDemand = 0;
+        FragmentingConnection connection = new FragmentingConnection(
+                wire, ByteBufAllocator.DEFAULT, MTU, Integer.MAX_VALUE, true, priorities());
+        connection.receive().subscribe(ByteBuf::release);
+        wire.inbound.onNext(RequestStreamFrameFlyweight.encode(ByteBufAllocator.DEFAULT, 1, false, Integer.MAX_VALUE,
+                RoutePrioritiesTests.composite("greet-stream"), Unpooled.EMPTY_BUFFER));
+
+        // stream 5 was never requested by the peer, so it is standard
+        connection.send(Flux.just(next(1, 40_000), next(5, 40_000))).subscribe();
+        wire.writer.request(50);
+
+        List<Integer> first = streamIds(wire.sent);
+        assertThat(first.stream().filter(streamId -> streamId == 5).count()).isEqualTo(40);
+        assertThat(first.stream().filter(streamId -> streamId == 1).count()).isEqualTo(10);
+        wire.writer.request(Long.MAX_VALUE);
+        wire.release();
+    }
+
+    @Test
+    void closesTheConnectionWhenReassemblyExceedsTheLimit() {
+        CapturingConnection wire = new CapturingConnection();
+        new FragmentingConnection(wire, ByteBufAllocator.DEFAULT, MTU, Integer.MAX_VALUE, true)
+                .send(Flux.just(next(1, 4000)))
+                .block();
+
+        CapturingConnection peer = new CapturingConnection();
+        List<ByteBuf> received = new ArrayList<>();
+        new FragmentingConnection(peer, ByteBufAllocator.DEFAULT, MTU, 2048, true)
+                .receive()
+                .subscribe(received::add);
+        wire.sent.forEach(peer.inbound::onNext);
+
+        assertThat(received).isEmpty();
+        assertThat(peer.isDisposed()).isTrue();
+        assertThat(peer.sent).hasSize(1);
+        assertThat(ErrorFrameFlyweight.errorCode(peer.sent.get(0))).isEqualTo(ErrorFrameFlyweight.CONNECTION_ERROR);
+        peer.release();
+    }
+
+    private static ByteBuf next(int streamId, int size) {
+        return PayloadFrameFlyweight.encode(
+                ByteBufAllocator.DEFAULT, streamId, false, false, true, null, Unpooled.wrappedBuffer(new byte[size]));
+    }
+
+    private static ByteBuf nextComplete(int streamId, int size) {
+        return PayloadFrameFlyweight.encode(
+                ByteBufAllocator.DEFAULT, streamId, false, true, true, null, Unpooled.wrappedBuffer(new byte[size]));
+    }
+
+    private static RoutePriorities priorities() {
+        return new RoutePriorities(Map.of("greet", PriorityClass.INTERACTIVE, "greet-stream", PriorityClass.BULK),
+                new SimpleRouteMatcher(new AntPathMatcher(".")),
+                Map.of(PriorityClass.INTERACTIVE, 16, PriorityClass.STANDARD, 4, PriorityClass.BULK, 1),
+                new SimpleMeterRegistry(), false);
+    }
+
+    private static List<Integer> streamIds(List<ByteBuf> frames) {
+        return frames.stream().map(FrameHeaderFlyweight::streamId).collect(Collectors.toList());
+    }
+
+    /**
+     * Records what is sent and receives whatever the test pushes into {@code inbound}. With no initial demand it
+     * behaves like a transport that is still busy writing until the test requests through {@code writer}.
+     */
+    private static class CapturingConnection implements DuplexConnection {
+        final List<ByteBuf> sent = new ArrayList<>();
+        final DirectProcessor<ByteBuf> inbound = DirectProcessor.create();
+        final MonoProcessor<Void> closed = MonoProcessor.create();
+        long initialDemand = Long.MAX_VALUE;
+        BaseSubscriber<ByteBuf> writer;
+
+        @Override
+        public Mono<Void> send(Publisher<ByteBuf> frames) {
+            return Mono.create(sink -> {
+                this.writer = new BaseSubscriber<ByteBuf>() {
+                    @Override
+                    protected void hookOnSubscribe(Subscription subscription) {
+                        if (initialDemand > 0) {
+                            subscription.request(initialDemand);
+                        }
+                    }
+
+                    @Override
+                    protected void hookOnNext(ByteBuf frame) {
+                        sent.add(frame);
+                    }
+
+                    @Override
+                    protected void hookOnComplete() {
+                        sink.success();
+                    }
+
+                    @Override
+                    protected void hookOnError(Throwable throwable) {
+                        sink.error(throwable);
+                    }
+                };
+                Flux.from(frames).subscribe(this.writer);
+            });
+        }
+
+        @Override
+        public Flux<ByteBuf> receive() {
+            return this.inbound;
+        }
+
+        @Override
+        public Mono<Void> onClose() {
+            return this.closed;
+        }
+
+        @Override
+        public void dispose() {
+            this.closed.onComplete();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return this.closed.isTerminated();
+        }
+
+        void release() {
+            this.sent.forEach(ByteBuf::release);
+        }
+    }
+}
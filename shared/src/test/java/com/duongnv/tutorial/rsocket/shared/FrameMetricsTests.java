@@ -0,0 +1,153 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.DuplexConnection;
+import io.rsocket.frame.CancelFrameFlyweight;
+import io.rsocket.frame.PayloadFrameFlyweight;
+import io.rsocket.frame.RequestNFrameFlyweight;
+import io.rsocket.frame.RequestResponseFrameFlyweight;
+import io.rsocket.frame.RequestStreamFrameFlyweight;
+import io.rsocket.util.DefaultPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrameMetricsTests {
+
+    private final ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final StubConnection stub = new StubConnection();
+    private final DuplexConnection connection = new FrameMetrics(this.meters).instrument(this.stub);
+    private final List<ByteBuf> frames = new ArrayList<>();
+
+    FrameMetricsTests() {
+        this.connection.receive().subscribe();
+    }
+
+    @AfterEach
+    void release() {
+        this.frames.forEach(ByteBuf::release);
+    }
+
+    @Test
+    void countsFramesAndBytesByDirectionAndType() {
+        ByteBuf request = frame(RequestResponseFrameFlyweight.encode(
+                this.allocator, 1, false, DefaultPayload.create("hello")));
+        ByteBuf response = frame(PayloadFrameFlyweight.encodeNextComplete(
+                this.allocator, 1, DefaultPayload.create("hello back")));
+
+        this.stub.inbound.onNext(request);
+        this.connection.sendOne(response).block();
+
+        assertThat(count("rsocket.frames", "in", "REQUEST_RESPONSE")).isEqualTo(1);
+        assertThat(count("rsocket.frames", "out", "NEXT_COMPLETE")).isEqualTo(1);
+        assertThat(count("rsocket.frame.bytes", "in", "REQUEST_RESPONSE")).isEqualTo(request.readableBytes());
+        assertThat(count("rsocket.frame.bytes", "out", "NEXT_COMPLETE")).isEqualTo(response.readableBytes());
+        assertThat(credit("by-peer")).isZero();
+    }
+
+    @Test
+    void creditGrantedByThePeerIsUsedUpByElementsSent() {
+        this.stub.inbound.onNext(frame(RequestStreamFrameFlyweight.encode(
+                this.allocator, 1, false, 8, DefaultPayload.create("stream"))));
+        this.stub.inbound.onNext(frame(RequestNFrameFlyweight.encode(this.allocator, 1, 4)));
+        assertThat(credit("by-peer")).isEqualTo(12);
+
+        this.connection.send(Flux.just(next(1), next(1), next(1))).block();
+        assertThat(credit("by-peer")).isEqualTo(9);
+
+        this.connection.sendOne(frame(PayloadFrameFlyweight.encodeComplete(this.allocator, 1))).block();
+        assertThat(credit("by-peer")).isZero();
+    }
+
+    @Test
+    void creditGrantedToThePeerIsReleasedByCancel() {
+        this.connection.sendOne(frame(RequestStreamFrameFlyweight.encode(
+                this.allocator, 1, false, 32, DefaultPayload.create("stream")))).block();
+        this.stub.inbound.onNext(next(1));
+        assertThat(credit("to-peer")).isEqualTo(31);
+
+        this.connection.sendOne(frame(CancelFrameFlyweight.encode(this.allocator, 1))).block();
+        assertThat(credit("to-peer")).isZero();
+    }
+
+    @Test
+    void unboundedStreamsCarryNoCredit() {
+        this.stub.inbound.onNext(frame(RequestStreamFrameFlyweight.encode(
+                this.allocator, 1, false, Integer.MAX_VALUE, DefaultPayload.create("stream"))));
+        this.connection.sendOne(next(1)).block();
+
+        assertThat(credit("by-peer")).isZero();
+    }
+
+    @Test
+    void closingTheConnectionReleasesItsCredit() {
+        this.stub.inbound.onNext(frame(RequestStreamFrameFlyweight.encode(
+                this.allocator, 1, false, 8, DefaultPayload.create("one"))));
+        this.stub.inbound.onNext(frame(RequestStreamFrameFlyweight.encode(
+                this.allocator, 3, false, 8, DefaultPayload.create("two"))));
+        assertThat(credit("by-peer")).isEqualTo(16);
+
+        this.stub.dispose();
+
+        assertThat(credit("by-peer")).isZero();
+    }
+
+    private ByteBuf next(int streamId) {
+        return frame(PayloadFrameFlyweight.encodeNext(this.allocator, streamId, DefaultPayload.create("element")));
+    }
+
+    private ByteBuf frame(ByteBuf frame) {
+        this.frames.add(frame);
+        return frame;
+    }
+
+    private double count(String name, String direction, String type) {
+        return this.meters.get(name).tag("direction", direction).tag("type", type).functionCounter().count();
+    }
+
+    private double credit(String granted) {
+        return this.meters.get("rsocket.credit.outstanding").tag("granted", granted).gauge().value();
+    }
+
+    private static class StubConnection implements DuplexConnection {
+        final DirectProcessor<ByteBuf> inbound = DirectProcessor.create();
+        final MonoProcessor<Void> closed = MonoProcessor.create();
+
+        @Override
+        public Mono<Void> send(Publisher<ByteBuf> frames) {
+            return Flux.from(frames).then();
+        }
+
+        @Override
+        public Flux<ByteBuf> receive() {
+            return this.inbound;
+        }
+
+        @Override
+        public Mono<Void> onClose() {
+            return this.closed;
+        }
+
+        @Override
+        public void dispose() {
+            this.closed.onComplete();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return this.closed.isTerminated();
+        }
+    }
+}
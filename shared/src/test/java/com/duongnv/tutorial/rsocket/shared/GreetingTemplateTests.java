@@ -0,0 +1,77 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GreetingTemplateTests {
+
+    private static final Instant INSTANT = Instant.parse("2020-04-01T12:34:56.789123Z");
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    void writesInstantsAsInstantToStringDoes() {
+        Random random = new Random(42);
+        List<Instant> instants = List.of(Instant.EPOCH, Instant.ofEpochSecond(-1), Instant.ofEpochSecond(59, 1),
+                Instant.ofEpochSecond(60, 100_000_000), Instant.ofEpochSecond(1_585_744_496, 789_000),
+                Instant.parse("9999-12-31T23:59:59.999999999Z"), Instant.parse("0000-01-01T00:00:00Z"), INSTANT);
+        for (Instant instant : instants) {
+            assertThat(write(instant)).isEqualTo(instant.toString());
+        }
+        // whole seconds, milliseconds, microseconds and nanoseconds each print a different fraction
+        int[] units = {1_000_000_000, 1_000_000, 1_000, 1};
+        for (int i = 0; i < 10_000; i++) {
+            int unit = units[random.nextInt(units.length)];
+            Instant instant = Instant.ofEpochSecond(random.nextInt(Integer.MAX_VALUE),
+                    random.nextInt(1_000_000_000) / unit * unit);
+            assertThat(write(instant)).isEqualTo(instant.toString());
+        }
+    }
+
+    @Test
+    void writesTheSameJsonAsJackson() throws Exception {
+        for (String name : List.of("Duongnv", "quote \" and \\ backslash", "tab\tand\nnewline", "Dương ☕ 𝄞")) {
+            GreetingTemplate template = GreetingTemplate.json(name, Clock.fixed(INSTANT, ZoneOffset.UTC));
+            ByteBuf buffer = template.write(ByteBufAllocator.DEFAULT);
+            try {
+                assertThat(buffer.toString(StandardCharsets.UTF_8))
+                        .isEqualTo(this.json.writeValueAsString(Map.of("greeting", template.render())));
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    void rendersTheTimeItIsWrittenAt() {
+        GreetingTemplate template = GreetingTemplate.text("Duongnv", Clock.systemUTC());
+        Instant before = Instant.now();
+
+        ByteBuf buffer = template.write(ByteBufAllocator.DEFAULT);
+        String greeting = buffer.toString(StandardCharsets.UTF_8);
+        buffer.release();
+
+        assertThat(greeting).startsWith("Hello Duongnv @ ");
+        assertThat(Instant.parse(greeting.substring("Hello Duongnv @ ".length()))).isAfterOrEqualTo(before);
+        assertThat(template.at(INSTANT).render()).isEqualTo("Hello Duongnv @ " + INSTANT);
+    }
+
+    private static String write(Instant instant) {
+        ByteBuf buffer = Unpooled.buffer();
+        GreetingTemplate.writeInstant(buffer, instant.getEpochSecond(), instant.getNano());
+        return buffer.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,122 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class OffHeapResumableFramesStoreTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ResumeMetrics metrics = new ResumeMetrics(this.registry);
+
+    @Test
+    void keepsHeapFramesAsDirectCopies() {
+        OffHeapResumableFramesStore store = store(1024, Duration.ofMinutes(1));
+        ByteBuf frame = frame("hello");
+        save(store, frame);
+
+        assertThat(frame.refCnt()).isZero();
+        List<ByteBuf> replayed = store.resumeStream().collectList().block();
+        assertThat(replayed).hasSize(1);
+        assertThat(replayed.get(0).isDirect()).isTrue();
+        assertThat(replayed.get(0).toString(StandardCharsets.UTF_8)).isEqualTo("hello");
+        replayed.forEach(ByteBuf::release);
+        store.dispose();
+    }
+
+    @Test
+    void releasesAcknowledgedFrames() {
+        OffHeapResumableFramesStore store = store(1024, Duration.ofMinutes(1));
+        ByteBuf first = direct("abc");
+        ByteBuf second = direct("defg");
+        store.saveFrames(Flux.just(first, second)).block();
+
+        store.releaseFrames(3);
+
+        assertThat(store.framePosition()).isEqualTo(3);
+        assertThat(store.cachedFrames()).isEqualTo(1);
+        assertThat(first.refCnt()).isEqualTo(1);
+        assertThat(second.refCnt()).isEqualTo(2);
+        assertThatIllegalStateException().isThrownBy(() -> store.releaseFrames(5));
+
+        store.dispose();
+        assertThat(second.refCnt()).isEqualTo(1);
+        first.release();
+        second.release();
+    }
+
+    @Test
+    void evictsOldestFramesBeyondTheSizeBound() {
+        OffHeapResumableFramesStore store = store(8, Duration.ofMinutes(1));
+        save(store, frame("aaaa"), frame("bbbb"), frame("cccc"));
+
+        assertThat(store.framePosition()).isEqualTo(4);
+        assertThat(store.cachedBytes()).isEqualTo(8);
+        assertThat(this.registry.counter("rsocket.resume.store.evicted", "reason", "size").count()).isEqualTo(1);
+        store.dispose();
+    }
+
+    @Test
+    void evictsFramesBeyondTheAgeBound() throws InterruptedException {
+        OffHeapResumableFramesStore store = store(1024, Duration.ofMillis(10));
+        save(store, frame("old"));
+        Thread.sleep(20);
+        save(store, frame("new"));
+
+        assertThat(store.framePosition()).isEqualTo(3);
+        assertThat(store.cachedFrames()).isEqualTo(1);
+        assertThat(this.registry.counter("rsocket.resume.store.evicted", "reason", "age").count()).isEqualTo(1);
+        store.dispose();
+    }
+
+    @Test
+    void replayKeepsTheStoreReferenceAndCountsAHit() {
+        OffHeapResumableFramesStore store = store(1024, Duration.ofMinutes(1));
+        ByteBuf frame = direct("frame");
+        store.saveFrames(Flux.just(frame)).block();
+
+        store.resumeStream().doOnNext(ByteBuf::release).blockLast();
+
+        assertThat(frame.refCnt()).isEqualTo(2);
+        assertThat(this.registry.counter("rsocket.resume", "outcome", "hit").count()).isEqualTo(1);
+        assertThat(this.registry.get("rsocket.resume.store.bytes").gauge().value()).isEqualTo(5);
+        store.dispose();
+        assertThat(frame.refCnt()).isEqualTo(1);
+        assertThat(this.registry.get("rsocket.resume.store.bytes").gauge().value()).isZero();
+        frame.release();
+    }
+
+    private OffHeapResumableFramesStore store(long maxBytes, Duration maxAge) {
+        return new OffHeapResumableFramesStore(ByteBufAllocator.DEFAULT, maxBytes, maxAge, this.metrics);
+    }
+
+    /**
+     * Saves the frames and then releases them the way the connection does once they are written.
+     */
+    private static void save(OffHeapResumableFramesStore store, ByteBuf... frames) {
+        store.saveFrames(Flux.just(frames)).block();
+        for (ByteBuf frame : frames) {
+            frame.release();
+        }
+    }
+
+    private static ByteBuf frame(String content) {
+        return Unpooled.copiedBuffer(content, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuf direct(String content) {
+        ByteBuf frame = Unpooled.directBuffer();
+        frame.writeCharSequence(content, StandardCharsets.UTF_8);
+        return frame;
+    }
+}
@@ -0,0 +1,110 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.metadata.CompositeMetadataFlyweight;
+import io.rsocket.metadata.TaggingMetadataFlyweight;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.DefaultPayload;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteMetricsTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final TestPublisher<Payload> stream = TestPublisher.create();
+    private final RSocket handler = new AbstractRSocket() {
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+            String data = payload.getDataUtf8();
+            payload.release();
+            return data.isEmpty()
+                    ? Mono.error(new IllegalArgumentException())
+                    : Mono.just(DefaultPayload.create("response"));
+        }
+
+        @Override
+        public Flux<Payload> requestStream(Payload payload) {
+            payload.release();
+            return stream.flux();
+        }
+    };
+
+    @Test
+    void timesRequestsByRoute() {
+        RSocket rsocket = new RouteMetrics(this.meters, 8, false).interceptor().apply(this.handler);
+
+        rsocket.requestResponse(request("greet", "a")).block();
+        rsocket.requestResponse(request("greet", "b")).block();
+        rsocket.requestResponse(request("other-route", "c")).block();
+
+        assertThat(this.meters.get("rsocket.request").tag("route", "greet")
+                .tag("interaction", "request-response").timer().count()).isEqualTo(2);
+        assertThat(this.meters.get("rsocket.request").tag("route", "other-route")
+                .tag("interaction", "request-response").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void countsErrors() {
+        RSocket rsocket = new RouteMetrics(this.meters, 8, false).interceptor().apply(this.handler);
+
+        StepVerifier.create(rsocket.requestResponse(request("greet", "")))
+                .verifyError(IllegalArgumentException.class);
+
+        assertThat(this.meters.get("rsocket.request.errors").tag("route", "greet")
+                .tag("interaction", "request-response").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void tracksActiveStreamsAndTheirFirstElement() {
+        RSocket rsocket = new RouteMetrics(this.meters, 8, false).interceptor().apply(this.handler);
+
+        StepVerifier.create(rsocket.requestStream(request("greet-stream", "a")))
+                .then(() -> {
+                    assertThat(this.meters.get("rsocket.streams.active").tag("route", "greet-stream")
+                            .longTaskTimer().activeTasks()).isEqualTo(1);
+                    this.stream.next(DefaultPayload.create("1"), DefaultPayload.create("2"));
+                })
+                .expectNextCount(2)
+                .then(this.stream::complete)
+                .verifyComplete();
+
+        assertThat(this.meters.get("rsocket.streams.active").tag("route", "greet-stream")
+                .longTaskTimer().activeTasks()).isZero();
+        assertThat(this.meters.get("rsocket.request").tag("route", "greet-stream")
+                .tag("interaction", "request-stream").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void routesBeyondTheLimitShareOneTag() {
+        RSocket rsocket = new RouteMetrics(this.meters, 1, false).interceptor().apply(this.handler);
+
+        rsocket.requestResponse(request("first", "a")).block();
+        rsocket.requestResponse(request("second", "b")).block();
+        rsocket.requestResponse(DefaultPayload.create("no route")).block();
+
+        assertThat(this.meters.get("rsocket.request").tag("route", "first").timer().count()).isEqualTo(1);
+        assertThat(this.meters.get("rsocket.request").tag("route", "other").timer().count()).isEqualTo(2);
+        assertThat(this.meters.find("rsocket.request").tag("route", "second").timer()).isNull();
+    }
+
+    private static Payload request(String route, String data) {
+        ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        CompositeByteBuf metadata = allocator.compositeBuffer();
+        CompositeMetadataFlyweight.encodeAndAddMetadata(metadata, allocator, WellKnownMimeType.MESSAGE_RSOCKET_ROUTING,
+                TaggingMetadataFlyweight.createRoutingMetadata(allocator, List.of(route)).getContent());
+        return ByteBufPayload.create(allocator.buffer().writeBytes(data.getBytes()), metadata);
+    }
+}
@@ -0,0 +1,87 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.frame.RequestResponseFrameFlyweight;
+import io.rsocket.frame.RequestStreamFrameFlyweight;
+import io.rsocket.metadata.CompositeMetadataFlyweight;
+import io.rsocket.metadata.TaggingMetadataFlyweight;
+import io.rsocket.metadata.WellKnownMimeType;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.SimpleRouteMatcher;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoutePrioritiesTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final RoutePriorities priorities = new RoutePriorities(
+            Map.of("greet", PriorityClass.INTERACTIVE, "feeds.{name}", PriorityClass.BULK),
+            new SimpleRouteMatcher(new AntPathMatcher(".")),
+            Map.of(PriorityClass.INTERACTIVE, 16, PriorityClass.BULK, 1),
+            this.meters, false);
+
+    @Test
+    void findsTheClassOfExactAndPatternRoutes() {
+        assertThat(this.priorities.of("greet")).isEqualTo(PriorityClass.INTERACTIVE);
+        assertThat(this.priorities.of("feeds.prices")).isEqualTo(PriorityClass.BULK);
+        assertThat(this.priorities.of("greet-batch")).isEqualTo(PriorityClass.STANDARD);
+        assertThat(this.priorities.weight(PriorityClass.STANDARD)).isEqualTo(1);
+    }
+
+    @Test
+    void readsTheRouteOfRequestFrames() {
+        ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        ByteBuf composite = RequestStreamFrameFlyweight.encode(
+                allocator, 1, false, 8, composite("feeds.prices"), Unpooled.EMPTY_BUFFER);
+        ByteBuf routing = RequestResponseFrameFlyweight.encode(allocator, 3, false,
+                TaggingMetadataFlyweight.createRoutingMetadata(allocator, List.of("greet")).getContent(),
+                Unpooled.EMPTY_BUFFER);
+        ByteBuf unrouted = RequestResponseFrameFlyweight.encode(
+                allocator, 5, false, null, Unpooled.wrappedBuffer(new byte[4]));
+        try {
+            assertThat(this.priorities.of(composite, true)).isEqualTo(PriorityClass.BULK);
+            assertThat(this.priorities.of(routing, false)).isEqualTo(PriorityClass.INTERACTIVE);
+            assertThat(this.priorities.of(routing, true)).isEqualTo(PriorityClass.STANDARD);
+            assertThat(this.priorities.of(unrouted, true)).isEqualTo(PriorityClass.STANDARD);
+        } finally {
+            composite.release();
+            routing.release();
+            unrouted.release();
+        }
+    }
+
+    @Test
+    void metersWhatEachClassSent() {
+        this.priorities.sent(PriorityClass.BULK, 100);
+        this.priorities.sent(PriorityClass.BULK, 50);
+        this.priorities.waited(PriorityClass.INTERACTIVE, 1_000);
+
+        assertThat(this.meters.get("rsocket.priority.frames").tag("class", "bulk").counter().count()).isEqualTo(2);
+        assertThat(this.meters.get("rsocket.priority.bytes").tag("class", "bulk").counter().count()).isEqualTo(150);
+        assertThat(this.meters.get("rsocket.priority.wait").tag("class", "interactive").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsWeightsBelowOne() {
+        assertThatThrownBy(() -> new RoutePriorities(Map.of(), new SimpleRouteMatcher(new AntPathMatcher(".")),
+                Map.of(PriorityClass.BULK, 0), new SimpleMeterRegistry(), false))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static ByteBuf composite(String route) {
+        ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        CompositeByteBuf metadata = allocator.compositeBuffer();
+        CompositeMetadataFlyweight.encodeAndAddMetadata(metadata, allocator, WellKnownMimeType.MESSAGE_RSOCKET_ROUTING,
+                TaggingMetadataFlyweight.createRoutingMetadata(allocator, List.of(route)).getContent());
+        return metadata;
+    }
+}
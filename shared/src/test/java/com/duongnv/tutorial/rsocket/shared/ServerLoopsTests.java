@@ -0,0 +1,98 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.netty.channel.epoll.Epoll;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.util.DefaultPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ServerLoopsTests {
+
+    private final List<CloseableChannel> channels = new ArrayList<>();
+    private ServerLoops loops;
+
+    @AfterEach
+    void close() {
+        this.channels.forEach(CloseableChannel::dispose);
+        this.loops.dispose();
+    }
+
+    @Test
+    void bindsEveryShardToThePortOfTheFirst() {
+        assumeTrue(Epoll.isAvailable());
+        this.loops = new ServerLoops("test", 4, ServerLoops.Native.AUTO, 3);
+
+        bind();
+
+        assertThat(this.loops.isEpoll()).isTrue();
+        assertThat(this.channels).hasSize(3);
+        assertThat(this.channels).extracting(channel -> channel.address().getPort()).containsOnly(port());
+        assertThat(echo()).isEqualTo("hello");
+    }
+
+    @Test
+    void fallsBackToOneNioShard() {
+        this.loops = new ServerLoops("test", 4, ServerLoops.Native.NIO, 3);
+
+        bind();
+
+        assertThat(this.loops.isEpoll()).isFalse();
+        assertThat(this.loops.loopThreads()).isEqualTo(4);
+        assertThat(this.channels).hasSize(1);
+        assertThat(echo()).isEqualTo("hello");
+    }
+
+    @Test
+    void neverRunsMoreShardsThanThreads() {
+        assumeTrue(Epoll.isAvailable());
+        this.loops = new ServerLoops("test", 2, ServerLoops.Native.EPOLL, 8);
+
+        assertThat(this.loops.shards()).isEqualTo(2);
+    }
+
+    private void bind() {
+        this.channels.addAll(this.loops
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), transport -> RSocketFactory
+                        .receive()
+                        .acceptor((setup, sendingSocket) -> Mono.just(new AbstractRSocket() {
+                            @Override
+                            public Mono<Payload> requestResponse(Payload payload) {
+                                return Mono.just(payload);
+                            }
+                        }))
+                        .transport(transport)
+                        .start())
+                .block());
+    }
+
+    private int port() {
+        return this.channels.get(0).address().getPort();
+    }
+
+    private String echo() {
+        RSocket client = RSocketFactory
+                .connect()
+                .transport(TcpClientTransport.create(this.channels.get(0).address()))
+                .start()
+                .block();
+        try {
+            return client.requestResponse(DefaultPayload.create("hello")).map(Payload::getDataUtf8).block();
+        } finally {
+            client.dispose();
+        }
+    }
+}
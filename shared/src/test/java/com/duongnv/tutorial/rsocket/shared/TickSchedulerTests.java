@@ -0,0 +1,91 @@
+package com.duongnv.tutorial.rsocket.shared;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TickSchedulerTests {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final TickScheduler ticks = new TickScheduler(Duration.ofMillis(5), 8, "test-ticks", this.meters);
+
+    @AfterEach
+    void dispose() {
+        this.ticks.dispose();
+    }
+
+    @Test
+    void runsTasksNoEarlierThanTheirDelay() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        long[] elapsed = new long[1];
+
+        this.ticks.schedule(() -> {
+            elapsed[0] = System.nanoTime() - start;
+            ran.countDown();
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(elapsed[0]).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    void waitsFullTurnsOfTheWheelForLongDelays() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        long[] elapsed = new long[1];
+
+        this.ticks.schedule(() -> {
+            elapsed[0] = System.nanoTime() - start;
+            ran.countDown();
+        }, 130, TimeUnit.MILLISECONDS);
+
+        assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(elapsed[0]).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(130));
+    }
+
+    @Test
+    void handsDueTasksOffTheTickThread() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        String[] thread = new String[1];
+
+        this.ticks.createWorker().schedule(() -> {
+            thread[0] = Thread.currentThread().getName();
+            ran.countDown();
+        }, 10, TimeUnit.MILLISECONDS);
+
+        assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(thread[0]).isNotEqualTo("test-ticks");
+    }
+
+    @Test
+    void skipsCancelledTasks() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        Disposable task = this.ticks.schedule(() -> ran.set(true), 10, TimeUnit.MILLISECONDS);
+        task.dispose();
+
+        Thread.sleep(50);
+        assertThat(ran).isFalse();
+        assertThat(this.meters.get("rsocket.tick.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void drivesDelayedElementsAndRecordsTickLag() {
+        StepVerifier.create(Flux.range(1, 3).delayElements(Duration.ofMillis(20), this.ticks))
+                .expectNext(1, 2, 3)
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertThat(this.meters.get("rsocket.tick.lag").timer().count()).isPositive();
+    }
+}
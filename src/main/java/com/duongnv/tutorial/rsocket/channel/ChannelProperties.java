@@ -0,0 +1,55 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("channel")
+class ChannelProperties {
+
+    private Mode mode = Mode.PING_PONG;
+
+    /**
+     * Elements sent and not yet acknowledged, at most, in windowed mode.
+     */
+    private int window = 256;
+
+    /**
+     * Elements the ping sends in windowed mode, as fast as the window allows.
+     */
+    private int elements = 1_000_000;
+
+    /**
+     * Elements the pong acknowledges at once, at most; it acknowledges at least every half window so the ping is
+     * never left without credit.
+     */
+    private int ackEvery = 128;
+
+    /**
+     * Time the pong holds back an acknowledgement waiting for more elements.
+     */
+    private Duration ackDelay = Duration.ofMillis(5);
+
+    /**
+     * Channels the ping opens again, to retransmit what was not acknowledged, after the previous one failed.
+     */
+    private int maxResumes = 5;
+
+    /**
+     * Time the pong remembers what it received on a failed channel, for the ping to resume it.
+     */
+    private Duration sessionTimeout = Duration.ofSeconds(30);
+
+    enum Mode {
+        /**
+         * One ping a second, each answered by a pong.
+         */
+        PING_PONG,
+        /**
+         * Pings pushed as fast as the window allows, acknowledged in batches.
+         */
+        WINDOWED
+    }
+}
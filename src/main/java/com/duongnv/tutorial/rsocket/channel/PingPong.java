@@ -1,24 +1,39 @@
 package com.duongnv.tutorial.rsocket.channel;
 
+import com.duongnv.tutorial.rsocket.transport.TransportProperties;
+import com.duongnv.tutorial.rsocket.transport.Transports;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import io.rsocket.*;
-import io.rsocket.transport.netty.client.TcpClientTransport;
-import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.util.ByteBufPayload;
 import io.rsocket.util.DefaultPayload;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationListener;
 import org.springframework.core.Ordered;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @SpringBootApplication
+@EnableConfigurationProperties({ChannelProperties.class, TransportProperties.class})
 public class PingPong {
+    private static final ByteBuf PING = constant("ping");
+    private static final ByteBuf PONG = constant("pong");
+
     static String reply(String in) {
         if (in.equalsIgnoreCase("ping")) {
             return "pong";
@@ -29,6 +44,49 @@ public class PingPong {
         }
     }
 
+    /**
+     * Same as {@link #reply(String)} without decoding the frame: the answer is a view of a shared
+     * direct buffer, so nothing is copied and releasing it is a no-op.
+     */
+    static ByteBuf reply(ByteBuf in) {
+        if (equalsIgnoreCase(in, PING)) {
+            return PONG.duplicate();
+        } else if (equalsIgnoreCase(in, PONG)) {
+            return PING.duplicate();
+        } else {
+            throw new IllegalArgumentException("incoming value must be either'ping' or 'pong'! ");
+        }
+    }
+
+    /**
+     * A {@code ping} that is a view of a shared direct buffer, like the answers of {@link #reply(ByteBuf)}.
+     */
+    static ByteBuf ping() {
+        return PING.duplicate();
+    }
+
+    private static boolean equalsIgnoreCase(ByteBuf in, ByteBuf lowerCase) {
+        int length = lowerCase.readableBytes();
+        if (in.readableBytes() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = in.getByte(in.readerIndex() + i);
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCase.getByte(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuf constant(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        return Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes));
+    }
+
     public static void main(String[] args) {
         SpringApplication.run(PingPong.class, args);
     }
@@ -38,13 +96,27 @@ public class PingPong {
 @Slf4j
 class Ping implements ApplicationListener<ApplicationReadyEvent>, Ordered {
 
+    private final ChannelProperties properties;
+
+    private final Transports transports;
+
+    Ping(ChannelProperties properties, TransportProperties transport) {
+        this.properties = properties;
+        this.transports = transport.transports("ping");
+    }
+
     @Override
     public void onApplicationEvent(ApplicationReadyEvent event) {
         log.info("starting " + this.getClass().getName());
 
+        if (this.properties.getMode() == ChannelProperties.Mode.WINDOWED) {
+            sendWindowed();
+            return;
+        }
+
         RSocketFactory
                 .connect()
-                .transport(TcpClientTransport.create(7000))
+                .transport(this.transports.client(7000))
                 .start()
                 .flatMapMany(rSocket ->
                         rSocket
@@ -60,6 +132,31 @@ class Ping implements ApplicationListener<ApplicationReadyEvent>, Ordered {
 
     }
 
+    /**
+     * Pushes {@code channel.elements} pings through a {@link WindowedSender}, on a new connection whenever the
+     * channel has to be resumed.
+     */
+    private void sendWindowed() {
+        AtomicReference<RSocket> current = new AtomicReference<>();
+        Mono<RSocket> connection = RSocketFactory
+                .connect()
+                .transport(this.transports.client(7000))
+                .start()
+                .doOnNext(rSocket -> Optional.ofNullable(current.getAndSet(rSocket)).ifPresent(RSocket::dispose));
+        WindowedSender sender = new WindowedSender(connection, this.properties.getWindow(),
+                this.properties.getMaxResumes());
+
+        long start = System.nanoTime();
+        WindowedSender.Result result = sender
+                .send(Flux.range(0, this.properties.getElements()).map(i -> PingPong.ping()))
+                .doFinally(signalType -> Optional.ofNullable(current.get()).ifPresent(RSocket::dispose))
+                .block();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("sent {} pings in {}s with a window of {}, {} pings/s, {} retransmitted over {} resumes",
+                result.elements, seconds, this.properties.getWindow(), Math.round(result.elements / seconds),
+                result.retransmitted, result.resumes);
+    }
+
     @Override
     public int getOrder() {
         return Ordered.LOWEST_PRECEDENCE;
@@ -70,14 +167,31 @@ class Ping implements ApplicationListener<ApplicationReadyEvent>, Ordered {
 @Slf4j
 class Pong implements ApplicationListener<ApplicationReadyEvent>, Ordered, SocketAcceptor {
 
+    private final WindowedReceiver windowed;
+
+    private final Transports transports;
+
+    Pong() {
+        this(new ChannelProperties(), new TransportProperties());
+    }
+
+    @Autowired
+    Pong(ChannelProperties properties, TransportProperties transport) {
+        this.windowed = new WindowedReceiver(PingPong::reply, properties.getAckEvery(), properties.getAckDelay(),
+                properties.getSessionTimeout());
+        this.transports = transport.transports("pong");
+    }
+
     @Override
     public void onApplicationEvent(ApplicationReadyEvent event) {
-        RSocketFactory
-                .receive()
-                .acceptor(this)
-                .transport(TcpServerTransport.create(7000))
-                .start()
-                .subscribe();
+        this.transports
+                .bind(7000, transport -> RSocketFactory
+                        .receive()
+                        .frameDecoder(PayloadDecoder.ZERO_COPY)
+                        .acceptor(this)
+                        .transport(transport)
+                        .start())
+                .subscribe(servers -> log.info("pong listening on 7000 over {}", this.transports.describe()));
     }
 
     @Override
@@ -92,12 +206,24 @@ class Pong implements ApplicationListener<ApplicationReadyEvent>, Ordered, Socke
             public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
                 return Flux
                         .from(payloads)
-                        .map(Payload::getDataUtf8)
-                        .doOnNext(s -> log.info("received: '{}' in {}", s, getClass().getName()))
-                        .map(PingPong::reply)
-                        .map(DefaultPayload::create);
+                        .switchOnFirst((first, elements) -> first.hasValue() && WindowedReceiver.isWindowed(first.get())
+                                ? Pong.this.windowed.receive(first.get(), elements)
+                                : elements.map(Pong::reply))
+                        .doOnDiscard(ReferenceCounted.class, ReferenceCountUtil::safeRelease);
             }
         };
         return Mono.just(rs);
     }
+
+    // frames arrive zero-copy, so every incoming payload is released here once answered
+    private static Payload reply(Payload in) {
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("received: '{}' in {}", in.getDataUtf8(), Pong.class.getName());
+            }
+            return ByteBufPayload.create(PingPong.reply(in.sliceData()));
+        } finally {
+            in.release();
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.Payload;
+import io.rsocket.util.ByteBufPayload;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Answers the channels of a {@link WindowedSender}: hands each element to the handler and acknowledges the highest
+ * sequence number handled so far, once for every {@code ackEvery} elements, or half the sender's window if that is
+ * smaller, or once {@code ackDelay} has passed since the first element not acknowledged.
+ * <p>
+ * What a session has received is remembered for {@code sessionTimeout} after its channel fails, so that elements
+ * retransmitted on the channel that resumes it are skipped rather than handled twice.
+ */
+@Slf4j
+final class WindowedReceiver {
+
+    /**
+     * Session id (long), sender window (int) and sequence number (long) of an element.
+     */
+    static final int METADATA_LENGTH = 20;
+
+    private final Consumer<ByteBuf> handler;
+    private final int ackEvery;
+    private final Duration ackDelay;
+    private final long sessionTimeoutNanos;
+    private final ConcurrentMap<Long, Session> sessions = new ConcurrentHashMap<>();
+
+    WindowedReceiver(Consumer<ByteBuf> handler, int ackEvery, Duration ackDelay, Duration sessionTimeout) {
+        if (ackEvery < 1) {
+            throw new IllegalArgumentException("Need to acknowledge at least every element");
+        }
+        this.handler = handler;
+        this.ackEvery = ackEvery;
+        this.ackDelay = ackDelay;
+        this.sessionTimeoutNanos = sessionTimeout.toNanos();
+    }
+
+    /**
+     * Whether the payload opens a channel of a {@link WindowedSender}.
+     */
+    static boolean isWindowed(Payload first) {
+        return first.hasMetadata() && first.metadata().readableBytes() == METADATA_LENGTH;
+    }
+
+    /**
+     * Acknowledgements of the elements of a channel, the first of which is {@code first}; every element is released
+     * once handled.
+     */
+    Flux<Payload> receive(Payload first, Flux<Payload> elements) {
+        ByteBuf metadata = first.metadata();
+        long id = metadata.getLong(metadata.readerIndex());
+        int window = metadata.getInt(metadata.readerIndex() + Long.BYTES);
+        Session session = this.sessions.computeIfAbsent(id, Session::new);
+        session.open();
+        return elements
+                .map(session::receive)
+                .bufferTimeout(Math.max(1, Math.min(this.ackEvery, window / 2)), this.ackDelay)
+                .map(WindowedReceiver::ack)
+                .doFinally(signal -> close(session, signal));
+    }
+
+    int sessions() {
+        return this.sessions.size();
+    }
+
+    private void close(Session session, SignalType signal) {
+        session.close();
+        if (signal == SignalType.ON_COMPLETE) {
+            this.sessions.remove(session.id, session);
+        } else {
+            Schedulers.parallel().schedule(() -> expire(session), this.sessionTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void expire(Session session) {
+        this.sessions.computeIfPresent(session.id, (id, s) -> s == session && s.idleFor() >= this.sessionTimeoutNanos
+                ? null
+                : s);
+    }
+
+    private static Payload ack(List<Long> handled) {
+        return ByteBufPayload.create(ByteBufAllocator.DEFAULT.buffer(Long.BYTES)
+                .writeLong(handled.get(handled.size() - 1)));
+    }
+
+    /**
+     * What the sender of one session has had handled, over however many channels it took.
+     */
+    private final class Session {
+        final long id;
+        private long received;
+        private int channels;
+        private long closedAt = System.nanoTime();
+
+        Session(long id) {
+            this.id = id;
+        }
+
+        synchronized void open() {
+            this.channels++;
+        }
+
+        synchronized void close() {
+            this.channels--;
+            this.closedAt = System.nanoTime();
+        }
+
+        synchronized long idleFor() {
+            return this.channels > 0 ? 0 : System.nanoTime() - this.closedAt;
+        }
+
+        /**
+         * Handles the element unless it was handled before, and releases it.
+         *
+         * @return the highest sequence number handled
+         */
+        synchronized long receive(Payload element) {
+            try {
+                ByteBuf metadata = element.metadata();
+                long seq = metadata.getLong(metadata.readerIndex() + Long.BYTES + Integer.BYTES);
+                if (seq > this.received) {
+                    WindowedReceiver.this.handler.accept(element.sliceData());
+                    this.received = seq;
+                } else if (log.isDebugEnabled()) {
+                    log.debug("skipped element {} of session {}, already handled", seq, this.id);
+                }
+                return this.received;
+            } finally {
+                element.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends elements over a {@link RSocket#requestChannel} to a {@link WindowedReceiver}, keeping at most
+ * {@code window} of them sent and not yet acknowledged.
+ * <p>
+ * Elements are requested from the source as credit comes back, so the sender pushes as fast as the receiver
+ * acknowledges rather than at a fixed interval. Each element carries the session and its sequence number in the
+ * metadata; the receiver answers with the highest sequence number it has handled, which releases that element
+ * and every one before it. If the channel fails, the sender opens another one, up to {@code maxResumes} times,
+ * and retransmits every element not acknowledged yet; the receiver skips those it had already handled.
+ */
+final class WindowedSender {
+
+    private static final Duration RESUME_BACKOFF = Duration.ofMillis(100);
+
+    private final Mono<RSocket> connection;
+    private final int window;
+    private final int maxResumes;
+
+    /**
+     * @param connection subscribed again for every channel, so pass a cold {@code Mono} to resume on a new
+     *                   connection; the sender disposes none of them
+     */
+    WindowedSender(Mono<RSocket> connection, int window, int maxResumes) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Need a window of at least 1");
+        }
+        this.connection = connection;
+        this.window = window;
+        this.maxResumes = maxResumes;
+    }
+
+    /**
+     * Sends the elements, taking ownership of each buffer, and completes once the receiver has acknowledged all
+     * of them.
+     */
+    Mono<Result> send(Publisher<ByteBuf> elements) {
+        return Mono.defer(() -> {
+            Transfer transfer = new Transfer();
+            Flux.from(elements).subscribe(transfer);
+            return Mono.defer(transfer::attempt)
+                    .retryWhen(Retry.backoff(this.maxResumes, RESUME_BACKOFF)
+                            .filter(e -> transfer.sourceError == null)
+                            .doBeforeRetry(signal -> transfer.resumes++)
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                    .onErrorMap(e -> transfer.sourceError != null ? transfer.sourceError : e)
+                    .then(Mono.fromCallable(transfer::result))
+                    .doFinally(signal -> transfer.release());
+        });
+    }
+
+    static final class Result {
+        final long elements;
+        final long retransmitted;
+        final int resumes;
+
+        Result(long elements, long retransmitted, int resumes) {
+            this.elements = elements;
+            this.retransmitted = retransmitted;
+            this.resumes = resumes;
+        }
+    }
+
+    /**
+     * State of one {@link #send}: the elements from the oldest unacknowledged one onwards, and the channel they
+     * are currently sent on.
+     */
+    private final class Transfer extends BaseSubscriber<ByteBuf> {
+        private final long session = ThreadLocalRandom.current().nextLong();
+        private final ArrayDeque<ByteBuf> unacked = new ArrayDeque<>();
+        private long acked;
+        private long sent;
+        private long emitted;
+        private long retransmitted;
+        private boolean complete;
+        private boolean terminated;
+        private FluxSink<Payload> outbound;
+        volatile Throwable sourceError;
+        volatile int resumes;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(WindowedSender.this.window);
+        }
+
+        @Override
+        protected void hookOnNext(ByteBuf data) {
+            synchronized (this) {
+                if (this.terminated) {
+                    data.release();
+                    return;
+                }
+                this.unacked.add(data);
+                this.sent++;
+                if (this.outbound != null) {
+                    this.emitted = this.sent;
+                    this.outbound.next(payload(this.sent, data));
+                }
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            synchronized (this) {
+                this.complete = true;
+                if (this.outbound != null) {
+                    this.outbound.complete();
+                }
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable error) {
+            this.sourceError = error;
+            synchronized (this) {
+                if (this.outbound != null) {
+                    this.outbound.error(error);
+                }
+            }
+        }
+
+        /**
+         * Opens a channel and sends everything not acknowledged yet on it; completes once the receiver has
+         * acknowledged the last element.
+         */
+        Mono<Void> attempt() {
+            synchronized (this) {
+                if (this.complete && this.unacked.isEmpty()) {
+                    return Mono.empty();
+                }
+            }
+            return WindowedSender.this.connection
+                    .flatMapMany(rSocket -> rSocket.requestChannel(Flux
+                            .create(this::open)
+                            .doOnDiscard(ReferenceCounted.class, ReferenceCountUtil::safeRelease)))
+                    .doOnNext(this::ack)
+                    .doFinally(signal -> close())
+                    .then(Mono.defer(() -> {
+                        synchronized (this) {
+                            return this.complete && this.unacked.isEmpty()
+                                    ? Mono.<Void>empty()
+                                    : Mono.error(new IllegalStateException("Channel closed with "
+                                    + this.unacked.size() + " elements unacknowledged"));
+                        }
+                    }));
+        }
+
+        private synchronized void open(FluxSink<Payload> sink) {
+            long seq = this.acked;
+            for (ByteBuf data : this.unacked) {
+                if (++seq <= this.emitted) {
+                    this.retransmitted++;
+                }
+                sink.next(payload(seq, data));
+            }
+            this.emitted = Math.max(this.emitted, seq);
+            if (this.sourceError != null) {
+                sink.error(this.sourceError);
+            } else if (this.complete) {
+                sink.complete();
+            }
+            this.outbound = sink;
+        }
+
+        private synchronized void close() {
+            this.outbound = null;
+        }
+
+        private void ack(Payload ack) {
+            long seq;
+            try {
+                seq = ack.data().getLong(ack.data().readerIndex());
+            } finally {
+                ack.release();
+            }
+            int credit = 0;
+            synchronized (this) {
+                while (this.acked < seq && !this.unacked.isEmpty()) {
+                    this.unacked.poll().release();
+                    this.acked++;
+                    credit++;
+                }
+            }
+            if (credit > 0) {
+                request(credit);
+            }
+        }
+
+        private Payload payload(long seq, ByteBuf data) {
+            ByteBuf metadata = ByteBufAllocator.DEFAULT.buffer(WindowedReceiver.METADATA_LENGTH)
+                    .writeLong(this.session)
+                    .writeInt(WindowedSender.this.window)
+                    .writeLong(seq);
+            return ByteBufPayload.create(data.retainedSlice(), metadata);
+        }
+
+        synchronized Result result() {
+            return new Result(this.acked, this.retransmitted, this.resumes);
+        }
+
+        /**
+         * Stops taking elements and releases those never acknowledged.
+         */
+        void release() {
+            cancel();
+            synchronized (this) {
+                this.terminated = true;
+                this.unacked.forEach(ByteBuf::release);
+                this.unacked.clear();
+            }
+        }
+    }
+}
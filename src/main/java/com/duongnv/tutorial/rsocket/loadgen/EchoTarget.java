@@ -0,0 +1,82 @@
+package com.duongnv.tutorial.rsocket.loadgen;
+
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocketFactory;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.ServerTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.transport.netty.server.WebsocketServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A responder for every interaction model that does no work of its own, so a load run measures RSocket and the
+ * transport: request-response and request-channel echo each payload back, request-stream repeats the request data
+ * for as long as the requester asks for more, and fire-and-forget drops the payload. Frames are decoded zero-copy
+ * and echoed without copying.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "loadgen", name = "role", havingValue = "target")
+class EchoTarget implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final LoadGeneratorProperties properties;
+
+    EchoTarget(LoadGeneratorProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        CloseableChannel server = start(this.properties).block();
+        log.info("Echo target listening on {} over {}", server.address(), this.properties.getTransport());
+        // no web server keeps this application alive, and the transport's threads are daemons
+        server.onClose().block();
+    }
+
+    static Mono<CloseableChannel> start(LoadGeneratorProperties properties) {
+        ServerTransport<CloseableChannel> transport = properties.getTransport() == LoadGeneratorProperties.Transport.TCP
+                ? TcpServerTransport.create(properties.getHost(), properties.getPort())
+                : WebsocketServerTransport.create(properties.getHost(), properties.getPort());
+        return RSocketFactory
+                .receive()
+                .frameDecoder(PayloadDecoder.ZERO_COPY)
+                .acceptor((setup, sendingSocket) -> Mono.just(new Echo()))
+                .transport(transport)
+                .start();
+    }
+
+    private static final class Echo extends AbstractRSocket {
+
+        @Override
+        public Mono<Void> fireAndForget(Payload payload) {
+            payload.release();
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+            return Mono.just(payload);
+        }
+
+        @Override
+        public Flux<Payload> requestStream(Payload payload) {
+            return Flux.<Payload>generate(sink -> sink.next(ByteBufPayload.create(payload.data().retainedSlice())))
+                    .doFinally(signal -> payload.release());
+        }
+
+        @Override
+        public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+            return Flux.from(payloads);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.duongnv.tutorial.rsocket.loadgen;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * The RSocket interaction model one request of a load run uses. A request completes with its last element, or for
+ * fire-and-forget once the frame has been handed to the connection.
+ */
+enum Interaction {
+
+    FIRE_AND_FORGET {
+        @Override
+        Mono<Void> request(RSocket rsocket, Supplier<Payload> payloads, int elements) {
+            return rsocket.fireAndForget(payloads.get());
+        }
+    },
+
+    REQUEST_RESPONSE {
+        @Override
+        Mono<Void> request(RSocket rsocket, Supplier<Payload> payloads, int elements) {
+            return rsocket.requestResponse(payloads.get())
+                    .doOnNext(Payload::release)
+                    .then();
+        }
+    },
+
+    /**
+     * Asks for exactly {@code elements} and cancels the stream once they have arrived.
+     */
+    REQUEST_STREAM {
+        @Override
+        Mono<Void> request(RSocket rsocket, Supplier<Payload> payloads, int elements) {
+            return rsocket.requestStream(payloads.get())
+                    .limitRequest(elements)
+                    .doOnNext(Payload::release)
+                    .then();
+        }
+    },
+
+    /**
+     * Sends {@code elements} and completes once as many have come back.
+     */
+    REQUEST_CHANNEL {
+        @Override
+        Mono<Void> request(RSocket rsocket, Supplier<Payload> payloads, int elements) {
+            return rsocket.requestChannel(Flux.range(0, elements).map(i -> payloads.get()))
+                    .limitRequest(elements)
+                    .doOnNext(Payload::release)
+                    .then();
+        }
+    };
+
+    abstract Mono<Void> request(RSocket rsocket, Supplier<Payload> payloads, int elements);
+}
@@ -0,0 +1,64 @@
+package com.duongnv.tutorial.rsocket.loadgen;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Drives RSocket load from a single machine, with the {@code loadgen.*} properties of
+ * {@link LoadGeneratorProperties}, e.g.
+ * <pre>
+ * java -cp ... com.duongnv.tutorial.rsocket.loadgen.LoadGenerator --loadgen.role=target --loadgen.port=7100
+ * java -cp ... com.duongnv.tutorial.rsocket.loadgen.LoadGenerator --loadgen.port=7100 --loadgen.connections=8 \
+ *     --loadgen.streams-per-connection=4096 --loadgen.rate=200000 --loadgen.interaction=request_stream
+ * </pre>
+ */
+@SpringBootApplication
+@EnableConfigurationProperties(LoadGeneratorProperties.class)
+public class LoadGenerator {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(LoadGenerator.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+    }
+}
+
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "loadgen", name = "role", havingValue = "generator", matchIfMissing = true)
+class LoadDriver implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final LoadGeneratorProperties properties;
+
+    LoadDriver(LoadGeneratorProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        try {
+            LoadRun.Result result = new LoadRun(this.properties).run();
+            ByteArrayOutputStream percentiles = new ByteArrayOutputStream();
+            result.latencies.outputPercentileDistribution(new PrintStream(percentiles, true, StandardCharsets.UTF_8),
+                    5, 1000.0);
+            log.info("{} requests in {}s, {} requests/s, {} errors; latency in microseconds, from when each request"
+                            + " was due:\n{}", result.latencies.getTotalCount(), result.elapsed.toMillis() / 1000.0,
+                    Math.round(result.throughput()), result.errors, percentiles.toString(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            log.error("Load run failed", e);
+        } finally {
+            event.getApplicationContext().close();
+        }
+    }
+}
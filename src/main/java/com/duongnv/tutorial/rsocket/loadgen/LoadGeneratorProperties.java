@@ -0,0 +1,71 @@
+package com.duongnv.tutorial.rsocket.loadgen;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("loadgen")
+class LoadGeneratorProperties {
+
+    /**
+     * Drive load against {@code host}:{@code port}, or serve as the echo target for another load generator.
+     */
+    private Role role = Role.GENERATOR;
+
+    private String host = "localhost";
+
+    private int port = 7000;
+
+    private Transport transport = Transport.TCP;
+
+    private int connections = 4;
+
+    /**
+     * Streams kept busy on each connection, each with at most one request in flight.
+     */
+    private int streamsPerConnection = 256;
+
+    /**
+     * Requests per second over all streams, started on schedule whether or not earlier ones have completed. 0 runs
+     * closed-loop instead: every stream sends its next request as soon as the previous one completes, which for
+     * fire-and-forget is as soon as it is queued on the connection, without waiting for the target.
+     */
+    private int rate = 10_000;
+
+    private Interaction interaction = Interaction.REQUEST_RESPONSE;
+
+    /**
+     * Size of the data of each payload sent.
+     */
+    private DataSize payloadSize = DataSize.ofBytes(64);
+
+    /**
+     * Elements received per request-stream, and sent and received per request-channel request.
+     */
+    private int elements = 16;
+
+    /**
+     * Load applied before latencies are recorded.
+     */
+    private Duration warmup = Duration.ofSeconds(5);
+
+    private Duration duration = Duration.ofSeconds(30);
+
+    /**
+     * File the latency histogram of every second is logged to, for HdrHistogram's log tools; empty for none.
+     */
+    private String histogramLog = "loadgen.hlog";
+
+    enum Role {
+        GENERATOR,
+        TARGET
+    }
+
+    enum Transport {
+        TCP,
+        WEBSOCKET
+    }
+}
@@ -0,0 +1,231 @@
+package com.duongnv.tutorial.rsocket.loadgen;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.ClientTransport;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.client.WebsocketClientTransport;
+import io.rsocket.util.ByteBufPayload;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.FileNotFoundException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * One load run: {@code connections} connections with {@code streamsPerConnection} streams each, every stream
+ * sending one request of the configured interaction at a time.
+ * <p>
+ * With a {@code rate}, the run is open-loop. Stream {@code i} of {@code n} starts its requests every
+ * {@code n / rate} seconds, offset by {@code i / rate}, so together they start {@code rate} requests a second
+ * evenly spaced. A stream whose previous request is still running starts the next one late, and each latency is
+ * measured from when the request was due, not from when it went out. A producer that stalls is then charged for
+ * every request it held up, which corrects the coordinated omission of measuring from the send. Closed-loop runs,
+ * with a {@code rate} of 0, measure from the send.
+ * <p>
+ * Latencies are recorded in nanoseconds into HdrHistograms: a log line and an interval histogram per second while
+ * the run lasts, and the whole measured run at the end. Latencies of the warmup and of failed requests are not
+ * recorded.
+ */
+@Slf4j
+class LoadRun {
+
+    private final LoadGeneratorProperties properties;
+    private final Recorder recorder = new Recorder(3);
+    private final LongAdder errors = new LongAdder();
+    private final AtomicBoolean errorLogged = new AtomicBoolean();
+    private final ByteBuf data;
+    private final Supplier<Payload> payloads;
+    private volatile boolean running;
+
+    LoadRun(LoadGeneratorProperties properties) {
+        this.properties = properties;
+        int size = (int) properties.getPayloadSize().toBytes();
+        this.data = Unpooled.directBuffer(size).writeZero(size);
+        this.payloads = () -> ByteBufPayload.create(this.data.retainedSlice());
+    }
+
+    Result run() throws InterruptedException, FileNotFoundException {
+        LoadGeneratorProperties properties = this.properties;
+        List<RSocket> connections = Flux.range(0, properties.getConnections())
+                .flatMap(i -> connect())
+                .collectList()
+                .block(Duration.ofSeconds(30));
+        Scheduler pacer = Schedulers.newParallel("loadgen-pacer");
+        HistogramLogWriter histogramLog = properties.getHistogramLog().isEmpty()
+                ? null
+                : new HistogramLogWriter(properties.getHistogramLog());
+        try {
+            int streams = connections.size() * properties.getStreamsPerConnection();
+            long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            long spacingNanos = properties.getRate() == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / properties.getRate();
+            CountDownLatch stopped = new CountDownLatch(streams);
+            this.running = true;
+            for (int i = 0; i < streams; i++) {
+                Stream stream = new Stream(connections.get(i % connections.size()), pacer,
+                        startNanos + i * spacingNanos, streams * spacingNanos, stopped);
+                pacer.schedule(stream::schedule);
+            }
+            log.info("{} streams of {} on {} connections to {}:{} over {}, {}", streams, properties.getInteraction(),
+                    connections.size(), properties.getHost(), properties.getPort(), properties.getTransport(),
+                    properties.getRate() == 0 ? "closed-loop" : properties.getRate() + " requests/s");
+
+            Thread.sleep(properties.getWarmup().toMillis());
+            this.recorder.getIntervalHistogram();
+            this.errors.reset();
+
+            Histogram total = new Histogram(3);
+            long measuredFrom = System.nanoTime();
+            long until = measuredFrom + properties.getDuration().toNanos();
+            if (histogramLog != null) {
+                histogramLog.outputLogFormatVersion();
+                histogramLog.outputStartTime(System.currentTimeMillis());
+                histogramLog.outputLegend();
+            }
+            Histogram interval = null;
+            for (long now = System.nanoTime(); now < until; now = System.nanoTime()) {
+                Thread.sleep(Math.min(1000, TimeUnit.NANOSECONDS.toMillis(until - now)));
+                interval = record(interval, total, histogramLog);
+                log.info("{} requests/s, p50 {}us, p99 {}us, max {}us, {} errors", interval.getTotalCount(),
+                        micros(interval.getValueAtPercentile(50)), micros(interval.getValueAtPercentile(99)),
+                        micros(interval.getMaxValue()), this.errors.sum());
+            }
+            long elapsed = System.nanoTime() - measuredFrom;
+            this.running = false;
+            if (!stopped.await(10, TimeUnit.SECONDS)) {
+                log.warn("{} streams still had a request in flight after 10s", stopped.getCount());
+            }
+            return new Result(total, this.errors.sum(), Duration.ofNanos(elapsed));
+        } finally {
+            this.running = false;
+            if (histogramLog != null) {
+                histogramLog.close();
+            }
+            pacer.dispose();
+            connections.forEach(RSocket::dispose);
+            this.data.release();
+        }
+    }
+
+    private Histogram record(Histogram recycled, Histogram total, HistogramLogWriter histogramLog) {
+        Histogram interval = this.recorder.getIntervalHistogram(recycled);
+        total.add(interval);
+        if (histogramLog != null) {
+            histogramLog.outputIntervalHistogram(interval);
+        }
+        return interval;
+    }
+
+    private Mono<RSocket> connect() {
+        LoadGeneratorProperties properties = this.properties;
+        ClientTransport transport = properties.getTransport() == LoadGeneratorProperties.Transport.TCP
+                ? TcpClientTransport.create(properties.getHost(), properties.getPort())
+                : WebsocketClientTransport.create(properties.getHost(), properties.getPort());
+        return RSocketFactory
+                .connect()
+                .frameDecoder(PayloadDecoder.ZERO_COPY)
+                .transport(transport)
+                .start();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Sends the requests of one stream, one at a time. A request that completes while it is being sent, as
+     * fire-and-forget does, has the next one sent from a new pacer task rather than by recursion, so a closed-loop
+     * stream cannot hold on to the thread that started it.
+     */
+    private final class Stream {
+        private final RSocket rsocket;
+        private final Scheduler pacer;
+        private final long intervalNanos;
+        private final CountDownLatch stopped;
+        private long dueNanos;
+        private volatile boolean sending;
+
+        Stream(RSocket rsocket, Scheduler pacer, long firstDueNanos, long intervalNanos, CountDownLatch stopped) {
+            this.rsocket = rsocket;
+            this.pacer = pacer;
+            this.dueNanos = firstDueNanos;
+            this.intervalNanos = intervalNanos;
+            this.stopped = stopped;
+        }
+
+        void next() {
+            if (this.sending) {
+                this.pacer.schedule(this::schedule);
+            } else {
+                schedule();
+            }
+        }
+
+        void schedule() {
+            if (!LoadRun.this.running) {
+                this.stopped.countDown();
+                return;
+            }
+            long due = this.intervalNanos == 0 ? System.nanoTime() : this.dueNanos;
+            this.dueNanos += this.intervalNanos;
+            long delay = due - System.nanoTime();
+            if (delay > 0) {
+                this.pacer.schedule(() -> send(due), delay, TimeUnit.NANOSECONDS);
+            } else {
+                send(due);
+            }
+        }
+
+        private void send(long due) {
+            LoadGeneratorProperties properties = LoadRun.this.properties;
+            this.sending = true;
+            properties.getInteraction()
+                    .request(this.rsocket, LoadRun.this.payloads, properties.getElements())
+                    .subscribe(null, this::failed, () -> {
+                        LoadRun.this.recorder.recordValue(System.nanoTime() - due);
+                        next();
+                    });
+            this.sending = false;
+        }
+
+        private void failed(Throwable error) {
+            LoadRun.this.errors.increment();
+            if (LoadRun.this.errorLogged.compareAndSet(false, true)) {
+                log.warn("Request failed; further failures are only counted", error);
+            }
+            next();
+        }
+    }
+
+    static final class Result {
+        final Histogram latencies;
+        final long errors;
+        final Duration elapsed;
+
+        Result(Histogram latencies, long errors, Duration elapsed) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsed = elapsed;
+        }
+
+        double throughput() {
+            return this.latencies.getTotalCount() / (this.elapsed.toNanos() / 1e9);
+        }
+    }
+}
@@ -1,27 +1,39 @@
 package com.duongnv.tutorial.rsocket.rr;
 
+import com.duongnv.tutorial.rsocket.shared.GreetingTemplate;
+import com.duongnv.tutorial.rsocket.shared.TickScheduler;
+import com.duongnv.tutorial.rsocket.transport.TransportProperties;
+import com.duongnv.tutorial.rsocket.transport.Transports;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.rsocket.AbstractRSocket;
 import io.rsocket.Payload;
 import io.rsocket.RSocketFactory;
 import io.rsocket.SocketAcceptor;
-import io.rsocket.transport.netty.client.TcpClientTransport;
-import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.util.ByteBufPayload;
 import io.rsocket.util.DefaultPayload;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationListener;
 import org.springframework.core.Ordered;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.stream.Stream;
 
 @SpringBootApplication
+@EnableConfigurationProperties(TransportProperties.class)
 public class RequestResponse {
 
     public static void main(String[] args) {
@@ -30,52 +42,98 @@ public class RequestResponse {
 }
 
 @Component
-class Producer implements Ordered, ApplicationListener<ApplicationReadyEvent> {
+class Producer implements Ordered, ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private final Transports transports;
+
+    /**
+     * One timing wheel for the notifications of every stream, instead of a parallel-scheduler timer per stream.
+     */
+    private final TickScheduler ticks;
+
+    Producer() {
+        this(new TransportProperties(), new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    Producer(TransportProperties transport) {
+        this(transport, Metrics.globalRegistry);
+    }
+
+    Producer(TransportProperties transport, MeterRegistry meterRegistry) {
+        this.transports = transport.transports("producer");
+        this.ticks = new TickScheduler(Duration.ofMillis(10), 512, "notification-ticks", meterRegistry);
+    }
 
     @Override
     public int getOrder() {
         return Ordered.HIGHEST_PRECEDENCE;
     }
 
-    Flux<String> notification(String name) {
+    /**
+     * One template for the whole stream; each notification is written from it into a pooled buffer when due.
+     */
+    Flux<ByteBuf> notification(String name) {
+        GreetingTemplate template = GreetingTemplate.text(name, Clock.systemUTC());
         return Flux
-                .fromStream(Stream.generate(() -> "Hello " + name + " @ " + Instant.now().toString()))
-                .delayElements(Duration.ofSeconds(1));
-
+                .just(template)
+                .repeat()
+                .delayElements(Duration.ofSeconds(1), this.ticks)
+                .map(t -> t.write(ByteBufAllocator.DEFAULT));
     }
 
-    @Override
-    public void onApplicationEvent(ApplicationReadyEvent event) {
-        SocketAcceptor acceptor = (setup, sendingSocket) -> {
+    SocketAcceptor acceptor() {
+        return (setup, sendingSocket) -> {
 
             AbstractRSocket abstractRSocket = new AbstractRSocket() {
                 @Override
                 public Flux<Payload> requestStream(Payload payload) {
-                    String name = payload.getDataUtf8();
-                    return notification(name)
-                            .map(DefaultPayload::create);
+                    String name;
+                    try {
+                        name = payload.getDataUtf8();
+                    } finally {
+                        payload.release();
+                    }
+                    return notification(name).map(ByteBufPayload::create);
                 }
             };
 
             return Mono.just(abstractRSocket);
         };
+    }
 
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
         // can use tcp or websocket
-        TcpServerTransport serverTransport = TcpServerTransport.create(700);
 //        WebsocketServerTransport serverTransport1 = WebsocketServerTransport.create(7000);
 
-        RSocketFactory
-                .receive()
-                .acceptor(acceptor)
-                .transport(serverTransport)
-                .start()
+        this.transports
+                .bind(700, transport -> RSocketFactory
+                        .receive()
+                        .frameDecoder(PayloadDecoder.ZERO_COPY)
+                        .acceptor(acceptor())
+                        .transport(transport)
+                        .start())
                 .block();
     }
+
+    @Override
+    public void destroy() {
+        this.ticks.dispose();
+        this.transports.dispose();
+    }
 }
 
 @Component
 @Slf4j
 class Consumer implements Ordered, ApplicationListener<ApplicationReadyEvent> {
+
+    private final Transports transports;
+
+    Consumer(TransportProperties transport) {
+        this.transports = transport.transports("consumer");
+    }
+
     @Override
     public int getOrder() {
         return Ordered.LOWEST_PRECEDENCE;
@@ -85,7 +143,7 @@ class Consumer implements Ordered, ApplicationListener<ApplicationReadyEvent> {
     public void onApplicationEvent(ApplicationReadyEvent event) {
         RSocketFactory
                 .connect()
-                .transport(TcpClientTransport.create(700))
+                .transport(this.transports.client(700))
                 .start()
                 .flatMapMany(sender ->
                         sender.requestStream(DefaultPayload.create("Duongnv"))
@@ -0,0 +1,133 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A single-producer single-consumer queue of frames in a region of shared memory, usually a mapped file both
+ * processes have open.
+ * <p>
+ * The region starts with the tail, the position the producer has written up to, and the head, the position the
+ * consumer has read up to, each on a cache line of its own, followed by {@code capacity} bytes of records. A
+ * record is the frame length and the frame, aligned to 8 bytes; a frame that would run past the end is written
+ * at the start instead, after a padding record. The tail is published with release semantics once a record is
+ * written and read with acquire semantics before it is read, and the head the other way round, so neither side
+ * ever sees a record that is not complete or overwrites one that has not been read.
+ */
+final class MappedRing {
+
+    static final int HEADER = 128;
+
+    private static final VarHandle POSITION =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int TAIL = 0;
+    private static final int HEAD = 64;
+    private static final int LENGTH = Integer.BYTES;
+    private static final int PADDING = -1;
+
+    private final ByteBuffer region;
+    private final ByteBuffer records;
+    private final int capacity;
+    private final int mask;
+
+    // what this side last saw of the other side's position, so it only reads shared memory when it has to
+    private long head;
+    private long tail;
+
+    /**
+     * The ring in {@code region}, which must be {@link #size(int)} bytes starting at an address aligned to 8.
+     */
+    MappedRing(ByteBuffer region, int capacity) {
+        if (Integer.bitCount(capacity) != 1 || capacity < HEADER) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two of at least 128: " + capacity);
+        }
+        this.region = region.order(ByteOrder.nativeOrder());
+        this.records = region.duplicate().order(ByteOrder.nativeOrder());
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    static int size(int capacity) {
+        return HEADER + capacity;
+    }
+
+    /**
+     * Largest frame that fits, half the capacity so that a frame and the padding before it always do.
+     */
+    int maxFrameLength() {
+        return this.capacity / 2 - LENGTH;
+    }
+
+    /**
+     * Copies the readable bytes of {@code frame} into the ring, or returns {@code false} without writing
+     * anything if there is no room for them until the consumer catches up. Producer side only.
+     */
+    boolean offer(ByteBuf frame) {
+        int length = frame.readableBytes();
+        if (length > maxFrameLength()) {
+            throw new IllegalArgumentException(
+                    "Frame of " + length + " bytes is larger than the " + maxFrameLength() + " bytes the ring takes");
+        }
+        int record = align(LENGTH + length);
+        long tail = (long) POSITION.get(this.region, TAIL);
+        int index = (int) (tail & this.mask);
+        int untilEnd = this.capacity - index;
+        int needed = untilEnd < record ? untilEnd + record : record;
+        if (tail + needed - this.head > this.capacity) {
+            this.head = (long) POSITION.getAcquire(this.region, HEAD);
+            if (tail + needed - this.head > this.capacity) {
+                return false;
+            }
+        }
+        if (untilEnd < record) {
+            this.region.putInt(HEADER + index, PADDING);
+            index = 0;
+        }
+        this.region.putInt(HEADER + index, length);
+        int start = HEADER + index + LENGTH;
+        this.records.limit(start + length).position(start);
+        // rather than getBytes(int, ByteBuffer), which RSocket's composite frames implement as a copy of nothing
+        for (ByteBuffer part : frame.nioBuffers(frame.readerIndex(), length)) {
+            this.records.put(part);
+        }
+        POSITION.setRelease(this.region, TAIL, tail + needed);
+        return true;
+    }
+
+    /**
+     * Copies the next frame out of the ring into a buffer of {@code allocator}, or returns {@code null} if there
+     * is none yet. Consumer side only.
+     */
+    ByteBuf poll(ByteBufAllocator allocator) {
+        long head = (long) POSITION.get(this.region, HEAD);
+        if (head >= this.tail) {
+            this.tail = (long) POSITION.getAcquire(this.region, TAIL);
+            if (head == this.tail) {
+                return null;
+            }
+        }
+        int index = (int) (head & this.mask);
+        int length = this.region.getInt(HEADER + index);
+        if (length == PADDING) {
+            head += this.capacity - index;
+            index = 0;
+            length = this.region.getInt(HEADER);
+        }
+        int start = HEADER + index + LENGTH;
+        this.records.limit(start + length).position(start);
+        ByteBuf frame = allocator.buffer(length);
+        frame.writeBytes(this.records);
+        POSITION.setRelease(this.region, HEAD, head + align(LENGTH + length));
+        return frame;
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+}
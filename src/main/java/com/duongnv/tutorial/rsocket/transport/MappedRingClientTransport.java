@@ -0,0 +1,92 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.DuplexConnection;
+import io.rsocket.fragmentation.FragmentationDuplexConnection;
+import io.rsocket.transport.ClientTransport;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Connects to a {@link MappedRingServerTransport} listening in a directory: creates the file of the connection
+ * under a temporary name, moves it to {@code <id>.ring} in one step so the server never sees it half written,
+ * and waits for the server to accept it.
+ */
+final class MappedRingClientTransport implements ClientTransport {
+
+    private static final Duration ACCEPT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration ACCEPT_POLL = Duration.ofMillis(1);
+
+    private final Path directory;
+    private final int ringSize;
+    private final Duration maxPark;
+
+    MappedRingClientTransport(Path directory, int ringSize, Duration maxPark) {
+        this.directory = directory;
+        this.ringSize = ringSize;
+        this.maxPark = maxPark;
+    }
+
+    @Override
+    public Mono<DuplexConnection> connect(int mtu) {
+        Mono<DuplexConnection> invalid = FragmentationDuplexConnection.checkMtu(mtu);
+        if (invalid != null) {
+            return invalid;
+        }
+        return Mono.defer(() -> {
+            String id = UUID.randomUUID().toString();
+            Path path = this.directory.resolve(id + MappedRingServerTransport.SUFFIX);
+            return Mono
+                    .fromCallable(() -> create(this.directory.resolve(id + ".tmp"), path))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(file -> Mono
+                            .fromSupplier(file::isAccepted)
+                            .filter(accepted -> accepted)
+                            .repeatWhenEmpty(attempts -> attempts.delayElements(ACCEPT_POLL))
+                            .timeout(ACCEPT_TIMEOUT)
+                            .onErrorMap(TimeoutException.class, ex -> new ConnectException(
+                                    "No RSocket server accepted the connection in " + this.directory))
+                            .doOnError(ex -> deleteIfExists(path))
+                            .thenReturn(file))
+                    .map(file -> {
+                        DuplexConnection connection = new MappedRingConnection(
+                                file, MappedRingFile.Side.CLIENT, ByteBufAllocator.DEFAULT, this.maxPark);
+                        return mtu > 0
+                                ? new FragmentationDuplexConnection(
+                                        connection, ByteBufAllocator.DEFAULT, mtu, false, "client")
+                                : connection;
+                    });
+        });
+    }
+
+    private MappedRingFile create(Path temporary, Path path) throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            throw new ConnectException("No RSocket server listening in " + this.directory);
+        }
+        try {
+            MappedRingFile file = MappedRingFile.create(temporary, this.ringSize);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } catch (IOException ex) {
+            deleteIfExists(temporary);
+            throw ex;
+        }
+    }
+
+    private static void deleteIfExists(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // nothing left to clean up then
+        }
+    }
+}
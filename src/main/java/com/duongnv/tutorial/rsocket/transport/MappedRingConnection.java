@@ -0,0 +1,278 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.DuplexConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.util.concurrent.Queues;
+
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One side of a connection over a {@link MappedRingFile}.
+ * <p>
+ * Each connection has a thread of its own that copies the frames of every {@link #send} into the outbound ring
+ * and the frames in the inbound ring out to {@link #receive}, the way an event loop would for a socket. There is
+ * no way to be woken up by another process, so once there is nothing to do the thread spins for a while, then
+ * yields, then parks for longer and longer up to {@code maxPark} between polls: the first frame after a pause
+ * takes up to that long to be noticed, the ones after it none at all.
+ * <p>
+ * Frames are written whole; send them in fragments if they can be larger than half a ring. A side that closes
+ * says so in the file, and the other side closes too once it has read what was sent before. A process that dies
+ * says nothing, and the connection stays open until RSocket's keepalive gives up on it.
+ */
+@Slf4j
+final class MappedRingConnection implements DuplexConnection {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final int PREFETCH = 256;
+    private static final int SPINS = 1_000;
+    private static final int YIELDS = 100;
+
+    private final MappedRingFile file;
+    private final MappedRingFile.Side side;
+    private final MappedRing outbound;
+    private final MappedRing inbound;
+    private final ByteBufAllocator allocator;
+    private final long maxParkNanos;
+    private final Queue<Sender> senders = new ConcurrentLinkedQueue<>();
+    private final UnicastProcessor<ByteBuf> received = UnicastProcessor.create(Queues.<ByteBuf>unbounded().get());
+    private final MonoProcessor<Void> onClose = MonoProcessor.create();
+    private final Thread thread;
+
+    private volatile boolean disposed;
+    private volatile boolean parked;
+    private volatile boolean signalled;
+
+    MappedRingConnection(MappedRingFile file, MappedRingFile.Side side, ByteBufAllocator allocator, Duration maxPark) {
+        this.file = file;
+        this.side = side;
+        this.outbound = file.outbound(side);
+        this.inbound = file.inbound(side);
+        this.allocator = allocator;
+        this.maxParkNanos = Math.max(1, maxPark.toNanos());
+        this.thread = new Thread(this::run,
+                "rsocket-ring-" + side.name().toLowerCase() + "-" + THREADS.incrementAndGet());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public Mono<Void> send(Publisher<ByteBuf> frames) {
+        return Mono.create(sink -> {
+            if (this.disposed) {
+                sink.error(new ClosedChannelException());
+                return;
+            }
+            Sender sender = new Sender(sink);
+            sink.onCancel(sender::abandon);
+            this.senders.add(sender);
+            if (this.disposed && this.senders.remove(sender)) {
+                // the connection thread may have finished the senders already, and would miss this one
+                sender.abort(new ClosedChannelException());
+                return;
+            }
+            Flux.from(frames).subscribe(sender);
+        });
+    }
+
+    @Override
+    public Flux<ByteBuf> receive() {
+        return this.received;
+    }
+
+    @Override
+    public Mono<Void> onClose() {
+        return this.onClose;
+    }
+
+    @Override
+    public void dispose() {
+        this.disposed = true;
+        LockSupport.unpark(this.thread);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return this.disposed;
+    }
+
+    private void run() {
+        Throwable failure = null;
+        try {
+            int idle = 0;
+            while (!this.disposed) {
+                boolean peerClosed = this.file.isPeerClosed(this.side);
+                boolean busy = write() | read();
+                if (peerClosed && !busy) {
+                    break;
+                }
+                idle = busy ? 0 : idle(idle + 1);
+            }
+        } catch (RuntimeException ex) {
+            log.warn("{} failed", Thread.currentThread().getName(), ex);
+            failure = ex;
+        } finally {
+            this.disposed = true;
+            this.file.close(this.side);
+            for (Sender sender; (sender = this.senders.poll()) != null; ) {
+                sender.abort(failure != null ? failure : new ClosedChannelException());
+            }
+            this.received.onComplete();
+            if (failure != null) {
+                this.onClose.onError(failure);
+            } else {
+                this.onClose.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Copies what the senders have queued into the outbound ring, until they are drained or the ring is full.
+     */
+    private boolean write() {
+        boolean wrote = false;
+        for (Iterator<Sender> senders = this.senders.iterator(); senders.hasNext(); ) {
+            Sender sender = senders.next();
+            int written = 0;
+            for (ByteBuf frame; (frame = sender.frames.peek()) != null; ) {
+                if (sender.cancelled) {
+                    ReferenceCountUtil.safeRelease(sender.frames.poll());
+                    continue;
+                }
+                if (!this.outbound.offer(frame)) {
+                    break;
+                }
+                sender.frames.poll();
+                frame.release();
+                written++;
+            }
+            if (written > 0) {
+                wrote = true;
+                sender.request(written);
+            }
+            if ((sender.done || sender.cancelled) && sender.frames.isEmpty()) {
+                senders.remove();
+                sender.finish();
+            }
+        }
+        return wrote;
+    }
+
+    private boolean read() {
+        boolean read = false;
+        for (ByteBuf frame; (frame = this.inbound.poll(this.allocator)) != null; ) {
+            this.received.onNext(frame);
+            read = true;
+        }
+        return read;
+    }
+
+    private int idle(int idle) {
+        if (idle <= SPINS) {
+            Thread.onSpinWait();
+        } else if (idle <= SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            // a sender that queued a frame before it could see the flag has signalled instead of unparking
+            this.parked = true;
+            if (!this.signalled) {
+                long nanos = 1_000L << Math.min(idle - SPINS - YIELDS - 1, 20);
+                LockSupport.parkNanos(Math.min(nanos, this.maxParkNanos));
+            }
+            this.parked = false;
+            this.signalled = false;
+        }
+        return idle;
+    }
+
+    private void wake() {
+        this.signalled = true;
+        if (this.parked) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    /**
+     * Frames of one {@link #send}, queued until the connection thread has written them. At most
+     * {@code PREFETCH} are requested ahead of what has been written, so a full ring holds the sender back.
+     */
+    private final class Sender extends BaseSubscriber<ByteBuf> {
+
+        final Queue<ByteBuf> frames = Queues.<ByteBuf>get(PREFETCH).get();
+        final MonoSink<Void> sink;
+        volatile boolean done;
+        volatile boolean cancelled;
+        Throwable error;
+
+        Sender(MonoSink<Void> sink) {
+            this.sink = sink;
+        }
+
+        void abandon() {
+            this.cancelled = true;
+            cancel();
+            wake();
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(PREFETCH);
+        }
+
+        @Override
+        protected void hookOnNext(ByteBuf frame) {
+            if (!this.frames.offer(frame)) {
+                frame.release();
+                cancel();
+                hookOnError(new IllegalStateException("More frames than requested"));
+                return;
+            }
+            wake();
+        }
+
+        @Override
+        protected void hookOnError(Throwable error) {
+            this.error = error;
+            this.done = true;
+            wake();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            this.done = true;
+            wake();
+        }
+
+        void finish() {
+            if (this.error != null) {
+                this.sink.error(this.error);
+            } else {
+                this.sink.success();
+            }
+        }
+
+        void abort(Throwable error) {
+            cancel();
+            for (ByteBuf frame; (frame = this.frames.poll()) != null; ) {
+                frame.release();
+            }
+            this.sink.error(error);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The file one mapped-ring connection lives in: a header with the state of both sides, the ring the client
+ * writes to and the ring the server writes to.
+ * <p>
+ * The client creates the file and the server maps it too; once the server has, the file can be deleted, since
+ * both mappings stay valid until they are garbage collected.
+ */
+final class MappedRingFile {
+
+    enum Side {
+        CLIENT(CLIENT_CLOSED, SERVER_CLOSED),
+        SERVER(SERVER_CLOSED, CLIENT_CLOSED);
+
+        final int closed;
+        final int peerClosed;
+
+        Side(int closed, int peerClosed) {
+            this.closed = closed;
+            this.peerClosed = peerClosed;
+        }
+    }
+
+    private static final VarHandle FLAG = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final int MAGIC = 0x52534B54;
+    private static final int HEADER = 256;
+    private static final int CAPACITY = 4;
+    private static final int ACCEPTED = 64;
+    private static final int CLIENT_CLOSED = 128;
+    private static final int SERVER_CLOSED = 192;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private MappedRingFile(MappedByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates a file with two rings of {@code capacity} bytes each, for a client to connect with.
+     */
+    static MappedRingFile create(Path path, int capacity) throws IOException {
+        long size = HEADER + 2L * MappedRing.size(capacity);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(CAPACITY, capacity);
+            FLAG.setRelease(buffer, 0, MAGIC);
+            return new MappedRingFile(buffer, capacity);
+        }
+    }
+
+    /**
+     * Maps the file a client created, for the server side of the connection.
+     */
+    static MappedRingFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            if (channel.size() < HEADER || (int) FLAG.getAcquire(buffer, 0) != MAGIC) {
+                throw new IOException(path + " is not a mapped-ring connection");
+            }
+            int capacity = buffer.getInt(CAPACITY);
+            if (channel.size() != HEADER + 2L * MappedRing.size(capacity)) {
+                throw new IOException(path + " is not a mapped-ring connection of " + capacity + " byte rings");
+            }
+            return new MappedRingFile(buffer, capacity);
+        }
+    }
+
+    /**
+     * The ring {@code side} writes to.
+     */
+    MappedRing outbound(Side side) {
+        return ring(side == Side.CLIENT ? 0 : 1);
+    }
+
+    /**
+     * The ring {@code side} reads from.
+     */
+    MappedRing inbound(Side side) {
+        return ring(side == Side.CLIENT ? 1 : 0);
+    }
+
+    private MappedRing ring(int index) {
+        int start = HEADER + index * MappedRing.size(this.capacity);
+        return new MappedRing(this.buffer.duplicate().position(start).limit(start + MappedRing.size(this.capacity))
+                .slice(), this.capacity);
+    }
+
+    void accept() {
+        FLAG.setRelease(this.buffer, ACCEPTED, 1);
+    }
+
+    boolean isAccepted() {
+        return (int) FLAG.getAcquire(this.buffer, ACCEPTED) == 1;
+    }
+
+    void close(Side side) {
+        FLAG.setRelease(this.buffer, side.closed, 1);
+    }
+
+    boolean isClosed(Side side) {
+        return (int) FLAG.getAcquire(this.buffer, side.closed) == 1;
+    }
+
+    boolean isPeerClosed(Side side) {
+        return (int) FLAG.getAcquire(this.buffer, side.peerClosed) == 1;
+    }
+}
@@ -0,0 +1,130 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.Closeable;
+import io.rsocket.DuplexConnection;
+import io.rsocket.fragmentation.FragmentationDuplexConnection;
+import io.rsocket.transport.ServerTransport;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Listens for {@link MappedRingConnection}s in a directory: a client connects by creating a
+ * {@code <id>.ring} file there, which the server maps, deletes and marks as accepted.
+ * <p>
+ * The directory is looked at every {@code ACCEPT_INTERVAL} rather than watched, which only delays connecting and
+ * works the same on every platform. Closing the server stops it from accepting; connections already accepted stay
+ * open, as they do when a TCP server is closed.
+ */
+@Slf4j
+final class MappedRingServerTransport implements ServerTransport<Closeable> {
+
+    static final String SUFFIX = ".ring";
+
+    private static final Duration ACCEPT_INTERVAL = Duration.ofMillis(5);
+
+    private final Path directory;
+    private final Duration maxPark;
+
+    MappedRingServerTransport(Path directory, Duration maxPark) {
+        this.directory = directory;
+        this.maxPark = maxPark;
+    }
+
+    @Override
+    public Mono<Closeable> start(ConnectionAcceptor acceptor, int mtu) {
+        Mono<Closeable> invalid = FragmentationDuplexConnection.checkMtu(mtu);
+        if (invalid != null) {
+            return invalid;
+        }
+        return Mono.fromCallable(() -> {
+            Files.createDirectories(this.directory);
+            // left behind by clients that gave up waiting for a server
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+                for (Path file : stale) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            return (Closeable) new Listener(acceptor, mtu);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private final class Listener implements Closeable {
+
+        private final ConnectionAcceptor acceptor;
+        private final int mtu;
+        private final Scheduler scheduler = Schedulers.newSingle("rsocket-ring-accept", true);
+        private final MonoProcessor<Void> onClose = MonoProcessor.create();
+        private final Disposable accepting;
+
+        Listener(ConnectionAcceptor acceptor, int mtu) {
+            this.acceptor = acceptor;
+            this.mtu = mtu;
+            this.accepting = Flux
+                    .interval(Duration.ZERO, ACCEPT_INTERVAL, this.scheduler)
+                    .subscribe(tick -> acceptPending());
+        }
+
+        private void acceptPending() {
+            try (DirectoryStream<Path> pending = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : pending) {
+                    accept(file);
+                }
+            } catch (IOException ex) {
+                log.warn("Could not look for connections in {}", directory, ex);
+            }
+        }
+
+        private void accept(Path path) {
+            MappedRingFile file;
+            try {
+                file = MappedRingFile.open(path);
+            } catch (IOException ex) {
+                log.warn("Not accepting {}", path, ex);
+                return;
+            } finally {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ex) {
+                    log.warn("Could not delete {}", path, ex);
+                }
+            }
+            DuplexConnection connection = new MappedRingConnection(
+                    file, MappedRingFile.Side.SERVER, ByteBufAllocator.DEFAULT, maxPark);
+            file.accept();
+            if (this.mtu > 0) {
+                connection = new FragmentationDuplexConnection(
+                        connection, ByteBufAllocator.DEFAULT, this.mtu, false, "server");
+            }
+            this.acceptor.apply(connection).subscribe();
+        }
+
+        @Override
+        public Mono<Void> onClose() {
+            return this.onClose;
+        }
+
+        @Override
+        public void dispose() {
+            this.accepting.dispose();
+            this.scheduler.dispose();
+            this.onClose.onComplete();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return this.onClose.isTerminated();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import com.duongnv.tutorial.rsocket.shared.ServerLoops;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Transport of the raw RSocket servers, {@code Pong} and the request-response {@code Producer}, and of the
+ * clients that connect to them.
+ */
+@Data
+@ConfigurationProperties("transport")
+public class TransportProperties {
+
+    private Transports.Type type = Transports.Type.TCP;
+
+    /**
+     * Event-loop threads a TCP server runs on, across all shards. 0 takes Reactor Netty's default of one per core,
+     * and at least 4.
+     */
+    private int loopThreads = 0;
+
+    private ServerLoops.Native nativeTransport = ServerLoops.Native.AUTO;
+
+    /**
+     * Listening sockets bound to the same port with SO_REUSEPORT, each accepting on its own share of the loop
+     * threads so the kernel spreads new connections across them. Needs epoll; a single socket is bound on NIO.
+     */
+    private int shards = 1;
+
+    private final Mmap mmap = new Mmap();
+
+    public ServerLoops loops(String name) {
+        return new ServerLoops(name, this.loopThreads, this.nativeTransport, this.shards);
+    }
+
+    public Transports transports(String name) {
+        return new Transports(this, name);
+    }
+
+    @Data
+    public static class Mmap {
+
+        /**
+         * Directory servers listen in, in a subdirectory per port.
+         */
+        private String directory = System.getProperty("java.io.tmpdir") + "/rsocket-rings";
+
+        /**
+         * Frames in flight in each direction of a connection, at most; rounded up to a power of two. A frame
+         * larger than half of it has to be fragmented.
+         */
+        private DataSize ringSize = DataSize.ofMegabytes(1);
+
+        /**
+         * Longest a connection waits between two looks at its ring once it has been idle for a while. The first
+         * frame after a pause can take that long to arrive; shorter costs more CPU while idle.
+         */
+        private Duration maxPark = Duration.ofNanos(50_000);
+    }
+}
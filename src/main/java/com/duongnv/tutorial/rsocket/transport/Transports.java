@@ -0,0 +1,114 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import com.duongnv.tutorial.rsocket.shared.ServerLoops;
+import io.rsocket.Closeable;
+import io.rsocket.transport.ClientTransport;
+import io.rsocket.transport.ServerTransport;
+import io.rsocket.transport.local.LocalClientTransport;
+import io.rsocket.transport.local.LocalServerTransport;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Servers and clients of the transport {@code transport.type} picks, addressed by port whichever it is.
+ */
+public final class Transports implements Disposable {
+
+    public enum Type {
+        /**
+         * Loopback or remote TCP, on the {@link ServerLoops} configured.
+         */
+        TCP,
+        /**
+         * Within the JVM: frames are handed from one side to the other as they are, with no copy, framing or
+         * socket in between. Servers are named after their port.
+         */
+        LOCAL,
+        /**
+         * Between processes on one host: frames are copied through a pair of rings in a memory-mapped file per
+         * connection, with no socket or system call in between.
+         */
+        MMAP
+    }
+
+    private final TransportProperties properties;
+    private final String name;
+    private ServerLoops loops;
+
+    Transports(TransportProperties properties, String name) {
+        this.properties = properties;
+        this.name = name;
+    }
+
+    public Type type() {
+        return this.properties.getType();
+    }
+
+    /**
+     * Starts a server on {@code port} with {@code start}, once per shard when it is TCP.
+     */
+    public Mono<List<Closeable>> bind(int port, Function<ServerTransport<?>, Mono<? extends Closeable>> start) {
+        switch (type()) {
+            case LOCAL:
+                return start.apply(LocalServerTransport.create(localName(port))).map(List::of);
+            case MMAP:
+                TransportProperties.Mmap mmap = this.properties.getMmap();
+                return start.apply(new MappedRingServerTransport(directory(port), mmap.getMaxPark()))
+                        .map(List::of);
+            default:
+                this.loops = this.properties.loops(this.name);
+                return this.loops
+                        .bind(new InetSocketAddress(port), transport -> start.apply(transport)
+                                .cast(CloseableChannel.class))
+                        .map(ArrayList::new);
+        }
+    }
+
+    public ClientTransport client(int port) {
+        switch (type()) {
+            case LOCAL:
+                return LocalClientTransport.create(localName(port));
+            case MMAP:
+                TransportProperties.Mmap mmap = this.properties.getMmap();
+                int ringSize = Integer.highestOneBit((int) mmap.getRingSize().toBytes() - 1) << 1;
+                return new MappedRingClientTransport(directory(port), ringSize, mmap.getMaxPark());
+            default:
+                return TcpClientTransport.create(port);
+        }
+    }
+
+    /**
+     * How servers listen, for their startup message.
+     */
+    public String describe() {
+        if (type() != Type.TCP || this.loops == null) {
+            return type().name().toLowerCase();
+        }
+        return String.format("tcp on %d %s loop threads in %d shards", this.loops.loopThreads(),
+                this.loops.isEpoll() ? "epoll" : "nio", this.loops.shards());
+    }
+
+    @Override
+    public void dispose() {
+        if (this.loops != null) {
+            this.loops.dispose();
+        }
+    }
+
+    private static String localName(int port) {
+        return "rsocket-" + port;
+    }
+
+    private Path directory(int port) {
+        return Paths.get(this.properties.getMmap().getDirectory(), String.valueOf(port));
+    }
+}
@@ -0,0 +1,48 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PongTests {
+
+    private final RSocket pong = new Pong().accept(null, null).block();
+
+    @Test
+    void repliesAndReleasesEveryIncomingPayload() {
+        ByteBuf ping = Unpooled.copiedBuffer("PING", StandardCharsets.US_ASCII);
+        ByteBuf pong = Unpooled.copiedBuffer("pong", StandardCharsets.US_ASCII);
+
+        StepVerifier.create(this.pong.requestChannel(Flux.just(ByteBufPayload.create(ping), ByteBufPayload.create(pong))))
+                .assertNext(reply -> assertReleasedAfterReading(reply, "pong"))
+                .assertNext(reply -> assertReleasedAfterReading(reply, "ping"))
+                .verifyComplete();
+
+        assertThat(ping.refCnt()).isZero();
+        assertThat(pong.refCnt()).isZero();
+    }
+
+    @Test
+    void releasesPayloadThatIsNotAPing() {
+        ByteBuf other = Unpooled.copiedBuffer("hello", StandardCharsets.US_ASCII);
+
+        StepVerifier.create(this.pong.requestChannel(Flux.just(ByteBufPayload.create(other))))
+                .verifyError(IllegalArgumentException.class);
+
+        assertThat(other.refCnt()).isZero();
+    }
+
+    private static void assertReleasedAfterReading(Payload reply, String expected) {
+        assertThat(reply.getDataUtf8()).isEqualTo(expected);
+        assertThat(reply.release()).isTrue();
+    }
+}
@@ -0,0 +1,154 @@
+package com.duongnv.tutorial.rsocket.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.RSocketProxy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WindowedChannelTests {
+
+    private static final int ELEMENTS = 2_000;
+
+    private final List<Integer> handled = new CopyOnWriteArrayList<>();
+    private final AtomicInteger emitted = new AtomicInteger();
+    private final AtomicInteger maxAhead = new AtomicInteger();
+    private final WindowedReceiver receiver = new WindowedReceiver(this::handle, 128, Duration.ofMillis(5),
+            Duration.ofSeconds(30));
+    private CloseableChannel server;
+    private RSocket client;
+
+    @AfterEach
+    void tearDown() {
+        this.client.dispose();
+        this.server.dispose();
+    }
+
+    @Test
+    void deliversEveryElementOnceWithinTheWindow() {
+        connect((setup, sendingSocket) -> Mono.just(new AbstractRSocket() {
+            @Override
+            public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+                return Flux.from(payloads).switchOnFirst((first, elements) ->
+                        WindowedChannelTests.this.receiver.receive(first.get(), elements));
+            }
+        }));
+
+        WindowedSender.Result result = new WindowedSender(Mono.just(this.client), 16, 0)
+                .send(elements())
+                .block(Duration.ofSeconds(10));
+
+        assertThat(result.elements).isEqualTo(ELEMENTS);
+        assertThat(result.resumes).isZero();
+        assertThat(this.handled).containsExactlyElementsOf(expected());
+        assertThat(this.maxAhead.get()).isBetween(1, 16);
+        assertThat(this.receiver.sessions()).isZero();
+    }
+
+    @Test
+    void retransmitsWhatWasNotAcknowledgedWhenTheChannelFails() {
+        connect((setup, sendingSocket) -> Mono.just(new AbstractRSocket() {
+            @Override
+            public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+                return Flux.from(payloads).switchOnFirst((first, elements) ->
+                        WindowedChannelTests.this.receiver.receive(first.get(), elements));
+            }
+        }));
+        AtomicInteger channels = new AtomicInteger();
+        Mono<RSocket> failingOnce = Mono.fromCallable(() -> channels.getAndIncrement() > 0
+                ? this.client
+                : new RSocketProxy(this.client) {
+                    @Override
+                    public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+                        return super.requestChannel(payloads)
+                                .take(2)
+                                .concatWith(Mono.error(new IOException("connection reset")));
+                    }
+                });
+
+        WindowedSender.Result result = new WindowedSender(failingOnce, 64, 1)
+                .send(elements())
+                .block(Duration.ofSeconds(10));
+
+        assertThat(result.elements).isEqualTo(ELEMENTS);
+        assertThat(result.resumes).isEqualTo(1);
+        assertThat(result.retransmitted).isPositive();
+        assertThat(this.handled).containsExactlyElementsOf(expected());
+    }
+
+    @Test
+    void failsWithoutResumingWhenTheSourceFails() {
+        connect(new Pong());
+
+        Mono<WindowedSender.Result> send = new WindowedSender(Mono.just(this.client), 16, 5)
+                .send(Flux.range(0, 10).map(i -> PingPong.ping())
+                        .concatWith(Mono.error(new IllegalStateException("source failed"))));
+
+        assertThatThrownBy(() -> send.block(Duration.ofSeconds(10))).hasMessage("source failed");
+    }
+
+    @Test
+    void pongAcknowledgesWindowedPings() {
+        connect(new Pong());
+
+        WindowedSender.Result result = new WindowedSender(Mono.just(this.client), 256, 0)
+                .send(Flux.range(0, ELEMENTS).map(i -> PingPong.ping()))
+                .block(Duration.ofSeconds(10));
+
+        assertThat(result.elements).isEqualTo(ELEMENTS);
+    }
+
+    private void connect(SocketAcceptor acceptor) {
+        this.server = RSocketFactory
+                .receive()
+                .frameDecoder(PayloadDecoder.ZERO_COPY)
+                .acceptor(acceptor)
+                .transport(TcpServerTransport.create("localhost", 0))
+                .start()
+                .block();
+        this.client = RSocketFactory
+                .connect()
+                .transport(TcpClientTransport.create("localhost", this.server.address().getPort()))
+                .start()
+                .block();
+    }
+
+    // everything sent beyond the elements handled so far is in flight, as none of those can have been acknowledged
+    private void handle(ByteBuf data) {
+        this.maxAhead.accumulateAndGet(this.emitted.get() - this.handled.size(), Math::max);
+        this.handled.add(data.getInt(data.readerIndex()));
+    }
+
+    private Flux<ByteBuf> elements() {
+        return Flux.range(0, ELEMENTS)
+                .map(i -> Unpooled.buffer(Integer.BYTES).writeInt(i))
+                .doOnNext(data -> this.emitted.incrementAndGet());
+    }
+
+    private static List<Integer> expected() {
+        return IntStream.range(0, ELEMENTS).boxed().collect(Collectors.toList());
+    }
+}
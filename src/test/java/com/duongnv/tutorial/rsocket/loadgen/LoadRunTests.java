@@ -0,0 +1,52 @@
+package com.duongnv.tutorial.rsocket.loadgen;
+
+import io.rsocket.transport.netty.server.CloseableChannel;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadRunTests {
+
+    @ParameterizedTest
+    @EnumSource(Interaction.class)
+    void runsOpenLoopAgainstTheEchoTargetOverTcp(Interaction interaction) throws Exception {
+        LoadRun.Result result = run(interaction, LoadGeneratorProperties.Transport.TCP, 2_000);
+
+        assertThat(result.errors).isZero();
+        assertThat(result.latencies.getTotalCount()).isPositive().isLessThanOrEqualTo(2_000 * 3 / 2);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Interaction.class, mode = EnumSource.Mode.EXCLUDE, names = "FIRE_AND_FORGET")
+    void runsClosedLoopAgainstTheEchoTargetOverWebsocket(Interaction interaction) throws Exception {
+        LoadRun.Result result = run(interaction, LoadGeneratorProperties.Transport.WEBSOCKET, 0);
+
+        assertThat(result.errors).isZero();
+        assertThat(result.latencies.getTotalCount()).isPositive();
+    }
+
+    private static LoadRun.Result run(Interaction interaction, LoadGeneratorProperties.Transport transport, int rate)
+            throws Exception {
+        LoadGeneratorProperties properties = new LoadGeneratorProperties();
+        properties.setTransport(transport);
+        properties.setPort(0);
+        CloseableChannel target = EchoTarget.start(properties).block();
+        try {
+            properties.setPort(target.address().getPort());
+            properties.setInteraction(interaction);
+            properties.setConnections(2);
+            properties.setStreamsPerConnection(10);
+            properties.setElements(4);
+            properties.setRate(rate);
+            properties.setWarmup(Duration.ofMillis(200));
+            properties.setDuration(Duration.ofSeconds(1));
+            properties.setHistogramLog("");
+            return new LoadRun(properties).run();
+        } finally {
+            target.dispose();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.duongnv.tutorial.rsocket.rr;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProducerTests {
+
+    private final Producer producers = new Producer();
+    private final RSocket producer = this.producers.acceptor().accept(null, null).block();
+
+    @AfterEach
+    void dispose() {
+        this.producers.destroy();
+    }
+
+    @Test
+    void streamsPooledNotificationsAndReleasesTheRequest() {
+        ByteBuf name = Unpooled.copiedBuffer("Duongnv", StandardCharsets.UTF_8);
+
+        StepVerifier.create(this.producer.requestStream(ByteBufPayload.create(name)).take(1))
+                .assertNext(notification -> {
+                    assertThat(notification.getDataUtf8()).startsWith("Hello Duongnv @ ");
+                    assertThat(notification.release()).isTrue();
+                })
+                .verifyComplete();
+
+        assertThat(name.refCnt()).isZero();
+    }
+}
@@ -0,0 +1,148 @@
+package com.duongnv.tutorial.rsocket.transport;
+
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Closeable;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.util.DefaultPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.reactivestreams.Publisher;
+import org.springframework.util.SocketUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransportsTests {
+
+    @TempDir
+    Path directory;
+
+    private final List<Closeable> servers = new ArrayList<>();
+    private final List<RSocket> clients = new ArrayList<>();
+    private Transports transports;
+
+    @AfterEach
+    void close() {
+        this.clients.forEach(RSocket::dispose);
+        this.servers.forEach(Closeable::dispose);
+        this.transports.dispose();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Transports.Type.class)
+    void echoesOverEveryTransport(Transports.Type type) {
+        RSocket client = connect(type, DataSize.ofMegabytes(1));
+
+        assertThat(client.requestResponse(DefaultPayload.create("hello")).map(Payload::getDataUtf8).block())
+                .isEqualTo("hello");
+        assertThat(client.requestChannel(Flux.range(0, 1_000).map(i -> DefaultPayload.create("ping " + i)))
+                .map(Payload::getDataUtf8)
+                .collectList()
+                .block())
+                .hasSize(1_000)
+                .endsWith("ping 999");
+    }
+
+    @Test
+    void wrapsAroundAndWaitsForRoomInASmallRing() {
+        RSocket client = connect(Transports.Type.MMAP, DataSize.ofBytes(1024));
+
+        List<Integer> lengths = client
+                .requestChannel(Flux.range(0, 2_000).map(i -> DefaultPayload.create("x".repeat(i % 400))))
+                .map(payload -> {
+                    int length = payload.data().readableBytes();
+                    payload.release();
+                    return length;
+                })
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(lengths).hasSize(2_000);
+        for (int i = 0; i < lengths.size(); i++) {
+            assertThat(lengths.get(i)).isEqualTo(i % 400);
+        }
+    }
+
+    @Test
+    void closesTheServerSideWhenTheClientCloses() {
+        List<RSocket> accepted = new ArrayList<>();
+        this.transports = transports(Transports.Type.MMAP, DataSize.ofKilobytes(64));
+        int port = SocketUtils.findAvailableTcpPort();
+        this.servers.addAll(this.transports
+                .bind(port, transport -> RSocketFactory
+                        .receive()
+                        .acceptor((setup, sendingSocket) -> {
+                            accepted.add(sendingSocket);
+                            return Mono.just(new AbstractRSocket() {
+                            });
+                        })
+                        .transport(transport)
+                        .start())
+                .block());
+        RSocket client = RSocketFactory.connect().transport(this.transports.client(port)).start().block();
+        client.fireAndForget(DefaultPayload.create("hello")).block();
+
+        client.dispose();
+
+        Mono.fromSupplier(() -> accepted.size() == 1 && accepted.get(0).isDisposed())
+                .filter(closed -> closed)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void failsToConnectWithoutAServer() {
+        this.transports = transports(Transports.Type.MMAP, DataSize.ofKilobytes(64));
+
+        assertThatThrownBy(() -> RSocketFactory.connect().transport(this.transports.client(1)).start().block())
+                .hasCauseInstanceOf(ConnectException.class);
+    }
+
+    private RSocket connect(Transports.Type type, DataSize ringSize) {
+        this.transports = transports(type, ringSize);
+        int port = SocketUtils.findAvailableTcpPort();
+        this.servers.addAll(this.transports
+                .bind(port, transport -> RSocketFactory
+                        .receive()
+                        .acceptor((setup, sendingSocket) -> Mono.just(new AbstractRSocket() {
+                            @Override
+                            public Mono<Payload> requestResponse(Payload payload) {
+                                return Mono.just(payload);
+                            }
+
+                            @Override
+                            public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+                                return Flux.from(payloads);
+                            }
+                        }))
+                        .transport(transport)
+                        .start())
+                .block());
+        RSocket client = RSocketFactory.connect().transport(this.transports.client(port)).start().block();
+        this.clients.add(client);
+        return client;
+    }
+
+    private Transports transports(Transports.Type type, DataSize ringSize) {
+        TransportProperties properties = new TransportProperties();
+        properties.setType(type);
+        properties.setLoopThreads(2);
+        properties.getMmap().setDirectory(this.directory.toString());
+        properties.getMmap().setRingSize(ringSize);
+        return properties.transports("test");
+    }
+}